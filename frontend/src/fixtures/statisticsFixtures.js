@@ -0,0 +1,37 @@
+const statisticsFixtures = {
+  professorStatistics: {
+    professorId: 1,
+    professorName: "Phill Conrad",
+    total: 6,
+    byStatus: {
+      PENDING: 2,
+      "IN PROGRESS": 1,
+      COMPLETED: 2,
+      DENIED: 1,
+    },
+    byType: {
+      "CS Department BS/MS program": 2,
+      "PhD program": 4,
+    },
+    timedCompletions: 2,
+    averageCompletionSeconds: 183600,
+    byProfessor: null,
+  },
+  noRequests: {
+    professorId: 1,
+    professorName: "Phill Conrad",
+    total: 0,
+    byStatus: {
+      PENDING: 0,
+      "IN PROGRESS": 0,
+      COMPLETED: 0,
+      DENIED: 0,
+    },
+    byType: {},
+    timedCompletions: 0,
+    averageCompletionSeconds: null,
+    byProfessor: null,
+  },
+};
+
+export { statisticsFixtures };
@@ -1,3 +1,4 @@
+import { Button } from "react-bootstrap";
 import BasicLayout from "main/layouts/BasicLayout/BasicLayout";
 import RecommendationRequestTable from "main/components/RecommendationRequest/RecommendationRequestTable";
 
@@ -16,6 +17,22 @@ const AdminRequestsPage = () => {
 
   return (
     <BasicLayout>
+      <Button
+        variant="secondary"
+        href="/api/recommendationrequest/admin/export?format=csv"
+        data-testid="AdminRequestsPage-export-csv"
+        style={{ float: "right" }}
+      >
+        Export CSV
+      </Button>
+      <Button
+        variant="secondary"
+        href="/api/recommendationrequest/admin/export?format=ndjson"
+        data-testid="AdminRequestsPage-export-ndjson"
+        style={{ float: "right", marginRight: "0.5em" }}
+      >
+        Export NDJSON
+      </Button>
       <h2>Recommendation Requests</h2>
       <RecommendationRequestTable requests={requests} />
     </BasicLayout>
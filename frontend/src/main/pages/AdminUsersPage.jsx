@@ -1,23 +1,35 @@
+import { useState } from "react";
+import { Form } from "react-bootstrap";
 import BasicLayout from "main/layouts/BasicLayout/BasicLayout";
 import UsersTable from "main/components/Users/UsersTable";
 import { useCurrentUser } from "main/utils/currentUser";
 import { useBackend } from "main/utils/useBackend";
 const AdminUsersPage = () => {
   const { data: currentUser } = useCurrentUser();
+  const [search, setSearch] = useState("");
   const {
     data: users,
     error: _error,
     status: _status,
   } = useBackend(
     // Stryker disable next-line all : don't test internal caching of React Query
-    ["/api/admin/users"],
-    { method: "GET", url: "/api/admin/users" },
+    ["/api/admin/users", search],
+    { method: "GET", url: "/api/admin/users", params: { search } },
     [],
   );
 
   return (
     <BasicLayout>
       <h2>Users</h2>
+      <Form.Control
+        type="search"
+        placeholder="Search by email or name"
+        aria-label="Search by email or name"
+        data-testid="AdminUsersPage-search"
+        className="mb-3"
+        value={search}
+        onChange={(e) => setSearch(e.target.value)}
+      />
       <UsersTable users={users} currentUser={currentUser} />
     </BasicLayout>
   );
@@ -4,6 +4,7 @@ import RecommendationRequestForm from "main/components/RecommendationRequest/Rec
 import { Navigate } from "react-router";
 import { useBackend, useBackendMutation } from "main/utils/useBackend";
 import { toast } from "react-toastify";
+import { ifMatchHeaders } from "main/utils/RecommendationRequestUtils";
 
 export default function RecommendationRequestEditPage({ storybook = false }) {
   let { id } = useParams();
@@ -37,6 +38,7 @@ export default function RecommendationRequestEditPage({ storybook = false }) {
       details: recommendationRequest.details,
       dueDate: recommendationRequest.dueDate,
     },
+    ...ifMatchHeaders(recommendationRequest.version),
   });
 
   const onSuccess = (recommendationRequest) => {
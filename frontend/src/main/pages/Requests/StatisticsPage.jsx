@@ -1,11 +1,89 @@
 import BasicLayout from "main/layouts/BasicLayout/BasicLayout";
+import { Table } from "react-bootstrap";
+import { useBackend } from "main/utils/useBackend";
+
+// Formats a number of seconds as days and hours, e.g. 183600 => "2 days 3 hours"
+export function formatDuration(seconds) {
+  if (seconds === null || seconds === undefined) {
+    return "no completed requests yet";
+  }
+  const days = Math.floor(seconds / 86400);
+  const hours = Math.floor((seconds % 86400) / 3600);
+  const minutes = Math.floor((seconds % 3600) / 60);
+  const parts = [];
+  if (days > 0) {
+    parts.push(`${days} day${days === 1 ? "" : "s"}`);
+  }
+  if (hours > 0) {
+    parts.push(`${hours} hour${hours === 1 ? "" : "s"}`);
+  }
+  if (days === 0 && minutes > 0) {
+    parts.push(`${minutes} minute${minutes === 1 ? "" : "s"}`);
+  }
+  return parts.length > 0 ? parts.join(" ") : "less than a minute";
+}
+
+function CountTable({ testid, heading, counts }) {
+  return (
+    <Table striped bordered size="sm" data-testid={testid}>
+      <thead>
+        <tr>
+          <th>{heading}</th>
+          <th>Requests</th>
+        </tr>
+      </thead>
+      <tbody>
+        {Object.entries(counts).map(([name, count]) => (
+          <tr key={name}>
+            <td data-testid={`${testid}-name-${name}`}>{name}</td>
+            <td data-testid={`${testid}-count-${name}`}>{count}</td>
+          </tr>
+        ))}
+      </tbody>
+    </Table>
+  );
+}
 
 export default function StatisticsPage() {
-  // Stryker disable all : placeholder for future implementation
+  const { data: statistics } = useBackend(
+    // Stryker disable next-line all : don't test internal caching of React Query
+    ["/api/statistics/professor"],
+    {
+      // Stryker disable next-line all : GET is the default, so mutating this to "" doesn't introduce a bug
+      method: "GET",
+      url: "/api/statistics/professor",
+    },
+    // Stryker disable next-line all : don't test default value
+    null,
+  );
+
   return (
     <BasicLayout>
       <div className="pt-2">
-        <h1>Statistics page not yet implemented</h1>
+        <h1>Statistics</h1>
+        {statistics && (
+          <>
+            <p data-testid="StatisticsPage-total">
+              Total requests: {statistics.total}
+            </p>
+            <p data-testid="StatisticsPage-average">
+              Average time to complete:{" "}
+              {formatDuration(statistics.averageCompletionSeconds)}
+            </p>
+            <h2>By status</h2>
+            <CountTable
+              testid="StatisticsPage-byStatus"
+              heading="Status"
+              counts={statistics.byStatus}
+            />
+            <h2>By type</h2>
+            <CountTable
+              testid="StatisticsPage-byType"
+              heading="Type"
+              counts={statistics.byType}
+            />
+          </>
+        )}
       </div>
     </BasicLayout>
   );
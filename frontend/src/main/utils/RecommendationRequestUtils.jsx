@@ -43,6 +43,16 @@ export function onUpdateStatusSuccess(message) {
   toast(message);
 }
 
+// The backend sends each request's version as its ETag. Sending it back in
+// If-Match makes an update fail (412) instead of overwriting a change someone
+// else made since we loaded the request.
+export function ifMatchHeaders(version) {
+  if (version === undefined || version === null) {
+    return {};
+  }
+  return { headers: { "If-Match": `"${version}"` } };
+}
+
 export function cellToAxiosParamsUpdateStatus(cell, newStatus) {
   return {
     url: "/api/recommendationrequest/professor",
@@ -53,5 +63,6 @@ export function cellToAxiosParamsUpdateStatus(cell, newStatus) {
     data: {
       status: newStatus,
     },
+    ...ifMatchHeaders(cell.row.original?.version),
   };
 }
@@ -25,11 +25,75 @@ import { toast } from "react-toastify";
 //     []
 // );
 
+// The backend sends an ETag with its listings. We remember the last ETag and
+// data for each GET, and send the ETag back in If-None-Match; while nothing
+// has changed the backend answers 304 Not Modified with an empty body, and we
+// reuse the data we already have.
+const etagCache = new Map();
+
+export function clearETagCache() {
+  etagCache.clear();
+}
+
+const isGet = (axiosParameters) =>
+  (axiosParameters.method ?? "GET").toUpperCase() === "GET";
+
+const etagCacheKey = (axiosParameters) =>
+  JSON.stringify([axiosParameters.url, axiosParameters.params ?? null]);
+
+// Listings are sent one page at a time. While there are more, the backend puts
+// the cursor for the next page in the X-Next-Cursor header, and we fetch the
+// rest of the pages so that the pages showing a listing see all of it. The
+// ETag of the first page covers the whole listing, so a 304 for it means that
+// none of the pages has changed.
+const NEXT_CURSOR_HEADER = "x-next-cursor";
+
+export async function allPages(axiosParameters, response) {
+  let data = response.data;
+  let cursor = response.headers?.[NEXT_CURSOR_HEADER];
+  while (cursor) {
+    const next = await axios({
+      ...axiosParameters,
+      params: { ...axiosParameters.params, after: cursor },
+    });
+    data = data.concat(next.data);
+    cursor = next.headers?.[NEXT_CURSOR_HEADER];
+  }
+  return data;
+}
+
+export async function conditionalGet(axiosParameters) {
+  const key = etagCacheKey(axiosParameters);
+  const cached = etagCache.get(key);
+  const response = await axios({
+    ...axiosParameters,
+    headers: cached
+      ? { ...axiosParameters.headers, "If-None-Match": cached.etag }
+      : axiosParameters.headers,
+    validateStatus: (status) =>
+      (status >= 200 && status < 300) || (cached && status === 304),
+  });
+  if (response.status === 304) {
+    return cached.data;
+  }
+  const data = await allPages(axiosParameters, response);
+  const etag = response.headers?.etag;
+  if (etag) {
+    etagCache.set(key, { etag, data });
+  } else {
+    etagCache.delete(key);
+  }
+  return data;
+}
+
 export function useBackend(queryKey, axiosParameters, initialData) {
   return useQuery(
     queryKey,
     async () => {
       try {
+        if (isGet(axiosParameters)) {
+          return await conditionalGet(axiosParameters);
+        }
         const response = await axios(axiosParameters);
         return response.data;
       } catch (e) {
@@ -0,0 +1,43 @@
+import React from "react";
+import { apiCurrentUserFixtures } from "fixtures/currentUserFixtures";
+import { statisticsFixtures } from "fixtures/statisticsFixtures";
+import { systemInfoFixtures } from "fixtures/systemInfoFixtures";
+import StatisticsPage from "main/pages/Requests/StatisticsPage";
+import { http, HttpResponse } from "msw";
+
+export default {
+  title: "pages/Requests/StatisticsPage",
+  component: StatisticsPage,
+};
+
+const Template = () => <StatisticsPage />;
+
+export const Empty = Template.bind({});
+Empty.parameters = {
+  msw: [
+    http.get("/api/currentUser", () => {
+      return HttpResponse.json(apiCurrentUserFixtures.professorUser);
+    }),
+    http.get("/api/systemInfo", () => {
+      return HttpResponse.json(systemInfoFixtures.showingNeither);
+    }),
+    http.get("/api/statistics/professor", () => {
+      return HttpResponse.json(statisticsFixtures.noRequests);
+    }),
+  ],
+};
+
+export const WithRequests = Template.bind({});
+WithRequests.parameters = {
+  msw: [
+    http.get("/api/currentUser", () => {
+      return HttpResponse.json(apiCurrentUserFixtures.professorUser);
+    }),
+    http.get("/api/systemInfo", () => {
+      return HttpResponse.json(systemInfoFixtures.showingNeither);
+    }),
+    http.get("/api/statistics/professor", () => {
+      return HttpResponse.json(statisticsFixtures.professorStatistics);
+    }),
+  ],
+};
@@ -160,4 +160,35 @@ describe("AdminUsersPage tests", () => {
       screen.queryByTestId(`${testId}-cell-row-0-col-id`),
     ).not.toBeInTheDocument();
   });
+
+  test("links to the csv and ndjson exports", async () => {
+    const queryClient = new QueryClient();
+    axiosMock.onGet("/api/recommendationrequest/admin").reply(200, []);
+
+    render(
+      <QueryClientProvider client={queryClient}>
+        <MemoryRouter>
+          <AdminRequestsPage />
+        </MemoryRouter>
+      </QueryClientProvider>,
+    );
+
+    await screen.findByText("Recommendation Requests");
+    expect(screen.getByTestId("AdminRequestsPage-export-csv")).toHaveAttribute(
+      "href",
+      "/api/recommendationrequest/admin/export?format=csv",
+    );
+    expect(screen.getByTestId("AdminRequestsPage-export-csv")).toHaveTextContent(
+      "Export CSV",
+    );
+    expect(
+      screen.getByTestId("AdminRequestsPage-export-ndjson"),
+    ).toHaveAttribute(
+      "href",
+      "/api/recommendationrequest/admin/export?format=ndjson",
+    );
+    expect(
+      screen.getByTestId("AdminRequestsPage-export-ndjson"),
+    ).toHaveTextContent("Export NDJSON");
+  });
 });
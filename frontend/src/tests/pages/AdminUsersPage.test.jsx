@@ -1,4 +1,9 @@
-import { render, waitFor, screen } from "@testing-library/react";
+import {
+  fireEvent,
+  render,
+  waitFor,
+  screen,
+} from "@testing-library/react";
 import { QueryClient, QueryClientProvider } from "react-query";
 import { MemoryRouter } from "react-router";
 import AdminUsersPage from "main/pages/AdminUsersPage";
@@ -68,4 +73,42 @@ describe("AdminUsersPage tests", () => {
       screen.queryByTestId(`${testId}-cell-row-0-col-id`),
     ).not.toBeInTheDocument();
   });
+
+  test("searches users as the admin types", async () => {
+    const queryClient = new QueryClient();
+    axiosMock.onGet("/api/admin/users").reply((config) => {
+      return [
+        200,
+        config.params.search === "phil"
+          ? [usersFixtures.threeUsers[0]]
+          : usersFixtures.threeUsers,
+      ];
+    });
+
+    render(
+      <QueryClientProvider client={queryClient}>
+        <MemoryRouter>
+          <AdminUsersPage />
+        </MemoryRouter>
+      </QueryClientProvider>,
+    );
+
+    await screen.findByTestId(`${testId}-cell-row-2-col-id`);
+    const lastUsersParams = () =>
+      axiosMock.history.get.filter((r) => r.url === "/api/admin/users").at(-1)
+        .params;
+    expect(lastUsersParams()).toEqual({ search: "" });
+
+    fireEvent.change(screen.getByTestId("AdminUsersPage-search"), {
+      target: { value: "phil" },
+    });
+
+    await waitFor(() => {
+      expect(
+        screen.queryByTestId(`${testId}-cell-row-1-col-id`),
+      ).not.toBeInTheDocument();
+    });
+    expect(screen.getByTestId("AdminUsersPage-search")).toHaveValue("phil");
+    expect(lastUsersParams()).toEqual({ search: "phil" });
+  });
 });
@@ -155,6 +155,7 @@ describe("RecommendationRequestEditPage tests", () => {
         recommendationType: recommendationTypeFixtures.fourTypes[0].requestType,
         details: "Initial details for editing",
         dueDate: "2025-01-15T12:00:00",
+        version: 5,
       };
       axiosMock
         .onGet("/api/recommendationrequest", { params: { id: 17 } })
@@ -247,6 +248,7 @@ describe("RecommendationRequestEditPage tests", () => {
 
       expect(axiosMock.history.put.length).toBe(1);
       expect(axiosMock.history.put[0].params).toEqual({ id: 17 });
+      expect(axiosMock.history.put[0].headers["If-Match"]).toBe('"5"');
 
       const expectedPutData = {
         professorId: usersFixtures.twoProfessors[1].id.toString(),
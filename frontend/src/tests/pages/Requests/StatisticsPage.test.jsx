@@ -1,43 +1,104 @@
 import { render, screen } from "@testing-library/react";
-import StatisticsPage from "main/pages/Requests/StatisticsPage";
+import StatisticsPage, {
+  formatDuration,
+} from "main/pages/Requests/StatisticsPage";
 import { QueryClient, QueryClientProvider } from "react-query";
 import { MemoryRouter } from "react-router";
 
 import { apiCurrentUserFixtures } from "fixtures/currentUserFixtures";
 import { systemInfoFixtures } from "fixtures/systemInfoFixtures";
+import { statisticsFixtures } from "fixtures/statisticsFixtures";
 import axios from "axios";
 import AxiosMockAdapter from "axios-mock-adapter";
 
 describe("StatisticsPage tests", () => {
   const axiosMock = new AxiosMockAdapter(axios);
 
-  const setupUserOnly = () => {
+  const setupProfessor = () => {
     axiosMock.reset();
     axiosMock.resetHistory();
     axiosMock
       .onGet("/api/currentUser")
-      .reply(200, apiCurrentUserFixtures.userOnly);
+      .reply(200, apiCurrentUserFixtures.professorUser);
     axiosMock
       .onGet("/api/systemInfo")
       .reply(200, systemInfoFixtures.showingNeither);
   };
 
-  const queryClient = new QueryClient();
-  test("Renders expected content", async () => {
-    // arrange
-
-    setupUserOnly();
-
-    // act
+  const renderPage = () =>
     render(
-      <QueryClientProvider client={queryClient}>
+      <QueryClientProvider client={new QueryClient()}>
         <MemoryRouter>
           <StatisticsPage />
         </MemoryRouter>
       </QueryClientProvider>,
     );
 
-    // assert
-    await screen.findByText("Statistics page not yet implemented");
+  test("Renders the statistics for the professor", async () => {
+    setupProfessor();
+    axiosMock
+      .onGet("/api/statistics/professor")
+      .reply(200, statisticsFixtures.professorStatistics);
+
+    renderPage();
+
+    expect(
+      await screen.findByTestId("StatisticsPage-total"),
+    ).toHaveTextContent("Total requests: 6");
+    expect(screen.getByTestId("StatisticsPage-average")).toHaveTextContent(
+      "Average time to complete: 2 days 3 hours",
+    );
+    expect(
+      screen.getByTestId("StatisticsPage-byStatus-count-IN PROGRESS"),
+    ).toHaveTextContent("1");
+    expect(
+      screen.getByTestId("StatisticsPage-byStatus-count-DENIED"),
+    ).toHaveTextContent("1");
+    expect(
+      screen.getByTestId("StatisticsPage-byType-name-PhD program"),
+    ).toHaveTextContent("PhD program");
+    expect(
+      screen.getByTestId("StatisticsPage-byType-count-PhD program"),
+    ).toHaveTextContent("4");
+    expect(axiosMock.history.get.map((r) => r.url)).toContain(
+      "/api/statistics/professor",
+    );
+  });
+
+  test("Renders a professor with no requests", async () => {
+    setupProfessor();
+    axiosMock
+      .onGet("/api/statistics/professor")
+      .reply(200, statisticsFixtures.noRequests);
+
+    renderPage();
+
+    expect(
+      await screen.findByTestId("StatisticsPage-average"),
+    ).toHaveTextContent("Average time to complete: no completed requests yet");
+    expect(
+      screen.getByTestId("StatisticsPage-byStatus-count-PENDING"),
+    ).toHaveTextContent("0");
+  });
+
+  test("Renders only the heading while loading or on error", async () => {
+    setupProfessor();
+    axiosMock.onGet("/api/statistics/professor").reply(500);
+
+    renderPage();
+
+    await screen.findByText("Statistics");
+    expect(screen.queryByTestId("StatisticsPage-total")).not.toBeInTheDocument();
+  });
+
+  test("formatDuration", () => {
+    expect(formatDuration(null)).toBe("no completed requests yet");
+    expect(formatDuration(undefined)).toBe("no completed requests yet");
+    expect(formatDuration(30)).toBe("less than a minute");
+    expect(formatDuration(60)).toBe("1 minute");
+    expect(formatDuration(3660)).toBe("1 hour 1 minute");
+    expect(formatDuration(7320)).toBe("2 hours 2 minutes");
+    expect(formatDuration(86400)).toBe("1 day");
+    expect(formatDuration(86400 * 2 + 3600 + 60)).toBe("2 days 1 hour");
   });
 });
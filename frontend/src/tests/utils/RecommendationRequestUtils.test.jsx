@@ -5,6 +5,7 @@ import {
   onUpdateStatusSuccess,
   _cellToAxiosParamsUpdateStatus,
   cellToAxiosParamsUpdateStatus,
+  ifMatchHeaders,
 } from "main/utils/RecommendationRequestUtils";
 import { currentUserFixtures } from "fixtures/currentUserFixtures";
 import { hasRole } from "main/utils/currentUser";
@@ -155,5 +156,24 @@ describe("formattedDate", () => {
         data: { status: "DENIED" },
       });
     });
+
+    test("It sends the version of the row in If-Match", () => {
+      const cell = { row: { values: { id: 17 }, original: { version: 0 } } };
+
+      const result = cellToAxiosParamsUpdateStatus(cell, "DENIED");
+
+      expect(result.headers).toEqual({ "If-Match": '"0"' });
+    });
+  });
+
+  describe("ifMatchHeaders", () => {
+    test("It is empty when there is no version", () => {
+      expect(ifMatchHeaders(undefined)).toEqual({});
+      expect(ifMatchHeaders(null)).toEqual({});
+    });
+
+    test("It quotes the version", () => {
+      expect(ifMatchHeaders(3)).toEqual({ headers: { "If-Match": '"3"' } });
+    });
   });
 });
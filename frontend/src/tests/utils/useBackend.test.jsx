@@ -3,7 +3,12 @@ import { renderHook, waitFor, act } from "@testing-library/react";
 
 import axios from "axios";
 import AxiosMockAdapter from "axios-mock-adapter";
-import { useBackend, useBackendMutation } from "main/utils/useBackend";
+import {
+  clearETagCache,
+  conditionalGet,
+  useBackend,
+  useBackendMutation,
+} from "main/utils/useBackend";
 import { vi } from "vitest";
 
 vi.mock("react-router");
@@ -68,6 +73,130 @@ describe("utils/useBackend tests", () => {
       );
     });
   });
+  describe("utils/useBackend conditionalGet tests", () => {
+    const axiosMock = new AxiosMockAdapter(axios);
+    const params = { method: "GET", url: "/api/requesttypes/all" };
+
+    beforeEach(() => {
+      axiosMock.reset();
+      axiosMock.resetHistory();
+      clearETagCache();
+    });
+
+    test("sends the ETag back and reuses the data on 304", async () => {
+      axiosMock
+        .onGet("/api/requesttypes/all")
+        .replyOnce(200, [{ id: 1 }], { etag: '"abc"' })
+        .onGet("/api/requesttypes/all")
+        .replyOnce(304, "");
+
+      expect(await conditionalGet(params)).toEqual([{ id: 1 }]);
+      expect(await conditionalGet(params)).toEqual([{ id: 1 }]);
+
+      expect(axiosMock.history.get.length).toBe(2);
+      expect(axiosMock.history.get[0].headers["If-None-Match"]).toBeUndefined();
+      expect(axiosMock.history.get[1].headers["If-None-Match"]).toBe('"abc"');
+    });
+
+    test("replaces the data when the listing has changed", async () => {
+      axiosMock
+        .onGet("/api/requesttypes/all")
+        .replyOnce(200, [{ id: 1 }], { etag: '"abc"' })
+        .onGet("/api/requesttypes/all")
+        .replyOnce(200, [{ id: 2 }])
+        .onGet("/api/requesttypes/all")
+        .replyOnce(200, [{ id: 3 }]);
+
+      expect(await conditionalGet(params)).toEqual([{ id: 1 }]);
+      expect(await conditionalGet(params)).toEqual([{ id: 2 }]);
+      expect(await conditionalGet(params)).toEqual([{ id: 3 }]);
+
+      // the second response had no ETag, so the third request is unconditional
+      expect(axiosMock.history.get[2].headers["If-None-Match"]).toBeUndefined();
+    });
+
+    test("keeps a separate ETag for each set of parameters", async () => {
+      const filtered = (status) => ({
+        method: "GET",
+        url: "/api/recommendationrequest/professor/filtered",
+        params: { status },
+      });
+      axiosMock
+        .onGet("/api/recommendationrequest/professor/filtered")
+        .reply((config) => [
+          200,
+          [config.params.status],
+          { etag: `"${config.params.status}"` },
+        ]);
+
+      await conditionalGet(filtered("PENDING"));
+      await conditionalGet(filtered("COMPLETED"));
+      await conditionalGet(filtered("PENDING"));
+
+      expect(axiosMock.history.get[1].headers["If-None-Match"]).toBeUndefined();
+      expect(axiosMock.history.get[2].headers["If-None-Match"]).toBe(
+        '"PENDING"',
+      );
+    });
+
+    test("follows the next cursor and joins the pages of a listing", async () => {
+      const listing = {
+        method: "GET",
+        url: "/api/recommendationrequest/professor/filtered",
+        params: { status: "PENDING" },
+      };
+      axiosMock
+        .onGet("/api/recommendationrequest/professor/filtered")
+        .replyOnce(200, [{ id: 1 }, { id: 2 }], {
+          etag: '"abc"',
+          "x-next-cursor": "cursor-2",
+        })
+        .onGet("/api/recommendationrequest/professor/filtered")
+        .replyOnce(200, [{ id: 3 }], { "x-next-cursor": "cursor-3" })
+        .onGet("/api/recommendationrequest/professor/filtered")
+        .replyOnce(200, [{ id: 4 }])
+        .onGet("/api/recommendationrequest/professor/filtered")
+        .replyOnce(304, "");
+
+      expect(await conditionalGet(listing)).toEqual([
+        { id: 1 },
+        { id: 2 },
+        { id: 3 },
+        { id: 4 },
+      ]);
+
+      expect(axiosMock.history.get.length).toBe(3);
+      expect(axiosMock.history.get[0].params).toEqual({ status: "PENDING" });
+      expect(axiosMock.history.get[1].params).toEqual({
+        status: "PENDING",
+        after: "cursor-2",
+      });
+      expect(axiosMock.history.get[2].params).toEqual({
+        status: "PENDING",
+        after: "cursor-3",
+      });
+
+      // the ETag covers every page, so an unchanged listing is one request
+      expect(await conditionalGet(listing)).toEqual([
+        { id: 1 },
+        { id: 2 },
+        { id: 3 },
+        { id: 4 },
+      ]);
+      expect(axiosMock.history.get.length).toBe(4);
+      expect(axiosMock.history.get[3].headers["If-None-Match"]).toBe('"abc"');
+      expect(axiosMock.history.get[3].params).toEqual({ status: "PENDING" });
+    });
+
+    test("a 304 without a cached copy is an error", async () => {
+      axiosMock.onGet("/api/requesttypes/all").reply(304, "");
+
+      await expect(conditionalGet(params)).rejects.toThrow(
+        "Request failed with status code 304",
+      );
+    });
+  });
+
   describe("utils/useBackend useBackendMutation tests", () => {
     test("useBackendMutation handles success correctly", async () => {
       // See: https://react-query.tanstack.com/guides/testing#turn-off-retries
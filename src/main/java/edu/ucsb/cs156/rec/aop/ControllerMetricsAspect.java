@@ -0,0 +1,156 @@
+package edu.ucsb.cs156.rec.aop;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * This class is an Aspect that times all invocations of controller methods that are annotated with
+ * {@code @RequestMapping}, {@code @GetMapping}, {@code @PostMapping}, {@code @PutMapping},
+ * {@code @DeleteMapping}, or {@code @PatchMapping}, and records the results in Micrometer (see
+ * {@code /actuator/prometheus}):
+ *
+ * <ul>
+ *   <li>{@value #TIMER}: a latency histogram for each handler
+ *   <li>{@value #ERRORS}: the number of calls that threw, by exception class
+ *   <li>{@value #ACTIVE}: the number of calls in progress
+ * </ul>
+ *
+ * <p>The meters for each handler method are created on its first call and then reused, so a call
+ * costs a map lookup, two clock reads and a few counter updates. A fraction ({@code
+ * app.controllerLog.sampleRate}) of the calls are also logged at INFO.
+ *
+ * <p>For more information on Aspect Oriented Programming (AOP) and AspectJ, including what a {@code
+ * JoinPoint} is, refer to <a
+ * href="https://www.baeldung.com/aspectj">https://www.baeldung.com/aspectj</a>
+ */
+@Slf4j
+@Aspect
+@Component
+public class ControllerMetricsAspect {
+  static final String TIMER = "app.controller.requests";
+  static final String ERRORS = "app.controller.errors";
+  static final String ACTIVE = "app.controller.active";
+
+  // language=PointcutExpression
+  private static final String pointcut =
+      """
+      @annotation(org.springframework.web.bind.annotation.RequestMapping) ||
+      @annotation(org.springframework.web.bind.annotation.GetMapping) ||
+      @annotation(org.springframework.web.bind.annotation.PostMapping) ||
+      @annotation(org.springframework.web.bind.annotation.PutMapping) ||
+      @annotation(org.springframework.web.bind.annotation.DeleteMapping) ||
+      @annotation(org.springframework.web.bind.annotation.PatchMapping)
+      """;
+
+  Set<String> stoplist =
+      new HashSet<>(Set.of("edu.ucsb.cs156.rec.controllers.FrontendProxyController"));
+
+  @Autowired MeterRegistry meterRegistry;
+
+  @Value("${app.controllerLog.sampleRate:0}")
+  double logSampleRate;
+
+  /** The meters of one handler method. */
+  private record HandlerMeters(Tags tags, Timer timer, AtomicInteger active) {}
+
+  private final Map<Method, HandlerMeters> handlers = new ConcurrentHashMap<>();
+
+  /**
+   * This method is called around any controller method that is annotated with
+   * {@code @RequestMapping}, {@code @GetMapping}, {@code @PostMapping}, {@code @PutMapping},
+   * {@code @DeleteMapping}, or {@code @PatchMapping}.
+   *
+   * @param joinPoint the join point (injected by Spring framework)
+   * @return whatever the controller method returns
+   * @throws Throwable whatever the controller method throws
+   */
+  @Around(pointcut)
+  public Object timeControllers(ProceedingJoinPoint joinPoint) throws Throwable {
+    MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+    if (stoplist.contains(signature.getDeclaringTypeName())) {
+      return joinPoint.proceed();
+    }
+    if (logSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < logSampleRate) {
+      logCall(signature);
+    }
+    HandlerMeters handler = handlers.computeIfAbsent(signature.getMethod(), this::register);
+    handler.active().incrementAndGet();
+    long start = System.nanoTime();
+    try {
+      return joinPoint.proceed();
+    } catch (Throwable t) {
+      meterRegistry
+          .counter(ERRORS, handler.tags().and("exception", t.getClass().getSimpleName()))
+          .increment();
+      throw t;
+    } finally {
+      handler.timer().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      handler.active().decrementAndGet();
+    }
+  }
+
+  private HandlerMeters register(Method method) {
+    Tags tags =
+        Tags.of(
+            "controller", method.getDeclaringClass().getSimpleName(), "handler", method.getName());
+    Timer timer =
+        Timer.builder(TIMER)
+            .description("Time taken by a controller method")
+            .tags(tags)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    AtomicInteger active = new AtomicInteger();
+    Gauge.builder(ACTIVE, active, AtomicInteger::get)
+        .description("Controller method calls in progress")
+        .tags(tags)
+        .register(meterRegistry);
+    return new HandlerMeters(tags, timer, active);
+  }
+
+  private static void logCall(MethodSignature signature) {
+    getCurrentHttpRequest()
+        .ifPresent(
+            request ->
+                log.info(
+                    "===== {} {} handled by {} in {}",
+                    request.getMethod(),
+                    request.getRequestURI(),
+                    signature.getName(),
+                    signature.getDeclaringTypeName()));
+  }
+
+  /**
+   * The function `getCurrentHttpRequest` returns an `Optional` containing the current
+   * `HttpServletRequest` if available.
+   *
+   * @return An Optional object containing the current HttpServletRequest, if available.
+   */
+  private static Optional<HttpServletRequest> getCurrentHttpRequest() {
+    return Optional.ofNullable(RequestContextHolder.getRequestAttributes())
+        .filter(ServletRequestAttributes.class::isInstance)
+        .map(ServletRequestAttributes.class::cast)
+        .map(ServletRequestAttributes::getRequest);
+  }
+}
@@ -0,0 +1,142 @@
+package edu.ucsb.cs156.rec.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * A DataSource that lets at most {@code permits} connections be open at once. A caller that asks
+ * for one more waits its turn (first come, first served) for up to {@code timeout}, and then gets
+ * an SQLTransientConnectionException, as it would from the pool itself.
+ *
+ * <p>With one virtual thread per request, thousands of requests may want a connection at the same
+ * moment. Sized to the connection pool, this keeps them queued here, in order, instead of piling
+ * onto the pool.
+ */
+public class ConnectionLimitingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+  private final Semaphore permits;
+
+  private final long timeoutNanos;
+
+  /**
+   * Creates a DataSource that limits the connections open at once.
+   *
+   * @param target the DataSource (normally a connection pool) to take connections from
+   * @param permits the largest number of connections open at once
+   * @param timeout how long to wait for a connection
+   */
+  public ConnectionLimitingDataSource(DataSource target, int permits, Duration timeout) {
+    super(target);
+    this.permits = new Semaphore(permits, true);
+    this.timeoutNanos = timeout.toNanos();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    acquire();
+    try {
+      return releasingOnClose(super.getConnection());
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    acquire();
+    try {
+      return releasingOnClose(super.getConnection(username, password));
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * This method returns the number of connections that could be opened now without waiting.
+   *
+   * @return the number of free permits
+   */
+  public int availablePermits() {
+    return permits.availablePermits();
+  }
+
+  /** Closes the target DataSource (shutting down the pool) if it can be closed. */
+  @Override
+  public void close() throws Exception {
+    if (getTargetDataSource() instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  private void acquire() throws SQLException {
+    try {
+      if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+        throw new SQLTransientConnectionException(
+            "Connection is not available, request timed out after %dms"
+                .formatted(TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLTransientConnectionException("Interrupted waiting for a connection", e);
+    }
+  }
+
+  private Connection releasingOnClose(Connection target) {
+    return (Connection)
+        Proxy.newProxyInstance(
+            ConnectionProxy.class.getClassLoader(),
+            new Class<?>[] {ConnectionProxy.class},
+            new ReleasingInvocationHandler(target));
+  }
+
+  /** Gives the permit back the first time the connection is closed. */
+  private class ReleasingInvocationHandler implements InvocationHandler {
+    private final Connection target;
+    private boolean closed;
+
+    ReleasingInvocationHandler(Connection target) {
+      this.target = target;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "getTargetConnection":
+          return target;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "close":
+          if (!closed) {
+            closed = true;
+            try {
+              target.close();
+            } finally {
+              permits.release();
+            }
+          }
+          return null;
+        default:
+          try {
+            return method.invoke(target, args);
+          } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+          }
+      }
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package edu.ucsb.cs156.rec.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.time.Duration;
+import javax.sql.DataSource;
+import liquibase.exception.LiquibaseException;
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Splits database traffic between the primary database ({@code spring.datasource.*}) and a read
+ * replica ({@code app.datasource.replica.*}) when a replica url is configured; see {@link
+ * ReplicaRoutingDataSource}. Without one, Spring Boot's single DataSource is used as before.
+ *
+ * <p>Only transactions marked {@code @Transactional(readOnly = true)} go to the replica.
+ *
+ * <p>Setting {@code app.datasource.replica.migrate=true} also runs the database migrations against
+ * the replica. That is only meant for trying this out with a second local H2 database, which
+ * (unlike a real replica) does not copy anything from the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.replica.url")
+public class ReplicaDataSourceConfig {
+
+  @Value("${app.datasource.replica.url}")
+  private String replicaUrl;
+
+  @Value("${app.datasource.replica.username:${spring.datasource.username:}}")
+  private String replicaUsername;
+
+  @Value("${app.datasource.replica.password:${spring.datasource.password:}}")
+  private String replicaPassword;
+
+  @Value("${app.datasource.replica.stickySeconds:5}")
+  private long stickySeconds;
+
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+    return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+  }
+
+  @Bean
+  public DataSource replicaDataSource(
+      @Value("${app.datasource.replica.migrate:false}") boolean migrate,
+      @Value("${spring.liquibase.change-log}") String changeLog,
+      ResourceLoader resourceLoader)
+      throws LiquibaseException {
+    HikariDataSource replica =
+        DataSourceBuilder.create()
+            .type(HikariDataSource.class)
+            .url(replicaUrl)
+            .username(replicaUsername)
+            .password(replicaPassword)
+            .build();
+    replica.setPoolName("replica");
+    if (migrate) {
+      // not a SpringLiquibase bean, since one of those would stop Spring Boot migrating the primary
+      SpringLiquibase liquibase = new SpringLiquibase();
+      liquibase.setDataSource(replica);
+      liquibase.setChangeLog(changeLog);
+      liquibase.setResourceLoader(resourceLoader);
+      liquibase.afterPropertiesSet();
+    }
+    return replica;
+  }
+
+  /** The DataSource used by JPA, Liquibase and everything else that does not ask for another. */
+  @Bean
+  @Primary
+  public DataSource dataSource(
+      @Qualifier("primaryDataSource") DataSource primary,
+      @Qualifier("replicaDataSource") DataSource replica) {
+    return new LazyConnectionDataSourceProxy(
+        new ReplicaRoutingDataSource(primary, replica, Duration.ofSeconds(stickySeconds)));
+  }
+}
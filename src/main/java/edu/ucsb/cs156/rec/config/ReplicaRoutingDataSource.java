@@ -0,0 +1,79 @@
+package edu.ucsb.cs156.rec.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A DataSource that sends read-only transactions to a replica and everything else to the primary.
+ *
+ * <p>A user who has just written something reads from the primary for {@code stickyWindow}
+ * afterwards, so that they see their own change even if the replica has not caught up yet. Other
+ * users may see the old values until it does.
+ *
+ * <p>The recent writers are remembered in this instance's memory only. That is enough as long as
+ * each user's requests keep going to the same instance, which they already must: the login is kept
+ * in the HTTP session, and sessions are also held in the memory of the instance that created them.
+ * If sessions are ever shared between instances (so that a load balancer may send a user anywhere),
+ * a write made on one instance will not make the user's reads on another go to the primary, and
+ * this must be changed to remember the time of the last write in the session instead.
+ *
+ * <p>The connection is chosen when it is first used, so this must be wrapped in a {@link
+ * org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction is only
+ * marked read-only after the transaction manager has asked for a connection.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+  /** Lookup keys of the two target DataSources. */
+  public enum Target {
+    PRIMARY,
+    REPLICA
+  }
+
+  private final Cache<String, Boolean> recentWriters;
+
+  /**
+   * Creates a DataSource that routes between a primary and a replica.
+   *
+   * @param primary the DataSource that all writes go to
+   * @param replica the DataSource that read-only transactions go to
+   * @param stickyWindow how long a user keeps reading from the primary after a write
+   */
+  public ReplicaRoutingDataSource(DataSource primary, DataSource replica, Duration stickyWindow) {
+    setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+    setDefaultTargetDataSource(primary);
+    afterPropertiesSet();
+    recentWriters = Caffeine.newBuilder().expireAfterWrite(stickyWindow).build();
+  }
+
+  @Override
+  protected Target determineCurrentLookupKey() {
+    String user = currentUserName();
+    if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      // work outside a transaction (such as the database migrations at startup) is not a write
+      if (user != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+        recentWriters.put(user, Boolean.TRUE);
+      }
+      return Target.PRIMARY;
+    }
+    if (user != null && recentWriters.getIfPresent(user) != null) {
+      return Target.PRIMARY;
+    }
+    return Target.REPLICA;
+  }
+
+  private static String currentUserName() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+      return null;
+    }
+    return authentication.getName();
+  }
+}
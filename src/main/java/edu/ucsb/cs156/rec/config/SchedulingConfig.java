@@ -0,0 +1,15 @@
+package edu.ucsb.cs156.rec.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Turns on the {@code @Scheduled} background jobs (such as the request archive mover). Setting
+ * {@code app.scheduling.enabled=false} turns them all off, which the tests do so that no job runs
+ * in the middle of a test.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "app.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {}
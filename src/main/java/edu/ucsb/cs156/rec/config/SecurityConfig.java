@@ -3,7 +3,7 @@ package edu.ucsb.cs156.rec.config;
 import static org.springframework.security.web.util.matcher.AntPathRequestMatcher.antMatcher;
 
 import edu.ucsb.cs156.rec.entities.User;
-import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.UserCache;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -54,7 +54,7 @@ public class SecurityConfig {
   @Value("${app.admin.emails}")
   private final List<String> adminEmails = new ArrayList<>();
 
-  @Autowired UserRepository userRepository;
+  @Autowired UserCache userCache;
 
   /**
    * The `filterChain` method in this Java code configures various security settings for an HTTP
@@ -77,7 +77,16 @@ public class SecurityConfig {
                 csrf.csrfTokenRepository(CookieCsrfTokenRepository.withHttpOnlyFalse())
                     .csrfTokenRequestHandler(new SpaCsrfTokenRequestHandler()))
         .addFilterAfter(new CsrfCookieFilter(), BasicAuthenticationFilter.class)
-        .authorizeHttpRequests(auth -> auth.anyRequest().permitAll())
+        .authorizeHttpRequests(
+            auth ->
+                // the actuator endpoints have no controller to check roles, so they are checked
+                // here; only health (which just says UP or DOWN) is left open, for load balancers
+                auth.requestMatchers(antMatcher("/actuator/health"))
+                    .permitAll()
+                    .requestMatchers(antMatcher("/actuator/**"))
+                    .hasRole("ADMIN")
+                    .anyRequest()
+                    .permitAll())
         .logout(
             logout ->
                 logout
@@ -98,15 +107,15 @@ public class SecurityConfig {
   private GrantedAuthoritiesMapper userAuthoritiesMapper() {
     return (authorities) -> {
       Set<GrantedAuthority> mappedAuthorities = new HashSet<>();
-      log.info("********** authorities={}", authorities);
+      log.debug("authorities={}", authorities);
 
       authorities.forEach(
           authority -> {
-            log.info("********** authority={}", authority);
+            log.debug("authority={}", authority);
             mappedAuthorities.add(authority);
             if (authority instanceof OAuth2UserAuthority oauth2UserAuthority) {
               Map<String, Object> userAttributes = oauth2UserAuthority.getAttributes();
-              log.info("********** userAttributes={}", userAttributes);
+              log.debug("userAttributes={}", userAttributes);
 
               mappedAuthorities.add(new SimpleGrantedAuthority("ROLE_USER"));
 
@@ -124,14 +133,14 @@ public class SecurityConfig {
               }
             }
           });
-      log.info("********** mappedAuthorities={}", mappedAuthorities);
+      log.debug("mappedAuthorities={}", mappedAuthorities);
       return mappedAuthorities;
     };
   }
 
   /**
    * This method checks if the given email belongs to an admin user either from a predefined list or
-   * by querying the user repository.
+   * by looking up the user (through the user cache).
    *
    * @param email email address of the user
    * @return whether the user with the given email is an admin
@@ -140,12 +149,12 @@ public class SecurityConfig {
     if (adminEmails.contains(email)) {
       return true;
     }
-    Optional<User> u = userRepository.findByEmail(email);
+    Optional<User> u = userCache.findByEmail(email);
     return u.isPresent() && u.get().getAdmin();
   }
 
   public boolean getProfessor(String email) {
-    Optional<User> u = userRepository.findByEmail(email);
+    Optional<User> u = userCache.findByEmail(email);
     return u.isPresent() && u.get().getProfessor();
   }
 }
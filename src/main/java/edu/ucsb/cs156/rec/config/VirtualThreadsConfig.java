@@ -0,0 +1,37 @@
+package edu.ucsb.cs156.rec.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.time.Duration;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Settings that only apply when {@code spring.threads.virtual.enabled=true}. In that mode Spring
+ * Boot runs Tomcat requests, {@code @Async} methods, scheduled jobs and streamed responses on
+ * virtual threads rather than on fixed size pools.
+ *
+ * <p>The fixed size Tomcat pool used to be what limited how many requests wanted a database
+ * connection at once. Without it, every connection pool is wrapped in a {@link
+ * ConnectionLimitingDataSource} with one permit per pooled connection.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadsConfig {
+
+  @Bean
+  public static BeanPostProcessor connectionLimiter() {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource pool) {
+          return new ConnectionLimitingDataSource(
+              pool, pool.getMaximumPoolSize(), Duration.ofMillis(pool.getConnectionTimeout()));
+        }
+        return bean;
+      }
+    };
+  }
+}
@@ -1,12 +1,17 @@
 package edu.ucsb.cs156.rec.controllers;
 
 import edu.ucsb.cs156.rec.errors.EntityNotFoundException;
+import edu.ucsb.cs156.rec.errors.PreconditionFailedException;
+import edu.ucsb.cs156.rec.errors.TooManyRequestsException;
 import edu.ucsb.cs156.rec.models.CurrentUser;
 import edu.ucsb.cs156.rec.services.CurrentUserService;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
@@ -61,4 +66,41 @@ public abstract class ApiController {
         "type", e.getClass().getSimpleName(),
         "message", e.getMessage());
   }
+
+  /**
+   * This method handles updates made against an out of date copy of an entity: either the client's
+   * If-Match header named an old version, or another transaction changed the row between our read
+   * and our write.
+   *
+   * @param e the exception
+   * @return a map with the type and message of the exception
+   */
+  @ExceptionHandler({PreconditionFailedException.class, OptimisticLockingFailureException.class})
+  @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+  public Object handlePreconditionFailedException(Throwable e) {
+    return Map.of(
+        "type",
+        PreconditionFailedException.class.getSimpleName(),
+        "message",
+        e instanceof PreconditionFailedException
+            ? e.getMessage()
+            : "The entity has been changed by someone else");
+  }
+
+  /**
+   * This method handles a request refused by a rate limit (see RateLimitInterceptor), telling the
+   * client how long to wait in the Retry-After header.
+   *
+   * @param e the exception
+   * @return a response with the type and message of the exception
+   */
+  @ExceptionHandler({TooManyRequestsException.class})
+  public ResponseEntity<Object> handleTooManyRequestsException(TooManyRequestsException e) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+        .body(
+            Map.of(
+                "type", e.getClass().getSimpleName(),
+                "message", e.getMessage()));
+  }
 }
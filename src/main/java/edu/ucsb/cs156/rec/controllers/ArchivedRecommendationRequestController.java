@@ -0,0 +1,149 @@
+package edu.ucsb.cs156.rec.controllers;
+
+import edu.ucsb.cs156.rec.entities.ArchivedRecommendationRequest;
+import edu.ucsb.cs156.rec.repositories.ArchivedRecommendationRequestRepository;
+import edu.ucsb.cs156.rec.services.RequestArchiveService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * This is a REST controller for the history of finished recommendation requests that have been
+ * moved to the archive (see RequestArchiveService).
+ *
+ * <p>Each listing is newest first, one page at a time. The id to pass as {@code before} for the
+ * next page is in the {@value RecommendationRequestController#NEXT_CURSOR_HEADER} header (absent on
+ * the last page).
+ */
+@Tag(name = "Archived recommendation requests")
+@RequestMapping("/api/archivedrequests")
+@RestController
+public class ArchivedRecommendationRequestController extends ApiController {
+
+  @Autowired ArchivedRecommendationRequestRepository archivedRecommendationRequestRepository;
+
+  @Autowired RequestArchiveService requestArchiveService;
+
+  @Value("${app.pagination.defaultLimit:1000}")
+  private int defaultLimit;
+
+  @Value("${app.pagination.maxLimit:1000}")
+  private int maxLimit;
+
+  /**
+   * This method returns the archived requests made by the current user.
+   *
+   * @param limit maximum number of requests to return
+   * @param before only return requests with an id less than this
+   * @return a page of archived requests
+   */
+  @Transactional(readOnly = true)
+  @Operation(summary = "List the archived Recommendation Requests made by the current user")
+  @PreAuthorize("hasRole('ROLE_USER')")
+  @GetMapping("/requester")
+  public ResponseEntity<List<ArchivedRecommendationRequest>> requesterHistory(
+      @Parameter(name = "limit") @RequestParam(required = false) Integer limit,
+      @Parameter(name = "before") @RequestParam(defaultValue = "" + Long.MAX_VALUE) long before) {
+    long requesterId = getCurrentUser().getUser().getId();
+    return page(
+        limit,
+        pageLimit ->
+            archivedRecommendationRequestRepository.findRequesterHistoryPage(
+                requesterId, before, pageLimit));
+  }
+
+  /**
+   * This method returns the archived requests sent to the current user, who is a professor.
+   *
+   * @param limit maximum number of requests to return
+   * @param before only return requests with an id less than this
+   * @return a page of archived requests
+   */
+  @Transactional(readOnly = true)
+  @Operation(summary = "List the archived Recommendation Requests sent to the current professor")
+  @PreAuthorize("hasRole('ROLE_PROFESSOR')")
+  @GetMapping("/professor")
+  public ResponseEntity<List<ArchivedRecommendationRequest>> professorHistory(
+      @Parameter(name = "limit") @RequestParam(required = false) Integer limit,
+      @Parameter(name = "before") @RequestParam(defaultValue = "" + Long.MAX_VALUE) long before) {
+    long professorId = getCurrentUser().getUser().getId();
+    return page(
+        limit,
+        pageLimit ->
+            archivedRecommendationRequestRepository.findProfessorHistoryPage(
+                professorId, before, pageLimit));
+  }
+
+  /**
+   * This method returns every archived request.
+   *
+   * @param limit maximum number of requests to return
+   * @param before only return requests with an id less than this
+   * @return a page of archived requests
+   */
+  @Transactional(readOnly = true)
+  @Operation(summary = "List all archived Recommendation Requests (admin only)")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/admin")
+  public ResponseEntity<List<ArchivedRecommendationRequest>> allHistory(
+      @Parameter(name = "limit") @RequestParam(required = false) Integer limit,
+      @Parameter(name = "before") @RequestParam(defaultValue = "" + Long.MAX_VALUE) long before) {
+    return page(
+        limit,
+        pageLimit -> archivedRecommendationRequestRepository.findHistoryPage(before, pageLimit));
+  }
+
+  /**
+   * This method runs the archive mover now rather than waiting for its schedule, unless it is
+   * already running on another instance of the application.
+   *
+   * @return a message giving the number of requests moved, or 409 (Conflict) if the mover is
+   *     already running
+   */
+  @Operation(summary = "Archive old finished Recommendation Requests now (admin only)")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/admin/run")
+  public ResponseEntity<Object> archiveNow() {
+    OptionalInt moved = requestArchiveService.archiveUnlessRunning();
+    if (moved.isEmpty()) {
+      return ResponseEntity.status(HttpStatus.CONFLICT)
+          .body(genericMessage("The archive mover is already running"));
+    }
+    return ResponseEntity.ok(
+        genericMessage("Archived %d recommendation requests".formatted(moved.getAsInt())));
+  }
+
+  /** Fetches one page, reading one extra row to find out whether there is a next page. */
+  private ResponseEntity<List<ArchivedRecommendationRequest>> page(
+      Integer limit, Function<Limit, List<ArchivedRecommendationRequest>> finder) {
+    if (limit != null && limit < 1) {
+      throw new IllegalArgumentException("limit must be at least 1");
+    }
+    int pageSize = Math.min(limit == null ? defaultLimit : limit, maxLimit);
+    List<ArchivedRecommendationRequest> rows = finder.apply(Limit.of(pageSize + 1));
+    if (rows.size() <= pageSize) {
+      return ResponseEntity.ok(rows);
+    }
+    List<ArchivedRecommendationRequest> content = rows.subList(0, pageSize);
+    return ResponseEntity.ok()
+        .header(
+            RecommendationRequestController.NEXT_CURSOR_HEADER,
+            Long.toString(content.get(pageSize - 1).getId()))
+        .body(content);
+  }
+}
@@ -1,31 +1,67 @@
 package edu.ucsb.cs156.rec.controllers;
 
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
 import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
 import edu.ucsb.cs156.rec.entities.RequestType;
 import edu.ucsb.cs156.rec.entities.User;
 import edu.ucsb.cs156.rec.errors.EntityNotFoundException;
+import edu.ucsb.cs156.rec.errors.PreconditionFailedException;
+import edu.ucsb.cs156.rec.models.BulkStatusResult;
+import edu.ucsb.cs156.rec.models.BulkStatusUpdate;
 import edu.ucsb.cs156.rec.models.CurrentUser;
+import edu.ucsb.cs156.rec.models.KeysetCursor;
+import edu.ucsb.cs156.rec.models.ListingFingerprint;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.models.RequestSnapshot;
 import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
-import edu.ucsb.cs156.rec.repositories.RequestTypeRepository;
-import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository.DeleteRow;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository.StatusRow;
+import edu.ucsb.cs156.rec.services.ETagService;
+import edu.ucsb.cs156.rec.services.IdempotencyService;
+import edu.ucsb.cs156.rec.services.RecommendationRequestExportService;
+import edu.ucsb.cs156.rec.services.RequestEventPublisher;
+import edu.ucsb.cs156.rec.services.RequestTypeRegistry;
+import edu.ucsb.cs156.rec.services.UserCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Tag(name = "RecommendationRequest")
 @RequestMapping("/api/recommendationrequest")
@@ -35,9 +71,32 @@ public class RecommendationRequestController extends ApiController {
 
   @Autowired RecommendationRequestRepository recommendationRequestRepository;
 
-  @Autowired UserRepository userRepository;
+  @Autowired UserCache userCache;
 
-  @Autowired RequestTypeRepository requestTypeRepository;
+  @Autowired RequestTypeRegistry requestTypeRegistry;
+
+  @Autowired RequestEventPublisher requestEventPublisher;
+
+  @Autowired RecommendationRequestExportService recommendationRequestExportService;
+
+  @Autowired ETagService etagService;
+
+  @Autowired IdempotencyService idempotencyService;
+
+  /** Name under which Idempotency-Keys sent to postRecommendationRequests are stored. */
+  static final String CREATE_ENDPOINT = "POST /api/recommendationrequest/post";
+
+  /** Response header holding the cursor for the next page; absent on the last page. */
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+  @Value("${app.pagination.defaultLimit:1000}")
+  private int defaultLimit;
+
+  @Value("${app.pagination.maxLimit:1000}")
+  private int maxLimit;
+
+  @Value("${app.bulkStatus.maxIds:1000}")
+  private int bulkStatusMaxIds;
 
   /**
    * Any admin can delete a RecommendationRequest
@@ -45,18 +104,12 @@ public class RecommendationRequestController extends ApiController {
    * @param id the id of the RecommendationRequest to delete
    * @return a message indicating that the RecommendationRequest was deleted
    */
+  @Transactional
   @Operation(summary = "An admin can delete a RecommendationRequest")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @DeleteMapping("/admin")
   public Object deleteRecommendationRequestAsAdmin(@Parameter(name = "id") @RequestParam Long id) {
-    RecommendationRequest recommendationRequest =
-        recommendationRequestRepository
-            .findById(id)
-            .orElseThrow(() -> new EntityNotFoundException(RecommendationRequest.class, id));
-
-    recommendationRequestRepository.delete(recommendationRequest);
-
-    return genericMessage("RecommendationRequest with id %s deleted".formatted(id));
+    return deleteRecommendationRequest(id, null, null);
   }
 
   /**
@@ -65,19 +118,13 @@ public class RecommendationRequestController extends ApiController {
    * @param id the id of the RecommendationRequest to delete
    * @return a message indicating that the RecommendationRequest was deleted
    */
+  @Transactional
   @Operation(summary = "User can delete their RecommendationRequest")
   @PreAuthorize("hasRole('ROLE_USER')")
   @DeleteMapping("")
   public Object deleteRecommendationRequestAsUser(@Parameter(name = "id") @RequestParam Long id) {
     User currentUser = getCurrentUser().getUser();
-    RecommendationRequest recommendationRequest =
-        recommendationRequestRepository
-            .findByIdAndRequester(id, currentUser)
-            .orElseThrow(() -> new EntityNotFoundException(RecommendationRequest.class, id));
-
-    recommendationRequestRepository.delete(recommendationRequest);
-
-    return genericMessage("RecommendationRequest with id %s deleted".formatted(id));
+    return deleteRecommendationRequest(id, currentUser.getId(), null);
   }
 
   /**
@@ -86,18 +133,35 @@ public class RecommendationRequestController extends ApiController {
    * @param id the id of the RecommendationRequest to delete
    * @return a message indicating that the RecommendationRequest was deleted
    */
+  @Transactional
   @Operation(summary = "Professor can delete their incoming RecommendationRequest")
   @PreAuthorize("hasRole('ROLE_PROFESSOR')")
   @DeleteMapping("/professor")
   public Object deleteRecommendationRequestAsProfessor(
       @Parameter(name = "id") @RequestParam Long id) {
     User currentUser = getCurrentUser().getUser();
-    RecommendationRequest recommendationRequest =
+    return deleteRecommendationRequest(id, null, currentUser.getId());
+  }
+
+  /**
+   * Deletes a request without loading the entity: a narrow read of the columns the delete event
+   * reports, then a delete that only goes ahead if the request has not changed in between.
+   */
+  private Object deleteRecommendationRequest(long id, Long requesterId, Long professorId) {
+    DeleteRow row =
         recommendationRequestRepository
-            .findByIdAndProfessor(id, currentUser)
+            .findDeleteRow(id, requesterId, professorId)
             .orElseThrow(() -> new EntityNotFoundException(RecommendationRequest.class, id));
 
-    recommendationRequestRepository.delete(recommendationRequest);
+    if (recommendationRequestRepository.deleteByIdAndVersion(id, row.getVersion()) == 0) {
+      throw new PreconditionFailedException(RecommendationRequest.class, id);
+    }
+    requestEventPublisher.publish(
+        RequestEvent.builder()
+            .requestId(id)
+            .type(OutboxEvent.Type.DELETED)
+            .before(snapshot(row.getProfessorId(), row, row.getStatus(), row.getCompletionDate()))
+            .build());
 
     return genericMessage("RecommendationRequest with id %s deleted".formatted(id));
   }
@@ -106,14 +170,18 @@ public class RecommendationRequestController extends ApiController {
    * The user who posted a RecommendationRequest can update their RecommendationRequest
    *
    * @param id the id of the Recommendation Request to update
+   * @param ifMatch the ETag of the copy the user edited; if given and out of date, the update fails
+   *     with 412
    * @param incoming the updated Recommendation Request
-   * @return the updated Recommendation Request object
+   * @return the updated Recommendation Request object, with its new ETag
    */
+  @Transactional
   @Operation(summary = "User can update their RecommendationRequest")
   @PreAuthorize("hasRole('ROLE_USER')")
   @PutMapping("")
-  public RecommendationRequest updateRecommendationRequestAsUser(
+  public ResponseEntity<RecommendationRequest> updateRecommendationRequestAsUser(
       @Parameter(name = "id") @RequestParam Long id,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
       @RequestBody @Valid RecommendationRequest incoming) {
 
     User currentUser = getCurrentUser().getUser();
@@ -121,73 +189,223 @@ public class RecommendationRequestController extends ApiController {
         recommendationRequestRepository
             .findByIdAndRequester(id, currentUser)
             .orElseThrow(() -> new EntityNotFoundException(RecommendationRequest.class, id));
+    checkIfMatch(ifMatch, recommendationRequest);
 
     recommendationRequest.setDetails(incoming.getDetails());
 
-    recommendationRequestRepository.save(recommendationRequest);
-
-    return recommendationRequest;
+    // flush now so that the version, and with it the ETag, is the one the update wrote
+    recommendationRequestRepository.saveAndFlush(recommendationRequest);
+    return withETag(recommendationRequest);
   }
 
   /**
-   * Prof can update a Recommendation Request's status
+   * Prof can update the status of a Recommendation Request sent to them. Only the changes allowed
+   * by {@link RequestStatus#getNextStatuses()} are accepted.
    *
    * @param id the id of the Recommendation Request to update
+   * @param ifMatch the ETag of the copy the professor looked at; if given and out of date, the
+   *     update fails with 412
    * @param incoming the updated Recommendation Request
-   * @return the updated Recommendation Request object
+   * @return the updated Recommendation Request object, with its new ETag
    */
+  @Transactional
   @Operation(summary = "A Professor can update a recommendation request's status")
   @PreAuthorize("hasRole('ROLE_PROFESSOR')")
   @PutMapping("/professor")
-  public RecommendationRequest updateRecommendationRequestAsAdmin(
+  public ResponseEntity<RecommendationRequest> updateRecommendationRequestAsAdmin(
       @Parameter(name = "id") @RequestParam Long id,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
       @RequestBody @Valid RecommendationRequest incoming) {
 
+    User currentUser = getCurrentUser().getUser();
     RecommendationRequest recommendationRequest =
         recommendationRequestRepository
-            .findById(id)
+            .findByIdAndProfessor(id, currentUser)
             .orElseThrow(() -> new EntityNotFoundException(RecommendationRequest.class, id));
+    checkIfMatch(ifMatch, recommendationRequest);
+
+    RequestStatus current = recommendationRequest.getStatus();
+    RequestStatus next = incoming.getStatus();
+    if (next == null) {
+      throw new IllegalArgumentException("status is required");
+    }
+    if (!current.canMoveTo(next)) {
+      throw new IllegalArgumentException(
+          "Cannot change status from %s to %s".formatted(current.getLabel(), next.getLabel()));
+    }
+
+    if (next != current) {
+      RequestSnapshot before = RequestSnapshot.of(recommendationRequest);
+      if (next == RequestStatus.COMPLETED) {
+        recommendationRequest.setCompletionDate(
+            LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES));
+      }
+      recommendationRequest.setStatus(next);
+      requestEventPublisher.publish(
+          RequestEvent.builder()
+              .requestId(id)
+              .type(OutboxEvent.Type.STATUS_CHANGED)
+              .before(before)
+              .after(RequestSnapshot.of(recommendationRequest))
+              .build());
+    }
+
+    // flush now so that the version, and with it the ETag, is the one the update wrote
+    recommendationRequestRepository.saveAndFlush(recommendationRequest);
+    return withETag(recommendationRequest);
+  }
+
+  /**
+   * Prof can move many of their Recommendation Requests to the same status at once. The requests
+   * are read and locked with one query and changed with one update, instead of one round trip per
+   * request. Each request is checked against {@link RequestStatus#getNextStatuses()}; requests that
+   * cannot make the change are reported and left alone, and the rest are still updated.
+   *
+   * @param update the ids of the requests and the new status
+   * @return one result per distinct id, in the order the ids were given
+   */
+  @Transactional
+  @Operation(summary = "A Professor can update the status of many of their recommendation requests")
+  @PreAuthorize("hasRole('ROLE_PROFESSOR')")
+  @PutMapping("/professor/bulk")
+  public List<BulkStatusResult> updateRecommendationRequestStatuses(
+      @RequestBody BulkStatusUpdate update) {
+    RequestStatus next = update.getStatus();
+    if (next == null) {
+      throw new IllegalArgumentException("status is required");
+    }
+    if (update.getIds() == null || update.getIds().isEmpty()) {
+      throw new IllegalArgumentException("ids are required");
+    }
+    Set<Long> ids = new LinkedHashSet<>(update.getIds());
+    if (ids.contains(null)) {
+      throw new IllegalArgumentException("ids must not be null");
+    }
+    if (ids.size() > bulkStatusMaxIds) {
+      throw new IllegalArgumentException(
+          "At most %d requests can be updated at once".formatted(bulkStatusMaxIds));
+    }
 
-    recommendationRequest.setStatus(incoming.getStatus());
+    User professor = getCurrentUser().getUser();
+    Map<Long, StatusRow> rows = new HashMap<>();
+    for (StatusRow row : recommendationRequestRepository.lockStatusRows(professor.getId(), ids)) {
+      rows.put(row.getId(), row);
+    }
 
-    if ("COMPLETED".equalsIgnoreCase(incoming.getStatus())) {
-      recommendationRequest.setCompletionDate(LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES));
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime completionDate =
+        next == RequestStatus.COMPLETED ? now.truncatedTo(ChronoUnit.MINUTES) : null;
+    List<BulkStatusResult> results = new ArrayList<>();
+    List<Long> changedIds = new ArrayList<>();
+    List<RequestEvent> events = new ArrayList<>();
+    for (Long id : ids) {
+      StatusRow row = rows.get(id);
+      if (row == null) {
+        results.add(
+            new BulkStatusResult(
+                id,
+                BulkStatusResult.Outcome.NOT_FOUND,
+                new EntityNotFoundException(RecommendationRequest.class, id).getMessage()));
+      } else if (row.getStatus() == next) {
+        results.add(new BulkStatusResult(id, BulkStatusResult.Outcome.UNCHANGED, null));
+      } else if (!row.getStatus().canMoveTo(next)) {
+        results.add(
+            new BulkStatusResult(
+                id,
+                BulkStatusResult.Outcome.INVALID_TRANSITION,
+                "Cannot change status from %s to %s"
+                    .formatted(row.getStatus().getLabel(), next.getLabel())));
+      } else {
+        results.add(new BulkStatusResult(id, BulkStatusResult.Outcome.UPDATED, null));
+        changedIds.add(id);
+        events.add(
+            RequestEvent.builder()
+                .requestId(id)
+                .type(OutboxEvent.Type.STATUS_CHANGED)
+                .before(snapshot(professor.getId(), row, row.getStatus(), row.getCompletionDate()))
+                .after(
+                    snapshot(
+                        professor.getId(),
+                        row,
+                        next,
+                        completionDate == null ? row.getCompletionDate() : completionDate))
+                .build());
+      }
     }
 
-    recommendationRequestRepository.save(recommendationRequest);
+    if (!changedIds.isEmpty()) {
+      recommendationRequestRepository.updateStatus(
+          professor.getId(), changedIds, next, completionDate, now);
+      requestEventPublisher.publishAll(events);
+    }
+    return results;
+  }
 
-    return recommendationRequest;
+  /** Builds the snapshot of a request that an event reports from a narrow read of its columns. */
+  private static RequestSnapshot snapshot(
+      Long professorId, StatusRow row, RequestStatus status, LocalDateTime completionDate) {
+    return RequestSnapshot.builder()
+        .requesterId(row.getRequesterId())
+        .professorId(professorId)
+        .recommendationType(row.getRecommendationType())
+        .status(status)
+        .submissionDate(row.getSubmissionDate())
+        .completionDate(completionDate)
+        .build();
   }
 
   /**
-   * This method returns a list of all Recommendation Requests requested by current student.
+   * This method returns a list of all Recommendation Requests requested by current student, newest
+   * first, one page at a time.
    *
-   * @return a list of all Recommendation Requests requested by the current user
+   * @param limit maximum number of requests to return
+   * @param after cursor from the {@value #NEXT_CURSOR_HEADER} header of the previous page
+   * @param webRequest the request, checked for an If-None-Match header
+   * @return a list of all Recommendation Requests requested by the current user, or nothing (304)
+   *     if the client's copy is current
    */
+  @Transactional(readOnly = true)
   @Operation(summary = "List all Recommendation Requests requested by current user")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/requester/all")
-  public Iterable<RecommendationRequest> allRequesterRecommendationRequests() {
+  public ResponseEntity<List<RecommendationRequest>> allRequesterRecommendationRequests(
+      @Parameter(name = "limit") @RequestParam(required = false) Integer limit,
+      @Parameter(name = "after") @RequestParam(required = false) String after,
+      WebRequest webRequest) {
     User currentUser = getCurrentUser().getUser();
-    Iterable<RecommendationRequest> recommendationRequests =
-        recommendationRequestRepository.findAllByRequesterId(currentUser.getId());
-    return recommendationRequests;
+    ListingFingerprint fingerprint =
+        recommendationRequestRepository.submittedFingerprint(currentUser.getId());
+    if (notModified(webRequest, fingerprint, "requester", currentUser.getId(), limit, after)) {
+      return null;
+    }
+    return submittedPage(currentUser.getId(), limit, after);
   }
 
   /**
    * This method returns a list of all Recommendation Requests intended for current user who is a
-   * professor.
+   * professor, earliest due date first, one page at a time.
    *
-   * @return a list of all Recommendation Requests intended for the current user who is a professor
+   * @param limit maximum number of requests to return
+   * @param after cursor from the {@value #NEXT_CURSOR_HEADER} header of the previous page
+   * @param webRequest the request, checked for an If-None-Match header
+   * @return a list of all Recommendation Requests intended for the current user who is a professor,
+   *     or nothing (304) if the client's copy is current
    */
+  @Transactional(readOnly = true)
   @Operation(summary = "List all Recommendation Requests for professor")
   @PreAuthorize("hasRole('ROLE_PROFESSOR')")
   @GetMapping("/professor/all")
-  public Iterable<RecommendationRequest> allProfessorRecommendationRequests() {
+  public ResponseEntity<List<RecommendationRequest>> allProfessorRecommendationRequests(
+      @Parameter(name = "limit") @RequestParam(required = false) Integer limit,
+      @Parameter(name = "after") @RequestParam(required = false) String after,
+      WebRequest webRequest) {
     User currentUser = getCurrentUser().getUser();
-    Iterable<RecommendationRequest> recommendationRequests =
-        recommendationRequestRepository.findAllByProfessorId(currentUser.getId());
-    return recommendationRequests;
+    ListingFingerprint fingerprint =
+        recommendationRequestRepository.inboxFingerprint(currentUser.getId());
+    if (notModified(webRequest, fingerprint, "inbox", currentUser.getId(), null, limit, after)) {
+      return null;
+    }
+    return inboxPage(currentUser.getId(), null, limit, after);
   }
 
   /**
@@ -196,14 +414,16 @@ public class RecommendationRequestController extends ApiController {
    *
    * @param id id of the Recommendation Requests to get
    * @return a single recommendation request where the current user is either the requester or the
-   *     professor
+   *     professor, with its version as the ETag
    */
+  @Transactional(readOnly = true)
   @Operation(
       summary =
           "Get a single recommendation request where the current user is either the requester or the professor")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
-  public RecommendationRequest getById(@Parameter(name = "id") @RequestParam Long id) {
+  public ResponseEntity<RecommendationRequest> getById(
+      @Parameter(name = "id") @RequestParam Long id) {
     Long currentUserId = getCurrentUser().getUser().getId();
     RecommendationRequest recommendationRequest =
         recommendationRequestRepository
@@ -213,17 +433,20 @@ public class RecommendationRequestController extends ApiController {
         && recommendationRequest.getProfessor().getId() != currentUserId) {
       throw new EntityNotFoundException(RecommendationRequest.class, id);
     }
-    return recommendationRequest;
+    return withETag(recommendationRequest);
   }
 
   /**
    * This method creates a new Recommendation Request. Accessible only to users with the role
-   * "ROLE_USER" so professors and students can both create.
+   * "ROLE_USER" so professors and students can both create. A client that may retry the request
+   * should send an Idempotency-Key header, so that a retry returns the request made the first time
+   * instead of making another (see IdempotencyService).
    *
    * @param professorId id from a dropdown of professors from the form in create page
    * @param recommendationType recommendation types of request
    * @param details details of request
    * @param dueDate submission date of request
+   * @param idempotencyKey a value chosen by the client and repeated on retries, or null
    * @return the save recommendationrequests (with it's id field set by the database)
    */
   @Operation(summary = "Create a new recommendation request")
@@ -233,56 +456,269 @@ public class RecommendationRequestController extends ApiController {
       @Parameter(name = "professorId") @RequestParam Long professorId,
       @Parameter(name = "recommendationType") @RequestParam String recommendationType,
       @Parameter(name = "details") @RequestParam String details,
-      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dueDate) {
-    // get current date right now and set status to pending
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime dueDate,
+      @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
     CurrentUser currentUser = getCurrentUser();
+    return idempotencyService.execute(
+        currentUser.getUser().getId(),
+        CREATE_ENDPOINT,
+        idempotencyKey,
+        List.of(professorId, recommendationType, details, dueDate),
+        RecommendationRequest.class,
+        () ->
+            createRecommendationRequest(
+                currentUser, professorId, recommendationType, details, dueDate));
+  }
+
+  private RecommendationRequest createRecommendationRequest(
+      CurrentUser currentUser,
+      Long professorId,
+      String recommendationType,
+      String details,
+      LocalDateTime dueDate) {
+    // get current date right now and set status to pending
     RecommendationRequest recommendationRequest = new RecommendationRequest();
     if (!recommendationType.equals("Other")) {
-      requestTypeRepository
+      requestTypeRegistry
           .findByRequestType(recommendationType)
           .orElseThrow(() -> new EntityNotFoundException(RequestType.class, recommendationType));
     }
     recommendationRequest.setRecommendationType(recommendationType);
     recommendationRequest.setDetails(details);
     User professor =
-        userRepository
+        userCache
             .findById(professorId)
             .orElseThrow(() -> new EntityNotFoundException(User.class, professorId));
     recommendationRequest.setProfessor(professor);
     recommendationRequest.setRequester(currentUser.getUser());
-    recommendationRequest.setStatus("PENDING");
+    recommendationRequest.setStatus(RequestStatus.PENDING);
     recommendationRequest.setDueDate(dueDate);
 
     RecommendationRequest savedRecommendationRequest =
         recommendationRequestRepository.save(recommendationRequest);
+    requestEventPublisher.publish(
+        RequestEvent.builder()
+            .requestId(savedRecommendationRequest.getId())
+            .type(OutboxEvent.Type.CREATED)
+            .after(RequestSnapshot.of(savedRecommendationRequest))
+            .build());
     return savedRecommendationRequest;
   }
 
   /**
-   * This method returns a list of recommendation requests with specified status for a professor.
+   * This method returns a list of recommendation requests with specified status for a professor,
+   * earliest due date first, one page at a time.
    *
-   * @return a list of recommendation requests with specified status for a professor.
+   * @param status status of the requests to return, for example PENDING or IN PROGRESS (case is
+   *     ignored)
+   * @param limit maximum number of requests to return
+   * @param after cursor from the {@value #NEXT_CURSOR_HEADER} header of the previous page
+   * @param webRequest the request, checked for an If-None-Match header
+   * @return a list of recommendation requests with specified status for a professor, or nothing
+   *     (304) if the client's copy is current
    */
+  @Transactional(readOnly = true)
   @Operation(summary = "Get all recommendation requests with specified status for a professor")
   @GetMapping("/professor/filtered")
   @PreAuthorize("hasRole('ROLE_PROFESSOR')")
-  public Iterable<RecommendationRequest> getRecommendationRequestByStatusForProfessor(
-      @RequestParam String status) {
+  public ResponseEntity<List<RecommendationRequest>> getRecommendationRequestByStatusForProfessor(
+      @RequestParam String status,
+      @Parameter(name = "limit") @RequestParam(required = false) Integer limit,
+      @Parameter(name = "after") @RequestParam(required = false) String after,
+      WebRequest webRequest) {
     User currentUser = getCurrentUser().getUser();
-
-    return recommendationRequestRepository.findAllByProfessorIdAndStatus(
-        currentUser.getId(), status);
+    RequestStatus requestStatus = RequestStatus.fromLabel(status);
+    ListingFingerprint fingerprint =
+        recommendationRequestRepository.inboxFingerprintWithStatus(
+            currentUser.getId(), requestStatus);
+    if (notModified(
+        webRequest, fingerprint, "inbox", currentUser.getId(), requestStatus, limit, after)) {
+      return null;
+    }
+    return inboxPage(currentUser.getId(), requestStatus, limit, after);
   }
 
   /**
-   * This method returns a list of all recommendation requests viewable by an admin user.
+   * This method returns a list of all recommendation requests viewable by an admin user, newest
+   * first, one page at a time.
    *
+   * @param limit maximum number of requests to return
+   * @param after cursor from the {@value #NEXT_CURSOR_HEADER} header of the previous page
    * @return a list of all recommendation requests
    */
+  @Transactional(readOnly = true)
   @Operation(summary = "Get all recommendation requests viewable by an admin user")
   @GetMapping("/admin")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
-  public Iterable<RecommendationRequest> getAllRecommendationRequests() {
-    return recommendationRequestRepository.findAll();
+  public ResponseEntity<List<RecommendationRequest>> getAllRecommendationRequests(
+      @Parameter(name = "limit") @RequestParam(required = false) Integer limit,
+      @Parameter(name = "after") @RequestParam(required = false) String after) {
+    return submittedPage(null, limit, after);
+  }
+
+  /**
+   * This method exports every recommendation request for an admin user, as CSV (the default) or as
+   * newline delimited JSON. The rows are streamed to the response as they are read from the
+   * database, so the export works however many requests there are.
+   *
+   * @param format either csv or ndjson (case is ignored)
+   * @return the export, sent as a file download
+   */
+  @Operation(summary = "Export all recommendation requests as CSV or NDJSON (admin only)")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/admin/export")
+  public ResponseEntity<StreamingResponseBody> exportRecommendationRequests(
+      @Parameter(name = "format") @RequestParam(defaultValue = "csv") String format) {
+    MediaType contentType;
+    StreamingResponseBody body;
+    switch (format.toLowerCase(Locale.ROOT)) {
+      case "csv" -> {
+        contentType = new MediaType("text", "csv", StandardCharsets.UTF_8);
+        body = recommendationRequestExportService::writeCsv;
+      }
+      case "ndjson" -> {
+        contentType = MediaType.APPLICATION_NDJSON;
+        body = recommendationRequestExportService::writeNdjson;
+      }
+      default -> throw new IllegalArgumentException("Unknown export format: %s".formatted(format));
+    }
+    String filename = "recommendation-requests." + format.toLowerCase(Locale.ROOT);
+    return ResponseEntity.ok()
+        .contentType(contentType)
+        .header(
+            HttpHeaders.CONTENT_DISPOSITION,
+            ContentDisposition.attachment().filename(filename).build().toString())
+        .body(body);
+  }
+
+  /** Returns a single request with its version as a strong ETag. */
+  private static ResponseEntity<RecommendationRequest> withETag(RecommendationRequest request) {
+    return ResponseEntity.ok().eTag(Long.toString(request.getVersion())).body(request);
+  }
+
+  /**
+   * Rejects an update if the client sent an If-Match header that does not name the current version
+   * of the request. Without the header the update goes ahead; the version column still stops two
+   * transactions that read the same version from both writing.
+   */
+  private static void checkIfMatch(String ifMatch, RecommendationRequest request) {
+    if (ifMatch == null) {
+      return;
+    }
+    String current = "\"%d\"".formatted(request.getVersion());
+    for (String etag : ifMatch.split(",")) {
+      String trimmed = etag.trim();
+      if (trimmed.equals("*") || trimmed.equals(current)) {
+        return;
+      }
+    }
+    throw new PreconditionFailedException(RecommendationRequest.class, request.getId());
+  }
+
+  /**
+   * Handles a conditional GET of a listing. The ETag is built from the fingerprint of the rows in
+   * the listing (which covers the requesters and professors they include), so the listing is only
+   * loaded if it may have changed. If the client already has the current version this sets up a 304
+   * response and returns true; otherwise it adds the ETag header to the response and returns false.
+   */
+  private boolean notModified(
+      WebRequest webRequest, ListingFingerprint fingerprint, Object... listing) {
+    String etag =
+        etagService.etag(
+            Arrays.asList(listing),
+            fingerprint.getCount(),
+            fingerprint.getMaxId(),
+            fingerprint.getLastModified(),
+            fingerprint.getUserVersions());
+    return webRequest.checkNotModified(etag);
+  }
+
+  /**
+   * Pages through a professor's requests by (dueDate, id), with all statuses if status is null.
+   * Each case has a query of its own, so that each can use its index.
+   */
+  private ResponseEntity<List<RecommendationRequest>> inboxPage(
+      Long professorId, RequestStatus status, Integer limit, String after) {
+    RecommendationRequestRepository repository = recommendationRequestRepository;
+    return page(
+        limit,
+        after,
+        RecommendationRequest::getDueDate,
+        (cursor, pageLimit) -> {
+          if (cursor == null) {
+            return status == null
+                ? repository.findInboxPage(professorId, pageLimit)
+                : repository.findInboxPageWithStatus(professorId, status, pageLimit);
+          }
+          if (cursor.getKey() == null) {
+            return status == null
+                ? repository.findInboxPageAfterNullDueDate(professorId, cursor.getId(), pageLimit)
+                : repository.findInboxPageWithStatusAfterNullDueDate(
+                    professorId, status, cursor.getId(), pageLimit);
+          }
+          return status == null
+              ? repository.findInboxPageAfter(
+                  professorId, cursor.getKey(), cursor.getId(), pageLimit)
+              : repository.findInboxPageWithStatusAfter(
+                  professorId, status, cursor.getKey(), cursor.getId(), pageLimit);
+        });
+  }
+
+  /**
+   * Pages through submitted requests by (submissionDate, id), newest first: those made by one user,
+   * or all of them if requesterId is null. Each case has a query of its own, so that each can use
+   * its index.
+   */
+  private ResponseEntity<List<RecommendationRequest>> submittedPage(
+      Long requesterId, Integer limit, String after) {
+    RecommendationRequestRepository repository = recommendationRequestRepository;
+    return page(
+        limit,
+        after,
+        RecommendationRequest::getSubmissionDate,
+        (cursor, pageLimit) -> {
+          if (cursor == null) {
+            return requesterId == null
+                ? repository.findAllSubmittedPage(pageLimit)
+                : repository.findSubmittedPage(requesterId, pageLimit);
+          }
+          if (cursor.getKey() == null) {
+            return requesterId == null
+                ? repository.findAllSubmittedPageAfterNullSubmissionDate(cursor.getId(), pageLimit)
+                : repository.findSubmittedPageAfterNullSubmissionDate(
+                    requesterId, cursor.getId(), pageLimit);
+          }
+          return requesterId == null
+              ? repository.findAllSubmittedPageAfter(cursor.getKey(), cursor.getId(), pageLimit)
+              : repository.findSubmittedPageAfter(
+                  requesterId, cursor.getKey(), cursor.getId(), pageLimit);
+        });
+  }
+
+  /**
+   * Fetches one page of a keyset paginated listing. One extra row is read so that we know whether
+   * there is a next page; if there is, its cursor is returned in the {@value #NEXT_CURSOR_HEADER}
+   * header.
+   */
+  private ResponseEntity<List<RecommendationRequest>> page(
+      Integer limit,
+      String after,
+      Function<RecommendationRequest, LocalDateTime> sortKey,
+      BiFunction<KeysetCursor, Limit, List<RecommendationRequest>> query) {
+    if (limit != null && limit < 1) {
+      throw new IllegalArgumentException("limit must be at least 1");
+    }
+    int pageSize = Math.min(limit == null ? defaultLimit : limit, maxLimit);
+    KeysetCursor cursor = after == null ? null : KeysetCursor.decode(after);
+
+    List<RecommendationRequest> rows = query.apply(cursor, Limit.of(pageSize + 1));
+    if (rows.size() <= pageSize) {
+      return ResponseEntity.ok(rows);
+    }
+    List<RecommendationRequest> content = rows.subList(0, pageSize);
+    RecommendationRequest last = content.get(pageSize - 1);
+    return ResponseEntity.ok()
+        .header(NEXT_CURSOR_HEADER, new KeysetCursor(sortKey.apply(last), last.getId()).encode())
+        .body(content);
   }
 }
@@ -4,13 +4,17 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import edu.ucsb.cs156.rec.entities.RequestType;
 import edu.ucsb.cs156.rec.errors.EntityNotFoundException;
 import edu.ucsb.cs156.rec.repositories.RequestTypeRepository;
+import edu.ucsb.cs156.rec.services.ETagService;
+import edu.ucsb.cs156.rec.services.RequestTypeRegistry;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -19,6 +23,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 /** This is a REST controller for RequestType */
 @Tag(name = "RequestType")
@@ -29,17 +34,27 @@ public class RequestTypeController extends ApiController {
 
   @Autowired RequestTypeRepository requestTypeRepository;
 
+  @Autowired RequestTypeRegistry requestTypeRegistry;
+
+  @Autowired ETagService etagService;
+
   /**
-   * This method returns a list of all Request Types.
+   * This method returns a list of all Request Types. The ETag is the registry fingerprint, so
+   * polling clients that send it back in If-None-Match get a 304 until a request type changes.
    *
-   * @return a list of all Request Types.
+   * @param webRequest the request, checked for an If-None-Match header
+   * @return a list of all Request Types, or nothing (304) if the client's copy is current
    */
+  @Transactional(readOnly = true)
   @Operation(summary = "List all request types")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/all")
-  public Iterable<RequestType> allRequestTypes() {
-    Iterable<RequestType> requestTypes = requestTypeRepository.findAll();
-    return requestTypes;
+  public Iterable<RequestType> allRequestTypes(WebRequest webRequest) {
+    if (webRequest.checkNotModified(
+        etagService.etag("requesttypes", requestTypeRegistry.getFingerprint()))) {
+      return null;
+    }
+    return requestTypeRegistry.getAll();
   }
 
   /**
@@ -48,6 +63,7 @@ public class RequestTypeController extends ApiController {
    * @param id the id of the request type
    * @return a RequestTYpe
    */
+  @Transactional(readOnly = true)
   @Operation(summary = "Get a single request type")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("")
@@ -73,21 +89,19 @@ public class RequestTypeController extends ApiController {
       @Parameter(name = "requestType") @RequestParam String requestType)
       throws JsonProcessingException {
 
-    log.info("requestType={}", requestType);
+    log.debug("requestType={}", requestType);
 
     // Check for duplicates
-    Iterable<RequestType> existingRequestTypes = requestTypeRepository.findAll();
-    for (RequestType existing : existingRequestTypes) {
-      if (existing.getRequestType().equals(requestType)) {
-        throw new IllegalArgumentException("Duplicate request type: " + requestType);
-      }
+    if (requestTypeRegistry.findByRequestType(requestType).isPresent()) {
+      throw new IllegalArgumentException("Duplicate request type: " + requestType);
     }
 
     // Create new request type
     RequestType requestTypeNew = new RequestType();
     requestTypeNew.setRequestType(requestType);
 
-    RequestType savedRequestType = requestTypeRepository.save(requestTypeNew);
+    RequestType savedRequestType = saveUnique(requestTypeNew, requestType);
+    requestTypeRegistry.put(savedRequestType);
 
     return savedRequestType;
   }
@@ -98,55 +112,74 @@ public class RequestTypeController extends ApiController {
    * @param id the id of the request type to delete
    * @return a message indicating the date was deleted
    */
+  @Transactional
   @Operation(summary = "Delete a request type")
   @PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_PROFESSOR')")
   @DeleteMapping("")
   public Object deleteRequestType(@Parameter(name = "id") @RequestParam Long id) {
-    RequestType requestType =
-        requestTypeRepository
-            .findById(id)
-            .orElseThrow(() -> new EntityNotFoundException(RequestType.class, id));
-
-    requestTypeRepository.delete(requestType);
+    if (requestTypeRepository.deleteRequestTypeById(id) == 0) {
+      throw new EntityNotFoundException(RequestType.class, id);
+    }
+    requestTypeRegistry.remove(id);
     return genericMessage("Request type with id %s deleted".formatted(id));
   }
 
   /**
-   * Update a single request type
+   * Update a single request type. The name is the only column, so the update is made with a single
+   * statement rather than by loading and saving the request type.
    *
    * @param id id of the request to update
    * @param incoming the new request type
    * @return the updated request type object
    */
+  @Transactional
   @Operation(summary = "Update a single request type")
   @PreAuthorize("hasAnyRole('ROLE_ADMIN', 'ROLE_PROFESSOR')")
   @PutMapping("")
   public RequestType updateRequestType(
       @Parameter(name = "id") @RequestParam Long id, @RequestBody @Valid RequestType incoming) {
 
-    RequestType requestType =
-        requestTypeRepository
-            .findById(id)
-            .orElseThrow(() -> new EntityNotFoundException(RequestType.class, id));
-
     // Check for duplicates
-    Iterable<RequestType> existingRequestTypes = requestTypeRepository.findAll();
-    for (RequestType existing : existingRequestTypes) {
-      if (incoming.getRequestType().isEmpty()) {
-        throw new IllegalArgumentException("Request type cannot be empty");
-      }
-      if (existing.getId() == id) {
-        continue;
-      }
-      if (existing.getRequestType().equals(incoming.getRequestType())) {
-        throw new IllegalArgumentException("Duplicate request type: " + incoming);
-      }
+    if (incoming.getRequestType().isEmpty()) {
+      throw new IllegalArgumentException("Request type cannot be empty");
+    }
+    if (requestTypeRegistry
+        .findByRequestType(incoming.getRequestType())
+        .filter(existing -> existing.getId() != id)
+        .isPresent()) {
+      throw new IllegalArgumentException("Duplicate request type: " + incoming);
     }
 
-    // Update and save the request type
-    requestType.setRequestType(incoming.getRequestType());
-    requestTypeRepository.save(requestType);
+    // Update the request type
+    int updated;
+    try {
+      updated = requestTypeRepository.renameRequestType(id, incoming.getRequestType());
+    } catch (DataIntegrityViolationException e) {
+      throw new IllegalArgumentException("Duplicate request type: " + incoming);
+    }
+    if (updated == 0) {
+      throw new EntityNotFoundException(RequestType.class, id);
+    }
+    RequestType requestType =
+        RequestType.builder().id(id).requestType(incoming.getRequestType()).build();
+    requestTypeRegistry.put(requestType);
 
     return requestType;
   }
+
+  /**
+   * Saves a request type, reporting a clash with the unique constraint on the request type column
+   * (another instance created the same type since our registry was loaded) as a duplicate.
+   *
+   * @param requestType the request type to save
+   * @param description what to name in the error message
+   * @return the saved request type
+   */
+  private RequestType saveUnique(RequestType requestType, String description) {
+    try {
+      return requestTypeRepository.save(requestType);
+    } catch (DataIntegrityViolationException e) {
+      throw new IllegalArgumentException("Duplicate request type: " + description);
+    }
+  }
 }
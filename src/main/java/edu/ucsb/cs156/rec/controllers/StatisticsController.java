@@ -0,0 +1,65 @@
+package edu.ucsb.cs156.rec.controllers;
+
+import edu.ucsb.cs156.rec.models.RequestStatistics;
+import edu.ucsb.cs156.rec.services.RequestStatisticsService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * This is a REST controller for recommendation request statistics.
+ *
+ * <p>The numbers come from a summary table that is updated along with the requests themselves, so
+ * these endpoints do not scan the recommendation requests table.
+ */
+@Tag(name = "Statistics")
+@RequestMapping("/api/statistics")
+@RestController
+public class StatisticsController extends ApiController {
+
+  @Autowired RequestStatisticsService requestStatisticsService;
+
+  /**
+   * This method returns the statistics for the requests sent to the current user, who is a
+   * professor.
+   *
+   * @return the statistics for the current professor
+   */
+  @Operation(summary = "Get statistics for the requests sent to the current professor")
+  @PreAuthorize("hasRole('ROLE_PROFESSOR')")
+  @GetMapping("/professor")
+  public RequestStatistics professorStatistics() {
+    return requestStatisticsService.forProfessor(getCurrentUser().getUser().getId());
+  }
+
+  /**
+   * This method returns the statistics for all requests, with a breakdown by professor.
+   *
+   * @return the statistics for all requests
+   */
+  @Operation(summary = "Get statistics for all requests (admin only)")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/admin")
+  public RequestStatistics allStatistics() {
+    return requestStatisticsService.forAll();
+  }
+
+  /**
+   * This method recomputes the statistics from the recommendation requests table. It is only needed
+   * if the statistics have been found to be wrong.
+   *
+   * @return a message giving the number of statistics rows written
+   */
+  @Operation(summary = "Rebuild the statistics from scratch (admin only)")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @PostMapping("/admin/rebuild")
+  public Object rebuildStatistics() {
+    int rows = requestStatisticsService.rebuild();
+    return genericMessage("Statistics rebuilt (%d rows)".formatted(rows));
+  }
+}
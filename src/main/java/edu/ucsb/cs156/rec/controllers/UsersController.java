@@ -1,10 +1,13 @@
 package edu.ucsb.cs156.rec.controllers;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.ucsb.cs156.rec.entities.User;
 import edu.ucsb.cs156.rec.errors.EntityNotFoundException;
+import edu.ucsb.cs156.rec.models.KeysetCursor;
+import edu.ucsb.cs156.rec.models.UserCacheStats;
 import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.UserCache;
+import edu.ucsb.cs156.rec.services.UserListingService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -12,15 +15,21 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntSupplier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * This is a REST controller for getting information about the users.
@@ -33,21 +42,60 @@ import org.springframework.web.bind.annotation.RestController;
 public class UsersController extends ApiController {
   @Autowired UserRepository userRepository;
 
-  @Autowired ObjectMapper mapper;
+  @Autowired UserCache userCache;
+
+  @Autowired UserListingService userListingService;
+
+  @Value("${app.pagination.maxLimit:1000}")
+  private int maxLimit;
 
   /**
-   * This method returns a list of all users. Accessible only to users with the role "ROLE_ADMIN".
+   * This method returns a list of users, in id order. Accessible only to users with the role
+   * "ROLE_ADMIN".
    *
-   * @return a list of all users
-   * @throws JsonProcessingException if there is an error processing the JSON
+   * <p>The JSON is written to the response as the users are read from the database. Without a limit
+   * every matching user is returned; with a limit one page is returned, and the cursor to pass as
+   * {@code after} for the next page is in the {@value
+   * RecommendationRequestController#NEXT_CURSOR_HEADER} header (absent on the last page), in the
+   * same opaque {@link KeysetCursor} form as the recommendation request listings use.
+   *
+   * @param search only return users whose email, full name or family name starts with this (case is
+   *     ignored)
+   * @param limit maximum number of users to return
+   * @param after cursor from the previous page; only users after it are returned
+   * @return a list of users
    */
-  @Operation(summary = "Get a list of all users")
+  @Transactional(readOnly = true)
+  @Operation(summary = "Get a list of users, optionally searched and paged")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @GetMapping("")
-  public ResponseEntity<String> users() throws JsonProcessingException {
-    Iterable<User> users = userRepository.findAll();
-    String body = mapper.writeValueAsString(users);
-    return ResponseEntity.ok().body(body);
+  public ResponseEntity<StreamingResponseBody> users(
+      @Parameter(name = "search") @RequestParam(required = false) String search,
+      @Parameter(name = "limit") @RequestParam(required = false) Integer limit,
+      @Parameter(name = "after") @RequestParam(required = false) String after) {
+    String prefix = UserListingService.prefixPattern(search);
+    // users are listed in id order, so the cursor needs no sort key
+    long afterId = after == null ? 0 : KeysetCursor.decode(after).getId();
+    if (limit == null) {
+      return ResponseEntity.ok()
+          .contentType(MediaType.APPLICATION_JSON)
+          .body(out -> userListingService.writeUsers(out, prefix, afterId));
+    }
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be at least 1");
+    }
+    int pageSize = Math.min(limit, maxLimit);
+    List<User> rows = userRepository.findUsersPage(prefix, afterId, Limit.of(pageSize + 1));
+    ResponseEntity.BodyBuilder response =
+        ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON);
+    if (rows.size() > pageSize) {
+      rows = rows.subList(0, pageSize);
+      response.header(
+          RecommendationRequestController.NEXT_CURSOR_HEADER,
+          new KeysetCursor(null, rows.get(pageSize - 1).getId()).encode());
+    }
+    List<User> page = rows;
+    return response.body(out -> userListingService.writeUsers(out, page));
   }
 
   /**
@@ -55,6 +103,7 @@ public class UsersController extends ApiController {
    *
    * @return a list of all Recommendation Requests requested by the current user
    */
+  @Transactional(readOnly = true)
   @Operation(summary = "List all professors")
   @PreAuthorize("hasRole('ROLE_USER')")
   @GetMapping("/professors")
@@ -71,6 +120,7 @@ public class UsersController extends ApiController {
     return limited_list;
   }
 
+  @Transactional(readOnly = true)
   @Operation(summary = "Get user by id")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @GetMapping("/get")
@@ -92,6 +142,7 @@ public class UsersController extends ApiController {
   @Operation(summary = "Delete a user (admin)")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @DeleteMapping("/delete")
+  @Transactional
   public Object deleteUser_Admin(
       @Parameter(
               name = "id",
@@ -100,15 +151,17 @@ public class UsersController extends ApiController {
               required = true)
           @RequestParam
           Long id) {
-    User user =
-        userRepository.findById(id).orElseThrow(() -> new EntityNotFoundException(User.class, id));
-    userRepository.delete(user);
+    if (userRepository.deleteUserById(id) == 0) {
+      throw new EntityNotFoundException(User.class, id);
+    }
+    userCache.evict(id);
     return genericMessage("User with id %s has been deleted.".formatted(id));
   }
 
   @Operation(summary = "Toggle the admin field")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @PostMapping("/toggleAdmin")
+  @Transactional
   public Object toggleAdmin(
       @Parameter(
               name = "id",
@@ -117,27 +170,29 @@ public class UsersController extends ApiController {
               required = true)
           @RequestParam
           Long id) {
-    User user =
-        userRepository.findById(id).orElseThrow(() -> new EntityNotFoundException(User.class, id));
-
     // Get the current user
-    User currentUser = getCurrentUser().getUser();
+    long currentUserId = getCurrentUser().getUser().getId();
 
-    // Check if the user is trying to remove admin from themselves
-    if (user.getId() == currentUser.getId() && user.getAdmin()) {
-      throw new IllegalArgumentException(
-          "Cannot remove admin from currently logged in user; ask another admin to do that.");
+    // Revoking does nothing if the user is trying to remove admin from themselves
+    Boolean admin =
+        toggle(
+            () -> userRepository.grantAdmin(id),
+            () -> userRepository.revokeAdmin(id, currentUserId));
+    if (admin == null) {
+      if (id == currentUserId) {
+        throw new IllegalArgumentException(
+            "Cannot remove admin from currently logged in user; ask another admin to do that.");
+      }
+      throw new EntityNotFoundException(User.class, id);
     }
-
-    user.setAdmin(!user.getAdmin());
-    userRepository.save(user);
-    return genericMessage(
-        "User with id %s has toggled admin status to %s".formatted(id, user.getAdmin()));
+    userCache.evict(id);
+    return genericMessage("User with id %s has toggled admin status to %s".formatted(id, admin));
   }
 
   @Operation(summary = "Toggle the professor field")
   @PreAuthorize("hasRole('ROLE_ADMIN')")
   @PostMapping("/toggleProfessor")
+  @Transactional
   public Object toggleProfessor(
       @Parameter(
               name = "id",
@@ -146,12 +201,46 @@ public class UsersController extends ApiController {
               required = true)
           @RequestParam
           Long id) {
-    User user =
-        userRepository.findById(id).orElseThrow(() -> new EntityNotFoundException(User.class, id));
-
-    user.setProfessor(!user.getProfessor());
-    userRepository.save(user);
+    Boolean professor =
+        toggle(() -> userRepository.grantProfessor(id), () -> userRepository.revokeProfessor(id));
+    if (professor == null) {
+      throw new EntityNotFoundException(User.class, id);
+    }
+    userCache.evict(id);
     return genericMessage(
-        "User with id %s has toggled professor status to %s".formatted(id, user.getProfessor()));
+        "User with id %s has toggled professor status to %s".formatted(id, professor));
+  }
+
+  /**
+   * Flips a flag with two conditional updates rather than reading it first: the grant only changes
+   * the row if the flag is off, and the revoke (tried only if the grant changed nothing) only if it
+   * is on. Whichever one changed the row says what the flag is now, so it never has to be read
+   * back.
+   *
+   * @param grant update that turns the flag on, returning the number of rows changed
+   * @param revoke update that turns the flag off, returning the number of rows changed
+   * @return the new value of the flag, or null if neither update changed the row
+   */
+  private static Boolean toggle(IntSupplier grant, IntSupplier revoke) {
+    if (grant.getAsInt() > 0) {
+      return true;
+    }
+    if (revoke.getAsInt() > 0) {
+      return false;
+    }
+    return null;
+  }
+
+  /**
+   * This method returns the hit, miss and eviction counters of the user cache, so that its size and
+   * time to live can be tuned. Accessible only to users with the role "ROLE_ADMIN".
+   *
+   * @return the user cache statistics
+   */
+  @Operation(summary = "Get user cache statistics")
+  @PreAuthorize("hasRole('ROLE_ADMIN')")
+  @GetMapping("/cache")
+  public UserCacheStats userCacheStats() {
+    return userCache.getStats();
   }
 }
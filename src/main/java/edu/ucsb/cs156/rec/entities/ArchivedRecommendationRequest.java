@@ -0,0 +1,50 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity for a finished (COMPLETED or DENIED) Recommendation Request that has been
+ * moved out of the recommendationrequest table by the RequestArchiveService.
+ *
+ * <p>It keeps the id and every column the request had, plus the time it was archived. Archived
+ * requests can no longer be changed, so there is no version.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "archivedrecommendationrequest")
+public class ArchivedRecommendationRequest {
+  @Id private long id;
+
+  @ManyToOne
+  @JoinColumn(name = "requester_id", referencedColumnName = "id")
+  private User requester;
+
+  @ManyToOne
+  @JoinColumn(name = "professor_id", referencedColumnName = "id")
+  private User professor;
+
+  private String recommendationType;
+  private String details;
+
+  @Column(name = "status_code")
+  @Convert(converter = RequestStatus.Converter.class)
+  private RequestStatus status;
+
+  private LocalDateTime completionDate;
+  private LocalDateTime dueDate;
+  private LocalDateTime submissionDate;
+  private LocalDateTime lastModifiedDate;
+  private LocalDateTime archivedDate;
+}
@@ -0,0 +1,45 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity that stores the response to a request made with an Idempotency-Key header,
+ * so that a retry of the request with the same key gets the same response instead of repeating it.
+ * Its primary key stops the same key being stored twice for a user and endpoint.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "idempotencykey")
+@IdClass(IdempotencyKey.Key.class)
+public class IdempotencyKey {
+
+  /** The primary key of an IdempotencyKey. */
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class Key implements Serializable {
+    private long userId;
+    private String endpoint;
+    private String idempotencyKey;
+  }
+
+  @Id private long userId;
+  @Id private String endpoint;
+  @Id private String idempotencyKey;
+
+  // hash of the request's parameters, which a retry must repeat exactly
+  private String requestHash;
+  private String responseBody;
+  private LocalDateTime createdDate;
+  private LocalDateTime expiresDate;
+}
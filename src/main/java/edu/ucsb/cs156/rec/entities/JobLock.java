@@ -0,0 +1,26 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity for a lease on a background job, so that when several instances of the
+ * application are running only one of them runs the job at a time. The instance named as the owner
+ * holds the lease until the locked until time, after which any instance may take it over.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "joblock")
+public class JobLock {
+  @Id private String name;
+
+  private String owner;
+  private LocalDateTime lockedUntil;
+}
@@ -0,0 +1,32 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity for one line of a user's next email digest, such as a new request for a
+ * professor. It is written by the NotificationService and deleted by the NotificationDigestService
+ * once the digest holding it has been sent.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "notification")
+public class Notification {
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private long id;
+
+  private long recipientId;
+  private long requestId;
+  private String message;
+  private LocalDateTime createdDate;
+}
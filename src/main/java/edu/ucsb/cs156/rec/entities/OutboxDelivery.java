@@ -0,0 +1,39 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity that records that one consumer has handled one outbox event. It is written
+ * in the same transaction as whatever the consumer did, and its primary key stops the same event
+ * being recorded twice for a consumer.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "outboxdelivery")
+@IdClass(OutboxDelivery.Key.class)
+public class OutboxDelivery {
+
+  /** The primary key of an OutboxDelivery. */
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class Key implements Serializable {
+    private String consumer;
+    private long eventId;
+  }
+
+  @Id private String consumer;
+  @Id private long eventId;
+
+  private LocalDateTime deliveredDate;
+}
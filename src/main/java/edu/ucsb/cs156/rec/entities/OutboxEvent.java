@@ -0,0 +1,49 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity for one change to a recommendation request, written to the outbox table in
+ * the same transaction as the change itself by the RequestEventPublisher.
+ *
+ * <p>The OutboxDispatcher later reads the outbox in id order and hands each event to every
+ * RequestEventConsumer; an event is deleted once all of them have it (see OutboxDelivery).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "outboxevent")
+public class OutboxEvent {
+
+  /** What happened to the request. */
+  public enum Type {
+    CREATED,
+    STATUS_CHANGED,
+    DELETED
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private long id;
+
+  private long requestId;
+
+  @Enumerated(EnumType.STRING)
+  private Type eventType;
+
+  // the RequestEvent as JSON
+  private String payload;
+
+  private LocalDateTime createdDate;
+}
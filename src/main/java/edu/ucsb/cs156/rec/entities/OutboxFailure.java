@@ -0,0 +1,51 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity that records that one consumer has failed to handle one outbox event, and
+ * when the OutboxDispatcher may try it again.
+ *
+ * <p>Once the consumer has failed {@code app.outbox.maxAttempts} times the event is dead lettered:
+ * it is not tried again, and it (with any later event for the same request) stays in the outbox
+ * until someone has looked into it. Deleting this row makes the dispatcher try the event again.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "outboxfailure")
+@IdClass(OutboxFailure.Key.class)
+public class OutboxFailure {
+
+  /** The primary key of an OutboxFailure. */
+  @Data
+  @AllArgsConstructor
+  @NoArgsConstructor
+  public static class Key implements Serializable {
+    private String consumer;
+    private long eventId;
+  }
+
+  /** Longest error message kept. */
+  public static final int MAX_ERROR_LENGTH = 1000;
+
+  @Id private String consumer;
+  @Id private long eventId;
+
+  private int attempts;
+
+  private LocalDateTime nextAttemptDate; // null once dead lettered
+
+  private LocalDateTime deadLetteredDate; // null until dead lettered
+
+  private String lastError;
+}
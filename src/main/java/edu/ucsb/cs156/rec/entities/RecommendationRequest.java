@@ -1,5 +1,7 @@
 package edu.ucsb.cs156.rec.entities;
 
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
@@ -7,6 +9,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Version;
 import java.time.LocalDateTime;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -46,10 +49,16 @@ public class RecommendationRequest {
 
   private String recommendationType;
   private String details;
-  private String status;
+
+  @Column(name = "status_code")
+  @Convert(converter = RequestStatus.Converter.class)
+  private RequestStatus status;
 
   private LocalDateTime completionDate;
   private LocalDateTime dueDate;
   @CreatedDate private LocalDateTime submissionDate;
   @LastModifiedDate private LocalDateTime lastModifiedDate;
+
+  // goes up by one on every update; sent to clients as the ETag and checked against If-Match
+  @Version private long version;
 }
@@ -0,0 +1,27 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity for how far the due date reminders for one window (such as 7 days before the
+ * due date) have got: every open request that comes before this due date and request id, in that
+ * order, has already been reminded for the window.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "remindermark")
+public class ReminderMark {
+  // not an int, which Spring Data would take to be a new row whenever it is 0 (the overdue window)
+  @Id private Integer windowDays;
+
+  private LocalDateTime dueDate;
+  private long requestId;
+}
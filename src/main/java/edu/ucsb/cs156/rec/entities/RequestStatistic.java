@@ -0,0 +1,45 @@
+package edu.ucsb.cs156.rec.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a JPA entity that holds the running totals for one cell of the statistics summary: the
+ * recommendation requests for one professor, of one type, with one status.
+ *
+ * <p>Rows are kept up to date by the RequestStatisticsService whenever a recommendation request is
+ * created, changed or deleted, so the statistics page never has to scan the requests table.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity(name = "requeststatistic")
+public class RequestStatistic {
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private long id;
+
+  private long professorId;
+  private String requestType;
+
+  @Column(name = "status_code")
+  @Convert(converter = RequestStatus.Converter.class)
+  private RequestStatus status;
+
+  private long requestCount;
+
+  // completed requests that have both a submission and a completion date
+  private long timedCount;
+
+  // sum of (completionDate - submissionDate) over the timed requests
+  private long totalCompletionSeconds;
+}
@@ -0,0 +1,129 @@
+package edu.ucsb.cs156.rec.entities;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import jakarta.persistence.AttributeConverter;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * This is an enum for the status of a Recommendation Request.
+ *
+ * <p>In the database each status is stored as a small integer {@link #getCode() code}; in JSON it
+ * is written as its {@link #getLabel() label} (for example {@code "IN PROGRESS"}), which is what
+ * the frontend has always used.
+ *
+ * <p>A request starts out PENDING. The professor either accepts it (IN PROGRESS), completes it
+ * straight away, or denies it, and an accepted request is later COMPLETED (or DENIED). COMPLETED
+ * and DENIED are final.
+ */
+public enum RequestStatus {
+  PENDING(0, "PENDING"),
+  IN_PROGRESS(1, "IN PROGRESS"),
+  COMPLETED(2, "COMPLETED"),
+  DENIED(3, "DENIED");
+
+  private final short code;
+  private final String label;
+
+  RequestStatus(int code, String label) {
+    this.code = (short) code;
+    this.label = label;
+  }
+
+  /**
+   * This method returns the value stored in the status column. Codes must never be reused or
+   * renumbered, since existing rows depend on them.
+   *
+   * @return the database code for this status
+   */
+  public short getCode() {
+    return code;
+  }
+
+  /**
+   * This method returns the name of this status as shown to (and sent by) the frontend.
+   *
+   * @return the label for this status
+   */
+  @JsonValue
+  public String getLabel() {
+    return label;
+  }
+
+  /**
+   * This method returns the statuses that a request with this status may be moved to.
+   *
+   * @return the allowed next statuses
+   */
+  public Set<RequestStatus> getNextStatuses() {
+    return switch (this) {
+      case PENDING -> EnumSet.of(IN_PROGRESS, COMPLETED, DENIED);
+      case IN_PROGRESS -> EnumSet.of(COMPLETED, DENIED);
+      case COMPLETED, DENIED -> EnumSet.noneOf(RequestStatus.class);
+    };
+  }
+
+  /**
+   * This method checks whether a request may be moved from this status to another one. Staying in
+   * the same status is always allowed.
+   *
+   * @param next the new status
+   * @return true if the change is allowed
+   */
+  public boolean canMoveTo(RequestStatus next) {
+    return this == next || getNextStatuses().contains(next);
+  }
+
+  /**
+   * This method returns the status with a given label, ignoring case. The enum constant name (with
+   * an underscore) is accepted as well.
+   *
+   * @param label the label of the status, for example {@code "in progress"}
+   * @return the status
+   * @throws IllegalArgumentException if there is no such status
+   */
+  @JsonCreator
+  public static RequestStatus fromLabel(String label) {
+    if (label != null) {
+      String normalized = label.trim().replace('_', ' ').toUpperCase(Locale.ROOT);
+      for (RequestStatus status : values()) {
+        if (status.label.equals(normalized)) {
+          return status;
+        }
+      }
+    }
+    throw new IllegalArgumentException("Unknown status: %s".formatted(label));
+  }
+
+  /**
+   * This method returns the status stored with a given code.
+   *
+   * @param code the database code
+   * @return the status
+   * @throws IllegalArgumentException if there is no such status
+   */
+  public static RequestStatus fromCode(short code) {
+    for (RequestStatus status : values()) {
+      if (status.code == code) {
+        return status;
+      }
+    }
+    throw new IllegalArgumentException("Unknown status code: %d".formatted(code));
+  }
+
+  /** This is a JPA converter that stores a RequestStatus as its code. */
+  @jakarta.persistence.Converter
+  public static class Converter implements AttributeConverter<RequestStatus, Short> {
+    @Override
+    public Short convertToDatabaseColumn(RequestStatus status) {
+      return status == null ? null : status.getCode();
+    }
+
+    @Override
+    public RequestStatus convertToEntityAttribute(Short code) {
+      return code == null ? null : fromCode(code);
+    }
+  }
+}
@@ -14,7 +14,7 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
-@Builder
+@Builder(toBuilder = true)
 @Entity(name = "users")
 public class User {
   @Id
@@ -32,4 +32,7 @@ public class User {
   private String hostedDomain;
   @Builder.Default private Boolean admin = false;
   @Builder.Default private Boolean professor = false;
+
+  // incremented whenever admin or professor changes, so RoleInterceptor knows when to rebuild roles
+  @Builder.Default private long roleVersion = 0;
 }
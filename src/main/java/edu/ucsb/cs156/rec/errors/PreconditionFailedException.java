@@ -0,0 +1,19 @@
+package edu.ucsb.cs156.rec.errors;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that an
+ * update was made against an out of date copy of an entity, i.e. someone else changed it first.
+ */
+public class PreconditionFailedException extends RuntimeException {
+  /**
+   * Constructor for the exception
+   *
+   * @param entityType The class of the entity that was changed, e.g. User.class
+   * @param id the id of the entity
+   */
+  public PreconditionFailedException(Class<?> entityType, Object id) {
+    super(
+        "%s with id %s has been changed by someone else"
+            .formatted(entityType.getSimpleName(), id.toString()));
+  }
+}
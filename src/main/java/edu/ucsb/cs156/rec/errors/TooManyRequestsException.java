@@ -0,0 +1,25 @@
+package edu.ucsb.cs156.rec.errors;
+
+/**
+ * This is an error class for a custom RuntimeException in Java that is used to indicate that a user
+ * has made more requests to an endpoint than its rate limit allows, and must wait before trying
+ * again.
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+  private final long retryAfterSeconds;
+
+  /**
+   * Constructor for the exception
+   *
+   * @param retryAfterSeconds how long the user must wait before the next request is allowed
+   */
+  public TooManyRequestsException(long retryAfterSeconds) {
+    super("Too many requests; try again in %d seconds".formatted(retryAfterSeconds));
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
@@ -0,0 +1,53 @@
+package edu.ucsb.cs156.rec.interceptors;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * This filter gives every request an id, which is put in the logging context (MDC) as {@value
+ * #REQUEST_ID} and returned in the {@value #REQUEST_ID_HEADER} response header. A client or proxy
+ * may choose the id by sending that header itself.
+ *
+ * <p>Once the logged in user is known, RoleInterceptor adds their id as {@value #USER_ID}. Both are
+ * removed again when the request is finished, since the thread goes back to a pool.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LoggingContextFilter extends OncePerRequestFilter {
+
+  public static final String REQUEST_ID = "requestId";
+  public static final String USER_ID = "userId";
+  public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+  // anything else sent by a client is replaced, so that it cannot forge log lines
+  private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String requestId = request.getHeader(REQUEST_ID_HEADER);
+    if (requestId == null || !VALID_REQUEST_ID.matcher(requestId).matches()) {
+      requestId = HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextLong());
+    }
+    MDC.put(REQUEST_ID, requestId);
+    response.setHeader(REQUEST_ID_HEADER, requestId);
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      MDC.remove(REQUEST_ID);
+      MDC.remove(USER_ID);
+    }
+  }
+}
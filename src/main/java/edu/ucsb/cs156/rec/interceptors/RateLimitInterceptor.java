@@ -0,0 +1,95 @@
+package edu.ucsb.cs156.rec.interceptors;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.ucsb.cs156.rec.errors.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * This interceptor limits how often each user may call an endpoint, with a {@link TokenBucket} per
+ * user that holds {@code capacity} requests and refills at {@code perMinute} requests a minute. A
+ * request that finds the bucket empty is refused with 429 Too Many Requests and a Retry-After
+ * header (see TooManyRequestsException), and counted in {@value #THROTTLED}.
+ *
+ * <p>Users are told apart by the name of their login (for Google, their account id), or by address
+ * when not logged in. The buckets are kept in memory, so each instance of the application has its
+ * own; a bucket that has not been used for long enough to fill up again is dropped. A capacity or
+ * rate of zero turns the limit off.
+ *
+ * <p>One of these is registered for each limited endpoint in RoleInterceptorConfig, after
+ * RoleInterceptor.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+  public static final String THROTTLED = "app.ratelimit.throttled";
+
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  // the most users whose buckets are kept; beyond that the least recently used are dropped early
+  private static final long MAXIMUM_USERS = 100_000;
+
+  private final long capacity;
+
+  private final long interval;
+
+  private final Cache<String, TokenBucket> buckets;
+
+  private final Counter throttled;
+
+  private final LongSupplier clock;
+
+  /**
+   * Creates the limit for one endpoint.
+   *
+   * @param name name of the limit, which tags its meters
+   * @param capacity the most requests a user may make at once
+   * @param perMinute the rate at which a user may go on making requests
+   * @param meterRegistry the registry for the throttled counter
+   */
+  public RateLimitInterceptor(
+      String name, long capacity, long perMinute, MeterRegistry meterRegistry) {
+    this(name, capacity, perMinute, meterRegistry, System::nanoTime);
+  }
+
+  RateLimitInterceptor(
+      String name, long capacity, long perMinute, MeterRegistry meterRegistry, LongSupplier clock) {
+    this.capacity = capacity;
+    this.interval = perMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / perMinute : 0;
+    this.buckets =
+        Caffeine.newBuilder()
+            .maximumSize(MAXIMUM_USERS)
+            .expireAfterAccess(Duration.ofNanos(Math.max(1, interval * capacity)))
+            .build();
+    this.throttled =
+        Counter.builder(THROTTLED)
+            .description("Requests refused because the user was over the endpoint's rate limit")
+            .tag("limit", name)
+            .register(meterRegistry);
+    this.clock = clock;
+  }
+
+  @Override
+  public boolean preHandle(
+      HttpServletRequest request, HttpServletResponse response, Object handler) {
+    if (capacity <= 0 || interval <= 0) {
+      return true;
+    }
+    Principal principal = request.getUserPrincipal();
+    String user = principal == null ? "address:" + request.getRemoteAddr() : principal.getName();
+    long now = clock.getAsLong();
+    long wait = buckets.get(user, key -> new TokenBucket(capacity, interval, now)).tryTake(now);
+    if (wait > 0) {
+      throttled.increment();
+      throw new TooManyRequestsException((wait + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    }
+    return true;
+  }
+}
@@ -1,14 +1,18 @@
 package edu.ucsb.cs156.rec.interceptors;
 
 import edu.ucsb.cs156.rec.entities.User;
-import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.CurrentUserContext;
+import edu.ucsb.cs156.rec.services.CurrentUserService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import java.io.Serializable;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
@@ -16,14 +20,42 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 
+/**
+ * This interceptor keeps the ROLE_ADMIN and ROLE_PROFESSOR authorities of the logged in user in
+ * step with the admin and professor flags in the users table, so that changes made by an admin take
+ * effect without the user having to log out and back in.
+ *
+ * <p>It also puts the id of the logged in user in the logging context (see LoggingContextFilter).
+ *
+ * <p>Rebuilding the authentication token on every request is wasteful, so the {@code roleVersion}
+ * of the user is stored in the session along with the rebuilt token. As long as the version has not
+ * changed the interceptor does nothing.
+ *
+ * <p>A user logging in for the first time (or listed in {@code app.admin.emails} but not yet an
+ * admin) is saved here, before the handler starts its transaction. Saving from inside a read-only
+ * handler would need a second connection while the handler holds one, and a burst of first logins
+ * could then take every connection that ConnectionLimitingDataSource hands out.
+ */
 @Slf4j
 @Component
 public class RoleInterceptor implements HandlerInterceptor {
 
-  @Autowired UserRepository userRepository;
+  static final String ROLE_STAMP_ATTRIBUTE = RoleInterceptor.class.getName() + ".ROLE_STAMP";
+
+  /** The user and role version that the authorities stored in the session were built from. */
+  record RoleStamp(long userId, long roleVersion) implements Serializable {}
+
+  @Autowired CurrentUserContext currentUserContext;
+
+  @Autowired CurrentUserService currentUserService;
+
+  private final SecurityContextRepository securityContextRepository =
+      new HttpSessionSecurityContextRepository();
 
   @Override
   public boolean preHandle(
@@ -31,11 +63,22 @@ public class RoleInterceptor implements HandlerInterceptor {
     Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
     if (authentication.getClass() == OAuth2AuthenticationToken.class) {
+      // creates or promotes the user outside any transaction; the lookup below then finds it in
+      // the CurrentUserContext
+      currentUserService.getUser();
       OAuth2User principal = ((OAuth2AuthenticationToken) authentication).getPrincipal();
       String email = principal.getAttribute("email");
-      Optional<User> optionalUser = userRepository.findByEmail(email);
+      Optional<User> optionalUser = currentUserContext.findByEmail(email);
       if (optionalUser.isPresent()) {
         User user = optionalUser.get();
+        MDC.put(LoggingContextFilter.USER_ID, Long.toString(user.getId()));
+        HttpSession session = request.getSession(false);
+        if (session != null
+            && session.getAttribute(ROLE_STAMP_ATTRIBUTE) instanceof RoleStamp stamp
+            && stamp.userId() == user.getId()
+            && stamp.roleVersion() == user.getRoleVersion()) {
+          return true;
+        }
         Collection<? extends GrantedAuthority> authorities = authentication.getAuthorities();
         Set<GrantedAuthority> revisedAuthorities =
             authorities.stream()
@@ -56,6 +99,13 @@ public class RoleInterceptor implements HandlerInterceptor {
                 revisedAuthorities,
                 (((OAuth2AuthenticationToken) authentication).getAuthorizedClientRegistrationId()));
         SecurityContextHolder.getContext().setAuthentication(newAuth);
+        if (session != null) {
+          // keep the rebuilt token for later requests in this session
+          securityContextRepository.saveContext(
+              SecurityContextHolder.getContext(), request, response);
+          session.setAttribute(
+              ROLE_STAMP_ATTRIBUTE, new RoleStamp(user.getId(), user.getRoleVersion()));
+        }
       }
     }
     return true;
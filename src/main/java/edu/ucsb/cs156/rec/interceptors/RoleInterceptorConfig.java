@@ -1,6 +1,8 @@
 package edu.ucsb.cs156.rec.interceptors;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -9,8 +11,35 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class RoleInterceptorConfig implements WebMvcConfigurer {
   @Autowired RoleInterceptor roleAdminProfessorInterceptor;
 
+  @Autowired MeterRegistry meterRegistry;
+
+  @Value("${app.rateLimit.createRequest.capacity:10}")
+  long createRequestCapacity;
+
+  @Value("${app.rateLimit.createRequest.perMinute:10}")
+  long createRequestPerMinute;
+
+  @Value("${app.rateLimit.createRequestType.capacity:10}")
+  long createRequestTypeCapacity;
+
+  @Value("${app.rateLimit.createRequestType.perMinute:10}")
+  long createRequestTypePerMinute;
+
   @Override
   public void addInterceptors(InterceptorRegistry registry) {
     registry.addInterceptor(roleAdminProfessorInterceptor);
+    registry
+        .addInterceptor(
+            new RateLimitInterceptor(
+                "createRequest", createRequestCapacity, createRequestPerMinute, meterRegistry))
+        .addPathPatterns("/api/recommendationrequest/post");
+    registry
+        .addInterceptor(
+            new RateLimitInterceptor(
+                "createRequestType",
+                createRequestTypeCapacity,
+                createRequestTypePerMinute,
+                meterRegistry))
+        .addPathPatterns("/api/requesttypes/post");
   }
 }
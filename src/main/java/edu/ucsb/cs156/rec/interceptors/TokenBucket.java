@@ -0,0 +1,51 @@
+package edu.ucsb.cs156.rec.interceptors;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that holds up to {@code capacity} tokens and gains one every {@code interval}
+ * nanoseconds. It is lock-free: rather than a count of tokens and the time it was last topped up,
+ * it keeps a single number, the time at which the bucket will next be full (the generic cell rate
+ * algorithm), and takes a token with a compare-and-set of that number.
+ */
+class TokenBucket {
+
+  private final long interval;
+
+  // a token may be taken as long as the bucket is due to be full no later than this long from now
+  private final long tolerance;
+
+  private final AtomicLong fullAt;
+
+  /**
+   * Creates a full bucket.
+   *
+   * @param capacity the most tokens the bucket holds
+   * @param interval nanoseconds between one token and the next
+   * @param now the current time, in nanoseconds
+   */
+  TokenBucket(long capacity, long interval, long now) {
+    this.interval = interval;
+    this.tolerance = interval * (capacity - 1);
+    this.fullAt = new AtomicLong(now);
+  }
+
+  /**
+   * Takes a token from the bucket, if it has one.
+   *
+   * @param now the current time, in nanoseconds
+   * @return 0 if a token was taken, otherwise how many nanoseconds until there is one
+   */
+  long tryTake(long now) {
+    // the update is retried if another thread changes the bucket first, so it must not have side
+    // effects; whether a token was taken is worked out again from the value it started from
+    long previous =
+        fullAt.getAndUpdate(
+            current -> waitFor(current, now) > 0 ? current : Math.max(current, now) + interval);
+    return Math.max(0, waitFor(previous, now));
+  }
+
+  private long waitFor(long fullAt, long now) {
+    return Math.max(fullAt, now) - tolerance - now;
+  }
+}
@@ -0,0 +1,27 @@
+package edu.ucsb.cs156.rec.models;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** This is a model class that reports what a bulk status update did to one request. */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class BulkStatusResult {
+
+  /** What happened to one request. */
+  public enum Outcome {
+    UPDATED, // the status was changed
+    UNCHANGED, // the request already had the status
+    NOT_FOUND, // there is no such request for the current professor
+    INVALID_TRANSITION // the request cannot move from its status to the new one
+  }
+
+  private long id;
+  private Outcome outcome;
+  private String message; // why the request was not updated; null if updated or unchanged
+}
@@ -0,0 +1,22 @@
+package edu.ucsb.cs156.rec.models;
+
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import java.util.List;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class for a request to move many recommendation requests to the same status at
+ * once.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class BulkStatusUpdate {
+  private List<Long> ids;
+  private RequestStatus status;
+}
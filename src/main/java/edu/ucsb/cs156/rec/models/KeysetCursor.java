@@ -0,0 +1,58 @@
+package edu.ucsb.cs156.rec.models;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that represents a position in a keyset paginated listing.
+ *
+ * <p>It holds the sort key and id of the last row of a page. The next page starts with the rows
+ * that sort after that (key, id) pair, so the database can seek straight to them instead of
+ * counting past an offset. Clients only ever see it in its encoded (opaque) form.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class KeysetCursor {
+  private LocalDateTime key; // sort column of the last row; null if that row had no value
+  private long id;
+
+  /**
+   * This method encodes the cursor as a URL safe string.
+   *
+   * @return the encoded cursor
+   */
+  public String encode() {
+    String raw = (key == null ? "" : key.toString()) + "," + id;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * This method decodes a cursor produced by {@link #encode()}.
+   *
+   * @param encoded the encoded cursor
+   * @return the cursor
+   * @throws IllegalArgumentException if the string is not a valid cursor
+   */
+  public static KeysetCursor decode(String encoded) {
+    try {
+      String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+      int comma = raw.lastIndexOf(',');
+      String key = raw.substring(0, comma);
+      long id = Long.parseLong(raw.substring(comma + 1));
+      return new KeysetCursor(key.isEmpty() ? null : LocalDateTime.parse(key), id);
+    } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid cursor: %s".formatted(encoded));
+    }
+  }
+}
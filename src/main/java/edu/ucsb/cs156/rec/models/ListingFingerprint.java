@@ -0,0 +1,29 @@
+package edu.ucsb.cs156.rec.models;
+
+import java.time.LocalDateTime;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that summarizes the rows behind a listing without loading them.
+ *
+ * <p>Any insert, update or delete of those rows changes at least one of the values: a delete lowers
+ * the count, an insert raises the largest id, and an update (which sets the last modified date)
+ * raises the latest last modified date. The listings also include each request's requester and
+ * professor, and the only changes ever made to a user (a role being granted or taken away) raise
+ * its role version, so the sum of those role versions goes up whenever a user in the listing
+ * changes. That makes it a cheap stand-in for the listing itself when computing an ETag.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class ListingFingerprint {
+  private Long count;
+  private Long maxId; // null if there are no rows
+  private LocalDateTime lastModified; // null if there are no rows
+  private Long userVersions; // null if there are no rows
+}
@@ -0,0 +1,26 @@
+package edu.ucsb.cs156.rec.models;
+
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class for one change to a recommendation request, as handed to each
+ * RequestEventConsumer. Before is null for a request that was created, and after is null for one
+ * that was deleted.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RequestEvent {
+  private long id; // id of the outbox event; goes up with each event
+  private long requestId;
+  private OutboxEvent.Type type;
+  private LocalDateTime createdDate;
+  private RequestSnapshot before;
+  private RequestSnapshot after;
+}
@@ -0,0 +1,43 @@
+package edu.ucsb.cs156.rec.models;
+
+import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that holds the columns of a recommendation request that a RequestEvent
+ * reports, by id rather than with the requester and professor.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RequestSnapshot {
+  private Long requesterId;
+  private Long professorId;
+  private String recommendationType;
+  private RequestStatus status;
+  private LocalDateTime submissionDate;
+  private LocalDateTime completionDate;
+
+  /**
+   * This method takes a snapshot of a request.
+   *
+   * @param request the request
+   * @return its current values
+   */
+  public static RequestSnapshot of(RecommendationRequest request) {
+    return RequestSnapshot.builder()
+        .requesterId(request.getRequester() == null ? null : request.getRequester().getId())
+        .professorId(request.getProfessor() == null ? null : request.getProfessor().getId())
+        .recommendationType(request.getRecommendationType())
+        .status(request.getStatus())
+        .submissionDate(request.getSubmissionDate())
+        .completionDate(request.getCompletionDate())
+        .build();
+  }
+}
@@ -0,0 +1,30 @@
+package edu.ucsb.cs156.rec.models;
+
+import java.util.List;
+import java.util.Map;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that summarizes a set of recommendation requests for the statistics page.
+ *
+ * <p>It is either the summary for one professor (professorId set, byProfessor null) or for every
+ * professor (professorId null, byProfessor holding one summary per professor).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class RequestStatistics {
+  private Long professorId;
+  private String professorName;
+  private long total;
+  private Map<String, Long> byStatus; // keyed by status label, every status is present
+  private Map<String, Long> byType; // keyed by request type, in alphabetical order
+  private long timedCompletions; // completed requests with a submission and completion date
+  private Long averageCompletionSeconds; // null if there are no timed completions
+  private List<RequestStatistics> byProfessor;
+}
@@ -0,0 +1,24 @@
+package edu.ucsb.cs156.rec.models;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * This is a model class that reports how well the user cache is doing.
+ *
+ * <p>It is returned by the admin endpoint so that the cache size and time to live can be tuned.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Builder
+public class UserCacheStats {
+  private long size; // number of entries currently cached (by email plus by id)
+  private long hits;
+  private long misses;
+  private long evictions; // entries removed because of size or age
+  private long invalidations; // entries removed because the user was changed or deleted
+}
@@ -0,0 +1,126 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.ArchivedRecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * The ArchivedRecommendationRequestRepository is a repository for ArchivedRecommendationRequest
+ * entities, the finished requests that have been moved out of the recommendationrequest table.
+ */
+@Repository
+public interface ArchivedRecommendationRequestRepository
+    extends CrudRepository<ArchivedRecommendationRequest, Long> {
+
+  /**
+   * This method copies recommendation requests into the archive in a single statement. The caller
+   * deletes them from the recommendationrequest table in the same transaction.
+   *
+   * @param ids ids of the requests to copy
+   * @param archivedDate the time of the move, stored with each archived request
+   * @return the number of requests copied
+   */
+  @Modifying(flushAutomatically = true)
+  @Query(
+      "INSERT INTO archivedrecommendationrequest"
+          + " (id, requester, professor, recommendationType, details, status, completionDate,"
+          + " dueDate, submissionDate, lastModifiedDate, archivedDate)"
+          + " SELECT r.id, r.requester, r.professor, r.recommendationType, r.details, r.status,"
+          + " r.completionDate, r.dueDate, r.submissionDate, r.lastModifiedDate, :archivedDate"
+          + " FROM recommendationrequest r WHERE r.id IN :ids")
+  int copyFromRequests(
+      @Param("ids") Collection<Long> ids, @Param("archivedDate") LocalDateTime archivedDate);
+
+  /** Order of the history listings, newest (largest id) first. */
+  String HISTORY_ORDER = " ORDER BY r.id DESC";
+
+  /**
+   * One page of the archived requests made by one user, newest first, read from the index on
+   * (requester_id, id).
+   *
+   * @param requesterId id of the user who made the requests
+   * @param before only return requests with an id less than this
+   * @param limit maximum number of rows to return
+   * @return the page of archived requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(
+      "SELECT r FROM archivedrecommendationrequest r"
+          + " WHERE r.requester.id = :requesterId AND r.id < :before"
+          + HISTORY_ORDER)
+  List<ArchivedRecommendationRequest> findRequesterHistoryPage(
+      @Param("requesterId") long requesterId, @Param("before") long before, Limit limit);
+
+  /**
+   * One page of the archived requests sent to one professor, newest first, read from the index on
+   * (professor_id, id).
+   *
+   * @param professorId id of the professor
+   * @param before only return requests with an id less than this
+   * @param limit maximum number of rows to return
+   * @return the page of archived requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(
+      "SELECT r FROM archivedrecommendationrequest r"
+          + " WHERE r.professor.id = :professorId AND r.id < :before"
+          + HISTORY_ORDER)
+  List<ArchivedRecommendationRequest> findProfessorHistoryPage(
+      @Param("professorId") long professorId, @Param("before") long before, Limit limit);
+
+  /**
+   * One page of all archived requests, newest first, read from the primary key.
+   *
+   * @param before only return requests with an id less than this
+   * @param limit maximum number of rows to return
+   * @return the page of archived requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query("SELECT r FROM archivedrecommendationrequest r WHERE r.id < :before" + HISTORY_ORDER)
+  List<ArchivedRecommendationRequest> findHistoryPage(@Param("before") long before, Limit limit);
+
+  /** The totals for one statistics row, computed from the archived requests. */
+  interface ArchiveTotals {
+    long getProfessorId();
+
+    String getRequestType();
+
+    RequestStatus getStatus();
+
+    long getRequestCount();
+
+    long getTimedCount();
+
+    long getTotalCompletionSeconds();
+  }
+
+  /**
+   * This method computes the statistics totals of the archived requests, grouped the same way as
+   * the statistics rows, so that a rebuild of the statistics can include them.
+   *
+   * @return one set of totals per professor, request type and status
+   */
+  @Query(
+      "SELECT r.professor.id AS professorId,"
+          + " COALESCE(r.recommendationType, '') AS requestType, r.status AS status,"
+          + " COUNT(r) AS requestCount,"
+          + " SUM(CASE WHEN r.status = edu.ucsb.cs156.rec.entities.RequestStatus.COMPLETED"
+          + " AND r.submissionDate IS NOT NULL AND r.completionDate IS NOT NULL"
+          + " THEN 1 ELSE 0 END) AS timedCount,"
+          + " SUM(CASE WHEN r.status = edu.ucsb.cs156.rec.entities.RequestStatus.COMPLETED"
+          + " AND r.submissionDate IS NOT NULL AND r.completionDate IS NOT NULL"
+          + " THEN CAST((r.completionDate - r.submissionDate) BY SECOND AS Long) ELSE 0 END)"
+          + " AS totalCompletionSeconds"
+          + " FROM archivedrecommendationrequest r WHERE r.professor IS NOT NULL"
+          + " GROUP BY r.professor.id, COALESCE(r.recommendationType, ''), r.status")
+  List<ArchiveTotals> totals();
+}
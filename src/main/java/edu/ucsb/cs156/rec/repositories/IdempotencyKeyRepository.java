@@ -0,0 +1,90 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.IdempotencyKey;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** The IdempotencyKeyRepository is a repository for IdempotencyKey entities. */
+@Repository
+public interface IdempotencyKeyRepository
+    extends CrudRepository<IdempotencyKey, IdempotencyKey.Key> {
+
+  /**
+   * This method finds a key that has not yet expired.
+   *
+   * @param userId id of the user that sent the key
+   * @param endpoint name of the endpoint the key was sent to
+   * @param idempotencyKey the key
+   * @param now the current time
+   * @return the key, if it is stored and has not expired
+   */
+  @Query(
+      "SELECT k FROM idempotencykey k WHERE k.userId = :userId AND k.endpoint = :endpoint"
+          + " AND k.idempotencyKey = :idempotencyKey AND k.expiresDate > :now")
+  Optional<IdempotencyKey> findLive(
+      @Param("userId") long userId,
+      @Param("endpoint") String endpoint,
+      @Param("idempotencyKey") String idempotencyKey,
+      @Param("now") LocalDateTime now);
+
+  /**
+   * This method stores a key with its response. It fails if the key is already stored, which is how
+   * a concurrent request with the same key is detected.
+   *
+   * @param userId id of the user that sent the key
+   * @param endpoint name of the endpoint the key was sent to
+   * @param idempotencyKey the key
+   * @param requestHash hash of the request's parameters
+   * @param responseBody the response, as JSON
+   * @param createdDate the current time
+   * @param expiresDate when the key expires
+   * @return the number of rows inserted
+   */
+  @Modifying
+  @Query(
+      "INSERT INTO idempotencykey (userId, endpoint, idempotencyKey, requestHash, responseBody,"
+          + " createdDate, expiresDate) VALUES (:userId, :endpoint, :idempotencyKey, :requestHash,"
+          + " :responseBody, :createdDate, :expiresDate)")
+  int insertKey(
+      @Param("userId") long userId,
+      @Param("endpoint") String endpoint,
+      @Param("idempotencyKey") String idempotencyKey,
+      @Param("requestHash") String requestHash,
+      @Param("responseBody") String responseBody,
+      @Param("createdDate") LocalDateTime createdDate,
+      @Param("expiresDate") LocalDateTime expiresDate);
+
+  /**
+   * This method deletes one key if it has expired, so that it can be used again.
+   *
+   * @param userId id of the user that sent the key
+   * @param endpoint name of the endpoint the key was sent to
+   * @param idempotencyKey the key
+   * @param now the current time
+   * @return the number of keys deleted
+   */
+  @Modifying
+  @Query(
+      "DELETE FROM idempotencykey k WHERE k.userId = :userId AND k.endpoint = :endpoint"
+          + " AND k.idempotencyKey = :idempotencyKey AND k.expiresDate <= :now")
+  int deleteExpiredKey(
+      @Param("userId") long userId,
+      @Param("endpoint") String endpoint,
+      @Param("idempotencyKey") String idempotencyKey,
+      @Param("now") LocalDateTime now);
+
+  /**
+   * This method deletes all the keys that have expired.
+   *
+   * @param now the current time
+   * @return the number of keys deleted
+   */
+  @Modifying
+  @Query("DELETE FROM idempotencykey k WHERE k.expiresDate <= :now")
+  int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,65 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.JobLock;
+import java.time.LocalDateTime;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** The JobLockRepository is a repository for JobLock entities. */
+@Repository
+public interface JobLockRepository extends CrudRepository<JobLock, String> {
+
+  /**
+   * This method takes the lease on a job, provided it has run out or is already held by the same
+   * owner.
+   *
+   * @param name name of the job
+   * @param owner the instance taking the lease
+   * @param until when the lease runs out
+   * @param now the current time
+   * @return the number of leases taken (0 if another instance holds it)
+   */
+  @Modifying
+  @Query(
+      "UPDATE joblock l SET l.owner = :owner, l.lockedUntil = :until"
+          + " WHERE l.name = :name AND (l.lockedUntil <= :now OR l.owner = :owner)")
+  int takeLease(
+      @Param("name") String name,
+      @Param("owner") String owner,
+      @Param("until") LocalDateTime until,
+      @Param("now") LocalDateTime now);
+
+  /**
+   * This method creates the lease on a job that has never been locked. It fails if another instance
+   * has just created it.
+   *
+   * @param name name of the job
+   * @param owner the instance taking the lease
+   * @param until when the lease runs out
+   * @return the number of rows inserted
+   */
+  @Modifying
+  @Query("INSERT INTO joblock (name, owner, lockedUntil) VALUES (:name, :owner, :until)")
+  int createLease(
+      @Param("name") String name,
+      @Param("owner") String owner,
+      @Param("until") LocalDateTime until);
+
+  /**
+   * This method ends a lease early, if the owner still holds it.
+   *
+   * @param name name of the job
+   * @param owner the instance that took the lease
+   * @param now the current time
+   * @return the number of leases ended
+   */
+  @Modifying
+  @Query(
+      "UPDATE joblock l SET l.lockedUntil = :now WHERE l.name = :name AND l.owner = :owner"
+          + " AND l.lockedUntil > :now")
+  int releaseLease(
+      @Param("name") String name, @Param("owner") String owner, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,41 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.Notification;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** The NotificationRepository is a repository for Notification entities. */
+@Repository
+public interface NotificationRepository extends CrudRepository<Notification, Long> {
+
+  /**
+   * This method returns the users who have notifications waiting.
+   *
+   * @return their ids, in ascending order
+   */
+  @Query("SELECT DISTINCT n.recipientId FROM notification n ORDER BY n.recipientId")
+  List<Long> findRecipientIds();
+
+  /**
+   * This method returns the notifications waiting for one user.
+   *
+   * @param recipientId id of the user
+   * @return the notifications, oldest first
+   */
+  List<Notification> findAllByRecipientIdOrderByIdAsc(long recipientId);
+
+  /**
+   * This method deletes notifications that have been sent.
+   *
+   * @param ids ids of the notifications
+   * @return the number of notifications deleted
+   */
+  @Modifying
+  @Query("DELETE FROM notification n WHERE n.id IN :ids")
+  int deleteByIds(@Param("ids") Collection<Long> ids);
+}
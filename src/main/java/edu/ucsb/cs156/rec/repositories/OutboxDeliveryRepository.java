@@ -0,0 +1,47 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.OutboxDelivery;
+import java.time.LocalDateTime;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** The OutboxDeliveryRepository is a repository for OutboxDelivery entities. */
+@Repository
+public interface OutboxDeliveryRepository
+    extends CrudRepository<OutboxDelivery, OutboxDelivery.Key> {
+
+  /**
+   * This method records that a consumer has had an event. It fails if that is already recorded.
+   *
+   * @param consumer name of the consumer
+   * @param eventId id of the event
+   * @param now the time of delivery
+   * @return the number of rows inserted
+   */
+  @Modifying
+  @Query(
+      "INSERT INTO outboxdelivery (consumer, eventId, deliveredDate)"
+          + " VALUES (:consumer, :eventId, :now)")
+  int markDelivered(
+      @Param("consumer") String consumer,
+      @Param("eventId") long eventId,
+      @Param("now") LocalDateTime now);
+
+  /**
+   * This method records that a consumer has had every event in the outbox, without handing them to
+   * it.
+   *
+   * @param consumer name of the consumer
+   * @param now the time of delivery
+   * @return the number of rows inserted
+   */
+  @Modifying
+  @Query(
+      "INSERT INTO outboxdelivery (consumer, eventId, deliveredDate)"
+          + " SELECT :consumer, e.id, :now FROM outboxevent e WHERE NOT EXISTS"
+          + " (SELECT d FROM outboxdelivery d WHERE d.consumer = :consumer AND d.eventId = e.id)")
+  int markAllDelivered(@Param("consumer") String consumer, @Param("now") LocalDateTime now);
+}
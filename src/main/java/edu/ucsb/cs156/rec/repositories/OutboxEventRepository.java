@@ -0,0 +1,82 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** The OutboxEventRepository is a repository for OutboxEvent entities. */
+@Repository
+public interface OutboxEventRepository extends CrudRepository<OutboxEvent, Long> {
+
+  /** How far behind a consumer is: the events it has not had yet, and when the oldest was made. */
+  interface Backlog {
+    long getCount();
+
+    LocalDateTime getOldest();
+  }
+
+  /** Events a consumer has not had yet. */
+  String UNDELIVERED =
+      "NOT EXISTS (SELECT d FROM outboxdelivery d"
+          + " WHERE d.consumer = :consumer AND d.eventId = e.id)";
+
+  /**
+   * This method returns the oldest events that a consumer has not had yet and may be handed now.
+   * Left out are events the consumer has failed on that are waiting to be tried again or have been
+   * dead lettered, and every later event for the same request (until the failed one is had), so
+   * that the consumer sees the events of each request in order.
+   *
+   * @param consumer name of the consumer
+   * @param now the current time
+   * @param limit maximum number of events to return
+   * @return the events, in id order
+   */
+  @Query(
+      "SELECT e FROM outboxevent e WHERE "
+          + UNDELIVERED
+          + " AND NOT EXISTS (SELECT f FROM outboxfailure f, outboxevent fe"
+          + " WHERE f.consumer = :consumer AND fe.id = f.eventId AND fe.requestId = e.requestId"
+          + " AND (fe.id < e.id OR (fe.id = e.id AND (f.deadLetteredDate IS NOT NULL"
+          + " OR f.nextAttemptDate > :now)))"
+          + " AND NOT EXISTS (SELECT d FROM outboxdelivery d"
+          + " WHERE d.consumer = :consumer AND d.eventId = fe.id))"
+          + " ORDER BY e.id ASC")
+  List<OutboxEvent> findUndelivered(
+      @Param("consumer") String consumer, @Param("now") LocalDateTime now, Limit limit);
+
+  /**
+   * This method counts the events that a consumer has not had yet, leaving out those it has given
+   * up on.
+   *
+   * @param consumer name of the consumer
+   * @return the number of events, and the creation date of the oldest (null if there are none)
+   */
+  @Query(
+      "SELECT COUNT(e) AS count, MIN(e.createdDate) AS oldest FROM outboxevent e WHERE "
+          + UNDELIVERED
+          + " AND NOT EXISTS (SELECT f FROM outboxfailure f WHERE f.consumer = :consumer"
+          + " AND f.eventId = e.id AND f.deadLetteredDate IS NOT NULL)")
+  Backlog backlog(@Param("consumer") String consumer);
+
+  /**
+   * This method deletes the events that every one of the given consumers has had. Their delivery
+   * rows go with them (the foreign key cascades).
+   *
+   * @param consumers names of the consumers
+   * @param consumerCount number of names in consumers
+   * @return the number of events deleted
+   */
+  @Modifying
+  @Query(
+      "DELETE FROM outboxevent e WHERE (SELECT COUNT(d) FROM outboxdelivery d"
+          + " WHERE d.eventId = e.id AND d.consumer IN :consumers) = :consumerCount")
+  int deleteDelivered(
+      @Param("consumers") Collection<String> consumers, @Param("consumerCount") long consumerCount);
+}
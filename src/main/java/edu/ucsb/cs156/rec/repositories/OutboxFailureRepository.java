@@ -0,0 +1,24 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.OutboxFailure;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** The OutboxFailureRepository is a repository for OutboxFailure entities. */
+@Repository
+public interface OutboxFailureRepository extends CrudRepository<OutboxFailure, OutboxFailure.Key> {
+
+  /**
+   * This method counts the events a consumer has given up on and not had since.
+   *
+   * @param consumer name of the consumer
+   * @return the number of dead lettered events
+   */
+  @Query(
+      "SELECT COUNT(f) FROM outboxfailure f WHERE f.consumer = :consumer"
+          + " AND f.deadLetteredDate IS NOT NULL AND NOT EXISTS (SELECT d FROM outboxdelivery d"
+          + " WHERE d.consumer = :consumer AND d.eventId = f.eventId)")
+  long countDeadLettered(@Param("consumer") String consumer);
+}
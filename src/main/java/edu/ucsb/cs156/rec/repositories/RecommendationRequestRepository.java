@@ -1,32 +1,47 @@
 package edu.ucsb.cs156.rec.repositories;
 
 import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
 import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.ListingFingerprint;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-/** The RecommendationRequestRepository is a repository for RecommendationRequest entities. */
+/**
+ * The RecommendationRequestRepository is a repository for RecommendationRequest entities.
+ *
+ * <p>The listing queries load the requester and professor in the same statement (through an entity
+ * graph) rather than issuing a separate select for each distinct user on the page.
+ */
 @Repository
 public interface RecommendationRequestRepository
     extends CrudRepository<RecommendationRequest, Long> {
   Optional<RecommendationRequest> findByIdAndRequester(long id, User requester_id);
 
   /**
-   * This method returns an iterable of recommendation requests with given requester_id.
+   * This method saves a recommendation request and writes it to the database straight away (the
+   * same as JpaRepository.saveAndFlush), so that its new version is known before the transaction
+   * ends.
    *
-   * @param requester_id requester_id within RecommendationRequest that maps to id in User table
-   * @return iterable of RecommendationRequests with requester_id == requester_id
+   * @param recommendationRequest the request to save
+   * @return the saved request
    */
-  Iterable<RecommendationRequest> findAllByRequesterId(Long requester_id);
-
-  /**
-   * This method returns an iterable of recommendation requests with given professor_id.
-   *
-   * @param professor_id professor_id within RecommendationRequest that maps to id in User table
-   * @return iterable of RecommendationRequests with professor_id == professor_id
-   */
-  Iterable<RecommendationRequest> findAllByProfessorId(Long professor_id);
+  <S extends RecommendationRequest> S saveAndFlush(S recommendationRequest);
 
   /**
    * This method returns an iterable of recommendation requests with given professor_id.
@@ -37,12 +52,463 @@ public interface RecommendationRequestRepository
    */
   Optional<RecommendationRequest> findByIdAndProfessor(long id, User professor_id);
 
+  // The listings below come in separate versions with and without a status, and for one requester
+  // and for all of them, rather than one query with "(:x IS NULL OR ...)" conditions: a generic
+  // plan for such a condition cannot use the index on the column it tests.
+
+  /** Listing of a professor's incoming requests. */
+  String INBOX = "SELECT r FROM recommendationrequest r WHERE r.professor.id = :professorId";
+
+  /** Condition limiting a listing to one status. */
+  String WITH_STATUS = " AND r.status = :status";
+
+  /** Condition for the rows of the inbox after the (dueDate, id) of the previous page. */
+  String INBOX_AFTER =
+      " AND (r.dueDate > :dueDate OR (r.dueDate = :dueDate AND r.id > :id) OR r.dueDate IS NULL)";
+
+  /** Condition for the rows of the inbox after a previous page that ended with no due date. */
+  String INBOX_AFTER_NULL_DUE_DATE = " AND r.dueDate IS NULL AND r.id > :id";
+
+  /** Order of the inbox, earliest due date first and requests with no due date last. */
+  String INBOX_ORDER = " ORDER BY r.dueDate ASC NULLS LAST, r.id ASC";
+
+  /**
+   * First page of a professor's incoming requests, ordered by (dueDate, id) with requests that have
+   * no due date last.
+   *
+   * @param professorId id of the professor
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(INBOX + INBOX_ORDER)
+  List<RecommendationRequest> findInboxPage(@Param("professorId") Long professorId, Limit limit);
+
+  /**
+   * First page of a professor's incoming requests with one status, ordered by (dueDate, id) with
+   * requests that have no due date last.
+   *
+   * @param professorId id of the professor
+   * @param status only return requests with this status
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(INBOX + WITH_STATUS + INBOX_ORDER)
+  List<RecommendationRequest> findInboxPageWithStatus(
+      @Param("professorId") Long professorId, @Param("status") RequestStatus status, Limit limit);
+
+  /**
+   * Next page of a professor's incoming requests, starting after the row with the given due date
+   * and id.
+   *
+   * @param professorId id of the professor
+   * @param dueDate due date of the last row of the previous page
+   * @param id id of the last row of the previous page
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(INBOX + INBOX_AFTER + INBOX_ORDER)
+  List<RecommendationRequest> findInboxPageAfter(
+      @Param("professorId") Long professorId,
+      @Param("dueDate") LocalDateTime dueDate,
+      @Param("id") long id,
+      Limit limit);
+
+  /**
+   * Next page of a professor's incoming requests with one status, starting after the row with the
+   * given due date and id.
+   *
+   * @param professorId id of the professor
+   * @param status only return requests with this status
+   * @param dueDate due date of the last row of the previous page
+   * @param id id of the last row of the previous page
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(INBOX + WITH_STATUS + INBOX_AFTER + INBOX_ORDER)
+  List<RecommendationRequest> findInboxPageWithStatusAfter(
+      @Param("professorId") Long professorId,
+      @Param("status") RequestStatus status,
+      @Param("dueDate") LocalDateTime dueDate,
+      @Param("id") long id,
+      Limit limit);
+
+  /**
+   * Next page of a professor's incoming requests when the previous page ended on a request with no
+   * due date.
+   *
+   * @param professorId id of the professor
+   * @param id id of the last row of the previous page
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(INBOX + INBOX_AFTER_NULL_DUE_DATE + " ORDER BY r.id ASC")
+  List<RecommendationRequest> findInboxPageAfterNullDueDate(
+      @Param("professorId") Long professorId, @Param("id") long id, Limit limit);
+
+  /**
+   * Next page of a professor's incoming requests with one status when the previous page ended on a
+   * request with no due date.
+   *
+   * @param professorId id of the professor
+   * @param status only return requests with this status
+   * @param id id of the last row of the previous page
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(INBOX + WITH_STATUS + INBOX_AFTER_NULL_DUE_DATE + " ORDER BY r.id ASC")
+  List<RecommendationRequest> findInboxPageWithStatusAfterNullDueDate(
+      @Param("professorId") Long professorId,
+      @Param("status") RequestStatus status,
+      @Param("id") long id,
+      Limit limit);
+
+  /** Listing of all requests, for admins. */
+  String SUBMITTED = "SELECT r FROM recommendationrequest r";
+
+  /** Listing of the requests made by one user. */
+  String SUBMITTED_BY_REQUESTER = SUBMITTED + " WHERE r.requester.id = :requesterId";
+
+  /**
+   * Condition for the rows of the submitted listing after the (submissionDate, id) of the previous
+   * page. The {@code <=} bound is redundant but gives the planner a range it can seek to in the
+   * (requester_id, submission_date) index.
+   */
+  String SUBMITTED_AFTER =
+      "r.submissionDate <= :submissionDate"
+          + " AND (r.submissionDate < :submissionDate"
+          + " OR (r.submissionDate = :submissionDate AND r.id < :id))";
+
+  /**
+   * Condition for the rows of the submitted listing after a previous page that ended with no
+   * submission date: the remaining requests with no date, then all of the dated ones.
+   */
+  String SUBMITTED_AFTER_NULL_SUBMISSION_DATE =
+      "((r.submissionDate IS NULL AND r.id < :id) OR r.submissionDate IS NOT NULL)";
+
+  /**
+   * Order of the submitted listing, newest first. Requests with no submission date come first,
+   * which is the order a backward scan of an index on (submissionDate, id) produces in Postgres.
+   */
+  String SUBMITTED_ORDER = " ORDER BY r.submissionDate DESC NULLS FIRST, r.id DESC";
+
+  /**
+   * First page of the requests made by one user, newest first, ordered by (submissionDate, id)
+   * descending.
+   *
+   * @param requesterId id of the user who made the requests
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(SUBMITTED_BY_REQUESTER + SUBMITTED_ORDER)
+  List<RecommendationRequest> findSubmittedPage(
+      @Param("requesterId") Long requesterId, Limit limit);
+
+  /**
+   * First page of all requests, for admins, newest first, ordered by (submissionDate, id)
+   * descending.
+   *
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(SUBMITTED + SUBMITTED_ORDER)
+  List<RecommendationRequest> findAllSubmittedPage(Limit limit);
+
+  /**
+   * Next page of the requests made by one user, starting after the row with the given submission
+   * date and id.
+   *
+   * @param requesterId id of the user who made the requests
+   * @param submissionDate submission date of the last row of the previous page
+   * @param id id of the last row of the previous page
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(SUBMITTED_BY_REQUESTER + " AND " + SUBMITTED_AFTER + SUBMITTED_ORDER)
+  List<RecommendationRequest> findSubmittedPageAfter(
+      @Param("requesterId") Long requesterId,
+      @Param("submissionDate") LocalDateTime submissionDate,
+      @Param("id") long id,
+      Limit limit);
+
+  /**
+   * Next page of all requests, starting after the row with the given submission date and id.
+   *
+   * @param submissionDate submission date of the last row of the previous page
+   * @param id id of the last row of the previous page
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(SUBMITTED + " WHERE " + SUBMITTED_AFTER + SUBMITTED_ORDER)
+  List<RecommendationRequest> findAllSubmittedPageAfter(
+      @Param("submissionDate") LocalDateTime submissionDate, @Param("id") long id, Limit limit);
+
+  /**
+   * Next page of the requests made by one user when the previous page ended on a request with no
+   * submission date.
+   *
+   * @param requesterId id of the user who made the requests
+   * @param id id of the last row of the previous page
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(SUBMITTED_BY_REQUESTER + " AND " + SUBMITTED_AFTER_NULL_SUBMISSION_DATE + SUBMITTED_ORDER)
+  List<RecommendationRequest> findSubmittedPageAfterNullSubmissionDate(
+      @Param("requesterId") Long requesterId, @Param("id") long id, Limit limit);
+
+  /**
+   * Next page of all requests when the previous page ended on a request with no submission date.
+   *
+   * @param id id of the last row of the previous page
+   * @param limit maximum number of rows to return
+   * @return the page of recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @Query(SUBMITTED + " WHERE " + SUBMITTED_AFTER_NULL_SUBMISSION_DATE + SUBMITTED_ORDER)
+  List<RecommendationRequest> findAllSubmittedPageAfterNullSubmissionDate(
+      @Param("id") long id, Limit limit);
+
+  /**
+   * Summary of a listing: its count, largest id, latest last modified date, and the total role
+   * version of the requesters and professors it includes.
+   */
+  String FINGERPRINT =
+      "SELECT new edu.ucsb.cs156.rec.models.ListingFingerprint("
+          + "COUNT(r), MAX(r.id), MAX(r.lastModifiedDate),"
+          + " SUM(requester.roleVersion + professor.roleVersion))"
+          + " FROM recommendationrequest r JOIN r.requester requester JOIN r.professor professor";
+
+  /**
+   * This method summarizes a professor's incoming requests, for the ETag of the inbox listing.
+   *
+   * @param professorId id of the professor
+   * @return the fingerprint of the requests
+   */
+  @Query(FINGERPRINT + " WHERE r.professor.id = :professorId")
+  ListingFingerprint inboxFingerprint(@Param("professorId") Long professorId);
+
+  /**
+   * This method summarizes a professor's incoming requests with one status, for the ETag of the
+   * filtered inbox listing.
+   *
+   * @param professorId id of the professor
+   * @param status only count requests with this status
+   * @return the fingerprint of the requests
+   */
+  @Query(FINGERPRINT + " WHERE r.professor.id = :professorId" + WITH_STATUS)
+  ListingFingerprint inboxFingerprintWithStatus(
+      @Param("professorId") Long professorId, @Param("status") RequestStatus status);
+
+  /**
+   * This method summarizes the requests made by one user, for the ETag of the submitted listing.
+   *
+   * @param requesterId id of the user who made the requests
+   * @return the fingerprint of the requests
+   */
+  @Query(FINGERPRINT + " WHERE r.requester.id = :requesterId")
+  ListingFingerprint submittedFingerprint(@Param("requesterId") Long requesterId);
+
+  /** Number of rows the export fetches from the database at a time. */
+  int EXPORT_FETCH_SIZE = 500;
+
+  /**
+   * This method streams every recommendation request, oldest first, with its requester and
+   * professor. Rows are fetched from the database {@value #EXPORT_FETCH_SIZE} at a time as the
+   * stream is read, rather than all at once. It must be called in a transaction, and the stream
+   * must be closed when done.
+   *
+   * @return a stream of all recommendation requests
+   */
+  @EntityGraph(attributePaths = {"requester", "professor"})
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  @Query("SELECT r FROM recommendationrequest r ORDER BY r.id ASC")
+  Stream<RecommendationRequest> streamAll();
+
+  /**
+   * The columns of a recommendation request that a status change needs to know about, with the
+   * requester by id and without the professor.
+   */
+  interface StatusRow {
+    long getId();
+
+    Long getRequesterId();
+
+    String getRecommendationType();
+
+    RequestStatus getStatus();
+
+    LocalDateTime getSubmissionDate();
+
+    LocalDateTime getCompletionDate();
+  }
+
+  /**
+   * The columns of a recommendation request that deleting it needs: the ones the delete event
+   * reports, plus the version that the delete checks.
+   */
+  interface DeleteRow extends StatusRow {
+    Long getProfessorId();
+
+    long getVersion();
+  }
+
+  /**
+   * This method reads the columns needed to delete a request, without loading the requester and
+   * professor. Passing a requester or professor id limits the result to requests that belong to
+   * them.
+   *
+   * @param id id of the request
+   * @param requesterId id of the user who must have made the request, or null for any
+   * @param professorId id of the professor the request must be sent to, or null for any
+   * @return the request, or empty if there is no such request or it belongs to someone else
+   */
+  @Query(
+      "SELECT r.id AS id, r.requester.id AS requesterId,"
+          + " r.recommendationType AS recommendationType, r.status AS status,"
+          + " r.submissionDate AS submissionDate, r.completionDate AS completionDate,"
+          + " r.professor.id AS professorId, r.version AS version"
+          + " FROM recommendationrequest r WHERE r.id = :id"
+          + " AND (:requesterId IS NULL OR r.requester.id = :requesterId)"
+          + " AND (:professorId IS NULL OR r.professor.id = :professorId)")
+  Optional<DeleteRow> findDeleteRow(
+      @Param("id") long id,
+      @Param("requesterId") Long requesterId,
+      @Param("professorId") Long professorId);
+
+  /**
+   * This method deletes a request in a single statement, provided it has not changed since it was
+   * read.
+   *
+   * @param id id of the request
+   * @param version the version that was read
+   * @return the number of requests deleted (0 if the request has since been changed or deleted)
+   */
+  @Modifying
+  @Query("DELETE FROM recommendationrequest r WHERE r.id = :id AND r.version = :version")
+  int deleteByIdAndVersion(@Param("id") long id, @Param("version") long version);
+
+  /**
+   * This method reads the given requests of one professor and locks them until the end of the
+   * transaction, so that their status cannot change between reading and updating them.
+   *
+   * @param professorId id of the professor
+   * @param ids ids of the requests
+   * @return the requests among ids that belong to the professor, in no particular order
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query(
+      "SELECT r.id AS id, r.requester.id AS requesterId,"
+          + " r.recommendationType AS recommendationType, r.status AS status,"
+          + " r.submissionDate AS submissionDate, r.completionDate AS completionDate"
+          + " FROM recommendationrequest r"
+          + " WHERE r.professor.id = :professorId AND r.id IN :ids")
+  List<StatusRow> lockStatusRows(
+      @Param("professorId") long professorId, @Param("ids") Collection<Long> ids);
+
+  /**
+   * This method sets the status of many requests of one professor in a single statement. Like any
+   * other update it raises the version of each request it changes.
+   *
+   * @param professorId id of the professor
+   * @param ids ids of the requests to change
+   * @param status the new status
+   * @param completionDate the new completion date, or null to leave it unchanged
+   * @param now the time of the change, stored as the last modified date
+   * @return the number of requests changed
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query(
+      "UPDATE recommendationrequest r SET r.status = :status,"
+          + " r.completionDate = COALESCE(:completionDate, r.completionDate),"
+          + " r.lastModifiedDate = :now, r.version = r.version + 1"
+          + " WHERE r.professor.id = :professorId AND r.id IN :ids")
+  int updateStatus(
+      @Param("professorId") long professorId,
+      @Param("ids") Collection<Long> ids,
+      @Param("status") RequestStatus status,
+      @Param("completionDate") LocalDateTime completionDate,
+      @Param("now") LocalDateTime now);
+
+  /**
+   * This method reads the ids of the oldest finished requests with one status that are old enough
+   * to archive, and locks them until the end of the transaction so they cannot change while they
+   * are moved. The status and cutoff are a range of the index on (status_code, last_modified_date),
+   * which also gives the order, so a chunk reads only the rows it returns. Each chunk is deleted
+   * once it has been moved, so the next one starts at the front of the range again.
+   *
+   * @param status the status of the requests
+   * @param cutoff only return requests last changed before this time
+   * @param limit maximum number of ids to return
+   * @return the ids, oldest change first
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query(
+      "SELECT r.id FROM recommendationrequest r WHERE r.status = :status"
+          + " AND r.lastModifiedDate < :cutoff ORDER BY r.lastModifiedDate ASC")
+  List<Long> lockArchivableIds(
+      @Param("status") RequestStatus status, @Param("cutoff") LocalDateTime cutoff, Limit limit);
+
+  /** The columns of a recommendation request that a due date reminder needs. */
+  interface DueRow {
+    long getId();
+
+    LocalDateTime getDueDate();
+
+    Long getProfessorId();
+
+    Long getRequesterId();
+
+    String getRecommendationType();
+  }
+
+  /**
+   * This method reads the requests with the given statuses that are due in a range of dates, a
+   * chunk at a time in (dueDate, id) order, so that it is a range scan of the index on (due_date,
+   * id). Requests with no professor are left out, since there is nobody to remind.
+   *
+   * @param statuses only return requests with one of these statuses
+   * @param afterDueDate only return requests due after this date, or due on it with an id greater
+   *     than afterId
+   * @param afterId id of the last request already read with a due date of afterDueDate
+   * @param dueBy only return requests due on or before this date
+   * @param limit maximum number of rows to return
+   * @return the requests, in ascending order of due date and id
+   */
+  @Query(
+      "SELECT r.id AS id, r.dueDate AS dueDate, r.professor.id AS professorId,"
+          + " r.requester.id AS requesterId, r.recommendationType AS recommendationType"
+          + " FROM recommendationrequest r"
+          + " WHERE r.dueDate >= :afterDueDate AND r.dueDate <= :dueBy"
+          + " AND (r.dueDate > :afterDueDate OR r.id > :afterId)"
+          + " AND r.status IN :statuses AND r.professor.id IS NOT NULL"
+          + " ORDER BY r.dueDate ASC, r.id ASC")
+  List<DueRow> findDueBetween(
+      @Param("statuses") Collection<RequestStatus> statuses,
+      @Param("afterDueDate") LocalDateTime afterDueDate,
+      @Param("afterId") long afterId,
+      @Param("dueBy") LocalDateTime dueBy,
+      Limit limit);
+
   /**
-   * Find all recommendation requests by professor ID and status.
+   * This method deletes many requests in a single statement.
    *
-   * @param professor_id professor_id within RecommendationRequest that maps to id in User table
-   * @param status the status of recommendation request
-   * @return a list of recommendation requests matching the criteria
+   * @param ids ids of the requests to delete
+   * @return the number of requests deleted
    */
-  Iterable<RecommendationRequest> findAllByProfessorIdAndStatus(Long professor_id, String status);
+  @Modifying
+  @Query("DELETE FROM recommendationrequest r WHERE r.id IN :ids")
+  int deleteByIds(@Param("ids") Collection<Long> ids);
 }
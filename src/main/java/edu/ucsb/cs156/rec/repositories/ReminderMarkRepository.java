@@ -0,0 +1,9 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.ReminderMark;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+/** The ReminderMarkRepository is a repository for ReminderMark entities. */
+@Repository
+public interface ReminderMarkRepository extends CrudRepository<ReminderMark, Integer> {}
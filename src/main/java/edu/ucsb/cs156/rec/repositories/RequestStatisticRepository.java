@@ -0,0 +1,73 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import edu.ucsb.cs156.rec.entities.RequestStatistic;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/** The RequestStatisticRepository is a repository for RequestStatistic entities. */
+@Repository
+public interface RequestStatisticRepository extends CrudRepository<RequestStatistic, Long> {
+  /**
+   * This method returns the statistics rows for one professor.
+   *
+   * @param professorId id of the professor
+   * @return the statistics rows for that professor
+   */
+  Iterable<RequestStatistic> findAllByProfessorId(long professorId);
+
+  /**
+   * This method adds to the totals in one statistics row, in a single statement so that concurrent
+   * changes to the same row cannot lose an update.
+   *
+   * @param professorId id of the professor
+   * @param requestType type of the requests
+   * @param status status of the requests
+   * @param requests number of requests to add (negative to subtract)
+   * @param timed number of timed completions to add
+   * @param seconds completion seconds to add
+   * @return the number of rows changed (zero if the row does not exist yet)
+   */
+  @Modifying(flushAutomatically = true)
+  @Query(
+      "UPDATE requeststatistic s SET s.requestCount = s.requestCount + :requests,"
+          + " s.timedCount = s.timedCount + :timed,"
+          + " s.totalCompletionSeconds = s.totalCompletionSeconds + :seconds"
+          + " WHERE s.professorId = :professorId AND s.requestType = :requestType"
+          + " AND s.status = :status")
+  int addToTotals(
+      @Param("professorId") long professorId,
+      @Param("requestType") String requestType,
+      @Param("status") RequestStatus status,
+      @Param("requests") long requests,
+      @Param("timed") long timed,
+      @Param("seconds") long seconds);
+
+  /** This method deletes every statistics row. */
+  @Modifying
+  @Query("DELETE FROM requeststatistic")
+  void deleteAllRows();
+
+  /**
+   * This method recomputes every statistics row from the recommendation requests table.
+   *
+   * @return the number of rows inserted
+   */
+  @Modifying
+  @Query(
+      "INSERT INTO requeststatistic"
+          + " (professorId, requestType, status, requestCount, timedCount, totalCompletionSeconds)"
+          + " SELECT r.professor.id, COALESCE(r.recommendationType, ''), r.status, COUNT(r),"
+          + " SUM(CASE WHEN r.status = edu.ucsb.cs156.rec.entities.RequestStatus.COMPLETED"
+          + " AND r.submissionDate IS NOT NULL AND r.completionDate IS NOT NULL"
+          + " THEN 1 ELSE 0 END),"
+          + " SUM(CASE WHEN r.status = edu.ucsb.cs156.rec.entities.RequestStatus.COMPLETED"
+          + " AND r.submissionDate IS NOT NULL AND r.completionDate IS NOT NULL"
+          + " THEN CAST((r.completionDate - r.submissionDate) BY SECOND AS Long) ELSE 0 END)"
+          + " FROM recommendationrequest r WHERE r.professor IS NOT NULL"
+          + " GROUP BY r.professor.id, COALESCE(r.recommendationType, ''), r.status")
+  int insertFromRequests();
+}
@@ -2,7 +2,10 @@ package edu.ucsb.cs156.rec.repositories;
 
 import edu.ucsb.cs156.rec.entities.RequestType;
 import java.util.Optional;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /** The RequestTypeRepository is a repository for RequestType entities. */
@@ -15,4 +18,25 @@ public interface RequestTypeRepository extends CrudRepository<RequestType, Long>
    * @return all RequestType entities with a given requestType
    */
   Optional<RequestType> findByRequestType(String requestType);
+
+  /**
+   * This method deletes a request type in a single statement, without loading it first.
+   *
+   * @param id id of the request type
+   * @return the number of request types deleted (0 if there is none with that id)
+   */
+  @Modifying
+  @Query("DELETE FROM requesttype t WHERE t.id = :id")
+  int deleteRequestTypeById(@Param("id") long id);
+
+  /**
+   * This method changes the name of a request type in a single statement, without loading it first.
+   *
+   * @param id id of the request type
+   * @param requestType the new name
+   * @return the number of request types changed (0 if there is none with that id)
+   */
+  @Modifying
+  @Query("UPDATE requesttype t SET t.requestType = :requestType WHERE t.id = :id")
+  int renameRequestType(@Param("id") long id, @Param("requestType") String requestType);
 }
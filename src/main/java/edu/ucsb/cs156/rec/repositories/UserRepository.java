@@ -1,8 +1,17 @@
 package edu.ucsb.cs156.rec.repositories;
 
 import edu.ucsb.cs156.rec.entities.User;
+import jakarta.persistence.QueryHint;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 /** The UserRepository is a repository for User entities. */
@@ -16,10 +25,124 @@ public interface UserRepository extends CrudRepository<User, Long> {
    */
   Optional<User> findByEmail(String email);
 
+  /**
+   * This method returns the role version of a user, so that a copy of the user kept in memory can
+   * be checked against the database without loading the whole row.
+   *
+   * @param id id of the user
+   * @return Optional of the role version (empty if there is no such user)
+   */
+  @Query("SELECT u.roleVersion FROM users u WHERE u.id = :id")
+  Optional<Long> findRoleVersionById(@Param("id") long id);
+
   /**
    * This method returns a an iterable of User entities that have professor=true.
    *
    * @return Iterable of user entities with professor=true (empty if not found)
    */
   Iterable<User> professorIsTrue();
+
+  /** Number of rows the users listing fetches from the database at a time. */
+  int LISTING_FETCH_SIZE = 500;
+
+  /** Condition shared by the users listing queries. */
+  String LISTING_CONDITION =
+      " WHERE u.id > :after AND (:prefix IS NULL"
+          + " OR LOWER(u.email) LIKE :prefix ESCAPE '\\'"
+          + " OR LOWER(u.fullName) LIKE :prefix ESCAPE '\\'"
+          + " OR LOWER(u.familyName) LIKE :prefix ESCAPE '\\')"
+          + " ORDER BY u.id ASC";
+
+  /**
+   * This method streams the users after a given id, in id order, fetching them from the database
+   * {@value #LISTING_FETCH_SIZE} at a time. It must be called in a transaction, and the stream must
+   * be closed when done.
+   *
+   * @param prefix lower case LIKE pattern (such as {@code joe%}) matched against the email, full
+   *     name and family name, or null for all users
+   * @param after only return users with an id greater than this
+   * @return a stream of users
+   */
+  @QueryHints({
+    @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + LISTING_FETCH_SIZE),
+    @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+  })
+  @Query("SELECT u FROM users u" + LISTING_CONDITION)
+  Stream<User> streamUsers(@Param("prefix") String prefix, @Param("after") long after);
+
+  /**
+   * This method returns one page of users after a given id, in id order.
+   *
+   * @param prefix lower case LIKE pattern (such as {@code joe%}) matched against the email, full
+   *     name and family name, or null for all users
+   * @param after only return users with an id greater than this
+   * @param limit maximum number of users to return
+   * @return the page of users
+   */
+  @Query("SELECT u FROM users u" + LISTING_CONDITION)
+  List<User> findUsersPage(@Param("prefix") String prefix, @Param("after") long after, Limit limit);
+
+  /**
+   * This method deletes the user with a given id in a single statement.
+   *
+   * @param id id of the user
+   * @return the number of users deleted (0 if there is no such user)
+   */
+  @Modifying
+  @Query("DELETE FROM users u WHERE u.id = :id")
+  int deleteUserById(@Param("id") long id);
+
+  /**
+   * This method makes a user an admin and bumps its role version, in a single statement, if the
+   * user is not already one.
+   *
+   * @param id id of the user
+   * @return the number of users changed (0 if there is no such user or it is already an admin)
+   */
+  @Modifying
+  @Query(
+      "UPDATE users u SET u.admin = TRUE, u.roleVersion = u.roleVersion + 1"
+          + " WHERE u.id = :id AND u.admin = FALSE")
+  int grantAdmin(@Param("id") long id);
+
+  /**
+   * This method removes the admin flag from a user and bumps its role version, in a single
+   * statement, if the user is an admin. The current user may not remove their own admin flag.
+   *
+   * @param id id of the user
+   * @param currentUserId id of the user making the change
+   * @return the number of users changed (0 if there is no such user, if it is not an admin, or if
+   *     it is the current user)
+   */
+  @Modifying
+  @Query(
+      "UPDATE users u SET u.admin = FALSE, u.roleVersion = u.roleVersion + 1"
+          + " WHERE u.id = :id AND u.admin = TRUE AND u.id <> :currentUserId")
+  int revokeAdmin(@Param("id") long id, @Param("currentUserId") long currentUserId);
+
+  /**
+   * This method makes a user a professor and bumps its role version, in a single statement, if the
+   * user is not already one.
+   *
+   * @param id id of the user
+   * @return the number of users changed (0 if there is no such user or it is already a professor)
+   */
+  @Modifying
+  @Query(
+      "UPDATE users u SET u.professor = TRUE, u.roleVersion = u.roleVersion + 1"
+          + " WHERE u.id = :id AND u.professor = FALSE")
+  int grantProfessor(@Param("id") long id);
+
+  /**
+   * This method removes the professor flag from a user and bumps its role version, in a single
+   * statement, if the user is a professor.
+   *
+   * @param id id of the user
+   * @return the number of users changed (0 if there is no such user or it is not a professor)
+   */
+  @Modifying
+  @Query(
+      "UPDATE users u SET u.professor = FALSE, u.roleVersion = u.roleVersion + 1"
+          + " WHERE u.id = :id AND u.professor = TRUE")
+  int revokeProfessor(@Param("id") long id);
 }
@@ -0,0 +1,37 @@
+package edu.ucsb.cs156.rec.services;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * This is a helper for the in memory caches (UserCache and RequestTypeRegistry), which must not
+ * show a change to other requests before the change is committed.
+ *
+ * <p>If a cache were updated inside the transaction that made the change, another request could
+ * read the new value from the cache and act on it before it is committed, and if the transaction
+ * were then rolled back the cache would keep a value that was never in the database.
+ */
+public final class AfterCommit {
+
+  private AfterCommit() {}
+
+  /**
+   * This method runs an action once the current transaction commits, or straight away if there is
+   * no transaction. If the transaction is rolled back the action is not run.
+   *
+   * @param action the action to run
+   */
+  public static void run(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+}
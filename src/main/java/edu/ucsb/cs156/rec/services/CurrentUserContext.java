@@ -0,0 +1,98 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.CurrentUser;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * This is a service that remembers the identity of the logged in user for the duration of a single
+ * HTTP request.
+ *
+ * <p>The RoleInterceptor, the CurrentUserService and every controller that calls {@code
+ * getCurrentUser()} all need the same User row. Rather than each of them looking it up, the first
+ * lookup is stored as a request attribute and reused for the rest of the request.
+ *
+ * <p>Outside of an HTTP request (for example in a background job) nothing is remembered and every
+ * call goes straight to the UserCache.
+ */
+@Service("currentUserContext")
+public class CurrentUserContext {
+
+  static final String ATTRIBUTE_NAME = CurrentUserContext.class.getName();
+
+  @Autowired UserCache userCache;
+
+  /** The values remembered for a single request. */
+  static class Memo {
+    final Map<String, Optional<User>> usersByEmail = new HashMap<>();
+    CurrentUser currentUser;
+  }
+
+  /**
+   * This method returns the User with the given email, querying the database at most once per
+   * request for each email.
+   *
+   * @param email email address of the user
+   * @return Optional of User (empty if not found)
+   */
+  public Optional<User> findByEmail(String email) {
+    Memo memo = getMemo();
+    if (memo == null) {
+      return userCache.findByEmail(email);
+    }
+    return memo.usersByEmail.computeIfAbsent(email, userCache::findByEmail);
+  }
+
+  /**
+   * This method records a User that was created or changed during this request, so that later
+   * lookups (in this request and in the user cache) see the new values.
+   *
+   * @param user the user that was saved
+   */
+  public void remember(User user) {
+    userCache.put(user);
+    Memo memo = getMemo();
+    if (memo != null) {
+      memo.usersByEmail.put(user.getEmail(), Optional.of(user));
+      memo.currentUser = null;
+    }
+  }
+
+  /**
+   * This method returns the CurrentUser for this request, building it with the supplied function
+   * the first time it is asked for.
+   *
+   * @param builder function that builds the CurrentUser
+   * @return the current user
+   */
+  public CurrentUser getCurrentUser(Supplier<CurrentUser> builder) {
+    Memo memo = getMemo();
+    if (memo == null) {
+      return builder.get();
+    }
+    if (memo.currentUser == null) {
+      memo.currentUser = builder.get();
+    }
+    return memo.currentUser;
+  }
+
+  private static Memo getMemo() {
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    if (attributes == null) {
+      return null;
+    }
+    Memo memo = (Memo) attributes.getAttribute(ATTRIBUTE_NAME, RequestAttributes.SCOPE_REQUEST);
+    if (memo == null) {
+      memo = new Memo();
+      attributes.setAttribute(ATTRIBUTE_NAME, memo, RequestAttributes.SCOPE_REQUEST);
+    }
+    return memo;
+  }
+}
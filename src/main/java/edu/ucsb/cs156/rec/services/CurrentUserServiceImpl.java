@@ -18,6 +18,9 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * This is a service that provides information about the current user.
@@ -32,18 +35,27 @@ public class CurrentUserServiceImpl extends CurrentUserService {
 
   @Autowired GrantedAuthoritiesService grantedAuthoritiesService;
 
+  @Autowired CurrentUserContext currentUserContext;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
   @Value("${app.admin.emails}")
   private final List<String> adminEmails = new ArrayList<String>();
 
   /**
-   * This method returns the current user as a User object.
+   * This method returns the current user as a CurrentUser object. The result is built once per
+   * request and then reused.
    *
    * @return the current user
    */
   public CurrentUser getCurrentUser() {
-    CurrentUser cu = CurrentUser.builder().user(this.getUser()).roles(this.getRoles()).build();
-    log.info("getCurrentUser returns {}", cu);
-    return cu;
+    return currentUserContext.getCurrentUser(
+        () -> {
+          CurrentUser cu =
+              CurrentUser.builder().user(this.getUser()).roles(this.getRoles()).build();
+          log.debug("getCurrentUser returns {}", cu);
+          return cu;
+        });
   }
 
   /**
@@ -51,7 +63,10 @@ public class CurrentUserServiceImpl extends CurrentUserService {
    * automatically injected by Spring.
    *
    * <p>This method also has a side effect of storing the user in the database if they are not
-   * already there.
+   * already there. For a web request the RoleInterceptor calls it before the handler starts a
+   * transaction, so the user is normally saved then. The save is still done in a read-write
+   * transaction of its own, since a caller in a read-only transaction would otherwise be using a
+   * read replica, and would not flush it.
    *
    * @param securityContext the security context (provided by Spring)
    * @param authentication the authentication token (provided by Spring)
@@ -70,15 +85,16 @@ public class CurrentUserServiceImpl extends CurrentUserService {
     String locale = oAuthUser.getAttribute("locale");
     String hostedDomain = oAuthUser.getAttribute("hd");
 
-    java.util.Map<java.lang.String, java.lang.Object> attrs = oAuthUser.getAttributes();
-    log.info("attrs={}", attrs);
+    log.debug("attrs={}", oAuthUser.getAttributes());
 
-    Optional<User> ou = userRepository.findByEmail(email);
+    Optional<User> ou = currentUserContext.findByEmail(email);
     if (ou.isPresent()) {
       User u = ou.get();
       if (adminEmails.contains(email) && !u.getAdmin()) {
-        u.setAdmin(true);
-        userRepository.save(u);
+        // the cached instance is shared with other requests, so it is copied rather than changed,
+        // and only the saved copy is cached
+        User promoted = u.toBuilder().admin(true).roleVersion(u.getRoleVersion() + 1).build();
+        return save(promoted);
       }
       return u;
     }
@@ -96,8 +112,24 @@ public class CurrentUserServiceImpl extends CurrentUserService {
             .hostedDomain(hostedDomain)
             .admin(adminEmails.contains(email))
             .build();
-    userRepository.save(u);
-    return u;
+    return save(u);
+  }
+
+  /**
+   * Saves a user in a new read-write transaction, whatever transaction the caller is in, and
+   * remembers it once that transaction commits. Called from within a transaction this needs a
+   * second connection, which is why the RoleInterceptor saves the user before the handler's
+   * transaction starts.
+   */
+  private User save(User user) {
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    return template.execute(
+        t -> {
+          User saved = userRepository.save(user);
+          currentUserContext.remember(saved);
+          return saved;
+        });
   }
 
   /**
@@ -0,0 +1,173 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.entities.Notification;
+import edu.ucsb.cs156.rec.entities.ReminderMark;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.repositories.NotificationRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository.DueRow;
+import edu.ucsb.cs156.rec.repositories.ReminderMarkRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This is a service that reminds professors of open requests (those that are not COMPLETED or
+ * DENIED) as their due date comes near, once for each of the windows in {@code
+ * app.reminders.windowDays}: by default when a request is due within 7 days, within 1 day, and when
+ * it is overdue (a window of 0 days). The reminders are queued as notifications, so they go out in
+ * the professor's next email digest.
+ *
+ * <p>Each window remembers in the remindermark table the (due date, id) of the last request it has
+ * reminded, and each run reads on from there to the end of the window, {@code
+ * app.reminders.chunkSize} requests at a time, as a range scan of the index on (due_date, id). The
+ * mark is moved on in the same transaction as the reminders of each chunk, so every request is
+ * reminded once per window even if a run stops part way. A request that comes into a window
+ * together with a narrower one (say, one made the day before it is due) is only reminded for the
+ * narrower one. A window that has never run starts from the current time, so requests that were
+ * already overdue when reminders were turned on are not reminded, and a request that is made with
+ * (or moved to) a due date that a window has already passed is not reminded for that window.
+ *
+ * <p>When several instances of the application are running, only the one holding the {@value
+ * #JOB_NAME} lease (see {@link JobLockService}) runs the scan.
+ *
+ * <p>It only exists when a mail server is configured ({@code spring.mail.host}).
+ */
+@Slf4j
+@Service("dueDateReminderService")
+@ConditionalOnProperty(name = "spring.mail.host")
+public class DueDateReminderService {
+
+  public static final String JOB_NAME = "due-date-reminders";
+
+  /** The statuses of requests that are still being worked on, which are the ones reminded. */
+  static final Set<RequestStatus> OPEN_STATUSES =
+      EnumSet.complementOf(EnumSet.copyOf(RequestArchiveService.FINAL_STATUSES));
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired ReminderMarkRepository reminderMarkRepository;
+
+  @Autowired NotificationRepository notificationRepository;
+
+  @Autowired UserCache userCache;
+
+  @Autowired JobLockService jobLockService;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Value("${app.reminders.windowDays:7,1,0}")
+  private List<Integer> windowDays;
+
+  @Value("${app.reminders.chunkSize:200}")
+  private int chunkSize;
+
+  @Value("${app.reminders.leaseMinutes:30}")
+  private long leaseMinutes;
+
+  /** Runs the reminders on the schedule in {@code app.reminders.cron}, on one instance only. */
+  @Scheduled(cron = "${app.reminders.cron:0 0 * * * *}")
+  public void scheduledReminders() {
+    jobLockService.runLocked(JOB_NAME, Duration.ofMinutes(leaseMinutes), this::sendReminders);
+  }
+
+  /**
+   * This method queues a reminder for every open request that has come into one of the windows
+   * since the last run.
+   *
+   * @return the number of reminders queued
+   */
+  public int sendReminders() {
+    LocalDateTime now = LocalDateTime.now();
+    List<Integer> windows =
+        windowDays.stream().distinct().sorted(Comparator.reverseOrder()).toList();
+    int reminded = 0;
+    for (int i = 0; i < windows.size(); i++) {
+      int days = windows.get(i);
+      // requests due by the next narrower window are left to it; only the overdue window looks
+      // at requests that are already due
+      LocalDateTime floor =
+          i + 1 < windows.size() ? now.plusDays(windows.get(i + 1)) : days > 0 ? now : null;
+      reminded += remindWindow(days, now, floor);
+    }
+    log.info("queued {} due date reminders", reminded);
+    return reminded;
+  }
+
+  private int remindWindow(int days, LocalDateTime now, LocalDateTime floor) {
+    // read-write transactions throughout, so that the requests are read from the primary
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    LocalDateTime dueBy = now.plusDays(days);
+    ReminderMark mark =
+        template
+            .execute(t -> reminderMarkRepository.findById(days))
+            .orElse(new ReminderMark(days, now, Long.MAX_VALUE));
+    if (floor != null && mark.getDueDate().isBefore(floor)) {
+      mark = new ReminderMark(days, floor, Long.MAX_VALUE);
+    }
+    int reminded = 0;
+    Chunk chunk;
+    do {
+      ReminderMark from = mark;
+      chunk = template.execute(t -> remindChunk(from, dueBy, now));
+      reminded += chunk.size();
+      mark = chunk.next();
+    } while (chunk.size() == chunkSize);
+    return reminded;
+  }
+
+  /** How many requests one chunk reminded, and the window's mark after it. */
+  private record Chunk(int size, ReminderMark next) {}
+
+  /** Reminds one chunk of a window, and moves the window's mark on past it. */
+  private Chunk remindChunk(ReminderMark from, LocalDateTime dueBy, LocalDateTime now) {
+    int days = from.getWindowDays();
+    List<DueRow> rows =
+        recommendationRequestRepository.findDueBetween(
+            OPEN_STATUSES, from.getDueDate(), from.getRequestId(), dueBy, Limit.of(chunkSize));
+    for (DueRow row : rows) {
+      remind(row, days, now);
+    }
+    // a short chunk is the last one, after which the whole window has been covered
+    DueRow last = rows.size() == chunkSize ? rows.get(rows.size() - 1) : null;
+    ReminderMark next =
+        last == null
+            ? new ReminderMark(days, dueBy, Long.MAX_VALUE)
+            : new ReminderMark(days, last.getDueDate(), last.getId());
+    reminderMarkRepository.save(next);
+    return new Chunk(rows.size(), next);
+  }
+
+  private void remind(DueRow row, int days, LocalDateTime now) {
+    String type =
+        row.getRecommendationType() == null ? "recommendation" : row.getRecommendationType();
+    String from =
+        row.getRequesterId() == null
+            ? "a student"
+            : userCache.findById(row.getRequesterId()).map(User::getFullName).orElse("a student");
+    String when =
+        days == 0
+            ? "is overdue"
+            : days == 1 ? "is due within 1 day" : "is due within %d days".formatted(days);
+    notificationRepository.save(
+        Notification.builder()
+            .recipientId(row.getProfessorId())
+            .requestId(row.getId())
+            .message("Reminder: %s request #%d from %s %s".formatted(type, row.getId(), from, when))
+            .createdDate(now)
+            .build());
+  }
+}
@@ -0,0 +1,32 @@
+package edu.ucsb.cs156.rec.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+/**
+ * This is a service that builds strong ETags for listings from a few values that change whenever
+ * the listing does (such as a version number or a {@link
+ * edu.ucsb.cs156.rec.models.ListingFingerprint}), so that the listing itself never has to be loaded
+ * or serialized just to find out that it has not changed.
+ *
+ * <p>The values must all come from the database, so that every instance of the application, before
+ * and after a restart, gives the same listing the same ETag.
+ */
+@Service("etagService")
+public class ETagService {
+
+  /**
+   * This method returns the ETag for a listing.
+   *
+   * @param parts values that together identify the listing and its current contents; they should
+   *     include the name of the listing and any query parameters
+   * @return the ETag, without quotes
+   */
+  public String etag(Object... parts) {
+    String key = Arrays.stream(parts).map(String::valueOf).collect(Collectors.joining("|"));
+    return DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8));
+  }
+}
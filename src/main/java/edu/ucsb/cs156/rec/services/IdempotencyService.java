@@ -0,0 +1,151 @@
+package edu.ucsb.cs156.rec.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.rec.entities.IdempotencyKey;
+import edu.ucsb.cs156.rec.repositories.IdempotencyKeyRepository;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+/**
+ * This is a service that makes a create endpoint safe to retry. A client sends an Idempotency-Key
+ * header with a value of its choosing (such as a UUID), and sends the same one when it retries; the
+ * first response to the key is stored in the idempotencykey table for {@code
+ * app.idempotency.ttlHours} hours, and a retry gets that response back instead of creating the
+ * thing again. Reusing a key for a request with different parameters is refused.
+ *
+ * <p>The key is stored in the same transaction as whatever the request created, so it is stored if
+ * and only if that is committed, and a request that fails can be retried with the same key. Two
+ * requests with the same key at once are not locked against each other: both go ahead, the primary
+ * key of the table lets only the first commit its key, and the other is rolled back and answered
+ * with the first one's response.
+ *
+ * <p>Expired keys are purged on the schedule in {@code app.idempotency.purgeCron}.
+ */
+@Slf4j
+@Service("idempotencyService")
+public class IdempotencyService {
+
+  public static final String HEADER = "Idempotency-Key";
+
+  public static final int MAX_KEY_LENGTH = 255;
+
+  @Autowired IdempotencyKeyRepository idempotencyKeyRepository;
+
+  @Autowired ObjectMapper mapper;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Value("${app.idempotency.ttlHours:24}")
+  private long ttlHours;
+
+  /**
+   * This method runs a request in a transaction, or replays the stored response if the same key has
+   * already been used for it.
+   *
+   * @param <T> type of the response
+   * @param userId id of the current user; keys are only ever matched against the same user's
+   * @param endpoint name of the endpoint, so that the same key can be used for different ones
+   * @param key the Idempotency-Key header, or null to just run the request
+   * @param request the parameters of the request, which a retry must repeat exactly
+   * @param type type of the response, which must read back from JSON to an equal one
+   * @param action the request itself
+   * @return the response, new or replayed
+   */
+  public <T> T execute(
+      long userId, String endpoint, String key, Object request, Class<T> type, Supplier<T> action) {
+    // read-write transactions throughout, so that the keys are read from the primary
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    if (key == null) {
+      return template.execute(t -> action.get());
+    }
+    if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+      throw new IllegalArgumentException(
+          "%s must be between 1 and %d characters".formatted(HEADER, MAX_KEY_LENGTH));
+    }
+    String requestHash =
+        DigestUtils.md5DigestAsHex(
+            mapper.valueToTree(request).toString().getBytes(StandardCharsets.UTF_8));
+    Optional<IdempotencyKey> stored =
+        template.execute(
+            t -> idempotencyKeyRepository.findLive(userId, endpoint, key, LocalDateTime.now()));
+    if (stored.isPresent()) {
+      return replay(stored.get(), requestHash, type);
+    }
+    try {
+      return template.execute(
+          t -> {
+            LocalDateTime now = LocalDateTime.now();
+            idempotencyKeyRepository.deleteExpiredKey(userId, endpoint, key, now);
+            T response = action.get();
+            idempotencyKeyRepository.insertKey(
+                userId,
+                endpoint,
+                key,
+                requestHash,
+                mapper.valueToTree(response).toString(),
+                now,
+                now.plusHours(ttlHours));
+            return response;
+          });
+    } catch (DataIntegrityViolationException e) {
+      // another request with the same key committed first, and this one has been rolled back;
+      // anything else that broke a constraint is passed on
+      IdempotencyKey first =
+          template
+              .execute(
+                  t ->
+                      idempotencyKeyRepository.findLive(userId, endpoint, key, LocalDateTime.now()))
+              .orElseThrow(() -> e);
+      log.info("concurrent request with {} {} for user {} replayed", HEADER, key, userId);
+      return replay(first, requestHash, type);
+    }
+  }
+
+  private <T> T replay(IdempotencyKey stored, String requestHash, Class<T> type) {
+    if (!stored.getRequestHash().equals(requestHash)) {
+      throw new IllegalArgumentException(
+          "%s %s was already used for a different request"
+              .formatted(HEADER, stored.getIdempotencyKey()));
+    }
+    try {
+      return mapper.readValue(stored.getResponseBody(), type);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(
+          "stored response for %s %s could not be read"
+              .formatted(HEADER, stored.getIdempotencyKey()),
+          e);
+    }
+  }
+
+  /** Runs the purge on the schedule in {@code app.idempotency.purgeCron}. */
+  @Scheduled(cron = "${app.idempotency.purgeCron:0 15 * * * *}")
+  public void scheduledPurge() {
+    purgeExpired();
+  }
+
+  /**
+   * This method deletes every key that has expired.
+   *
+   * @return the number of keys deleted
+   */
+  public int purgeExpired() {
+    LocalDateTime now = LocalDateTime.now();
+    int purged =
+        new TransactionTemplate(transactionManager)
+            .execute(t -> idempotencyKeyRepository.deleteExpired(now));
+    log.info("purged {} expired idempotency keys", purged);
+    return purged;
+  }
+}
@@ -0,0 +1,96 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.repositories.JobLockRepository;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This is a service that makes sure a background job runs on only one instance of the application
+ * at a time, using a lease stored in the joblock table. An instance that takes the lease holds it
+ * until it is released or runs out; if the instance dies while holding it, another one can take it
+ * over once it has run out. The lease should therefore be well longer than the job ever takes, and
+ * than any difference between the clocks of the instances.
+ */
+@Slf4j
+@Service("jobLockService")
+public class JobLockService {
+
+  @Autowired JobLockRepository jobLockRepository;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  /**
+   * The name this instance takes leases under: its process id and host, which say where it is
+   * running, and a random part so that it is unique even if they are reused.
+   */
+  private final String owner =
+      ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID();
+
+  public String getOwner() {
+    return owner;
+  }
+
+  /**
+   * This method runs a job if no other instance is running it, holding the lease while it runs.
+   *
+   * @param name name of the job
+   * @param lease how long the lease lasts if it is not released
+   * @param job the job
+   * @return true if the job was run, false if another instance holds the lease
+   */
+  public boolean runLocked(String name, Duration lease, Runnable job) {
+    if (!tryLock(name, lease)) {
+      log.debug("job {} is running on another instance", name);
+      return false;
+    }
+    try {
+      job.run();
+    } finally {
+      unlock(name);
+    }
+    return true;
+  }
+
+  /**
+   * This method takes the lease on a job, if no other instance holds it.
+   *
+   * @param name name of the job
+   * @param lease how long the lease lasts if it is not released
+   * @return true if this instance now holds the lease
+   */
+  public boolean tryLock(String name, Duration lease) {
+    // read-write transactions, so that the lease is always read from the primary database
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime until = now.plus(lease);
+    if (template.execute(t -> jobLockRepository.takeLease(name, owner, until, now)) > 0) {
+      return true;
+    }
+    try {
+      // the job has never been locked; a separate transaction, since a failed insert spoils it
+      template.execute(t -> jobLockRepository.createLease(name, owner, until));
+      return true;
+    } catch (DataIntegrityViolationException e) {
+      // the lease exists and is held by another instance, or another instance has just created it
+      return false;
+    }
+  }
+
+  /**
+   * This method gives up the lease on a job, if this instance still holds it.
+   *
+   * @param name name of the job
+   */
+  public void unlock(String name) {
+    new TransactionTemplate(transactionManager)
+        .execute(t -> jobLockRepository.releaseLease(name, owner, LocalDateTime.now()));
+  }
+}
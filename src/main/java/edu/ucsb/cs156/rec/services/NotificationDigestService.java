@@ -0,0 +1,275 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.entities.Notification;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.repositories.NotificationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.mail.MailException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This is a service that emails each user the notifications waiting for them, all in one message,
+ * every {@code app.notifications.digestMillis} milliseconds.
+ *
+ * <p>The digests are sent by a pool of {@code app.notifications.workers} threads with room for
+ * {@code app.notifications.queueSize} digests waiting; when the queue is full the remaining users
+ * wait for the next run. A send that fails is tried again up to {@code
+ * app.notifications.maxAttempts} times in all, waiting {@code app.notifications.backoffMillis}
+ * before the first retry and twice as long before each one after that. The notifications are only
+ * deleted once their digest has gone, so a digest that fails every time is sent on a later run.
+ *
+ * <p>When several instances of the application are running, only the one holding the {@value
+ * #JOB_NAME} lease (see {@link JobLockService}) sends digests, and it holds the lease until its
+ * workers have finished, so that no user is sent the same notifications twice. If the run is
+ * interrupted (when the application shuts down), the digests that have not started are cancelled
+ * and it still waits for those being sent.
+ *
+ * <p>It only exists when a mail server is configured ({@code spring.mail.host}).
+ */
+@Slf4j
+@Service("notificationDigestService")
+@ConditionalOnProperty(name = "spring.mail.host")
+public class NotificationDigestService {
+
+  public static final String JOB_NAME = "notification-digests";
+
+  public static final String DIGESTS = "app.notifications.digests";
+
+  @Autowired NotificationRepository notificationRepository;
+
+  @Autowired UserCache userCache;
+
+  @Autowired JavaMailSender mailSender;
+
+  @Autowired JobLockService jobLockService;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Autowired MeterRegistry meterRegistry;
+
+  @Value("${app.notifications.from:noreply@ucsb.edu}")
+  private String from;
+
+  @Value("${app.notifications.workers:2}")
+  private int workers;
+
+  @Value("${app.notifications.queueSize:100}")
+  private int queueSize;
+
+  @Value("${app.notifications.maxAttempts:4}")
+  private int maxAttempts;
+
+  @Value("${app.notifications.backoffMillis:2000}")
+  private long backoffMillis;
+
+  @Value("${app.notifications.leaseMinutes:30}")
+  private long leaseMinutes;
+
+  private ThreadPoolExecutor executor;
+
+  // users whose digest is waiting for or being sent by a worker; they are skipped until it is done
+  private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+  @PostConstruct
+  void startWorkers() {
+    executor =
+        new ThreadPoolExecutor(
+            workers,
+            workers,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            new CustomizableThreadFactory("notifications-"));
+  }
+
+  @PreDestroy
+  void stopWorkers() {
+    executor.shutdown();
+  }
+
+  /**
+   * Waits for every digest already handed to the workers to be finished with, then starts a fresh
+   * pool. This is for tests, which must not clean up while a worker is still using the database.
+   *
+   * @return false if they were still busy after 30 seconds
+   */
+  boolean awaitWorkers() throws InterruptedException {
+    stopWorkers();
+    boolean finished = executor.awaitTermination(30, TimeUnit.SECONDS);
+    startWorkers();
+    return finished;
+  }
+
+  /**
+   * Sends the digests every {@code app.notifications.digestMillis} milliseconds, on one instance
+   * only, and waits for them to be sent.
+   */
+  @Scheduled(
+      fixedDelayString = "${app.notifications.digestMillis:900000}",
+      initialDelayString = "${app.notifications.digestMillis:900000}")
+  public void scheduledDigests() {
+    jobLockService.runLocked(
+        JOB_NAME, Duration.ofMinutes(leaseMinutes), () -> waitFor(submitDigests()));
+  }
+
+  /**
+   * Waits for the digests to finish. Once interrupted, the digests that have not started are
+   * cancelled, but those being sent are still waited for, as the lease must be held until they are
+   * done.
+   */
+  private void waitFor(Map<Long, Future<Boolean>> digests) {
+    boolean interrupted = false;
+    for (Map.Entry<Long, Future<Boolean>> digest : digests.entrySet()) {
+      while (true) {
+        try {
+          digest.getValue().get();
+          break;
+        } catch (CancellationException e) {
+          inFlight.remove(digest.getKey());
+          break;
+        } catch (ExecutionException e) {
+          log.warn("digest could not be sent; it will be sent on a later run", e.getCause());
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+          cancelWaiting(digests.values());
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Cancels the digests still in the queue; those a worker has started are left to finish. */
+  private void cancelWaiting(Collection<Future<Boolean>> digests) {
+    for (Future<Boolean> digest : digests) {
+      // the future that submit returns is the task in the queue
+      if (executor.remove((Runnable) digest)) {
+        digest.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * This method hands the digest of every user with notifications waiting to the workers, and
+   * returns without waiting for them to be sent.
+   *
+   * @return one future per digest handed over, which completes with whether it was sent
+   */
+  public List<Future<Boolean>> sendDigests() {
+    return new ArrayList<>(submitDigests().values());
+  }
+
+  /** Hands the digests to the workers; returns their futures by recipient, in submission order. */
+  private Map<Long, Future<Boolean>> submitDigests() {
+    // read-write transactions throughout, so that the notifications are read from the primary
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    Map<Long, Future<Boolean>> digests = new LinkedHashMap<>();
+    for (Long recipientId : template.execute(t -> notificationRepository.findRecipientIds())) {
+      if (!inFlight.add(recipientId)) {
+        continue;
+      }
+      try {
+        digests.put(recipientId, executor.submit(() -> sendDigest(template, recipientId)));
+      } catch (RejectedExecutionException e) {
+        inFlight.remove(recipientId);
+        log.warn("notification queue is full; the remaining digests wait for the next run");
+        break;
+      }
+    }
+    return digests;
+  }
+
+  private boolean sendDigest(TransactionTemplate template, long recipientId)
+      throws InterruptedException {
+    try {
+      List<Notification> notifications =
+          template.execute(
+              t -> notificationRepository.findAllByRecipientIdOrderByIdAsc(recipientId));
+      List<Long> ids = notifications.stream().map(Notification::getId).toList();
+      Optional<User> recipient = userCache.findById(recipientId);
+      if (recipient.isEmpty()) {
+        log.warn(
+            "dropping {} notifications for user {}, who no longer exists", ids.size(), recipientId);
+        template.execute(t -> notificationRepository.deleteByIds(ids));
+        return false;
+      }
+
+      SimpleMailMessage message = digest(recipient.get(), notifications);
+      long backoff = backoffMillis;
+      for (int attempt = 1; ; attempt++) {
+        try {
+          mailSender.send(message);
+          break;
+        } catch (MailException e) {
+          if (attempt == maxAttempts) {
+            log.warn(
+                "digest for user {} failed {} times; it will be sent on a later run",
+                recipientId,
+                attempt,
+                e);
+            meterRegistry.counter(DIGESTS, "outcome", "failed").increment();
+            return false;
+          }
+          log.debug("digest for user {} failed, trying again in {} ms", recipientId, backoff);
+          Thread.sleep(backoff);
+          backoff *= 2;
+        }
+      }
+
+      template.execute(t -> notificationRepository.deleteByIds(ids));
+      meterRegistry.counter(DIGESTS, "outcome", "sent").increment();
+      return true;
+    } finally {
+      inFlight.remove(recipientId);
+    }
+  }
+
+  private SimpleMailMessage digest(User recipient, List<Notification> notifications) {
+    StringBuilder text = new StringBuilder();
+    text.append("Hello ")
+        .append(recipient.getFullName() == null ? recipient.getEmail() : recipient.getFullName())
+        .append(",\n\nHere is what has happened to your recommendation requests:\n\n");
+    for (Notification notification : notifications) {
+      text.append("- ").append(notification.getMessage()).append('\n');
+    }
+    SimpleMailMessage message = new SimpleMailMessage();
+    message.setFrom(from);
+    message.setTo(recipient.getEmail());
+    message.setSubject(
+        notifications.size() == 1
+            ? "Recommendation requests: 1 update"
+            : "Recommendation requests: %d updates".formatted(notifications.size()));
+    message.setText(text.toString());
+    return message;
+  }
+}
@@ -0,0 +1,97 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.entities.Notification;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.models.RequestSnapshot;
+import edu.ucsb.cs156.rec.repositories.NotificationRepository;
+import java.time.LocalDateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * This is a service that turns changes to recommendation requests into notifications: a new request
+ * is reported to its professor, and a change of status to the student who made the request. The
+ * notifications wait in the notification table until the NotificationDigestService sends each user
+ * a single email with all of theirs.
+ *
+ * <p>It only exists when a mail server is configured ({@code spring.mail.host}).
+ */
+@Service("notificationService")
+@ConditionalOnProperty(name = "spring.mail.host")
+public class NotificationService implements RequestEventConsumer {
+
+  /** The name this service's outbox deliveries are recorded under. */
+  public static final String CONSUMER_NAME = "notifications";
+
+  @Autowired NotificationRepository notificationRepository;
+
+  @Autowired UserCache userCache;
+
+  @Override
+  public String getConsumerName() {
+    return CONSUMER_NAME;
+  }
+
+  /**
+   * This method queues the notification for a change, if there is anyone to tell.
+   *
+   * @param event the change
+   */
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void accept(RequestEvent event) {
+    RequestSnapshot request = event.getAfter();
+    switch (event.getType()) {
+      case CREATED -> {
+        if (request.getProfessorId() != null) {
+          queue(
+              request.getProfessorId(),
+              event,
+              "New %s request #%d from %s"
+                  .formatted(
+                      typeOf(request), event.getRequestId(), nameOf(request.getRequesterId())));
+        }
+      }
+      case STATUS_CHANGED -> {
+        if (request.getRequesterId() != null) {
+          queue(
+              request.getRequesterId(),
+              event,
+              "Your %s request #%d is now %s"
+                  .formatted(
+                      typeOf(request), event.getRequestId(), request.getStatus().getLabel()));
+        }
+      }
+      default -> {
+        // nobody is told about deleted requests
+      }
+    }
+  }
+
+  private void queue(long recipientId, RequestEvent event, String message) {
+    notificationRepository.save(
+        Notification.builder()
+            .recipientId(recipientId)
+            .requestId(event.getRequestId())
+            .message(message)
+            .createdDate(LocalDateTime.now())
+            .build());
+  }
+
+  private static String typeOf(RequestSnapshot request) {
+    return request.getRecommendationType() == null
+        ? "recommendation"
+        : request.getRecommendationType();
+  }
+
+  private String nameOf(Long userId) {
+    if (userId == null) {
+      return "a student";
+    }
+    return userCache.findById(userId).map(User::getFullName).orElse("a student");
+  }
+}
@@ -0,0 +1,296 @@
+package edu.ucsb.cs156.rec.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
+import edu.ucsb.cs156.rec.entities.OutboxFailure;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.repositories.OutboxDeliveryRepository;
+import edu.ucsb.cs156.rec.repositories.OutboxEventRepository;
+import edu.ucsb.cs156.rec.repositories.OutboxEventRepository.Backlog;
+import edu.ucsb.cs156.rec.repositories.OutboxFailureRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This is a service that drains the outbox table: it hands each event to every {@link
+ * RequestEventConsumer}, then deletes the events that all of them have had.
+ *
+ * <p>Each consumer reads the events it has not had yet in id order, {@code app.outbox.batchSize} at
+ * a time. Every event is handed over in its own transaction, which also records the delivery, so an
+ * event whose consumer throws is handed over again later (at least once). When that happens the
+ * later events for the same request are held back until it succeeds, so each consumer sees the
+ * events of a request in order; events for other requests carry on.
+ *
+ * <p>A failure is recorded in the outboxfailure table, and the event is not tried again until
+ * {@code app.outbox.backoffMillis} has passed, doubling with each failure, so an event that keeps
+ * failing neither costs a try on every run nor blocks the events behind it. After {@code
+ * app.outbox.maxAttempts} failures it is dead lettered and not tried again (see {@link
+ * OutboxFailure}).
+ *
+ * <p>The number of events each consumer has still to have, and the age of the oldest, are published
+ * as the {@value #PENDING} and {@value #LAG} gauges, and the number it has given up on as {@value
+ * #DEAD_LETTERED}; deliveries are counted in {@value #DELIVERIES} by outcome.
+ */
+@Slf4j
+@Service("outboxDispatcher")
+public class OutboxDispatcher {
+
+  public static final String PENDING = "app.outbox.pending";
+  public static final String LAG = "app.outbox.lag";
+  public static final String DELIVERIES = "app.outbox.deliveries";
+  public static final String DEAD_LETTERED = "app.outbox.deadLettered";
+
+  @Autowired(required = false)
+  List<RequestEventConsumer> consumers = List.of();
+
+  @Autowired OutboxEventRepository outboxEventRepository;
+
+  @Autowired OutboxDeliveryRepository outboxDeliveryRepository;
+
+  @Autowired OutboxFailureRepository outboxFailureRepository;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Autowired ObjectMapper mapper;
+
+  @Autowired MeterRegistry meterRegistry;
+
+  @Value("${app.outbox.batchSize:100}")
+  private int batchSize;
+
+  @Value("${app.outbox.maxAttempts:10}")
+  private int maxAttempts;
+
+  @Value("${app.outbox.backoffMillis:1000}")
+  private long backoffMillis;
+
+  /** How far behind one consumer was at the end of its last run. */
+  private record ConsumerMeters(
+      AtomicLong pending, AtomicReference<LocalDateTime> oldest, AtomicLong deadLettered) {}
+
+  private final Map<String, ConsumerMeters> meters = new ConcurrentHashMap<>();
+
+  /** What came of handing one event to a consumer, tagged as in {@value #DELIVERIES}. */
+  private enum Outcome {
+    DELIVERED("delivered"),
+    DUPLICATE("duplicate"),
+    FAILED("failed"),
+    DEAD_LETTERED("deadLettered");
+
+    private final String tag;
+
+    Outcome(String tag) {
+      this.tag = tag;
+    }
+  }
+
+  /** Runs the dispatcher every {@code app.outbox.pollMillis} milliseconds. */
+  @Scheduled(fixedDelayString = "${app.outbox.pollMillis:1000}")
+  public void scheduledDispatch() {
+    dispatch();
+  }
+
+  /**
+   * This method hands every waiting event to the consumers that have not had it yet, then deletes
+   * the events every consumer has had.
+   *
+   * @return the number of events handed over, counting once per consumer and leaving out those
+   *     another instance had already handed over
+   */
+  public int dispatch() {
+    // read-write transactions throughout, so that the outbox is read from the primary database
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    int delivered = 0;
+    for (RequestEventConsumer consumer : consumers) {
+      delivered += drain(template, consumer);
+    }
+    if (!consumers.isEmpty()) {
+      List<String> names = consumers.stream().map(RequestEventConsumer::getConsumerName).toList();
+      int deleted =
+          template.execute(
+              transaction -> outboxEventRepository.deleteDelivered(names, names.size()));
+      log.debug("handed over {} outbox events, deleted {}", delivered, deleted);
+    }
+    return delivered;
+  }
+
+  private int drain(TransactionTemplate template, RequestEventConsumer consumer) {
+    String name = consumer.getConsumerName();
+    int delivered = 0;
+    int tried;
+    int batchDelivered;
+    List<OutboxEvent> batch;
+    // requests with an event that failed in this run; their later events must wait
+    Set<Long> held = new HashSet<>();
+    do {
+      LocalDateTime now = LocalDateTime.now();
+      batch =
+          template.execute(
+              transaction -> outboxEventRepository.findUndelivered(name, now, Limit.of(batchSize)));
+      tried = 0;
+      batchDelivered = 0;
+      for (OutboxEvent event : batch) {
+        if (!held.contains(event.getRequestId())) {
+          tried++;
+          Outcome outcome = deliver(template, consumer, event);
+          if (outcome == Outcome.DELIVERED) {
+            batchDelivered++;
+          } else if (outcome != Outcome.DUPLICATE) {
+            held.add(event.getRequestId());
+          }
+        }
+      }
+      delivered += batchDelivered;
+      // A failed event, and the rest of its request, are not read again until its backoff has
+      // passed, so the next batch moves past them. After a delivery read again even if the batch
+      // was not full, as it may have been a retry that the rest of its request was waiting for.
+    } while (tried > 0 && (batch.size() == batchSize || batchDelivered > 0));
+
+    Backlog backlog = template.execute(transaction -> outboxEventRepository.backlog(name));
+    long deadLettered =
+        template.execute(transaction -> outboxFailureRepository.countDeadLettered(name));
+    ConsumerMeters consumerMeters = meters.computeIfAbsent(name, this::register);
+    consumerMeters.pending().set(backlog.getCount());
+    consumerMeters.oldest().set(backlog.getOldest());
+    consumerMeters.deadLettered().set(deadLettered);
+    return delivered;
+  }
+
+  /** Hands one event to a consumer, and counts the outcome. */
+  private Outcome deliver(
+      TransactionTemplate template, RequestEventConsumer consumer, OutboxEvent event) {
+    String name = consumer.getConsumerName();
+    try {
+      boolean first =
+          template.execute(
+              transaction -> {
+                try {
+                  outboxDeliveryRepository.markDelivered(name, event.getId(), LocalDateTime.now());
+                } catch (DataIntegrityViolationException e) {
+                  // another instance of the application has just handed it over
+                  transaction.setRollbackOnly();
+                  return false;
+                }
+                consumer.accept(toRequestEvent(event));
+                return true;
+              });
+      return count(name, first ? Outcome.DELIVERED : Outcome.DUPLICATE);
+    } catch (RuntimeException e) {
+      boolean dead = recordFailure(template, name, event, e);
+      if (dead) {
+        log.error(
+            "consumer {} failed on outbox event {} for request {} {} times; giving up",
+            name,
+            event.getId(),
+            event.getRequestId(),
+            maxAttempts,
+            e);
+      } else {
+        log.warn(
+            "consumer {} failed on outbox event {} for request {}; will try again",
+            name,
+            event.getId(),
+            event.getRequestId(),
+            e);
+      }
+      return count(name, dead ? Outcome.DEAD_LETTERED : Outcome.FAILED);
+    }
+  }
+
+  private Outcome count(String name, Outcome outcome) {
+    meterRegistry.counter(DELIVERIES, "consumer", name, "outcome", outcome.tag).increment();
+    return outcome;
+  }
+
+  /**
+   * Records that a consumer failed on an event, and when to try it again; returns true if that was
+   * the last attempt and the event is now dead lettered.
+   */
+  private boolean recordFailure(
+      TransactionTemplate template, String name, OutboxEvent event, RuntimeException error) {
+    LocalDateTime now = LocalDateTime.now();
+    try {
+      return template.execute(
+          transaction -> {
+            OutboxFailure failure =
+                outboxFailureRepository
+                    .findById(new OutboxFailure.Key(name, event.getId()))
+                    .orElseGet(
+                        () ->
+                            OutboxFailure.builder().consumer(name).eventId(event.getId()).build());
+            failure.setAttempts(failure.getAttempts() + 1);
+            String message = String.valueOf(error);
+            failure.setLastError(
+                message.substring(0, Math.min(message.length(), OutboxFailure.MAX_ERROR_LENGTH)));
+            boolean dead = failure.getAttempts() >= maxAttempts;
+            if (dead) {
+              failure.setNextAttemptDate(null);
+              failure.setDeadLetteredDate(now);
+            } else {
+              // 1, 2, 4, ... times the backoff, up to about 12 days at the default of a second
+              long delay = backoffMillis << Math.min(failure.getAttempts() - 1, 20);
+              failure.setNextAttemptDate(now.plus(Duration.ofMillis(delay)));
+            }
+            outboxFailureRepository.save(failure);
+            return dead;
+          });
+    } catch (RuntimeException e) {
+      // another instance recorded the same failure at the same moment; it will be tried again
+      log.debug("could not record failure of outbox event {} for {}", event.getId(), name, e);
+      return false;
+    }
+  }
+
+  private RequestEvent toRequestEvent(OutboxEvent row) {
+    try {
+      RequestEvent event = mapper.readValue(row.getPayload(), RequestEvent.class);
+      event.setId(row.getId());
+      return event;
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("outbox event %d cannot be read".formatted(row.getId()), e);
+    }
+  }
+
+  private ConsumerMeters register(String name) {
+    ConsumerMeters consumerMeters =
+        new ConsumerMeters(new AtomicLong(), new AtomicReference<>(null), new AtomicLong());
+    Gauge.builder(PENDING, consumerMeters.pending(), AtomicLong::get)
+        .description("Outbox events a consumer has not had yet")
+        .tag("consumer", name)
+        .register(meterRegistry);
+    Gauge.builder(LAG, consumerMeters.oldest(), OutboxDispatcher::ageInSeconds)
+        .description("Age of the oldest outbox event a consumer has not had yet")
+        .tag("consumer", name)
+        .baseUnit("seconds")
+        .register(meterRegistry);
+    Gauge.builder(DEAD_LETTERED, consumerMeters.deadLettered(), AtomicLong::get)
+        .description("Outbox events a consumer has failed on too often to try again")
+        .tag("consumer", name)
+        .register(meterRegistry);
+    return consumerMeters;
+  }
+
+  private static double ageInSeconds(AtomicReference<LocalDateTime> oldest) {
+    LocalDateTime date = oldest.get();
+    return date == null ? 0 : Duration.between(date, LocalDateTime.now()).toMillis() / 1000.0;
+  }
+}
@@ -0,0 +1,150 @@
+package edu.ucsb.cs156.rec.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * This is a service that writes every recommendation request to an output stream, as CSV or as
+ * newline delimited JSON (one request per line).
+ *
+ * <p>Rows are read from a database cursor and written one at a time, and each request is detached
+ * from the persistence context once it has been written, so the memory used does not depend on the
+ * number of requests.
+ */
+@Slf4j
+@Service("recommendationRequestExportService")
+public class RecommendationRequestExportService {
+
+  /** The columns of the CSV export, in order. */
+  public static final String CSV_HEADER =
+      "id,requesterEmail,requesterName,professorEmail,professorName,recommendationType,details,"
+          + "status,submissionDate,dueDate,completionDate,lastModifiedDate";
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired ObjectMapper mapper;
+
+  @PersistenceContext EntityManager entityManager;
+
+  /**
+   * This method writes every recommendation request as CSV, with a header line.
+   *
+   * @param out where to write the CSV; it is flushed but not closed
+   * @return the number of requests written
+   * @throws IOException if writing fails
+   */
+  @Transactional(readOnly = true)
+  public long writeCsv(OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    writer.write(CSV_HEADER);
+    writer.write("\r\n");
+    long rows = forEachRequest(request -> writer.write(csvLine(request)));
+    writer.flush();
+    return rows;
+  }
+
+  /**
+   * This method writes every recommendation request as newline delimited JSON, using the same JSON
+   * as the listing endpoints.
+   *
+   * @param out where to write the JSON; it is flushed but not closed
+   * @return the number of requests written
+   * @throws IOException if writing fails
+   */
+  @Transactional(readOnly = true)
+  public long writeNdjson(OutputStream out) throws IOException {
+    JsonGenerator generator =
+        mapper.getFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    long rows =
+        forEachRequest(
+            request -> {
+              mapper.writeValue(generator, request);
+              generator.writeRaw('\n');
+            });
+    generator.flush();
+    return rows;
+  }
+
+  private interface RowWriter {
+    void write(RecommendationRequest request) throws IOException;
+  }
+
+  private long forEachRequest(RowWriter rowWriter) throws IOException {
+    long rows = 0;
+    try (Stream<RecommendationRequest> requests = recommendationRequestRepository.streamAll()) {
+      for (RecommendationRequest request : (Iterable<RecommendationRequest>) requests::iterator) {
+        rowWriter.write(request);
+        detach(request);
+        rows++;
+      }
+    }
+    log.debug("exported {} recommendation requests", rows);
+    return rows;
+  }
+
+  /** Removes a request and its users from the persistence context once they have been written. */
+  private void detach(RecommendationRequest request) {
+    entityManager.detach(request);
+    if (request.getRequester() != null) {
+      entityManager.detach(request.getRequester());
+    }
+    if (request.getProfessor() != null) {
+      entityManager.detach(request.getProfessor());
+    }
+  }
+
+  static String csvLine(RecommendationRequest request) {
+    User requester = request.getRequester();
+    User professor = request.getProfessor();
+    return Stream.of(
+                request.getId(),
+                requester == null ? null : requester.getEmail(),
+                requester == null ? null : requester.getFullName(),
+                professor == null ? null : professor.getEmail(),
+                professor == null ? null : professor.getFullName(),
+                request.getRecommendationType(),
+                request.getDetails(),
+                request.getStatus() == null ? null : request.getStatus().getLabel(),
+                request.getSubmissionDate(),
+                request.getDueDate(),
+                request.getCompletionDate(),
+                request.getLastModifiedDate())
+            .map(RecommendationRequestExportService::csvField)
+            .collect(Collectors.joining(","))
+        + "\r\n";
+  }
+
+  /**
+   * Quotes a CSV field if it needs it (RFC 4180). Text that a spreadsheet would treat as a formula
+   * is prefixed with a quote mark so that opening the export cannot run it.
+   */
+  static String csvField(Object value) {
+    if (value == null) {
+      return "";
+    }
+    String text = value.toString();
+    if (!text.isEmpty() && !(value instanceof Number) && "=+-@".indexOf(text.charAt(0)) >= 0) {
+      text = "'" + text;
+    }
+    if (text.chars().anyMatch(c -> c == ',' || c == '"' || c == '\r' || c == '\n')) {
+      return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+    return text;
+  }
+}
@@ -0,0 +1,118 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.repositories.ArchivedRecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This is a service that moves finished recommendation requests (those whose status has no next
+ * status, that is COMPLETED and DENIED) into the archivedrecommendationrequest table once they have
+ * not changed for {@code app.archive.ageDays} days, so that the recommendationrequest table and its
+ * indexes only hold requests that are still being worked on.
+ *
+ * <p>Requests are moved {@code app.archive.chunkSize} at a time, one status after another and
+ * oldest change first, each chunk in its own short transaction, so no lock is held for long. Each
+ * chunk is read from the front of the range of the index on (status_code, last_modified_date) for
+ * its status, which also gives the order, so a chunk reads only the rows it moves. The statistics
+ * summary is not touched: an archived request still counts, just as it did before it was moved.
+ *
+ * <p>When several instances of the application are running, only the one holding the {@value
+ * #JOB_NAME} lease (see {@link JobLockService}) runs the mover, whether on its schedule or when an
+ * admin asks for it.
+ */
+@Slf4j
+@Service("requestArchiveService")
+public class RequestArchiveService {
+
+  public static final String JOB_NAME = "request-archive";
+
+  /** The statuses a request can never leave, which are the ones that may be archived. */
+  static final Set<RequestStatus> FINAL_STATUSES =
+      Arrays.stream(RequestStatus.values())
+          .filter(status -> status.getNextStatuses().isEmpty())
+          .collect(Collectors.toUnmodifiableSet());
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired ArchivedRecommendationRequestRepository archivedRecommendationRequestRepository;
+
+  @Autowired JobLockService jobLockService;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Value("${app.archive.ageDays:365}")
+  private long ageDays;
+
+  @Value("${app.archive.chunkSize:200}")
+  private int chunkSize;
+
+  @Value("${app.archive.leaseMinutes:60}")
+  private long leaseMinutes;
+
+  /** Runs the mover on the schedule in {@code app.archive.cron}, on one instance only. */
+  @Scheduled(cron = "${app.archive.cron:0 30 3 * * *}")
+  public void scheduledArchive() {
+    archiveUnlessRunning();
+  }
+
+  /**
+   * This method runs the mover now, unless another instance holds the lease on it.
+   *
+   * @return the number of requests moved, or empty if another instance is running the mover
+   */
+  public OptionalInt archiveUnlessRunning() {
+    AtomicInteger moved = new AtomicInteger();
+    if (!jobLockService.runLocked(
+        JOB_NAME, Duration.ofMinutes(leaseMinutes), () -> moved.set(archiveOldRequests()))) {
+      return OptionalInt.empty();
+    }
+    return OptionalInt.of(moved.get());
+  }
+
+  /**
+   * This method moves every finished request that is old enough into the archive. It does not take
+   * the lease; callers other than tests should use {@link #archiveUnlessRunning()}.
+   *
+   * @return the number of requests moved
+   */
+  public int archiveOldRequests() {
+    LocalDateTime cutoff = LocalDateTime.now().minusDays(ageDays);
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    int moved = 0;
+    for (RequestStatus status : FINAL_STATUSES) {
+      int chunk;
+      do {
+        chunk = template.execute(transaction -> moveChunk(status, cutoff));
+        moved += chunk;
+      } while (chunk == chunkSize);
+    }
+    log.info("archived {} recommendation requests last changed before {}", moved, cutoff);
+    return moved;
+  }
+
+  private int moveChunk(RequestStatus status, LocalDateTime cutoff) {
+    List<Long> ids =
+        recommendationRequestRepository.lockArchivableIds(status, cutoff, Limit.of(chunkSize));
+    if (!ids.isEmpty()) {
+      archivedRecommendationRequestRepository.copyFromRequests(ids, LocalDateTime.now());
+      recommendationRequestRepository.deleteByIds(ids);
+    }
+    return ids.size();
+  }
+}
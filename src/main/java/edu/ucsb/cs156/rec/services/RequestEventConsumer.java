@@ -0,0 +1,32 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.models.RequestEvent;
+
+/**
+ * A RequestEventConsumer is handed every change to a recommendation request by the
+ * OutboxDispatcher, some time after the change was committed. Any bean that implements this
+ * interface is a consumer.
+ *
+ * <p>Events for the same request arrive in the order they happened, and each one is handed over in
+ * its own transaction, which also records that the consumer has had it. Database work done in
+ * {@link #accept(RequestEvent)} therefore happens exactly once; anything else (mail, calls to other
+ * systems) may happen again if the transaction fails to commit, so it should be safe to repeat.
+ */
+public interface RequestEventConsumer {
+
+  /**
+   * This method returns the name the consumer's deliveries are recorded under. It must not change
+   * between releases, or the consumer will be handed every event still in the outbox again.
+   *
+   * @return a name of at most 64 characters
+   */
+  String getConsumerName();
+
+  /**
+   * This method handles one event. If it throws, the event (and any later event for the same
+   * request) is handed over again on a later run.
+   *
+   * @param event the event
+   */
+  void accept(RequestEvent event);
+}
@@ -0,0 +1,59 @@
+package edu.ucsb.cs156.rec.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.repositories.OutboxEventRepository;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * This is a service that writes changes to recommendation requests to the outbox table. It must be
+ * called in the same transaction as the change itself, so that an event is stored if and only if
+ * the change is committed; the OutboxDispatcher hands it to the consumers afterwards.
+ */
+@Service("requestEventPublisher")
+public class RequestEventPublisher {
+
+  @Autowired OutboxEventRepository outboxEventRepository;
+
+  @Autowired ObjectMapper mapper;
+
+  /**
+   * This method adds one event to the outbox.
+   *
+   * @param event the event; its created date is filled in here
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void publish(RequestEvent event) {
+    publishAll(List.of(event));
+  }
+
+  /**
+   * This method adds many events to the outbox, in the order given.
+   *
+   * @param events the events; their created dates are filled in here
+   */
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void publishAll(Collection<RequestEvent> events) {
+    LocalDateTime now = LocalDateTime.now();
+    List<OutboxEvent> rows = new ArrayList<>();
+    for (RequestEvent event : events) {
+      event.setCreatedDate(now);
+      rows.add(
+          OutboxEvent.builder()
+              .requestId(event.getRequestId())
+              .eventType(event.getType())
+              .payload(mapper.valueToTree(event).toString())
+              .createdDate(now)
+              .build());
+    }
+    outboxEventRepository.saveAll(rows);
+  }
+}
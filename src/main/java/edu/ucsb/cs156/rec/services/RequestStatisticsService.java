@@ -0,0 +1,234 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.entities.RequestStatistic;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.models.RequestSnapshot;
+import edu.ucsb.cs156.rec.models.RequestStatistics;
+import edu.ucsb.cs156.rec.repositories.ArchivedRecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.ArchivedRecommendationRequestRepository.ArchiveTotals;
+import edu.ucsb.cs156.rec.repositories.OutboxDeliveryRepository;
+import edu.ucsb.cs156.rec.repositories.RequestStatisticRepository;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * This is a service that keeps the statistics summary table (RequestStatistic) in step with the
+ * recommendation requests table, and reads summaries from it.
+ *
+ * <p>Changes to recommendation requests reach it as events from the outbox (it is a {@link
+ * RequestEventConsumer}), so the totals trail the requests by however long the OutboxDispatcher
+ * takes to hand the events over; each event removes the old values of the request and adds the new
+ * ones. Moving a request to the archive is not a change: archived requests still count. If the
+ * totals ever drift (for example after a manual fix in the database), {@link #rebuild()} recomputes
+ * them from scratch.
+ */
+@Slf4j
+@Service("requestStatisticsService")
+public class RequestStatisticsService implements RequestEventConsumer {
+
+  /** The name this service's outbox deliveries are recorded under. */
+  public static final String CONSUMER_NAME = "statistics";
+
+  @Autowired RequestStatisticRepository requestStatisticRepository;
+
+  @Autowired ArchivedRecommendationRequestRepository archivedRecommendationRequestRepository;
+
+  @Autowired OutboxDeliveryRepository outboxDeliveryRepository;
+
+  @Autowired UserCache userCache;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Override
+  public String getConsumerName() {
+    return CONSUMER_NAME;
+  }
+
+  /**
+   * This method moves a changed request from the totals for its old values to those for its new
+   * ones.
+   *
+   * @param event the change
+   */
+  @Override
+  @Transactional(propagation = Propagation.MANDATORY)
+  public void accept(RequestEvent event) {
+    if (event.getBefore() != null) {
+      addToTotals(event.getBefore(), -1);
+    }
+    if (event.getAfter() != null) {
+      addToTotals(event.getAfter(), 1);
+    }
+  }
+
+  private void addToTotals(RequestSnapshot request, int sign) {
+    if (request.getProfessorId() == null) {
+      return;
+    }
+    String requestType =
+        request.getRecommendationType() == null ? "" : request.getRecommendationType();
+    long timed = 0;
+    long seconds = 0;
+    if (request.getStatus() == RequestStatus.COMPLETED
+        && request.getSubmissionDate() != null
+        && request.getCompletionDate() != null) {
+      timed = sign;
+      seconds =
+          sign
+              * Duration.between(request.getSubmissionDate(), request.getCompletionDate())
+                  .getSeconds();
+    }
+    if (requestStatisticRepository.addToTotals(
+            request.getProfessorId(), requestType, request.getStatus(), sign, timed, seconds)
+        == 0) {
+      createRow(request.getProfessorId(), requestType, request.getStatus());
+      requestStatisticRepository.addToTotals(
+          request.getProfessorId(), requestType, request.getStatus(), sign, timed, seconds);
+    }
+  }
+
+  /**
+   * Creates an empty row in its own transaction, so that two requests creating the same row at once
+   * cannot make each other's transaction fail; the loser just uses the winner's row.
+   */
+  private void createRow(long professorId, String requestType, RequestStatus status) {
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    try {
+      template.executeWithoutResult(
+          transaction ->
+              requestStatisticRepository.save(
+                  RequestStatistic.builder()
+                      .professorId(professorId)
+                      .requestType(requestType)
+                      .status(status)
+                      .build()));
+    } catch (DataIntegrityViolationException e) {
+      log.debug("statistics row for {}/{}/{} already exists", professorId, requestType, status);
+    }
+  }
+
+  /**
+   * This method returns the statistics for one professor.
+   *
+   * @param professorId id of the professor
+   * @return the statistics for that professor
+   */
+  @Transactional(readOnly = true)
+  public RequestStatistics forProfessor(long professorId) {
+    return summarize(professorId, requestStatisticRepository.findAllByProfessorId(professorId));
+  }
+
+  /**
+   * This method returns the statistics for all professors together, with a breakdown by professor.
+   *
+   * @return the statistics for all requests
+   */
+  @Transactional(readOnly = true)
+  public RequestStatistics forAll() {
+    Iterable<RequestStatistic> rows = requestStatisticRepository.findAll();
+    Map<Long, List<RequestStatistic>> rowsByProfessor = new TreeMap<>();
+    for (RequestStatistic row : rows) {
+      rowsByProfessor.computeIfAbsent(row.getProfessorId(), id -> new ArrayList<>()).add(row);
+    }
+    List<RequestStatistics> byProfessor = new ArrayList<>();
+    rowsByProfessor.forEach((id, professorRows) -> byProfessor.add(summarize(id, professorRows)));
+    RequestStatistics all = summarize(null, rows);
+    all.setByProfessor(byProfessor);
+    return all;
+  }
+
+  private RequestStatistics summarize(Long professorId, Iterable<RequestStatistic> rows) {
+    Map<String, Long> byStatus = new LinkedHashMap<>();
+    for (RequestStatus status : RequestStatus.values()) {
+      byStatus.put(status.getLabel(), 0L);
+    }
+    Map<String, Long> byType = new TreeMap<>();
+    long total = 0;
+    long timed = 0;
+    long seconds = 0;
+    for (RequestStatistic row : rows) {
+      if (row.getRequestCount() == 0) {
+        continue;
+      }
+      total += row.getRequestCount();
+      byStatus.merge(row.getStatus().getLabel(), row.getRequestCount(), Long::sum);
+      byType.merge(row.getRequestType(), row.getRequestCount(), Long::sum);
+      timed += row.getTimedCount();
+      seconds += row.getTotalCompletionSeconds();
+    }
+    return RequestStatistics.builder()
+        .professorId(professorId)
+        .professorName(
+            professorId == null
+                ? null
+                : userCache.findById(professorId).map(User::getFullName).orElse(null))
+        .total(total)
+        .byStatus(byStatus)
+        .byType(byType)
+        .timedCompletions(timed)
+        .averageCompletionSeconds(timed == 0 ? null : seconds / timed)
+        .build();
+  }
+
+  /**
+   * This method throws away the statistics table and recomputes it from the recommendation requests
+   * table and the archive. The events still in the outbox are already reflected in those tables, so
+   * they are recorded as delivered to this service rather than counted a second time.
+   *
+   * <p>This runs at SERIALIZABLE isolation, so that the outbox and the requests are read from the
+   * same snapshot: a change committed while the rebuild runs is either in both (and its event is
+   * marked delivered) or in neither (and its event is counted when it is delivered). At READ
+   * COMMITTED a change committed between the two statements would be counted twice. A delivery that
+   * conflicts with the rebuild makes one of them fail, and it can simply be run again.
+   *
+   * @return the number of statistics rows written
+   */
+  @Transactional(isolation = Isolation.SERIALIZABLE)
+  public int rebuild() {
+    outboxDeliveryRepository.markAllDelivered(CONSUMER_NAME, LocalDateTime.now());
+    requestStatisticRepository.deleteAllRows();
+    int rows = requestStatisticRepository.insertFromRequests();
+    for (ArchiveTotals archived : archivedRecommendationRequestRepository.totals()) {
+      // rows for the same professor, type and status may already hold active requests
+      if (requestStatisticRepository.addToTotals(
+              archived.getProfessorId(),
+              archived.getRequestType(),
+              archived.getStatus(),
+              archived.getRequestCount(),
+              archived.getTimedCount(),
+              archived.getTotalCompletionSeconds())
+          == 0) {
+        requestStatisticRepository.save(
+            RequestStatistic.builder()
+                .professorId(archived.getProfessorId())
+                .requestType(archived.getRequestType())
+                .status(archived.getStatus())
+                .requestCount(archived.getRequestCount())
+                .timedCount(archived.getTimedCount())
+                .totalCompletionSeconds(archived.getTotalCompletionSeconds())
+                .build());
+        rows++;
+      }
+    }
+    log.info("rebuilt request statistics: {} rows", rows);
+    return rows;
+  }
+}
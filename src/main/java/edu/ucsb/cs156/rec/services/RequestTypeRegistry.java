@@ -0,0 +1,160 @@
+package edu.ucsb.cs156.rec.services;
+
+import edu.ucsb.cs156.rec.entities.RequestType;
+import edu.ucsb.cs156.rec.repositories.RequestTypeRepository;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+/**
+ * This is a service that keeps every RequestType in memory.
+ *
+ * <p>The request types table is small and rarely changes, but it is read every time a
+ * recommendation request is submitted and every time a request type is created or renamed (to check
+ * for duplicates). This registry loads the whole table once at startup and answers those questions
+ * without going to the database.
+ *
+ * <p>The contents are held in an immutable snapshot that is replaced as a whole whenever a request
+ * type is saved or deleted, so readers never need a lock and never see a half updated registry. Any
+ * code that saves or deletes a RequestType must call {@link #put(RequestType)} or {@link
+ * #remove(long)} afterwards. The unique constraint on the request type column still guards against
+ * two instances of the application creating the same type at once.
+ *
+ * <p>Those calls only update the registry of the instance that made the change, so every instance
+ * also reloads the table on the schedule in {@code app.requestTypes.refreshMillis}. A lookup by
+ * name that misses looks for that one name in the database (through the unique index on it) and
+ * adds what it finds, so that a type just created elsewhere can be used straight away; the whole
+ * table is only ever read on the schedule, since a miss can be caused by any name a user sends. A
+ * type renamed or deleted elsewhere can still be found here until the next reload.
+ */
+@Slf4j
+@Service("requestTypeRegistry")
+public class RequestTypeRegistry {
+
+  @Autowired RequestTypeRepository requestTypeRepository;
+
+  /**
+   * An immutable copy of the request types table, in order of id. The fingerprint is a hash of the
+   * contents, so it is the same on every instance that has the same request types.
+   */
+  private record Snapshot(
+      String fingerprint, List<RequestType> all, Map<String, RequestType> byName) {
+
+    static Snapshot of(Iterable<RequestType> requestTypes) {
+      List<RequestType> all = new ArrayList<>();
+      Map<String, RequestType> byName = new HashMap<>();
+      for (RequestType requestType : requestTypes) {
+        RequestType copy =
+            RequestType.builder()
+                .id(requestType.getId())
+                .requestType(requestType.getRequestType())
+                .build();
+        all.add(copy);
+        byName.put(copy.getRequestType(), copy);
+      }
+      all.sort(Comparator.comparingLong(RequestType::getId));
+      String contents =
+          all.stream()
+              .map(requestType -> requestType.getId() + "=" + requestType.getRequestType())
+              .collect(Collectors.joining("\n"));
+      String fingerprint = DigestUtils.md5DigestAsHex(contents.getBytes(StandardCharsets.UTF_8));
+      return new Snapshot(fingerprint, List.copyOf(all), Map.copyOf(byName));
+    }
+  }
+
+  private volatile Snapshot snapshot = Snapshot.of(List.of());
+
+  /** Loads the request types table into memory. */
+  @PostConstruct
+  public synchronized void refresh() {
+    snapshot = Snapshot.of(requestTypeRepository.findAll());
+    log.debug("loaded {} request types", snapshot.all().size());
+  }
+
+  /** Reloads the table on the schedule in {@code app.requestTypes.refreshMillis}. */
+  @Scheduled(fixedDelayString = "${app.requestTypes.refreshMillis:60000}")
+  public void scheduledRefresh() {
+    refresh();
+  }
+
+  /**
+   * This method returns every request type, in order of id.
+   *
+   * @return an unmodifiable list of all request types
+   */
+  public List<RequestType> getAll() {
+    return snapshot.all();
+  }
+
+  /**
+   * This method returns a hash of the contents of the registry, which changes whenever a request
+   * type is added, changed or removed, and is the same on every instance with the same contents.
+   * Read it before reading the contents: the contents are then at least as new as the fingerprint.
+   *
+   * @return the current fingerprint
+   */
+  public String getFingerprint() {
+    return snapshot.fingerprint();
+  }
+
+  /**
+   * This method returns the request type with a given name. If there is none here, it is looked up
+   * in the database, in case it was just created by another instance, and added if found.
+   *
+   * @param requestType the name of the request type
+   * @return Optional of RequestType (empty if there is no such request type)
+   */
+  public Optional<RequestType> findByRequestType(String requestType) {
+    RequestType found = snapshot.byName().get(requestType);
+    if (found != null) {
+      return Optional.of(found);
+    }
+    Optional<RequestType> saved = requestTypeRepository.findByRequestType(requestType);
+    saved.ifPresent(this::put);
+    return saved;
+  }
+
+  /**
+   * This method records a request type that has just been saved, replacing the entry with the same
+   * id if there is one. In a transaction, this happens once the transaction commits.
+   *
+   * @param saved the request type that was saved
+   */
+  public void put(RequestType saved) {
+    AfterCommit.run(() -> replace(saved));
+  }
+
+  private synchronized void replace(RequestType saved) {
+    List<RequestType> next = new ArrayList<>(snapshot.all());
+    next.removeIf(existing -> existing.getId() == saved.getId());
+    next.add(saved);
+    snapshot = Snapshot.of(next);
+  }
+
+  /**
+   * This method removes a request type that has just been deleted. In a transaction, this happens
+   * once the transaction commits.
+   *
+   * @param id id of the request type that was deleted
+   */
+  public void remove(long id) {
+    AfterCommit.run(() -> drop(id));
+  }
+
+  private synchronized void drop(long id) {
+    List<RequestType> next = new ArrayList<>(snapshot.all());
+    next.removeIf(existing -> existing.getId() == id);
+    snapshot = Snapshot.of(next);
+  }
+}
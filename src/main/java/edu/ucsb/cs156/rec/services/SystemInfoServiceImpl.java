@@ -59,7 +59,7 @@ public class SystemInfoServiceImpl extends SystemInfoService {
             .commitId(this.commitId)
             .githubUrl(githubUrl(this.sourceRepo, this.commitId))
             .build();
-    log.info("getSystemInfo returns {}", si);
+    log.debug("getSystemInfo returns {}", si);
     return si;
   }
 }
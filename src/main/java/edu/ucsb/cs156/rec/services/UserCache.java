@@ -0,0 +1,210 @@
+package edu.ucsb.cs156.rec.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.UserCacheStats;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * This is a service that keeps recently used User rows in memory, keyed both by email and by id.
+ *
+ * <p>Nearly every request needs the logged in user (see RoleInterceptor and CurrentUserServiceImpl)
+ * so without this cache the users table is read on every request. The cache is bounded in size
+ * ({@code app.userCache.maximumSize}) and entries expire after {@code app.userCache.ttlSeconds}.
+ * Setting either of these to zero turns the cache off.
+ *
+ * <p>Any code that changes or deletes a User must call {@link #evict(User)} or {@link #evict(long)}
+ * (or {@link #put(User)} for a user it has just saved) so that the change is visible on the next
+ * request. Called in a transaction, these take effect once the transaction commits, so that no
+ * other request sees a change that might yet be rolled back.
+ *
+ * <p>The cache is held in this instance's memory only, so an evict on one instance of the
+ * application leaves the other instances with their old copy until it expires. Roles must not wait
+ * that long, so {@link #findByEmail}, which is how the logged in user is found, checks a cached
+ * copy against the user's role version in the database (a primary key lookup of one column) and
+ * reloads it if a role has changed or the user is gone. Other fields, such as the name, and users
+ * found by {@link #findById} may be up to {@code app.userCache.ttlSeconds} out of date on other
+ * instances.
+ */
+@Slf4j
+@Service("userCache")
+public class UserCache {
+
+  @Autowired UserRepository userRepository;
+
+  @Value("${app.userCache.maximumSize:10000}")
+  private long maximumSize;
+
+  @Value("${app.userCache.ttlSeconds:300}")
+  private long ttlSeconds;
+
+  private Cache<String, User> usersByEmail;
+
+  private Cache<Long, User> usersById;
+
+  private final LongAdder invalidations = new LongAdder();
+
+  private final LongAdder uncachedLookups = new LongAdder();
+
+  /** Builds the underlying caches once the property values have been injected. */
+  @PostConstruct
+  void init() {
+    if (maximumSize > 0 && ttlSeconds > 0) {
+      usersByEmail = newCache();
+      usersById = newCache();
+    } else {
+      log.info("user cache is disabled (maximumSize={}, ttlSeconds={})", maximumSize, ttlSeconds);
+    }
+  }
+
+  private <K> Cache<K, User> newCache() {
+    return Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * This method returns the User with a given email, from the cache if possible.
+   *
+   * @param email email address of the user
+   * @return Optional of User (empty if not found)
+   */
+  public Optional<User> findByEmail(String email) {
+    if (usersByEmail == null) {
+      uncachedLookups.increment();
+      return userRepository.findByEmail(email);
+    }
+    User user = usersByEmail.getIfPresent(email);
+    if (user != null && isCurrent(user)) {
+      return Optional.of(user);
+    }
+    if (user != null) {
+      // changed or deleted on another instance
+      invalidate(user);
+    }
+    user = userRepository.findByEmail(email).orElse(null);
+    if (user != null) {
+      store(user);
+    }
+    return Optional.ofNullable(user);
+  }
+
+  private boolean isCurrent(User user) {
+    return userRepository
+        .findRoleVersionById(user.getId())
+        .map(roleVersion -> roleVersion == user.getRoleVersion())
+        .orElse(false);
+  }
+
+  /**
+   * This method returns the User with a given id, from the cache if possible.
+   *
+   * @param id id of the user
+   * @return Optional of User (empty if not found)
+   */
+  public Optional<User> findById(Long id) {
+    if (usersById == null) {
+      uncachedLookups.increment();
+      return userRepository.findById(id);
+    }
+    User user = usersById.get(id, key -> userRepository.findById(key).orElse(null));
+    if (user != null && user.getEmail() != null) {
+      usersByEmail.put(user.getEmail(), user);
+    }
+    return Optional.ofNullable(user);
+  }
+
+  /**
+   * This method stores a user that has just been saved, replacing any older copy.
+   *
+   * @param user the user that was saved
+   */
+  public void put(User user) {
+    AfterCommit.run(() -> store(user));
+  }
+
+  private void store(User user) {
+    if (usersByEmail != null) {
+      usersById.put(user.getId(), user);
+      if (user.getEmail() != null) {
+        usersByEmail.put(user.getEmail(), user);
+      }
+    }
+  }
+
+  /**
+   * This method removes a user from the cache. It must be called whenever a user's roles are
+   * changed or the user is deleted.
+   *
+   * @param user the user that was changed or deleted
+   */
+  public void evict(User user) {
+    AfterCommit.run(() -> invalidate(user));
+  }
+
+  private void invalidate(User user) {
+    invalidations.increment();
+    if (usersByEmail != null) {
+      usersById.invalidate(user.getId());
+      if (user.getEmail() != null) {
+        usersByEmail.invalidate(user.getEmail());
+      }
+    }
+  }
+
+  /**
+   * This method removes a user from the cache when only its id is known, for code that changes or
+   * deletes a user without loading it first.
+   *
+   * @param id id of the user that was changed or deleted
+   */
+  public void evict(long id) {
+    AfterCommit.run(() -> invalidate(id));
+  }
+
+  private void invalidate(long id) {
+    invalidations.increment();
+    if (usersByEmail != null) {
+      User cached = usersById.asMap().remove(id);
+      if (cached != null && cached.getEmail() != null) {
+        usersByEmail.invalidate(cached.getEmail());
+      } else {
+        usersByEmail.asMap().values().removeIf(user -> user.getId() == id);
+      }
+    }
+  }
+
+  /**
+   * This method returns the hit, miss and eviction counters for the cache.
+   *
+   * @return the statistics for this cache
+   */
+  public UserCacheStats getStats() {
+    if (usersByEmail == null) {
+      return UserCacheStats.builder()
+          .misses(uncachedLookups.sum())
+          .invalidations(invalidations.sum())
+          .build();
+    }
+    CacheStats stats = usersByEmail.stats().plus(usersById.stats());
+    return UserCacheStats.builder()
+        .size(usersByEmail.estimatedSize() + usersById.estimatedSize())
+        .hits(stats.hitCount())
+        .misses(stats.missCount())
+        .evictions(stats.evictionCount())
+        .invalidations(invalidations.sum())
+        .build();
+  }
+}
@@ -0,0 +1,99 @@
+package edu.ucsb.cs156.rec.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.stream.Stream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * This is a service that writes the admin users listing as a JSON array, one user at a time.
+ *
+ * <p>Users are read from a database cursor and written straight to the response with a Jackson
+ * {@link JsonGenerator}, so neither the list of users nor the JSON text is ever held in memory as a
+ * whole, and the first bytes go out before the last row is read.
+ */
+@Service("userListingService")
+public class UserListingService {
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired ObjectMapper mapper;
+
+  @PersistenceContext EntityManager entityManager;
+
+  /**
+   * This method turns the search text typed by an admin into the LIKE pattern used by {@link
+   * UserRepository#streamUsers(String, long)}, escaping any wildcards in it.
+   *
+   * @param search the text the email or name should start with; case is ignored
+   * @return the pattern, or null if search is null or blank
+   */
+  public static String prefixPattern(String search) {
+    if (search == null || search.isBlank()) {
+      return null;
+    }
+    String escaped =
+        search
+            .strip()
+            .toLowerCase(Locale.ROOT)
+            .replace("\\", "\\\\")
+            .replace("%", "\\%")
+            .replace("_", "\\_");
+    return escaped + "%";
+  }
+
+  /**
+   * This method writes every user matching the pattern, after the given id, as a JSON array.
+   *
+   * @param out where to write the JSON; it is flushed but not closed
+   * @param prefix pattern from {@link #prefixPattern(String)}, or null for all users
+   * @param after only write users with an id greater than this
+   * @return the number of users written
+   * @throws IOException if writing fails
+   */
+  @Transactional(readOnly = true)
+  public long writeUsers(OutputStream out, String prefix, long after) throws IOException {
+    try (Stream<User> users = userRepository.streamUsers(prefix, after)) {
+      return writeArray(out, (Iterable<User>) users::iterator, true);
+    }
+  }
+
+  /**
+   * This method writes users that have already been loaded as a JSON array.
+   *
+   * @param out where to write the JSON; it is flushed but not closed
+   * @param users the users to write
+   * @return the number of users written
+   * @throws IOException if writing fails
+   */
+  public long writeUsers(OutputStream out, Iterable<User> users) throws IOException {
+    return writeArray(out, users, false);
+  }
+
+  private long writeArray(OutputStream out, Iterable<User> users, boolean detach)
+      throws IOException {
+    long count = 0;
+    try (JsonGenerator generator =
+        mapper.getFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      generator.writeStartArray();
+      for (User user : users) {
+        mapper.writeValue(generator, user);
+        if (detach) {
+          entityManager.detach(user);
+        }
+        count++;
+      }
+      generator.writeEndArray();
+    }
+    return count;
+  }
+}
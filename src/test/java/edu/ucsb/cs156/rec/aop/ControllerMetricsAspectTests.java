@@ -0,0 +1,127 @@
+package edu.ucsb.cs156.rec.aop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+public class ControllerMetricsAspectTests {
+
+  /** A controller whose calls can check the meters while they are in progress. */
+  public static class SampleController {
+    MeterRegistry registry;
+
+    @GetMapping("/sample")
+    public double inFlight() {
+      return registry
+          .get(ControllerMetricsAspect.ACTIVE)
+          .tag("handler", "inFlight")
+          .gauge()
+          .value();
+    }
+
+    @GetMapping("/sample/hello")
+    public String hello() {
+      return "hello";
+    }
+
+    @PostMapping("/sample")
+    public String fail() {
+      throw new IllegalArgumentException("bad request");
+    }
+  }
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private final ControllerMetricsAspect aspect = new ControllerMetricsAspect();
+
+  private SampleController controller;
+
+  @BeforeEach
+  public void setup() {
+    aspect.meterRegistry = registry;
+    SampleController target = new SampleController();
+    target.registry = registry;
+    AspectJProxyFactory factory = new AspectJProxyFactory(target);
+    factory.setProxyTargetClass(true);
+    factory.addAspect(aspect);
+    controller = factory.getProxy();
+  }
+
+  @AfterEach
+  public void teardown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  public void calls_are_timed_and_counted_while_in_progress() {
+    assertEquals(1.0, controller.inFlight());
+    assertEquals(1.0, controller.inFlight());
+
+    assertEquals(
+        2,
+        registry
+            .get(ControllerMetricsAspect.TIMER)
+            .tags("controller", "SampleController", "handler", "inFlight")
+            .timer()
+            .count());
+    assertEquals(
+        0.0,
+        registry.get(ControllerMetricsAspect.ACTIVE).tag("handler", "inFlight").gauge().value());
+  }
+
+  @Test
+  public void errors_are_counted_by_exception() {
+    assertThrows(IllegalArgumentException.class, () -> controller.fail());
+
+    assertEquals(
+        1.0,
+        registry
+            .get(ControllerMetricsAspect.ERRORS)
+            .tags("handler", "fail", "exception", "IllegalArgumentException")
+            .counter()
+            .count());
+    assertEquals(
+        1, registry.get(ControllerMetricsAspect.TIMER).tag("handler", "fail").timer().count());
+    assertEquals(
+        0.0, registry.get(ControllerMetricsAspect.ACTIVE).tag("handler", "fail").gauge().value());
+  }
+
+  @Test
+  public void sampled_calls_are_logged_in_and_out_of_a_request() {
+    aspect.logSampleRate = 1;
+    assertEquals(1.0, controller.inFlight());
+
+    RequestContextHolder.setRequestAttributes(
+        new ServletRequestAttributes(new MockHttpServletRequest("GET", "/sample")));
+    assertEquals(1.0, controller.inFlight());
+
+    // all but never logged
+    aspect.logSampleRate = Double.MIN_VALUE;
+    assertEquals(1.0, controller.inFlight());
+
+    assertEquals(3, registry.get(ControllerMetricsAspect.TIMER).timer().count());
+  }
+
+  @Test
+  public void stoplisted_controllers_are_not_timed() {
+    aspect.stoplist.add(SampleController.class.getName());
+
+    assertEquals("hello", controller.hello());
+    assertThrows(IllegalArgumentException.class, () -> controller.fail());
+
+    assertNull(registry.find(ControllerMetricsAspect.TIMER).timer());
+    assertNull(registry.find(ControllerMetricsAspect.ERRORS).counter());
+  }
+}
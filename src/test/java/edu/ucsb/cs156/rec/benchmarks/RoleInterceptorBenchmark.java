@@ -0,0 +1,134 @@
+package edu.ucsb.cs156.rec.benchmarks;
+
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.interceptors.RoleInterceptor;
+import edu.ucsb.cs156.rec.models.CurrentUser;
+import edu.ucsb.cs156.rec.services.CurrentUserContext;
+import edu.ucsb.cs156.rec.services.CurrentUserService;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Measures the cost of RoleInterceptor.preHandle for a logged in user whose User row is already in
+ * the user cache.
+ *
+ * <p>{@code rebuildEveryRequest} is a request without a session, so the authentication token is
+ * rebuilt every time (which is what every request used to do). {@code roleStampMatches} is a
+ * request whose session already holds the current role version, which is the common case now.
+ *
+ * <p>See docs/benchmarks.md for how to run it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleInterceptorBenchmark {
+
+  private RoleInterceptor interceptor;
+  private Authentication authentication;
+  private MockHttpServletRequest requestWithoutSession;
+  private MockHttpServletRequest requestWithSession;
+  private MockHttpServletResponse response;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    User user =
+        User.builder()
+            .id(15L)
+            .email("joegaucho@ucsb.edu")
+            .admin(true)
+            .professor(false)
+            .roleVersion(2L)
+            .build();
+    CurrentUserContext currentUserContext =
+        new CurrentUserContext() {
+          @Override
+          public Optional<User> findByEmail(String email) {
+            return Optional.of(user);
+          }
+        };
+    interceptor = new RoleInterceptor();
+    ReflectionTestUtils.setField(interceptor, "currentUserContext", currentUserContext);
+    ReflectionTestUtils.setField(
+        interceptor,
+        "currentUserService",
+        new CurrentUserService() {
+          @Override
+          public User getUser() {
+            return user;
+          }
+
+          @Override
+          public CurrentUser getCurrentUser() {
+            return CurrentUser.builder().user(user).roles(getRoles()).build();
+          }
+
+          @Override
+          public Collection<? extends GrantedAuthority> getRoles() {
+            return Set.of();
+          }
+        });
+
+    Set<GrantedAuthority> authorities = Set.of(new SimpleGrantedAuthority("ROLE_USER"));
+    OAuth2User principal =
+        new DefaultOAuth2User(authorities, Map.of("email", user.getEmail()), "email");
+    authentication = new OAuth2AuthenticationToken(principal, authorities, "google");
+
+    response = new MockHttpServletResponse();
+    requestWithoutSession = new MockHttpServletRequest("GET", "/api/currentUser");
+    requestWithSession = new MockHttpServletRequest("GET", "/api/currentUser");
+    requestWithSession.getSession();
+
+    // the first request in a session stores the role stamp
+    SecurityContextHolder.getContext().setAuthentication(authentication);
+    interceptor.preHandle(requestWithSession, response, null);
+  }
+
+  @Benchmark
+  public Authentication rebuildEveryRequest() throws Exception {
+    SecurityContextHolder.getContext().setAuthentication(authentication);
+    interceptor.preHandle(requestWithoutSession, response, null);
+    return SecurityContextHolder.getContext().getAuthentication();
+  }
+
+  @Benchmark
+  public Authentication roleStampMatches() throws Exception {
+    SecurityContextHolder.getContext().setAuthentication(authentication);
+    interceptor.preHandle(requestWithSession, response, null);
+    return SecurityContextHolder.getContext().getAuthentication();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(RoleInterceptorBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,185 @@
+package edu.ucsb.cs156.rec.benchmarks;
+
+import edu.ucsb.cs156.rec.ExampleApplication;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Compares Tomcat's platform thread pool with virtual threads ({@code
+ * spring.threads.virtual.enabled}) by starting the whole application once in each mode and sending
+ * it requests from many clients at once.
+ *
+ * <p>Each request runs the first page query of the requester listing in a read-only transaction,
+ * holding its connection for an extra {@code dbMillis} to stand in for a database on another
+ * machine, and then waits {@code otherMillis} without a connection (for a slow client or another
+ * service). It reports the throughput and the 50th, 99th and 99.9th percentile latency of each
+ * mode.
+ *
+ * <p>The settings are system properties: {@code concurrency} (default 1000 clients), {@code
+ * poolSize} (20 connections), {@code dbMillis} (5), {@code otherMillis} (100), {@code
+ * warmupSeconds} (5) and {@code seconds} (15).
+ *
+ * <p>See docs/benchmarks.md for how to run it.
+ */
+public class VirtualThreadsBenchmark {
+
+  /** The endpoint being measured; it only exists while this benchmark is running. */
+  @Profile("benchmark")
+  @RestController
+  public static class BenchmarkController {
+    @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+    @Autowired PlatformTransactionManager transactionManager;
+
+    @Value("${benchmark.dbMillis}")
+    long dbMillis;
+
+    @Value("${benchmark.otherMillis}")
+    long otherMillis;
+
+    @GetMapping("/benchmark/requests")
+    public int requests() throws InterruptedException {
+      TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+      readOnly.setReadOnly(true);
+      int rows =
+          readOnly.execute(
+              transaction -> {
+                sleep(dbMillis);
+                return recommendationRequestRepository.findSubmittedPage(1L, Limit.of(20)).size();
+              });
+      Thread.sleep(otherMillis);
+      return rows;
+    }
+
+    private static void sleep(long millis) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static final int CONCURRENCY = Integer.getInteger("concurrency", 1000);
+  private static final int POOL_SIZE = Integer.getInteger("poolSize", 20);
+  private static final long DB_MILLIS = Long.getLong("dbMillis", 5);
+  private static final long OTHER_MILLIS = Long.getLong("otherMillis", 100);
+  private static final long WARMUP_SECONDS = Long.getLong("warmupSeconds", 5);
+  private static final long SECONDS = Long.getLong("seconds", 15);
+
+  public static void main(String[] args) throws Exception {
+    List<String> results = new ArrayList<>();
+    for (boolean virtual : new boolean[] {false, true}) {
+      results.add((virtual ? "virtual threads  " : "platform threads ") + run(virtual));
+    }
+    System.out.printf(
+        "%n%d clients, pool of %d, %dms holding a connection + %dms without, %ds%n",
+        CONCURRENCY, POOL_SIZE, DB_MILLIS, OTHER_MILLIS, SECONDS);
+    results.forEach(System.out::println);
+  }
+
+  private static String run(boolean virtual) throws Exception {
+    ConfigurableApplicationContext app =
+        new SpringApplicationBuilder(ExampleApplication.class)
+            .profiles("development", "benchmark")
+            .properties(
+                "server.port=0",
+                "spring.threads.virtual.enabled=" + virtual,
+                "spring.datasource.url=jdbc:h2:mem:benchmark" + virtual + ";DB_CLOSE_DELAY=-1",
+                "spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                "app.scheduling.enabled=false",
+                "app.controllerLog.sampleRate=0",
+                "benchmark.dbMillis=" + DB_MILLIS,
+                "benchmark.otherMillis=" + OTHER_MILLIS)
+            .run();
+    try {
+      URI uri =
+          URI.create(
+              "http://localhost:%s/benchmark/requests"
+                  .formatted(app.getEnvironment().getProperty("local.server.port")));
+      return load(uri);
+    } finally {
+      app.close();
+    }
+  }
+
+  /** Sends requests from CONCURRENCY clients, each waiting for one response before the next. */
+  private static String load(URI uri) throws Exception {
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    HttpRequest request = HttpRequest.newBuilder(uri).build();
+    long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+    long measureTo = measureFrom + TimeUnit.SECONDS.toNanos(SECONDS);
+    List<Future<long[]>> clients = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < CONCURRENCY; i++) {
+        clients.add(
+            executor.submit(
+                () -> {
+                  long[] latencies = new long[1024];
+                  int count = 0;
+                  long errors = 0;
+                  long start;
+                  while ((start = System.nanoTime()) < measureTo) {
+                    HttpResponse<Void> response =
+                        client.send(request, HttpResponse.BodyHandlers.discarding());
+                    long end = System.nanoTime();
+                    if (start < measureFrom) {
+                      continue;
+                    }
+                    if (response.statusCode() != 200) {
+                      errors++;
+                    }
+                    if (count == latencies.length) {
+                      latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = end - start;
+                  }
+                  long[] result = Arrays.copyOf(latencies, count + 1);
+                  result[count] = errors;
+                  return result;
+                }));
+      }
+    }
+    long errors = 0;
+    List<long[]> perClient = new ArrayList<>();
+    for (Future<long[]> future : clients) {
+      long[] result = future.get();
+      errors += result[result.length - 1];
+      perClient.add(Arrays.copyOf(result, result.length - 1));
+    }
+    long[] all = perClient.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+    return "%8.0f req/s  p50 %6.1fms  p99 %7.1fms  p99.9 %7.1fms  errors %d"
+        .formatted(
+            all.length / (double) SECONDS,
+            percentile(all, 0.50),
+            percentile(all, 0.99),
+            percentile(all, 0.999),
+            errors);
+  }
+
+  private static double percentile(long[] sorted, double fraction) {
+    return sorted.length == 0
+        ? Double.NaN
+        : sorted[(int) Math.min(sorted.length - 1, sorted.length * fraction)] / 1e6;
+  }
+}
@@ -0,0 +1,101 @@
+package edu.ucsb.cs156.rec.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+
+public class ConnectionLimitingDataSourceTests {
+
+  private final DataSource target =
+      mock(DataSource.class, withSettings().extraInterfaces(AutoCloseable.class));
+
+  private final ConnectionLimitingDataSource limited =
+      new ConnectionLimitingDataSource(target, 1, Duration.ofMillis(50));
+
+  @Test
+  public void only_permits_connections_are_open_at_once() throws Exception {
+    Connection pooled = mock(Connection.class);
+    when(target.getConnection()).thenReturn(pooled);
+
+    Connection connection = limited.getConnection();
+    assertEquals(0, limited.availablePermits());
+    SQLTransientConnectionException e =
+        assertThrows(SQLTransientConnectionException.class, () -> limited.getConnection());
+    assertEquals("Connection is not available, request timed out after 50ms", e.getMessage());
+
+    connection.close();
+    connection.close();
+    verify(pooled, times(1)).close();
+    assertEquals(1, limited.availablePermits());
+
+    limited.getConnection().close();
+    assertEquals(1, limited.availablePermits());
+  }
+
+  @Test
+  public void connections_are_passed_through() throws Exception {
+    Connection pooled = mock(Connection.class);
+    when(target.getConnection("sa", "password")).thenReturn(pooled);
+    when(pooled.isReadOnly()).thenReturn(true);
+    when(pooled.prepareStatement("bad sql")).thenThrow(new SQLException("syntax error"));
+
+    Connection connection = limited.getConnection("sa", "password");
+
+    assertTrue(connection.isReadOnly());
+    assertEquals(
+        "syntax error",
+        assertThrows(SQLException.class, () -> connection.prepareStatement("bad sql"))
+            .getMessage());
+    assertSame(pooled, ((ConnectionProxy) connection).getTargetConnection());
+    assertEquals(connection, connection);
+    assertNotEquals(connection, limited);
+    assertEquals(System.identityHashCode(connection), connection.hashCode());
+  }
+
+  @Test
+  public void permits_are_given_back_when_the_pool_fails() throws Exception {
+    when(target.getConnection()).thenThrow(new SQLException("pool is closed"));
+    when(target.getConnection("sa", "password")).thenThrow(new IllegalStateException("closed"));
+
+    assertThrows(SQLException.class, () -> limited.getConnection());
+    assertThrows(IllegalStateException.class, () -> limited.getConnection("sa", "password"));
+    assertEquals(1, limited.availablePermits());
+  }
+
+  @Test
+  public void waiting_can_be_interrupted() throws Exception {
+    when(target.getConnection()).thenReturn(mock(Connection.class));
+    limited.getConnection();
+
+    Thread.currentThread().interrupt();
+    SQLTransientConnectionException e =
+        assertThrows(SQLTransientConnectionException.class, () -> limited.getConnection());
+
+    assertTrue(Thread.interrupted());
+    assertEquals("Interrupted waiting for a connection", e.getMessage());
+  }
+
+  @Test
+  public void closing_closes_the_pool() throws Exception {
+    limited.close();
+    verify((AutoCloseable) target, times(1)).close();
+
+    // a target that cannot be closed is left alone
+    new ConnectionLimitingDataSource(mock(DataSource.class), 1, Duration.ofMillis(50)).close();
+  }
+}
@@ -0,0 +1,167 @@
+package edu.ucsb.cs156.rec.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import jakarta.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/** Routes between two in-memory H2 databases standing in for a primary and a replica. */
+public class ReplicaRoutingDataSourceTests {
+
+  private static DataSource database(String name) {
+    DataSource dataSource =
+        DataSourceBuilder.create()
+            .url("jdbc:h2:mem:" + name + System.nanoTime() + ";DB_CLOSE_DELAY=-1")
+            .username("sa")
+            .build();
+    JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+    jdbc.execute("CREATE TABLE WHO_AM_I (NAME VARCHAR(10))");
+    jdbc.update("INSERT INTO WHO_AM_I VALUES (?)", name);
+    return dataSource;
+  }
+
+  private final DataSource routing =
+      new LazyConnectionDataSourceProxy(
+          new ReplicaRoutingDataSource(
+              database("primary"), database("replica"), Duration.ofMillis(200)));
+
+  private final JdbcTemplate jdbc = new JdbcTemplate(routing);
+
+  private final DataSourceTransactionManager transactionManager =
+      new DataSourceTransactionManager(routing);
+
+  private String whoAmI(boolean readOnly) {
+    TransactionTemplate template = new TransactionTemplate(transactionManager);
+    template.setReadOnly(readOnly);
+    return template.execute(
+        transaction -> jdbc.queryForObject("SELECT NAME FROM WHO_AM_I", String.class));
+  }
+
+  private static void logIn(String name) {
+    SecurityContextHolder.getContext()
+        .setAuthentication(
+            new UsernamePasswordAuthenticationToken(
+                name, "password", AuthorityUtils.createAuthorityList("ROLE_USER")));
+  }
+
+  /**
+   * The application's transactions are JPA ones, which take their connection differently, so some
+   * of the tests run through an EntityManagerFactory (with no entities) over the same DataSource.
+   */
+  private LocalContainerEntityManagerFactoryBean entityManagerFactory;
+
+  private EntityManager entityManager() {
+    if (entityManagerFactory == null) {
+      entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+      entityManagerFactory.setDataSource(routing);
+      entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+      entityManagerFactory.setPackagesToScan(ReplicaRoutingDataSourceTests.class.getPackageName());
+      entityManagerFactory.afterPropertiesSet();
+    }
+    return SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory.getObject());
+  }
+
+  private TransactionTemplate jpaTransaction(boolean readOnly, int propagation) {
+    entityManager();
+    TransactionTemplate template =
+        new TransactionTemplate(new JpaTransactionManager(entityManagerFactory.getObject()));
+    template.setReadOnly(readOnly);
+    template.setPropagationBehavior(propagation);
+    return template;
+  }
+
+  private String whoAmIWithJpa() {
+    return (String)
+        entityManager().createNativeQuery("SELECT NAME FROM WHO_AM_I").getSingleResult();
+  }
+
+  @AfterEach
+  public void logOut() {
+    SecurityContextHolder.clearContext();
+    if (entityManagerFactory != null) {
+      entityManagerFactory.destroy();
+    }
+  }
+
+  @Test
+  public void read_only_transactions_use_the_replica_and_the_rest_use_the_primary() {
+    assertEquals("replica", whoAmI(true));
+    assertEquals("primary", whoAmI(false));
+    assertEquals("primary", jdbc.queryForObject("SELECT NAME FROM WHO_AM_I", String.class));
+    // none of that was a logged in user's write, so there is nothing to stick to
+    logIn("student");
+    assertEquals("replica", whoAmI(true));
+  }
+
+  @Test
+  public void users_read_their_own_writes_for_a_while() throws Exception {
+    logIn("student");
+    whoAmI(false);
+    assertEquals("primary", whoAmI(true));
+
+    logIn("professor");
+    assertEquals("replica", whoAmI(true));
+
+    Thread.sleep(300);
+    logIn("student");
+    assertEquals("replica", whoAmI(true));
+  }
+
+  @Test
+  public void anonymous_users_are_not_tracked() {
+    SecurityContextHolder.getContext()
+        .setAuthentication(
+            new AnonymousAuthenticationToken(
+                "key", "anonymousUser", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")));
+    whoAmI(false);
+    assertEquals("replica", whoAmI(true));
+  }
+
+  @Test
+  public void jpa_read_only_transactions_use_the_replica_and_the_rest_use_the_primary() {
+    int required = TransactionDefinition.PROPAGATION_REQUIRED;
+    assertEquals("replica", jpaTransaction(true, required).execute(t -> whoAmIWithJpa()));
+    assertEquals("primary", jpaTransaction(false, required).execute(t -> whoAmIWithJpa()));
+  }
+
+  /** As CurrentUserServiceImpl does when it has to save the user during a read-only request. */
+  @Test
+  public void jpa_write_inside_a_read_only_transaction_uses_a_new_one_on_the_primary() {
+    logIn("student");
+    List<String> seen =
+        jpaTransaction(true, TransactionDefinition.PROPAGATION_REQUIRED)
+            .execute(
+                outer -> {
+                  String before = whoAmIWithJpa();
+                  String inner =
+                      jpaTransaction(false, TransactionDefinition.PROPAGATION_REQUIRES_NEW)
+                          .execute(t -> whoAmIWithJpa());
+                  return List.of(before, inner, whoAmIWithJpa());
+                });
+    // the outer transaction keeps the connection it started with
+    assertEquals(List.of("replica", "primary", "replica"), seen);
+    // and the write makes the next read-only transaction stick to the primary
+    assertEquals(
+        "primary",
+        jpaTransaction(true, TransactionDefinition.PROPAGATION_REQUIRED)
+            .execute(t -> whoAmIWithJpa()));
+  }
+}
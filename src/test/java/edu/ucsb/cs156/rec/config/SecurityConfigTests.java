@@ -0,0 +1,43 @@
+package edu.ucsb.cs156.rec.config;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import edu.ucsb.cs156.rec.ControllerTestCase;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+
+/** Checks who may reach the actuator endpoints, which are not behind any controller's checks. */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class SecurityConfigTests extends ControllerTestCase {
+  @MockBean UserRepository userRepository;
+
+  @Test
+  public void anyone_can_check_health() throws Exception {
+    mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+  }
+
+  @Test
+  public void logged_out_users_cannot_read_metrics() throws Exception {
+    mockMvc.perform(get("/actuator/metrics")).andExpect(status().isForbidden());
+    mockMvc.perform(get("/actuator/mappings")).andExpect(status().isForbidden());
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void users_who_are_not_admins_cannot_read_metrics() throws Exception {
+    mockMvc.perform(get("/actuator/metrics")).andExpect(status().isForbidden());
+  }
+
+  @WithMockUser(roles = {"USER", "ADMIN"})
+  @Test
+  public void admins_can_read_metrics() throws Exception {
+    mockMvc.perform(get("/actuator/metrics")).andExpect(status().isOk());
+    mockMvc.perform(get("/actuator/mappings")).andExpect(status().isOk());
+  }
+}
@@ -0,0 +1,160 @@
+package edu.ucsb.cs156.rec.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import edu.ucsb.cs156.rec.ControllerTestCase;
+import edu.ucsb.cs156.rec.entities.ArchivedRecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.repositories.ArchivedRecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.RequestArchiveService;
+import edu.ucsb.cs156.rec.testconfig.TestConfig;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalInt;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
+
+@WebMvcTest(controllers = ArchivedRecommendationRequestController.class)
+@Import(TestConfig.class)
+public class ArchivedRecommendationRequestControllerTests extends ControllerTestCase {
+
+  @MockBean UserRepository userRepository;
+
+  @MockBean ArchivedRecommendationRequestRepository archivedRecommendationRequestRepository;
+
+  @MockBean RequestArchiveService requestArchiveService;
+
+  private ArchivedRecommendationRequest archived(long id) {
+    return ArchivedRecommendationRequest.builder()
+        .id(id)
+        .recommendationType("PhD program")
+        .status(RequestStatus.COMPLETED)
+        .archivedDate(LocalDateTime.parse("2025-06-01T03:30:00"))
+        .build();
+  }
+
+  @Test
+  public void logged_out_users_cannot_get_history() throws Exception {
+    mockMvc.perform(get("/api/archivedrequests/requester")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void students_cannot_get_professor_or_admin_history() throws Exception {
+    mockMvc.perform(get("/api/archivedrequests/professor")).andExpect(status().is(403));
+    mockMvc.perform(get("/api/archivedrequests/admin")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void users_get_their_own_history() throws Exception {
+    List<ArchivedRecommendationRequest> rows = List.of(archived(9), archived(4));
+    when(archivedRecommendationRequestRepository.findRequesterHistoryPage(
+            1L, Long.MAX_VALUE, Limit.of(1001)))
+        .thenReturn(rows);
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/archivedrequests/requester"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(mapper.writeValueAsString(rows), response.getResponse().getContentAsString());
+    assertNull(
+        response.getResponse().getHeader(RecommendationRequestController.NEXT_CURSOR_HEADER));
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void professors_page_through_their_history() throws Exception {
+    when(archivedRecommendationRequestRepository.findProfessorHistoryPage(1L, 50L, Limit.of(3)))
+        .thenReturn(List.of(archived(40), archived(30), archived(20)));
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/archivedrequests/professor?limit=2&before=50"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(
+        mapper.writeValueAsString(List.of(archived(40), archived(30))),
+        response.getResponse().getContentAsString());
+    assertEquals(
+        "30", response.getResponse().getHeader(RecommendationRequestController.NEXT_CURSOR_HEADER));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admins_get_all_history_with_a_capped_limit() throws Exception {
+    when(archivedRecommendationRequestRepository.findHistoryPage(Long.MAX_VALUE, Limit.of(1001)))
+        .thenReturn(List.of(archived(1)));
+
+    mockMvc.perform(get("/api/archivedrequests/admin?limit=5000")).andExpect(status().isOk());
+
+    verify(archivedRecommendationRequestRepository, times(1))
+        .findHistoryPage(Long.MAX_VALUE, Limit.of(1001));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void limit_must_be_positive() throws Exception {
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/archivedrequests/admin?limit=0"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    assertEquals("limit must be at least 1", responseToJson(response).get("message"));
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void professors_cannot_run_the_archive() throws Exception {
+    mockMvc
+        .perform(post("/api/archivedrequests/admin/run").with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admins_can_run_the_archive() throws Exception {
+    when(requestArchiveService.archiveUnlessRunning()).thenReturn(OptionalInt.of(12));
+
+    MvcResult response =
+        mockMvc
+            .perform(post("/api/archivedrequests/admin/run").with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    verify(requestArchiveService, times(1)).archiveUnlessRunning();
+    assertEquals("Archived 12 recommendation requests", responseToJson(response).get("message"));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void the_archive_is_not_run_while_another_instance_runs_it() throws Exception {
+    when(requestArchiveService.archiveUnlessRunning()).thenReturn(OptionalInt.empty());
+
+    MvcResult response =
+        mockMvc
+            .perform(post("/api/archivedrequests/admin/run").with(csrf()))
+            .andExpect(status().isConflict())
+            .andReturn();
+
+    assertEquals("The archive mover is already running", responseToJson(response).get("message"));
+  }
+}
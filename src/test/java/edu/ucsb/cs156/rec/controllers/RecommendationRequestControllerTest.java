@@ -1,79 +1,139 @@
 package edu.ucsb.cs156.rec.controllers;
 
+import static org.hamcrest.Matchers.not;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import edu.ucsb.cs156.rec.ControllerTestCase;
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
 import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
 import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.KeysetCursor;
+import edu.ucsb.cs156.rec.models.ListingFingerprint;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.models.RequestSnapshot;
+import edu.ucsb.cs156.rec.repositories.IdempotencyKeyRepository;
 import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository.DeleteRow;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository.StatusRow;
 import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.IdempotencyService;
+import edu.ucsb.cs156.rec.services.RecommendationRequestExportService;
+import edu.ucsb.cs156.rec.services.RequestEventPublisher;
 import edu.ucsb.cs156.rec.testconfig.TestConfig;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
 @WebMvcTest(controllers = RecommendationRequestController.class)
-@Import(TestConfig.class)
+@Import({TestConfig.class, IdempotencyService.class})
 public class RecommendationRequestControllerTest extends ControllerTestCase {
   @MockBean RecommendationRequestRepository recommendationRequestRepository;
 
   @MockBean UserRepository userRepository;
 
+  @MockBean RequestEventPublisher requestEventPublisher;
+
+  @MockBean RecommendationRequestExportService recommendationRequestExportService;
+
+  @MockBean IdempotencyKeyRepository idempotencyKeyRepository;
+
+  ListingFingerprint emptyFingerprint = ListingFingerprint.builder().count(0L).build();
+
+  /** The listings look up a fingerprint for their ETag before loading anything. */
+  @BeforeEach
+  public void stubFingerprints() {
+    when(recommendationRequestRepository.submittedFingerprint(any())).thenReturn(emptyFingerprint);
+    when(recommendationRequestRepository.inboxFingerprint(any())).thenReturn(emptyFingerprint);
+    when(recommendationRequestRepository.inboxFingerprintWithStatus(any(), any()))
+        .thenReturn(emptyFingerprint);
+  }
+
+  private DeleteRow deleteRow(long id, Long professorId, long version) {
+    LocalDateTime submitted = LocalDateTime.parse("2022-01-03T00:00:00");
+    return new DeleteRow() {
+      public long getId() {
+        return id;
+      }
+
+      public Long getRequesterId() {
+        return 5L;
+      }
+
+      public String getRecommendationType() {
+        return "PhDprogram";
+      }
+
+      public RequestStatus getStatus() {
+        return RequestStatus.PENDING;
+      }
+
+      public LocalDateTime getSubmissionDate() {
+        return submitted;
+      }
+
+      public LocalDateTime getCompletionDate() {
+        return null;
+      }
+
+      public Long getProfessorId() {
+        return professorId;
+      }
+
+      public long getVersion() {
+        return version;
+      }
+    };
+  }
+
   // User can delete their own recommendation request
   @WithMockUser(roles = {"USER"})
   @Test
   public void user_can_delete_their_recommendation_request() throws Exception {
-
-    User user = currentUserService.getCurrentUser().getUser();
-    User prof =
-        User.builder()
-            .id(22L)
-            .email("profA@ucsb.edu")
-            .googleSub("googleSub")
-            .fullName("Prof A")
-            .givenName("Prof")
-            .familyName("A")
-            .emailVerified(true)
-            .professor(true)
-            .build();
-
     // arrange
-    RecommendationRequest recReq =
-        RecommendationRequest.builder()
-            .id(15L)
-            .requester(user)
-            .professor(prof)
-            .recommendationType("PhDprogram")
-            .details("details")
-            .status("PENDING")
-            .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .lastModifiedDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .build();
-
-    when(recommendationRequestRepository.findByIdAndRequester(eq(15L), eq(user)))
-        .thenReturn(Optional.of(recReq));
+    when(recommendationRequestRepository.findDeleteRow(15L, 1L, null))
+        .thenReturn(Optional.of(deleteRow(15L, 22L, 3L)));
+    when(recommendationRequestRepository.deleteByIdAndVersion(15L, 3L)).thenReturn(1);
 
     // act
     MvcResult response =
@@ -83,50 +143,36 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findByIdAndRequester(15L, user);
-    verify(recommendationRequestRepository, times(1)).delete(recReq);
+    verify(recommendationRequestRepository, times(1)).findDeleteRow(15L, 1L, null);
+    verify(recommendationRequestRepository, times(1)).deleteByIdAndVersion(15L, 3L);
+    verify(recommendationRequestRepository, times(0)).delete(any());
+    verify(requestEventPublisher, times(1))
+        .publish(
+            RequestEvent.builder()
+                .requestId(15L)
+                .type(OutboxEvent.Type.DELETED)
+                .before(
+                    RequestSnapshot.builder()
+                        .requesterId(5L)
+                        .professorId(22L)
+                        .recommendationType("PhDprogram")
+                        .status(RequestStatus.PENDING)
+                        .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
+                        .build())
+                .build());
 
     Map<String, Object> json = responseToJson(response);
     assertEquals("RecommendationRequest with id 15 deleted", json.get("message"));
   }
 
-  // user attempts to delete a recommendation request that dne
+  // user attempts to delete a recommendation request that dne, or that belongs to another user
   @WithMockUser(roles = {"USER"})
   @Test
   public void
       user_tries_to_delete_non_existant_recommendation_request_and_gets_right_error_message()
           throws Exception {
     // arrange
-    User user1 = currentUserService.getCurrentUser().getUser();
-    User user2 = User.builder().id(44).build();
-    User prof =
-        User.builder()
-            .id(22L)
-            .email("profA@ucsb.edu")
-            .googleSub("googleSub")
-            .fullName("Prof A")
-            .givenName("Prof")
-            .familyName("A")
-            .emailVerified(true)
-            .professor(true)
-            .build();
-
-    RecommendationRequest rec1 =
-        RecommendationRequest.builder()
-            .id(15L)
-            .requester(user1)
-            .professor(prof)
-            .recommendationType("PhDprogram")
-            .details("details")
-            .status("PENDING")
-            .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .lastModifiedDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .build();
-
-    when(recommendationRequestRepository.findByIdAndRequester(eq(15L), eq(user2)))
-        .thenReturn(Optional.of(rec1));
+    when(recommendationRequestRepository.findDeleteRow(15L, 1L, null)).thenReturn(Optional.empty());
 
     // act
     MvcResult response =
@@ -136,57 +182,34 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findByIdAndRequester(15L, user1);
+    verify(recommendationRequestRepository, times(1)).findDeleteRow(15L, 1L, null);
+    verify(recommendationRequestRepository, times(0)).deleteByIdAndVersion(anyLong(), anyLong());
+    verifyNoInteractions(requestEventPublisher);
     Map<String, Object> json = responseToJson(response);
     assertEquals("RecommendationRequest with id 15 not found", json.get("message"));
   }
 
-  // User can't delete another user's recommendation request
+  // A request that changes between the read and the delete is not deleted
   @WithMockUser(roles = {"USER"})
   @Test
-  public void user_can_not_delete_belonging_to_another_user() throws Exception {
-
-    User user1 = currentUserService.getCurrentUser().getUser();
-    User user2 = User.builder().id(44).build();
-    User prof =
-        User.builder()
-            .id(22L)
-            .email("profA@ucsb.edu")
-            .googleSub("googleSub")
-            .fullName("Prof A")
-            .givenName("Prof")
-            .familyName("A")
-            .emailVerified(true)
-            .professor(true)
-            .build();
-
-    RecommendationRequest rec1 =
-        RecommendationRequest.builder()
-            .id(67L)
-            .requester(user2)
-            .professor(prof)
-            .recommendationType("PhDprogram")
-            .details("details")
-            .status("PENDING")
-            .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .lastModifiedDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .build();
-
-    when(recommendationRequestRepository.findById(eq(67L))).thenReturn(Optional.of(rec1));
+  public void user_delete_of_a_request_changed_meanwhile_fails_with_412() throws Exception {
+    // arrange
+    when(recommendationRequestRepository.findDeleteRow(15L, 1L, null))
+        .thenReturn(Optional.of(deleteRow(15L, 22L, 3L)));
+    when(recommendationRequestRepository.deleteByIdAndVersion(15L, 3L)).thenReturn(0);
 
     // act
     MvcResult response =
         mockMvc
-            .perform(delete("/api/recommendationrequest?id=67").with(csrf()))
-            .andExpect(status().isNotFound())
+            .perform(delete("/api/recommendationrequest?id=15").with(csrf()))
+            .andExpect(status().isPreconditionFailed())
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findByIdAndRequester(67L, user1);
+    verifyNoInteractions(requestEventPublisher);
     Map<String, Object> json = responseToJson(response);
-    assertEquals("RecommendationRequest with id 67 not found", json.get("message"));
+    assertEquals(
+        "RecommendationRequest with id 15 has been changed by someone else", json.get("message"));
   }
 
   // Admin can delete a recommendation request
@@ -194,35 +217,10 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
   @Test
   public void admin_can_delete_recommendation_request() throws Exception {
     // arrange
+    when(recommendationRequestRepository.findDeleteRow(67L, null, null))
+        .thenReturn(Optional.of(deleteRow(67L, null, 0L)));
+    when(recommendationRequestRepository.deleteByIdAndVersion(67L, 0L)).thenReturn(1);
 
-    User user2 = User.builder().id(44).build();
-    User prof =
-        User.builder()
-            .id(22L)
-            .email("profA@ucsb.edu")
-            .googleSub("googleSub")
-            .fullName("Prof A")
-            .givenName("Prof")
-            .familyName("A")
-            .emailVerified(true)
-            .professor(true)
-            .build();
-
-    RecommendationRequest rec1 =
-        RecommendationRequest.builder()
-            .id(67L)
-            .requester(user2)
-            .professor(prof)
-            .recommendationType("PhDprogram")
-            .details("details")
-            .status("PENDING")
-            .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .lastModifiedDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .build();
-
-    when(recommendationRequestRepository.findById(eq(67L))).thenReturn(Optional.of(rec1));
     // act
     MvcResult response =
         mockMvc
@@ -231,8 +229,9 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findById(67L);
-    verify(recommendationRequestRepository, times(1)).delete(any());
+    verify(recommendationRequestRepository, times(1)).findDeleteRow(67L, null, null);
+    verify(recommendationRequestRepository, times(1)).deleteByIdAndVersion(67L, 0L);
+    verify(requestEventPublisher, times(1)).publish(any());
     Map<String, Object> json = responseToJson(response);
     assertEquals("RecommendationRequest with id 67 deleted", json.get("message"));
   }
@@ -242,8 +241,8 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
   @Test
   public void admin_can_not_delete_recommendation_request_that_does_not_exist() throws Exception {
     // arrange
-
-    when(recommendationRequestRepository.findById(eq(19L))).thenReturn(Optional.empty());
+    when(recommendationRequestRepository.findDeleteRow(19L, null, null))
+        .thenReturn(Optional.empty());
 
     // act
     MvcResult response =
@@ -253,7 +252,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findById(19L);
+    verify(recommendationRequestRepository, times(1)).findDeleteRow(19L, null, null);
     Map<String, Object> json = responseToJson(response);
     assertEquals("RecommendationRequest with id 19 not found", json.get("message"));
   }
@@ -262,36 +261,10 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
   @WithMockUser(roles = {"PROFESSOR"})
   @Test
   public void professor_can_delete_their_recommendation_request() throws Exception {
-
-    User user = currentUserService.getCurrentUser().getUser();
-    User requester =
-        User.builder()
-            .id(22L)
-            .email("studentA@ucsb.edu")
-            .googleSub("googleSub")
-            .fullName("Student A")
-            .givenName("Student")
-            .familyName("A")
-            .emailVerified(true)
-            .build();
-
     // arrange
-    RecommendationRequest recReq =
-        RecommendationRequest.builder()
-            .id(15L)
-            .requester(requester)
-            .professor(user)
-            .recommendationType("PhDprogram")
-            .details("details")
-            .status("PENDING")
-            .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .lastModifiedDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .build();
-
-    when(recommendationRequestRepository.findByIdAndProfessor(eq(15L), eq(user)))
-        .thenReturn(Optional.of(recReq));
+    when(recommendationRequestRepository.findDeleteRow(15L, null, 1L))
+        .thenReturn(Optional.of(deleteRow(15L, 1L, 2L)));
+    when(recommendationRequestRepository.deleteByIdAndVersion(15L, 2L)).thenReturn(1);
 
     // act
     MvcResult response =
@@ -301,49 +274,22 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findByIdAndProfessor(15L, user);
-    verify(recommendationRequestRepository, times(1)).delete(recReq);
+    verify(recommendationRequestRepository, times(1)).findDeleteRow(15L, null, 1L);
+    verify(recommendationRequestRepository, times(1)).deleteByIdAndVersion(15L, 2L);
+    verify(requestEventPublisher, times(1)).publish(any());
 
     Map<String, Object> json = responseToJson(response);
     assertEquals("RecommendationRequest with id 15 deleted", json.get("message"));
   }
 
-  // Professor attempts to delete a recommendation request that dne
+  // Professor attempts to delete a recommendation request that dne, or was sent to someone else
   @WithMockUser(roles = {"PROFESSOR"})
   @Test
   public void
       professor_tries_to_delete_non_existant_recommendation_request_and_gets_right_error_message()
           throws Exception {
     // arrange
-    User user1 = currentUserService.getCurrentUser().getUser();
-    User user2 = User.builder().id(44).build();
-    User requester =
-        User.builder()
-            .id(22L)
-            .email("studentA@ucsb.edu")
-            .googleSub("googleSub")
-            .fullName("Student A")
-            .givenName("Student")
-            .familyName("A")
-            .emailVerified(true)
-            .build();
-
-    RecommendationRequest rec1 =
-        RecommendationRequest.builder()
-            .id(15L)
-            .requester(requester)
-            .professor(user1)
-            .recommendationType("PhDprogram")
-            .details("details")
-            .status("PENDING")
-            .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .lastModifiedDate(LocalDateTime.parse("2022-01-03T00:00:00"))
-            .build();
-
-    when(recommendationRequestRepository.findByIdAndProfessor(eq(15L), eq(user2)))
-        .thenReturn(Optional.of(rec1));
+    when(recommendationRequestRepository.findDeleteRow(15L, null, 1L)).thenReturn(Optional.empty());
 
     // act
     MvcResult response =
@@ -353,7 +299,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findByIdAndProfessor(15L, user1);
+    verify(recommendationRequestRepository, times(1)).findDeleteRow(15L, null, 1L);
     Map<String, Object> json = responseToJson(response);
     assertEquals("RecommendationRequest with id 15 not found", json.get("message"));
   }
@@ -383,7 +329,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof1)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -397,7 +343,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof1)
             .recommendationType("PhDprogram")
             .details("more details")
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -411,7 +357,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof1)
             .recommendationType("PhDprogram")
             .details("more details")
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -438,7 +384,8 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
 
     // assert
     verify(recommendationRequestRepository, times(1)).findByIdAndRequester(63L, user1);
-    verify(recommendationRequestRepository, times(1)).save(rec_corrected);
+    verify(recommendationRequestRepository, times(1)).saveAndFlush(rec_corrected);
+    verifyNoInteractions(requestEventPublisher);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedReturn, responseString);
   }
@@ -469,7 +416,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -523,7 +470,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -536,7 +483,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("more details")
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -592,7 +539,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("PENDING")
+            .status(RequestStatus.IN_PROGRESS)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -606,7 +553,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("COMPLETED")
+            .status(RequestStatus.COMPLETED)
             .completionDate(now)
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -619,7 +566,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("COMPLETED")
+            .status(RequestStatus.COMPLETED)
             .completionDate(now)
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -629,7 +576,12 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
     String requestBody = mapper.writeValueAsString(rec_updated);
     String expectedJson = mapper.writeValueAsString(rec_corrected);
 
-    when(recommendationRequestRepository.findById(eq(67L))).thenReturn(Optional.of(rec));
+    // the controller changes rec, so take its snapshot now
+    RequestSnapshot before = RequestSnapshot.of(rec);
+
+    when(recommendationRequestRepository.findByIdAndProfessor(
+            eq(67L), eq(currentUserService.getCurrentUser().getUser())))
+        .thenReturn(Optional.of(rec));
 
     // act
     MvcResult response =
@@ -645,8 +597,16 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
 
     // assert
 
-    verify(recommendationRequestRepository, times(1)).findById(67L);
-    verify(recommendationRequestRepository, times(1)).save(rec_corrected);
+    verify(recommendationRequestRepository, times(1)).findByIdAndProfessor(eq(67L), any());
+    verify(recommendationRequestRepository, times(1)).saveAndFlush(rec_corrected);
+    verify(requestEventPublisher, times(1))
+        .publish(
+            RequestEvent.builder()
+                .requestId(67L)
+                .type(OutboxEvent.Type.STATUS_CHANGED)
+                .before(before)
+                .after(RequestSnapshot.of(rec_corrected))
+                .build());
 
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
@@ -677,7 +637,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -691,7 +651,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("STILL_PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -704,7 +664,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("STILL_PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -714,7 +674,9 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
     String requestBody = mapper.writeValueAsString(rec_updated);
     String expectedJson = mapper.writeValueAsString(rec_corrected);
 
-    when(recommendationRequestRepository.findById(eq(67L))).thenReturn(Optional.of(rec));
+    when(recommendationRequestRepository.findByIdAndProfessor(
+            eq(67L), eq(currentUserService.getCurrentUser().getUser())))
+        .thenReturn(Optional.of(rec));
 
     // act
     MvcResult response =
@@ -729,8 +691,9 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findById(67L);
-    verify(recommendationRequestRepository, times(1)).save(rec_corrected);
+    verify(recommendationRequestRepository, times(1)).findByIdAndProfessor(eq(67L), any());
+    verify(recommendationRequestRepository, times(1)).saveAndFlush(rec_corrected);
+    verifyNoInteractions(requestEventPublisher);
 
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
@@ -762,7 +725,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("COMPLETED")
+            .status(RequestStatus.COMPLETED)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -771,7 +734,9 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
 
     String requestBody = mapper.writeValueAsString(rec_updated);
 
-    when(recommendationRequestRepository.findById(eq(67L))).thenReturn(Optional.empty());
+    when(recommendationRequestRepository.findByIdAndProfessor(
+            eq(67L), eq(currentUserService.getCurrentUser().getUser())))
+        .thenReturn(Optional.empty());
 
     // act
     MvcResult response =
@@ -786,7 +751,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(recommendationRequestRepository, times(1)).findById(67L);
+    verify(recommendationRequestRepository, times(1)).findByIdAndProfessor(eq(67L), any());
     Map<String, Object> json = responseToJson(response);
     assertEquals("EntityNotFoundException", json.get("type"));
     assertEquals("RecommendationRequest with id 67 not found", json.get("message"));
@@ -826,7 +791,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .professor(prof)
             .recommendationType("PhDprogram")
             .details("details")
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .completionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .dueDate(LocalDateTime.parse("2022-01-03T00:00:00"))
             .submissionDate(LocalDateTime.parse("2022-01-03T00:00:00"))
@@ -834,7 +799,7 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .build();
     List<RecommendationRequest> recs = new ArrayList<>();
     recs.add(rec);
-    when(recommendationRequestRepository.findAll()).thenReturn(recs);
+    when(recommendationRequestRepository.findAllSubmittedPage(Limit.of(1001))).thenReturn(recs);
     // act
     MvcResult response =
         mockMvc
@@ -842,9 +807,870 @@ public class RecommendationRequestControllerTest extends ControllerTestCase {
             .andExpect(status().isOk())
             .andReturn();
     // assert
-    verify(recommendationRequestRepository, times(1)).findAll();
+    verify(recommendationRequestRepository, times(1)).findAllSubmittedPage(Limit.of(1001));
     String responseString = response.getResponse().getContentAsString();
     String expectedJson = mapper.writeValueAsString(recs);
     assertEquals(expectedJson, responseString);
   }
+
+  private RecommendationRequest pagedRequest(long id, LocalDateTime date) {
+    return RecommendationRequest.builder()
+        .id(id)
+        .requester(User.builder().id(99).build())
+        .professor(User.builder().id(1L).build())
+        .status(RequestStatus.PENDING)
+        .dueDate(date)
+        .submissionDate(date)
+        .build();
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_listing_returns_cursor_when_there_is_another_page() throws Exception {
+    LocalDateTime date = LocalDateTime.parse("2022-01-03T00:00:00");
+    List<RecommendationRequest> recs =
+        List.of(pagedRequest(9L, date), pagedRequest(8L, date), pagedRequest(7L, date));
+    when(recommendationRequestRepository.findAllSubmittedPage(Limit.of(3))).thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/recommendationrequest/admin?limit=2"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(
+        mapper.writeValueAsString(recs.subList(0, 2)), response.getResponse().getContentAsString());
+    assertEquals(
+        new KeysetCursor(date, 8L).encode(), response.getResponse().getHeader("X-Next-Cursor"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_listing_continues_after_cursor() throws Exception {
+    LocalDateTime date = LocalDateTime.parse("2022-01-03T00:00:00");
+    List<RecommendationRequest> recs = List.of(pagedRequest(7L, date));
+    when(recommendationRequestRepository.findAllSubmittedPageAfter(date, 8L, Limit.of(3)))
+        .thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/admin")
+                    .param("limit", "2")
+                    .param("after", new KeysetCursor(date, 8L).encode()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(mapper.writeValueAsString(recs), response.getResponse().getContentAsString());
+    assertNull(response.getResponse().getHeader("X-Next-Cursor"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admin_listing_continues_after_cursor_without_date() throws Exception {
+    List<RecommendationRequest> recs = List.of(pagedRequest(3L, null));
+    when(recommendationRequestRepository.findAllSubmittedPageAfterNullSubmissionDate(
+            4L, Limit.of(1001)))
+        .thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/admin")
+                    .param("after", new KeysetCursor(null, 4L).encode()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(mapper.writeValueAsString(recs), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void professor_listing_continues_after_cursor() throws Exception {
+    LocalDateTime date = LocalDateTime.parse("2022-01-03T00:00:00");
+    List<RecommendationRequest> recs =
+        List.of(pagedRequest(5L, date.plusDays(1)), pagedRequest(6L, null));
+    when(recommendationRequestRepository.findInboxPageAfter(1L, date, 4L, Limit.of(2)))
+        .thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/professor/all")
+                    .param("limit", "1")
+                    .param("after", new KeysetCursor(date, 4L).encode()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(
+        mapper.writeValueAsString(recs.subList(0, 1)), response.getResponse().getContentAsString());
+    assertEquals(
+        new KeysetCursor(date.plusDays(1), 5L).encode(),
+        response.getResponse().getHeader("X-Next-Cursor"));
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void professor_listing_continues_after_cursor_without_due_date() throws Exception {
+    List<RecommendationRequest> recs = List.of(pagedRequest(6L, null), pagedRequest(7L, null));
+    when(recommendationRequestRepository.findInboxPageWithStatusAfterNullDueDate(
+            1L, RequestStatus.PENDING, 5L, Limit.of(2)))
+        .thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/professor/filtered")
+                    .param("status", "PENDING")
+                    .param("limit", "1")
+                    .param("after", new KeysetCursor(null, 5L).encode()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(
+        mapper.writeValueAsString(recs.subList(0, 1)), response.getResponse().getContentAsString());
+    assertEquals(
+        new KeysetCursor(null, 6L).encode(), response.getResponse().getHeader("X-Next-Cursor"));
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void filtered_professor_listing_continues_after_cursor() throws Exception {
+    LocalDateTime date = LocalDateTime.parse("2022-01-03T00:00:00");
+    List<RecommendationRequest> recs = List.of(pagedRequest(5L, date.plusDays(1)));
+    when(recommendationRequestRepository.findInboxPageWithStatusAfter(
+            1L, RequestStatus.PENDING, date, 4L, Limit.of(1001)))
+        .thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/professor/filtered")
+                    .param("status", "PENDING")
+                    .param("after", new KeysetCursor(date, 4L).encode()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(mapper.writeValueAsString(recs), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void professor_listing_continues_after_cursor_without_due_date_for_all_statuses()
+      throws Exception {
+    List<RecommendationRequest> recs = List.of(pagedRequest(6L, null));
+    when(recommendationRequestRepository.findInboxPageAfterNullDueDate(1L, 5L, Limit.of(1001)))
+        .thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/professor/all")
+                    .param("after", new KeysetCursor(null, 5L).encode()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(mapper.writeValueAsString(recs), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void requester_listing_continues_after_cursor() throws Exception {
+    LocalDateTime date = LocalDateTime.parse("2022-01-03T00:00:00");
+    List<RecommendationRequest> recs = List.of(pagedRequest(7L, date.minusDays(1)));
+    when(recommendationRequestRepository.findSubmittedPageAfter(1L, date, 8L, Limit.of(1001)))
+        .thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/requester/all")
+                    .param("after", new KeysetCursor(date, 8L).encode()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(mapper.writeValueAsString(recs), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void requester_listing_continues_after_cursor_without_date() throws Exception {
+    List<RecommendationRequest> recs = List.of(pagedRequest(3L, null));
+    when(recommendationRequestRepository.findSubmittedPageAfterNullSubmissionDate(
+            1L, 4L, Limit.of(1001)))
+        .thenReturn(recs);
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/requester/all")
+                    .param("after", new KeysetCursor(null, 4L).encode()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    assertEquals(mapper.writeValueAsString(recs), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void limit_above_maximum_is_capped() throws Exception {
+    when(recommendationRequestRepository.findAllSubmittedPage(Limit.of(1001)))
+        .thenReturn(List.of());
+
+    mockMvc.perform(get("/api/recommendationrequest/admin?limit=5000")).andExpect(status().isOk());
+
+    verify(recommendationRequestRepository, times(1)).findAllSubmittedPage(Limit.of(1001));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void limit_below_one_is_rejected() throws Exception {
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/recommendationrequest/admin?limit=0"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("limit must be at least 1", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void invalid_cursors_are_rejected() throws Exception {
+    for (String cursor : List.of("not a cursor", "bm9jb21tYQ", "eCwx", "LHg")) {
+      MvcResult response =
+          mockMvc
+              .perform(get("/api/recommendationrequest/admin").param("after", cursor))
+              .andExpect(status().isBadRequest())
+              .andReturn();
+
+      Map<String, Object> json = responseToJson(response);
+      assertEquals("Invalid cursor: " + cursor, json.get("message"));
+    }
+  }
+
+  private MvcResult putStatus(RequestStatus from, String body) throws Exception {
+    RecommendationRequest rec = pagedRequest(67L, null);
+    rec.setStatus(from);
+    when(recommendationRequestRepository.findByIdAndProfessor(
+            eq(67L), eq(currentUserService.getCurrentUser().getUser())))
+        .thenReturn(Optional.of(rec));
+    return mockMvc
+        .perform(
+            put("/api/recommendationrequest/professor?id=67")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content(body)
+                .with(csrf()))
+        .andReturn();
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void prof_can_accept_a_pending_request_using_its_label() throws Exception {
+    MvcResult response = putStatus(RequestStatus.PENDING, "{\"status\":\"IN PROGRESS\"}");
+
+    assertEquals(200, response.getResponse().getStatus());
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("IN PROGRESS", json.get("status"));
+    assertNull(json.get("completionDate"));
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void prof_can_complete_a_pending_request_directly() throws Exception {
+    when(recommendationRequestRepository.saveAndFlush(any())).thenAnswer(i -> i.getArgument(0));
+
+    MvcResult response = putStatus(RequestStatus.PENDING, "{\"status\":\"COMPLETED\"}");
+
+    assertEquals(200, response.getResponse().getStatus());
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("COMPLETED", json.get("status"));
+    assertNotNull(json.get("completionDate"));
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void prof_cannot_make_a_disallowed_status_change() throws Exception {
+    MvcResult response = putStatus(RequestStatus.COMPLETED, "{\"status\":\"DENIED\"}");
+
+    assertEquals(400, response.getResponse().getStatus());
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("IllegalArgumentException", json.get("type"));
+    assertEquals("Cannot change status from COMPLETED to DENIED", json.get("message"));
+    verify(recommendationRequestRepository, times(0)).saveAndFlush(any());
+    verifyNoInteractions(requestEventPublisher);
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void prof_cannot_reopen_a_denied_request() throws Exception {
+    MvcResult response = putStatus(RequestStatus.DENIED, "{\"status\":\"PENDING\"}");
+
+    assertEquals(400, response.getResponse().getStatus());
+    assertEquals(
+        "Cannot change status from DENIED to PENDING", responseToJson(response).get("message"));
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void prof_must_send_a_status() throws Exception {
+    MvcResult response = putStatus(RequestStatus.PENDING, "{}");
+
+    assertEquals(400, response.getResponse().getStatus());
+    assertEquals("status is required", responseToJson(response).get("message"));
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void prof_cannot_send_an_unknown_status() throws Exception {
+    MvcResult response = putStatus(RequestStatus.PENDING, "{\"status\":\"STILL_PENDING\"}");
+
+    assertEquals(400, response.getResponse().getStatus());
+    verify(recommendationRequestRepository, times(0)).saveAndFlush(any());
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void completing_twice_keeps_the_first_completion_date() throws Exception {
+    LocalDateTime completed = LocalDateTime.parse("2022-01-03T00:00:00");
+    RecommendationRequest rec = pagedRequest(67L, null);
+    rec.setStatus(RequestStatus.COMPLETED);
+    rec.setCompletionDate(completed);
+    when(recommendationRequestRepository.findByIdAndProfessor(
+            eq(67L), eq(currentUserService.getCurrentUser().getUser())))
+        .thenReturn(Optional.of(rec));
+
+    mockMvc
+        .perform(
+            put("/api/recommendationrequest/professor?id=67")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("{\"status\":\"completed\"}")
+                .with(csrf()))
+        .andExpect(status().isOk());
+
+    assertEquals(completed, rec.getCompletionDate());
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void professor_filter_accepts_labels_in_any_case() throws Exception {
+    when(recommendationRequestRepository.findInboxPageWithStatus(
+            1L, RequestStatus.IN_PROGRESS, Limit.of(1001)))
+        .thenReturn(List.of());
+
+    mockMvc
+        .perform(
+            get("/api/recommendationrequest/professor/filtered").param("status", "in progress"))
+        .andExpect(status().isOk());
+
+    verify(recommendationRequestRepository, times(1))
+        .findInboxPageWithStatus(1L, RequestStatus.IN_PROGRESS, Limit.of(1001));
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void professor_filter_rejects_unknown_status() throws Exception {
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/recommendationrequest/professor/filtered").param("status", "lost"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    assertEquals("Unknown status: lost", responseToJson(response).get("message"));
+  }
+
+  private StatusRow statusRow(long id, RequestStatus status) {
+    LocalDateTime submitted = LocalDateTime.parse("2022-01-03T00:00:00");
+    return new StatusRow() {
+      public long getId() {
+        return id;
+      }
+
+      public Long getRequesterId() {
+        return 5L;
+      }
+
+      public String getRecommendationType() {
+        return "PhD program";
+      }
+
+      public RequestStatus getStatus() {
+        return status;
+      }
+
+      public LocalDateTime getSubmissionDate() {
+        return submitted;
+      }
+
+      public LocalDateTime getCompletionDate() {
+        return null;
+      }
+    };
+  }
+
+  private MvcResult putStatuses(String body) throws Exception {
+    return mockMvc
+        .perform(
+            put("/api/recommendationrequest/professor/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content(body)
+                .with(csrf()))
+        .andReturn();
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void students_cannot_update_statuses_in_bulk() throws Exception {
+    MvcResult response = putStatuses("{\"ids\":[1],\"status\":\"DENIED\"}");
+
+    assertEquals(403, response.getResponse().getStatus());
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void prof_can_update_statuses_in_bulk() throws Exception {
+    when(recommendationRequestRepository.lockStatusRows(eq(1L), anyCollection()))
+        .thenReturn(
+            List.of(
+                statusRow(10L, RequestStatus.IN_PROGRESS),
+                statusRow(11L, RequestStatus.COMPLETED),
+                statusRow(12L, RequestStatus.DENIED),
+                statusRow(14L, RequestStatus.IN_PROGRESS)));
+
+    MvcResult response = putStatuses("{\"ids\":[10,11,12,13,14,10],\"status\":\"COMPLETED\"}");
+
+    assertEquals(200, response.getResponse().getStatus());
+    assertEquals(
+        "[{\"id\":10,\"outcome\":\"UPDATED\",\"message\":null},"
+            + "{\"id\":11,\"outcome\":\"UNCHANGED\",\"message\":null},"
+            + "{\"id\":12,\"outcome\":\"INVALID_TRANSITION\","
+            + "\"message\":\"Cannot change status from DENIED to COMPLETED\"},"
+            + "{\"id\":13,\"outcome\":\"NOT_FOUND\","
+            + "\"message\":\"RecommendationRequest with id 13 not found\"},"
+            + "{\"id\":14,\"outcome\":\"UPDATED\",\"message\":null}]",
+        response.getResponse().getContentAsString());
+    verify(recommendationRequestRepository, times(1))
+        .lockStatusRows(1L, new LinkedHashSet<>(List.of(10L, 11L, 12L, 13L, 14L)));
+
+    ArgumentCaptor<LocalDateTime> completionDate = ArgumentCaptor.forClass(LocalDateTime.class);
+    ArgumentCaptor<LocalDateTime> now = ArgumentCaptor.forClass(LocalDateTime.class);
+    verify(recommendationRequestRepository, times(1))
+        .updateStatus(
+            eq(1L),
+            eq(List.of(10L, 14L)),
+            eq(RequestStatus.COMPLETED),
+            completionDate.capture(),
+            now.capture());
+    assertEquals(now.getValue().truncatedTo(ChronoUnit.MINUTES), completionDate.getValue());
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<RequestEvent>> events = ArgumentCaptor.forClass(List.class);
+    verify(requestEventPublisher, times(1)).publishAll(events.capture());
+    assertEquals(2, events.getValue().size());
+    RequestEvent first = events.getValue().get(0);
+    assertEquals(10L, first.getRequestId());
+    assertEquals(OutboxEvent.Type.STATUS_CHANGED, first.getType());
+    RequestSnapshot removed = first.getBefore();
+    assertEquals(5L, removed.getRequesterId());
+    assertEquals(1L, removed.getProfessorId());
+    assertEquals("PhD program", removed.getRecommendationType());
+    assertEquals(RequestStatus.IN_PROGRESS, removed.getStatus());
+    assertNull(removed.getCompletionDate());
+    RequestEvent second = events.getValue().get(1);
+    assertEquals(14L, second.getRequestId());
+    RequestSnapshot added = second.getAfter();
+    assertEquals(RequestStatus.COMPLETED, added.getStatus());
+    assertEquals(LocalDateTime.parse("2022-01-03T00:00:00"), added.getSubmissionDate());
+    assertEquals(completionDate.getValue(), added.getCompletionDate());
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void bulk_update_keeps_completion_date_unless_completing() throws Exception {
+    when(recommendationRequestRepository.lockStatusRows(eq(1L), anyCollection()))
+        .thenReturn(List.of(statusRow(10L, RequestStatus.PENDING)));
+
+    MvcResult response = putStatuses("{\"ids\":[10],\"status\":\"in progress\"}");
+
+    assertEquals(200, response.getResponse().getStatus());
+    verify(recommendationRequestRepository, times(1))
+        .updateStatus(eq(1L), eq(List.of(10L)), eq(RequestStatus.IN_PROGRESS), eq(null), any());
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void bulk_update_with_nothing_to_change_writes_nothing() throws Exception {
+    when(recommendationRequestRepository.lockStatusRows(eq(1L), anyCollection()))
+        .thenReturn(List.of(statusRow(10L, RequestStatus.DENIED)));
+
+    MvcResult response = putStatuses("{\"ids\":[10,11],\"status\":\"DENIED\"}");
+
+    assertEquals(200, response.getResponse().getStatus());
+    verify(recommendationRequestRepository, times(0))
+        .updateStatus(anyLong(), any(), any(), any(), any());
+    verifyNoInteractions(requestEventPublisher);
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void bulk_update_rejects_bad_input() throws Exception {
+    String tooMany =
+        LongStream.rangeClosed(1, 1001)
+            .mapToObj(Long::toString)
+            .collect(Collectors.joining(",", "{\"status\":\"DENIED\",\"ids\":[", "]}"));
+    Map<String, String> expected =
+        Map.of(
+            "{\"ids\":[1]}",
+            "status is required",
+            "{\"status\":\"DENIED\"}",
+            "ids are required",
+            "{\"ids\":[],\"status\":\"DENIED\"}",
+            "ids are required",
+            "{\"ids\":[1,null],\"status\":\"DENIED\"}",
+            "ids must not be null",
+            tooMany,
+            "At most 1000 requests can be updated at once");
+
+    for (Map.Entry<String, String> entry : expected.entrySet()) {
+      MvcResult response = putStatuses(entry.getKey());
+      assertEquals(400, response.getResponse().getStatus());
+      assertEquals(entry.getValue(), responseToJson(response).get("message"));
+    }
+    verifyNoInteractions(recommendationRequestRepository, requestEventPublisher);
+  }
+
+  @WithMockUser(roles = {"PROFESSOR"})
+  @Test
+  public void non_admins_cannot_export_requests() throws Exception {
+    mockMvc.perform(get("/api/recommendationrequest/admin/export")).andExpect(status().is(403));
+    verifyNoInteractions(recommendationRequestExportService);
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admins_can_export_requests_as_csv() throws Exception {
+    // the export runs on another thread; hold it back until MockMvc has finished with the first
+    // response, whose headers it would otherwise change while they are being printed
+    CountDownLatch started = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.await();
+              invocation
+                  .getArgument(0, OutputStream.class)
+                  .write("id\r\n7\r\n".getBytes(StandardCharsets.UTF_8));
+              return 1L;
+            })
+        .when(recommendationRequestExportService)
+        .writeCsv(any());
+
+    MvcResult result =
+        mockMvc
+            .perform(get("/api/recommendationrequest/admin/export"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    started.countDown();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("text/csv;charset=UTF-8"))
+        .andExpect(
+            header()
+                .string(
+                    "Content-Disposition", "attachment; filename=\"recommendation-requests.csv\""))
+        .andExpect(content().string("id\r\n7\r\n"));
+    verify(recommendationRequestExportService, times(0)).writeNdjson(any());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void admins_can_export_requests_as_ndjson() throws Exception {
+    // the export runs on another thread; hold it back until MockMvc has finished with the first
+    // response, whose headers it would otherwise change while they are being printed
+    CountDownLatch started = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              started.await();
+              invocation
+                  .getArgument(0, OutputStream.class)
+                  .write("{\"id\":7}\n".getBytes(StandardCharsets.UTF_8));
+              return 1L;
+            })
+        .when(recommendationRequestExportService)
+        .writeNdjson(any());
+
+    MvcResult result =
+        mockMvc
+            .perform(get("/api/recommendationrequest/admin/export").param("format", "NDJSON"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    started.countDown();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("application/x-ndjson"))
+        .andExpect(
+            header()
+                .string(
+                    "Content-Disposition",
+                    "attachment; filename=\"recommendation-requests.ndjson\""))
+        .andExpect(content().string("{\"id\":7}\n"));
+    verify(recommendationRequestExportService, times(0)).writeCsv(any());
+  }
+
+  @WithMockUser(roles = {"ADMIN"})
+  @Test
+  public void export_rejects_unknown_formats() throws Exception {
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/recommendationrequest/admin/export").param("format", "xlsx"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    assertEquals("Unknown export format: xlsx", responseToJson(response).get("message"));
+    verifyNoInteractions(recommendationRequestExportService);
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void requester_listing_answers_304_while_unchanged() throws Exception {
+    when(recommendationRequestRepository.findSubmittedPage(1L, Limit.of(1001)))
+        .thenReturn(List.of());
+
+    String etag =
+        mockMvc
+            .perform(get("/api/recommendationrequest/requester/all"))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("ETag"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/recommendationrequest/requester/all").header("If-None-Match", etag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string("ETag", etag))
+            .andReturn();
+
+    assertEquals("", response.getResponse().getContentAsString());
+    verify(recommendationRequestRepository, times(1)).findSubmittedPage(1L, Limit.of(1001));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void requester_listing_etag_changes_with_the_rows() throws Exception {
+    String before =
+        mockMvc
+            .perform(get("/api/recommendationrequest/requester/all"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+    when(recommendationRequestRepository.submittedFingerprint(1L))
+        .thenReturn(
+            ListingFingerprint.builder()
+                .count(1L)
+                .maxId(7L)
+                .lastModified(LocalDateTime.parse("2022-01-03T00:00:00"))
+                .build());
+
+    mockMvc
+        .perform(get("/api/recommendationrequest/requester/all").header("If-None-Match", before))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", not(before)));
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void inbox_etag_changes_when_a_user_changes() throws Exception {
+    String before =
+        mockMvc
+            .perform(get("/api/recommendationrequest/professor/all"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+
+    mockMvc
+        .perform(get("/api/recommendationrequest/professor/all").header("If-None-Match", before))
+        .andExpect(status().isNotModified());
+    when(recommendationRequestRepository.inboxFingerprint(1L))
+        .thenReturn(ListingFingerprint.builder().count(0L).userVersions(1L).build());
+    mockMvc
+        .perform(get("/api/recommendationrequest/professor/all").header("If-None-Match", before))
+        .andExpect(status().isOk());
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void filtered_inbox_etag_depends_on_the_status() throws Exception {
+    String pending =
+        mockMvc
+            .perform(
+                get("/api/recommendationrequest/professor/filtered").param("status", "PENDING"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+
+    mockMvc
+        .perform(
+            get("/api/recommendationrequest/professor/filtered")
+                .param("status", "PENDING")
+                .header("If-None-Match", pending))
+        .andExpect(status().isNotModified());
+    mockMvc
+        .perform(
+            get("/api/recommendationrequest/professor/filtered")
+                .param("status", "COMPLETED")
+                .header("If-None-Match", pending))
+        .andExpect(status().isOk());
+    verify(recommendationRequestRepository, times(1))
+        .findInboxPageWithStatus(eq(1L), eq(RequestStatus.PENDING), any());
+    verify(recommendationRequestRepository, times(1))
+        .findInboxPageWithStatus(eq(1L), eq(RequestStatus.COMPLETED), any());
+  }
+
+  private RecommendationRequest versionedRequest(long version) {
+    return RecommendationRequest.builder()
+        .id(63L)
+        .requester(User.builder().id(1L).build())
+        .professor(User.builder().id(1L).build())
+        .details("details")
+        .status(RequestStatus.PENDING)
+        .version(version)
+        .build();
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void get_by_id_sends_the_version_as_etag() throws Exception {
+    when(recommendationRequestRepository.findById(63L))
+        .thenReturn(Optional.of(versionedRequest(3)));
+
+    mockMvc
+        .perform(get("/api/recommendationrequest?id=63"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"3\""));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void user_update_with_current_if_match_succeeds() throws Exception {
+    User user = currentUserService.getCurrentUser().getUser();
+    RecommendationRequest rec = versionedRequest(3);
+    when(recommendationRequestRepository.findByIdAndRequester(63L, user))
+        .thenReturn(Optional.of(rec));
+    // the flush writes the new version into the managed entity
+    when(recommendationRequestRepository.saveAndFlush(rec))
+        .thenAnswer(
+            invocation -> {
+              rec.setVersion(4);
+              return rec;
+            });
+
+    mockMvc
+        .perform(
+            put("/api/recommendationrequest?id=63")
+                .header("If-Match", "\"2\", \"3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(versionedRequest(3)))
+                .with(csrf()))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", "\"4\""));
+
+    verify(recommendationRequestRepository, times(1)).saveAndFlush(rec);
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void user_update_with_stale_if_match_fails_with_412() throws Exception {
+    User user = currentUserService.getCurrentUser().getUser();
+    when(recommendationRequestRepository.findByIdAndRequester(63L, user))
+        .thenReturn(Optional.of(versionedRequest(4)));
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                put("/api/recommendationrequest?id=63")
+                    .header("If-Match", "\"3\"")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(mapper.writeValueAsString(versionedRequest(3)))
+                    .with(csrf()))
+            .andExpect(status().isPreconditionFailed())
+            .andReturn();
+
+    verify(recommendationRequestRepository, times(0)).saveAndFlush(any());
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("PreconditionFailedException", json.get("type"));
+    assertEquals(
+        "RecommendationRequest with id 63 has been changed by someone else", json.get("message"));
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void prof_update_with_stale_if_match_fails_with_412() throws Exception {
+    when(recommendationRequestRepository.findByIdAndProfessor(
+            63L, currentUserService.getCurrentUser().getUser()))
+        .thenReturn(Optional.of(versionedRequest(4)));
+
+    mockMvc
+        .perform(
+            put("/api/recommendationrequest/professor?id=63")
+                .header("If-Match", "W/\"4\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\":\"DENIED\"}")
+                .with(csrf()))
+        .andExpect(status().isPreconditionFailed());
+
+    verify(recommendationRequestRepository, times(0)).saveAndFlush(any());
+    verifyNoInteractions(requestEventPublisher);
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void prof_update_with_wildcard_if_match_succeeds() throws Exception {
+    RecommendationRequest rec = versionedRequest(4);
+    when(recommendationRequestRepository.findByIdAndProfessor(
+            63L, currentUserService.getCurrentUser().getUser()))
+        .thenReturn(Optional.of(rec));
+
+    mockMvc
+        .perform(
+            put("/api/recommendationrequest/professor?id=63")
+                .header("If-Match", "*")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"status\":\"DENIED\"}")
+                .with(csrf()))
+        .andExpect(status().isOk());
+
+    assertEquals(RequestStatus.DENIED, rec.getStatus());
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void concurrent_update_fails_with_412() throws Exception {
+    RecommendationRequest rec = versionedRequest(4);
+    when(recommendationRequestRepository.findByIdAndProfessor(
+            63L, currentUserService.getCurrentUser().getUser()))
+        .thenReturn(Optional.of(rec));
+    when(recommendationRequestRepository.saveAndFlush(rec))
+        .thenThrow(new ObjectOptimisticLockingFailureException(RecommendationRequest.class, 63L));
+
+    MvcResult response =
+        mockMvc
+            .perform(
+                put("/api/recommendationrequest/professor?id=63")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"status\":\"DENIED\"}")
+                    .with(csrf()))
+            .andExpect(status().isPreconditionFailed())
+            .andReturn();
+
+    assertEquals(
+        "The entity has been changed by someone else", responseToJson(response).get("message"));
+  }
 }
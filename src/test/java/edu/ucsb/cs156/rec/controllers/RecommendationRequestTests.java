@@ -1,6 +1,8 @@
 package edu.ucsb.cs156.rec.controllers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -12,12 +14,22 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 import edu.ucsb.cs156.rec.ControllerTestCase;
+import edu.ucsb.cs156.rec.entities.IdempotencyKey;
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
 import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
 import edu.ucsb.cs156.rec.entities.RequestType;
 import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.ListingFingerprint;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.models.RequestSnapshot;
+import edu.ucsb.cs156.rec.repositories.IdempotencyKeyRepository;
 import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
-import edu.ucsb.cs156.rec.repositories.RequestTypeRepository;
 import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.IdempotencyService;
+import edu.ucsb.cs156.rec.services.RecommendationRequestExportService;
+import edu.ucsb.cs156.rec.services.RequestEventPublisher;
+import edu.ucsb.cs156.rec.services.RequestTypeRegistry;
 import edu.ucsb.cs156.rec.testconfig.TestConfig;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -25,22 +37,41 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
 @WebMvcTest(controllers = RecommendationRequestController.class)
-@Import(TestConfig.class)
+@Import({TestConfig.class, IdempotencyService.class})
 public class RecommendationRequestTests extends ControllerTestCase {
 
   @MockBean RecommendationRequestRepository recommendationRequestRepository;
 
   @MockBean UserRepository userRepository;
 
-  @MockBean RequestTypeRepository requestTypeRepository;
+  @MockBean RequestTypeRegistry requestTypeRegistry;
+
+  @MockBean RequestEventPublisher requestEventPublisher;
+
+  @MockBean RecommendationRequestExportService recommendationRequestExportService;
+
+  @MockBean IdempotencyKeyRepository idempotencyKeyRepository;
+
+  /** The listings look up a fingerprint for their ETag before loading anything. */
+  @BeforeEach
+  public void stubFingerprints() {
+    ListingFingerprint empty = ListingFingerprint.builder().count(0L).build();
+    when(recommendationRequestRepository.submittedFingerprint(any())).thenReturn(empty);
+    when(recommendationRequestRepository.inboxFingerprint(any())).thenReturn(empty);
+    when(recommendationRequestRepository.inboxFingerprintWithStatus(any(), any()))
+        .thenReturn(empty);
+  }
 
   // Authorization tests for /api/phones/admin/all
 
@@ -268,7 +299,7 @@ public class RecommendationRequestTests extends ControllerTestCase {
     expectedRecommendationRequests.addAll(
         Arrays.asList(recommendationRequest1, recommendationRequest2));
 
-    when(recommendationRequestRepository.findAllByRequesterId(currentUser.getId()))
+    when(recommendationRequestRepository.findSubmittedPage(currentUser.getId(), Limit.of(1001)))
         .thenReturn(expectedRecommendationRequests);
 
     // act
@@ -280,7 +311,9 @@ public class RecommendationRequestTests extends ControllerTestCase {
 
     // assert
 
-    verify(recommendationRequestRepository, times(1)).findAllByRequesterId(currentUser.getId());
+    verify(recommendationRequestRepository, times(1))
+        .findSubmittedPage(currentUser.getId(), Limit.of(1001));
+    assertNull(response.getResponse().getHeader("X-Next-Cursor"));
     String expectedJson = mapper.writeValueAsString(expectedRecommendationRequests);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
@@ -318,7 +351,7 @@ public class RecommendationRequestTests extends ControllerTestCase {
     expectedRecommendationRequests.addAll(
         Arrays.asList(recommendationRequest1, recommendationRequest2));
 
-    when(recommendationRequestRepository.findAllByProfessorId(currentUser.getId()))
+    when(recommendationRequestRepository.findInboxPage(currentUser.getId(), Limit.of(1001)))
         .thenReturn(expectedRecommendationRequests);
 
     // act
@@ -330,7 +363,8 @@ public class RecommendationRequestTests extends ControllerTestCase {
 
     // assert
 
-    verify(recommendationRequestRepository, times(1)).findAllByProfessorId(currentUser.getId());
+    verify(recommendationRequestRepository, times(1))
+        .findInboxPage(currentUser.getId(), Limit.of(1001));
     String expectedJson = mapper.writeValueAsString(expectedRecommendationRequests);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
@@ -350,7 +384,7 @@ public class RecommendationRequestTests extends ControllerTestCase {
             .recommendationType("Other")
             .details("otherdetails")
             .dueDate(LocalDateTime.parse("2024-11-25T16:46:28"))
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .build();
 
     when(recommendationRequestRepository.save(eq(recommendationRequest1)))
@@ -370,6 +404,13 @@ public class RecommendationRequestTests extends ControllerTestCase {
             .andReturn();
     // assert
     verify(recommendationRequestRepository, times(1)).save(eq(recommendationRequest1));
+    verify(requestEventPublisher, times(1))
+        .publish(
+            RequestEvent.builder()
+                .requestId(recommendationRequest1.getId())
+                .type(OutboxEvent.Type.CREATED)
+                .after(RequestSnapshot.of(recommendationRequest1))
+                .build());
     String expectedJson = mapper.writeValueAsString(recommendationRequest1);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
@@ -381,7 +422,7 @@ public class RecommendationRequestTests extends ControllerTestCase {
       throws Exception {
     // act
     RequestType r = RequestType.builder().requestType("PhD program").build();
-    when(requestTypeRepository.findByRequestType("PhD program")).thenReturn(Optional.of(r));
+    when(requestTypeRegistry.findByRequestType("PhD program")).thenReturn(Optional.of(r));
     mockMvc
         .perform(
             post("/api/recommendationrequest/post")
@@ -410,14 +451,14 @@ public class RecommendationRequestTests extends ControllerTestCase {
             .recommendationType("CS Department BS/MS program")
             .details("test")
             .dueDate(LocalDateTime.parse("2024-11-25T16:46:28"))
-            .status("PENDING")
+            .status(RequestStatus.PENDING)
             .build();
 
     when(recommendationRequestRepository.save(eq(recommendationRequest1)))
         .thenReturn(recommendationRequest1);
     when(userRepository.findById(7L)).thenReturn(Optional.of(other));
     RequestType r = RequestType.builder().requestType("CS Department BS/MS program").build();
-    when(requestTypeRepository.findByRequestType("CS Department BS/MS program"))
+    when(requestTypeRegistry.findByRequestType("CS Department BS/MS program"))
         .thenReturn(Optional.of(r));
     // act
     MvcResult response =
@@ -433,6 +474,13 @@ public class RecommendationRequestTests extends ControllerTestCase {
             .andReturn();
     // assert
     verify(recommendationRequestRepository, times(1)).save(eq(recommendationRequest1));
+    verify(requestEventPublisher, times(1))
+        .publish(
+            RequestEvent.builder()
+                .requestId(recommendationRequest1.getId())
+                .type(OutboxEvent.Type.CREATED)
+                .after(RequestSnapshot.of(recommendationRequest1))
+                .build());
     String expectedJson = mapper.writeValueAsString(recommendationRequest1);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
@@ -442,7 +490,7 @@ public class RecommendationRequestTests extends ControllerTestCase {
   @Test
   public void rec_type_not_table_and_not_other() throws Exception {
     // act
-    when(requestTypeRepository.findByRequestType("Not correct")).thenReturn(Optional.empty());
+    when(requestTypeRegistry.findByRequestType("Not correct")).thenReturn(Optional.empty());
     MvcResult response =
         mockMvc
             .perform(
@@ -460,6 +508,134 @@ public class RecommendationRequestTests extends ControllerTestCase {
     assertEquals("RequestType with id CS Department BS/MS program not found", json.get("message"));
   }
 
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void a_retried_post_with_the_same_idempotency_key_returns_the_first_request()
+      throws Exception {
+    // arrange
+    User u = currentUserService.getCurrentUser().getUser();
+    User other = User.builder().id(7L).email("testemail@ucsb.edu").fullName("Test User").build();
+    RecommendationRequest recommendationRequest1 =
+        RecommendationRequest.builder()
+            .professor(other)
+            .requester(u)
+            .recommendationType("Other")
+            .details("otherdetails")
+            .dueDate(LocalDateTime.parse("2024-11-25T16:46:28"))
+            .status(RequestStatus.PENDING)
+            .build();
+    RecommendationRequest saved =
+        RecommendationRequest.builder()
+            .id(42L)
+            .professor(other)
+            .requester(u)
+            .recommendationType("Other")
+            .details("otherdetails")
+            .dueDate(LocalDateTime.parse("2024-11-25T16:46:28"))
+            .status(RequestStatus.PENDING)
+            .build();
+
+    when(recommendationRequestRepository.save(eq(recommendationRequest1))).thenReturn(saved);
+    when(userRepository.findById(7L)).thenReturn(Optional.of(other));
+
+    // act
+    MvcResult first =
+        mockMvc
+            .perform(
+                post("/api/recommendationrequest/post")
+                    .header(IdempotencyService.HEADER, "key-1")
+                    .param("recommendationType", "Other")
+                    .param("details", "otherdetails")
+                    .param("professorId", "7")
+                    .param("dueDate", "2024-11-25T16:46:28")
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    ArgumentCaptor<String> requestHash = ArgumentCaptor.forClass(String.class);
+    ArgumentCaptor<String> responseBody = ArgumentCaptor.forClass(String.class);
+    verify(idempotencyKeyRepository, times(1))
+        .insertKey(
+            eq(u.getId()),
+            eq(RecommendationRequestController.CREATE_ENDPOINT),
+            eq("key-1"),
+            requestHash.capture(),
+            responseBody.capture(),
+            any(),
+            any());
+    when(idempotencyKeyRepository.findLive(
+            eq(u.getId()), eq(RecommendationRequestController.CREATE_ENDPOINT), eq("key-1"), any()))
+        .thenReturn(
+            Optional.of(
+                IdempotencyKey.builder()
+                    .userId(u.getId())
+                    .endpoint(RecommendationRequestController.CREATE_ENDPOINT)
+                    .idempotencyKey("key-1")
+                    .requestHash(requestHash.getValue())
+                    .responseBody(responseBody.getValue())
+                    .build()));
+
+    MvcResult retry =
+        mockMvc
+            .perform(
+                post("/api/recommendationrequest/post")
+                    .header(IdempotencyService.HEADER, "key-1")
+                    .param("recommendationType", "Other")
+                    .param("details", "otherdetails")
+                    .param("professorId", "7")
+                    .param("dueDate", "2024-11-25T16:46:28")
+                    .with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    // assert
+    verify(recommendationRequestRepository, times(1)).save(any());
+    String expectedJson = mapper.writeValueAsString(saved);
+    assertEquals(expectedJson, first.getResponse().getContentAsString());
+    assertEquals(expectedJson, retry.getResponse().getContentAsString());
+
+    // the same key with different details is refused
+    MvcResult changed =
+        mockMvc
+            .perform(
+                post("/api/recommendationrequest/post")
+                    .header(IdempotencyService.HEADER, "key-1")
+                    .param("recommendationType", "Other")
+                    .param("details", "changed details")
+                    .param("professorId", "7")
+                    .param("dueDate", "2024-11-25T16:46:28")
+                    .with(csrf()))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+    Map<String, Object> json = responseToJson(changed);
+    assertEquals("IllegalArgumentException", json.get("type"));
+    assertEquals(
+        "Idempotency-Key key-1 was already used for a different request", json.get("message"));
+    verify(recommendationRequestRepository, times(1)).save(any());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void a_blank_idempotency_key_is_refused() throws Exception {
+    MvcResult response =
+        mockMvc
+            .perform(
+                post("/api/recommendationrequest/post")
+                    .header(IdempotencyService.HEADER, " ")
+                    .param("recommendationType", "Other")
+                    .param("details", "otherdetails")
+                    .param("professorId", "7")
+                    .param("dueDate", "2024-11-25T16:46:28")
+                    .with(csrf()))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("Idempotency-Key must be between 1 and 255 characters", json.get("message"));
+    verify(idempotencyKeyRepository, times(0))
+        .insertKey(anyLong(), anyString(), anyString(), any(), any(), any(), any());
+  }
+
   @Test
   @WithMockUser(roles = "PROFESSOR")
   public void test_professor_can_get_recommendation_request_by_type() throws Exception {
@@ -469,21 +645,22 @@ public class RecommendationRequestTests extends ControllerTestCase {
         RecommendationRequest.builder()
             .id(101L)
             .professor(mockProfessor)
-            .status("completed")
+            .status(RequestStatus.COMPLETED)
             .details("Details 1")
             .build();
     RecommendationRequest mockRequest2 =
         RecommendationRequest.builder()
             .id(102L)
             .professor(mockProfessor)
-            .status("completed")
+            .status(RequestStatus.COMPLETED)
             .details("Details 2")
             .build();
 
     List<RecommendationRequest> mockRequests = List.of(mockRequest1, mockRequest2);
 
     when(userRepository.findByEmail("professor@ucsb.edu")).thenReturn(Optional.of(mockProfessor));
-    when(recommendationRequestRepository.findAllByProfessorIdAndStatus(1L, "completed"))
+    when(recommendationRequestRepository.findInboxPageWithStatus(
+            1L, RequestStatus.COMPLETED, Limit.of(1001)))
         .thenReturn(mockRequests);
 
     // Act & Assert
@@ -495,7 +672,7 @@ public class RecommendationRequestTests extends ControllerTestCase {
         .andExpect(jsonPath("$[1].id").value(102));
 
     verify(recommendationRequestRepository, times(1))
-        .findAllByProfessorIdAndStatus(1L, "completed");
+        .findInboxPageWithStatus(1L, RequestStatus.COMPLETED, Limit.of(1001));
   }
 
   @Test
@@ -508,7 +685,8 @@ public class RecommendationRequestTests extends ControllerTestCase {
 
     when(userRepository.findByEmail("professor@ucsb.edu"))
         .thenReturn(java.util.Optional.of(mockProfessor));
-    when(recommendationRequestRepository.findAllByProfessorIdAndStatus(1L, "completed"))
+    when(recommendationRequestRepository.findInboxPageWithStatus(
+            1L, RequestStatus.COMPLETED, Limit.of(1001)))
         .thenReturn(mockRequests);
 
     // Act & Assert
@@ -518,7 +696,7 @@ public class RecommendationRequestTests extends ControllerTestCase {
         .andExpect(jsonPath("$.length()").value(0));
 
     verify(recommendationRequestRepository, times(1))
-        .findAllByProfessorIdAndStatus(1L, "completed");
+        .findInboxPageWithStatus(1L, RequestStatus.COMPLETED, Limit.of(1001));
   }
 
   @Test
@@ -531,6 +709,6 @@ public class RecommendationRequestTests extends ControllerTestCase {
         .andExpect(status().isForbidden());
 
     verify(recommendationRequestRepository, times(0))
-        .findAllByProfessorIdAndStatus(anyLong(), anyString());
+        .findInboxPageWithStatus(anyLong(), any(), any());
   }
 }
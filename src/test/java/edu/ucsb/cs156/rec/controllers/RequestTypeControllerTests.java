@@ -3,6 +3,7 @@ package edu.ucsb.cs156.rec.controllers;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -14,15 +15,20 @@ import edu.ucsb.cs156.rec.ControllerTestCase;
 import edu.ucsb.cs156.rec.entities.RequestType;
 import edu.ucsb.cs156.rec.repositories.RequestTypeRepository;
 import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.RequestTypeRegistry;
 import edu.ucsb.cs156.rec.testconfig.TestConfig;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
@@ -35,6 +41,15 @@ public class RequestTypeControllerTests extends ControllerTestCase {
 
   @MockBean UserRepository userRepository;
 
+  @Autowired RequestTypeRegistry requestTypeRegistry;
+
+  /** The registry outlives a single test, so start each test with an empty one. */
+  @BeforeEach
+  public void emptyRegistry() {
+    requestTypeRegistry.refresh();
+    clearInvocations(requestTypeRepository);
+  }
+
   // Authorization tests for /api/requesttypes/admin/all
 
   @Test
@@ -156,6 +171,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
     expectedRequests.addAll(Arrays.asList(requestType1, requestType2));
 
     when(requestTypeRepository.findAll()).thenReturn(expectedRequests);
+    requestTypeRegistry.refresh();
 
     // act
     MvcResult response =
@@ -205,6 +221,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
     expectedRequests.addAll(Arrays.asList(requestType1, requestType2));
 
     when(requestTypeRepository.findAll()).thenReturn(expectedRequests);
+    requestTypeRegistry.refresh();
 
     // act
     MvcResult response =
@@ -232,6 +249,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
     expectedRequests.addAll(Arrays.asList(requestType1));
 
     when(requestTypeRepository.findAll()).thenReturn(expectedRequests);
+    requestTypeRegistry.refresh();
 
     when(requestTypeRepository.save(eq(requestType2))).thenReturn(requestType2);
 
@@ -242,7 +260,9 @@ public class RequestTypeControllerTests extends ControllerTestCase {
             .andExpect(status().isOk())
             .andReturn();
 
+    // the duplicate check that misses looks up only that name
     verify(requestTypeRepository, times(1)).findAll();
+    verify(requestTypeRepository, times(1)).findByRequestType("Research");
     verify(requestTypeRepository, times(1)).save(requestType2);
     String expectedJson = mapper.writeValueAsString(requestType2);
     String responseString = response.getResponse().getContentAsString();
@@ -254,9 +274,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
   public void admin_can_delete_a_requesttype() throws Exception {
 
     // arrange
-    RequestType requestType1 = RequestType.builder().requestType("Fellowship").build();
-
-    when(requestTypeRepository.findById(eq(15L))).thenReturn(Optional.of(requestType1));
+    when(requestTypeRepository.deleteRequestTypeById(15L)).thenReturn(1);
 
     // act
     MvcResult response =
@@ -266,8 +284,8 @@ public class RequestTypeControllerTests extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(requestTypeRepository, times(1)).findById(15L);
-    verify(requestTypeRepository, times(1)).delete(any());
+    verify(requestTypeRepository, times(1)).deleteRequestTypeById(15L);
+    verify(requestTypeRepository, times(0)).findById(any());
 
     Map<String, Object> json = responseToJson(response);
     assertEquals("Request type with id 15 deleted", json.get("message"));
@@ -279,7 +297,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
       throws Exception {
 
     // arrange
-    when(requestTypeRepository.findById(eq(15L))).thenReturn(Optional.empty());
+    when(requestTypeRepository.deleteRequestTypeById(15L)).thenReturn(0);
 
     // act
     MvcResult response =
@@ -289,7 +307,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(requestTypeRepository, times(1)).findById(15L);
+    verify(requestTypeRepository, times(1)).deleteRequestTypeById(15L);
     Map<String, Object> json = responseToJson(response);
     assertEquals("RequestType with id 15 not found", json.get("message"));
   }
@@ -299,13 +317,11 @@ public class RequestTypeControllerTests extends ControllerTestCase {
   public void admin_can_edit_an_existing_requesttype() throws Exception {
 
     // arrange
-    RequestType requestTypeOrig = RequestType.builder().requestType("Pre School").build();
-
     RequestType requestTypeEdited = RequestType.builder().requestType("Grad School").build();
 
     String requestBody = mapper.writeValueAsString(requestTypeEdited);
 
-    when(requestTypeRepository.findById(eq(67L))).thenReturn(Optional.of(requestTypeOrig));
+    when(requestTypeRepository.renameRequestType(67L, "Grad School")).thenReturn(1);
 
     // act
     MvcResult response =
@@ -320,11 +336,36 @@ public class RequestTypeControllerTests extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(requestTypeRepository, times(1)).findById(67L);
-    verify(requestTypeRepository, times(1))
-        .save(requestTypeEdited); // should be saved with correct user
+    verify(requestTypeRepository, times(1)).renameRequestType(67L, "Grad School");
+    verify(requestTypeRepository, times(0)).findById(any());
+    verify(requestTypeRepository, times(0)).save(any());
     String responseString = response.getResponse().getContentAsString();
-    assertEquals(requestBody, responseString);
+    assertEquals(
+        mapper.writeValueAsString(RequestType.builder().id(67).requestType("Grad School").build()),
+        responseString);
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_save_a_requesttype_without_renaming_it() throws Exception {
+
+    // arrange
+    RequestType requestTypeOrig = RequestType.builder().id(67).requestType("Internship").build();
+    requestTypeRegistry.put(requestTypeOrig);
+    when(requestTypeRepository.renameRequestType(67L, "Internship")).thenReturn(1);
+
+    // act
+    mockMvc
+        .perform(
+            put("/api/requesttypes?id=67")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content(mapper.writeValueAsString(requestTypeOrig))
+                .with(csrf()))
+        .andExpect(status().isOk());
+
+    // assert
+    verify(requestTypeRepository, times(1)).renameRequestType(67L, "Internship");
   }
 
   @WithMockUser(roles = {"ADMIN", "USER"})
@@ -344,8 +385,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
     expectedRequests.addAll(Arrays.asList(requestType1, requestTypeOrig));
 
     when(requestTypeRepository.findAll()).thenReturn(expectedRequests);
-
-    when(requestTypeRepository.findById(eq(67L))).thenReturn(Optional.of(requestTypeOrig));
+    requestTypeRegistry.refresh();
 
     // act
     MvcResult response =
@@ -384,8 +424,9 @@ public class RequestTypeControllerTests extends ControllerTestCase {
     expectedRequests.addAll(Arrays.asList(requestType1, requestTypeOrig));
 
     when(requestTypeRepository.findAll()).thenReturn(expectedRequests);
+    requestTypeRegistry.refresh();
 
-    when(requestTypeRepository.findById(eq(67L))).thenReturn(Optional.of(requestTypeOrig));
+    when(requestTypeRepository.renameRequestType(67L, "Research")).thenReturn(1);
 
     // act
     MvcResult response =
@@ -400,9 +441,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(requestTypeRepository, times(1)).findById(67L);
-    verify(requestTypeRepository, times(1))
-        .save(requestTypeEdited); // should be saved with correct user
+    verify(requestTypeRepository, times(1)).renameRequestType(67L, "Research");
     String responseString = response.getResponse().getContentAsString();
     assertEquals(requestBody, responseString);
   }
@@ -412,13 +451,11 @@ public class RequestTypeControllerTests extends ControllerTestCase {
   public void requesttype_can_duplicate_itself() throws Exception {
 
     // arrange
-    RequestType requestTypeOrig = RequestType.builder().requestType("Internship").build();
-
-    RequestType requestTypeEdited = RequestType.builder().requestType("Internship").build();
+    RequestType requestTypeEdited = RequestType.builder().id(67).requestType("Internship").build();
 
     String requestBody = mapper.writeValueAsString(requestTypeEdited);
 
-    when(requestTypeRepository.findById(eq(67L))).thenReturn(Optional.of(requestTypeOrig));
+    when(requestTypeRepository.renameRequestType(67L, "Internship")).thenReturn(1);
 
     // act
     MvcResult response =
@@ -433,9 +470,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(requestTypeRepository, times(1)).findById(67L);
-    verify(requestTypeRepository, times(1))
-        .save(requestTypeEdited); // should be saved with correct user
+    verify(requestTypeRepository, times(1)).renameRequestType(67L, "Internship");
     String responseString = response.getResponse().getContentAsString();
     assertEquals(requestBody, responseString);
   }
@@ -456,8 +491,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
     expectedRequests.addAll(Arrays.asList(requestType1, requestTypeOrig));
 
     when(requestTypeRepository.findAll()).thenReturn(expectedRequests);
-
-    when(requestTypeRepository.findById(eq(67L))).thenReturn(Optional.of(requestTypeOrig));
+    requestTypeRegistry.refresh();
 
     // act
     MvcResult response =
@@ -491,6 +525,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
     expectedRequests.addAll(Arrays.asList(requestType1, requestType2));
 
     when(requestTypeRepository.findAll()).thenReturn(expectedRequests);
+    requestTypeRegistry.refresh();
 
     // act
     MvcResult response =
@@ -513,7 +548,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
 
     String requestBody = mapper.writeValueAsString(requestTypeEdited);
 
-    when(requestTypeRepository.findById(eq(67L))).thenReturn(Optional.empty());
+    when(requestTypeRepository.renameRequestType(67L, "PhD")).thenReturn(0);
 
     // act
     MvcResult response =
@@ -528,7 +563,7 @@ public class RequestTypeControllerTests extends ControllerTestCase {
             .andReturn();
 
     // assert
-    verify(requestTypeRepository, times(1)).findById(67L);
+    verify(requestTypeRepository, times(1)).renameRequestType(67L, "PhD");
     Map<String, Object> json = responseToJson(response);
     assertEquals("RequestType with id 67 not found", json.get("message"));
   }
@@ -546,10 +581,135 @@ public class RequestTypeControllerTests extends ControllerTestCase {
     RequestType r = RequestType.builder().id(1L).requestType("Type A").build();
     Iterable<RequestType> rs = Arrays.asList(r);
     when(requestTypeRepository.findAll()).thenReturn(rs);
+    requestTypeRegistry.refresh();
     MvcResult response =
         mockMvc.perform(get("/api/requesttypes/all")).andExpect(status().isOk()).andReturn();
     String expectedJson = mapper.writeValueAsString(rs);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
   }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void registry_is_updated_after_post_put_and_delete() throws Exception {
+    // arrange
+    RequestType internship = RequestType.builder().id(1L).requestType("Internship").build();
+    RequestType saved = RequestType.builder().id(2L).requestType("Research").build();
+    when(requestTypeRepository.findAll()).thenReturn(List.of(internship));
+    requestTypeRegistry.refresh();
+    when(requestTypeRepository.save(eq(RequestType.builder().requestType("Research").build())))
+        .thenReturn(saved);
+    when(requestTypeRepository.renameRequestType(1L, "Fellowship")).thenReturn(1);
+    when(requestTypeRepository.deleteRequestTypeById(1L)).thenReturn(1);
+
+    // act
+    mockMvc
+        .perform(post("/api/requesttypes/post?requestType=Research").with(csrf()))
+        .andExpect(status().isOk());
+    mockMvc
+        .perform(
+            put("/api/requesttypes?id=1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .characterEncoding("utf-8")
+                .content("{\"requestType\":\"Fellowship\"}")
+                .with(csrf()))
+        .andExpect(status().isOk());
+    mockMvc
+        .perform(post("/api/requesttypes/post?requestType=Research").with(csrf()))
+        .andExpect(status().is(400));
+    MvcResult afterUpdate =
+        mockMvc.perform(get("/api/requesttypes/all")).andExpect(status().isOk()).andReturn();
+    mockMvc.perform(delete("/api/requesttypes?id=1").with(csrf())).andExpect(status().isOk());
+    MvcResult afterDelete =
+        mockMvc.perform(get("/api/requesttypes/all")).andExpect(status().isOk()).andReturn();
+
+    // assert
+    // the registry is kept up to date without reloading the table
+    verify(requestTypeRepository, times(1)).findAll();
+    assertEquals(
+        "[{\"id\":1,\"requestType\":\"Fellowship\"},{\"id\":2,\"requestType\":\"Research\"}]",
+        afterUpdate.getResponse().getContentAsString());
+    assertEquals(
+        "[{\"id\":2,\"requestType\":\"Research\"}]",
+        afterDelete.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void post_that_violates_the_unique_constraint_is_a_duplicate() throws Exception {
+
+    // arrange
+    when(requestTypeRepository.save(any()))
+        .thenThrow(new DataIntegrityViolationException("REQUESTTYPE_REQUEST_TYPE_UQ"));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(post("/api/requesttypes/post?requestType=Internship").with(csrf()))
+            .andExpect(status().is(400))
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("IllegalArgumentException", json.get("type"));
+    assertEquals("Duplicate request type: Internship", json.get("message"));
+    assertEquals(List.of(), requestTypeRegistry.getAll());
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void put_that_violates_the_unique_constraint_is_a_duplicate() throws Exception {
+
+    // arrange
+    RequestType requestTypeEdited = RequestType.builder().id(67).requestType("Internship").build();
+    when(requestTypeRepository.renameRequestType(67L, "Internship"))
+        .thenThrow(new DataIntegrityViolationException("REQUESTTYPE_REQUEST_TYPE_UQ"));
+
+    // act
+    MvcResult response =
+        mockMvc
+            .perform(
+                put("/api/requesttypes?id=67")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .characterEncoding("utf-8")
+                    .content(mapper.writeValueAsString(requestTypeEdited))
+                    .with(csrf()))
+            .andExpect(status().is(400))
+            .andReturn();
+
+    // assert
+    Map<String, Object> json = responseToJson(response);
+    assertEquals(
+        "Duplicate request type: RequestType(id=67, requestType=Internship)", json.get("message"));
+    assertEquals(List.of(), requestTypeRegistry.getAll());
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void request_types_answer_304_until_the_registry_changes() throws Exception {
+    String etag =
+        mockMvc
+            .perform(get("/api/requesttypes/all"))
+            .andExpect(status().isOk())
+            .andExpect(header().exists("ETag"))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+
+    mockMvc
+        .perform(get("/api/requesttypes/all").header("If-None-Match", etag))
+        .andExpect(status().isNotModified())
+        .andExpect(content().string(""));
+
+    RequestType internship = RequestType.builder().id(1).requestType("Internship").build();
+    requestTypeRegistry.put(internship);
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/requesttypes/all").header("If-None-Match", etag))
+            .andExpect(status().isOk())
+            .andReturn();
+    assertEquals(
+        mapper.writeValueAsString(List.of(internship)),
+        response.getResponse().getContentAsString());
+  }
 }
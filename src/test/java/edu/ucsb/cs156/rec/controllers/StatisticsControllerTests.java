@@ -0,0 +1,114 @@
+package edu.ucsb.cs156.rec.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import edu.ucsb.cs156.rec.ControllerTestCase;
+import edu.ucsb.cs156.rec.models.RequestStatistics;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.RequestStatisticsService;
+import edu.ucsb.cs156.rec.testconfig.TestConfig;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
+
+@WebMvcTest(controllers = StatisticsController.class)
+@Import(TestConfig.class)
+public class StatisticsControllerTests extends ControllerTestCase {
+
+  @MockBean UserRepository userRepository;
+
+  @MockBean RequestStatisticsService requestStatisticsService;
+
+  RequestStatistics professorStatistics =
+      RequestStatistics.builder()
+          .professorId(1L)
+          .professorName("Prof A")
+          .total(3)
+          .byStatus(Map.of("PENDING", 2L, "COMPLETED", 1L))
+          .byType(Map.of("PhD program", 3L))
+          .timedCompletions(1)
+          .averageCompletionSeconds(3600L)
+          .build();
+
+  @Test
+  public void logged_out_users_cannot_get_professor_statistics() throws Exception {
+    mockMvc.perform(get("/api/statistics/professor")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void students_cannot_get_professor_statistics() throws Exception {
+    mockMvc.perform(get("/api/statistics/professor")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void professors_get_their_own_statistics() throws Exception {
+    when(requestStatisticsService.forProfessor(1L)).thenReturn(professorStatistics);
+
+    MvcResult response =
+        mockMvc.perform(get("/api/statistics/professor")).andExpect(status().isOk()).andReturn();
+
+    verify(requestStatisticsService, times(1)).forProfessor(1L);
+    assertEquals(
+        mapper.writeValueAsString(professorStatistics),
+        response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void professors_cannot_get_all_statistics() throws Exception {
+    mockMvc.perform(get("/api/statistics/admin")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admins_get_all_statistics() throws Exception {
+    RequestStatistics all =
+        RequestStatistics.builder()
+            .total(3)
+            .byStatus(Map.of("PENDING", 2L, "COMPLETED", 1L))
+            .byType(Map.of("PhD program", 3L))
+            .byProfessor(List.of(professorStatistics))
+            .build();
+    when(requestStatisticsService.forAll()).thenReturn(all);
+
+    MvcResult response =
+        mockMvc.perform(get("/api/statistics/admin")).andExpect(status().isOk()).andReturn();
+
+    assertEquals(mapper.writeValueAsString(all), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"USER", "PROFESSOR"})
+  @Test
+  public void professors_cannot_rebuild_statistics() throws Exception {
+    mockMvc.perform(post("/api/statistics/admin/rebuild").with(csrf())).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admins_can_rebuild_statistics() throws Exception {
+    when(requestStatisticsService.rebuild()).thenReturn(7);
+
+    MvcResult response =
+        mockMvc
+            .perform(post("/api/statistics/admin/rebuild").with(csrf()))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    verify(requestStatisticsService, times(1)).rebuild();
+    assertEquals("Statistics rebuilt (7 rows)", responseToJson(response).get("message"));
+  }
+}
@@ -2,8 +2,10 @@ package edu.ucsb.cs156.rec.controllers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -14,25 +16,35 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 import edu.ucsb.cs156.rec.ControllerTestCase;
 import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.KeysetCursor;
+import edu.ucsb.cs156.rec.models.UserCacheStats;
 import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.UserCache;
+import edu.ucsb.cs156.rec.services.UserListingService;
 import edu.ucsb.cs156.rec.testconfig.TestConfig;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 @WebMvcTest(controllers = UsersController.class)
-@Import(TestConfig.class)
+@Import({TestConfig.class, UserListingService.class})
 public class UsersControllerTests extends ControllerTestCase {
 
   @MockBean UserRepository userRepository;
 
+  @MockBean UserCache userCache;
+
   @Test
   public void users__logged_out() throws Exception {
     mockMvc.perform(get("/api/admin/users")).andExpect(status().is(403));
@@ -44,6 +56,12 @@ public class UsersControllerTests extends ControllerTestCase {
     mockMvc.perform(get("/api/admin/users")).andExpect(status().is(403));
   }
 
+  /** Runs a request whose response body is streamed, and returns the completed response. */
+  private MvcResult streamed(MockHttpServletRequestBuilder builder) throws Exception {
+    MvcResult started = mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+    return mockMvc.perform(asyncDispatch(started)).andExpect(status().isOk()).andReturn();
+  }
+
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void users__admin_logged_in() throws Exception {
@@ -57,19 +75,91 @@ public class UsersControllerTests extends ControllerTestCase {
     ArrayList<User> expectedUsers = new ArrayList<>();
     expectedUsers.addAll(Arrays.asList(u1, u2, u));
 
-    when(userRepository.findAll()).thenReturn(expectedUsers);
+    when(userRepository.streamUsers(null, 0L)).thenReturn(expectedUsers.stream());
     String expectedJson = mapper.writeValueAsString(expectedUsers);
 
     // act
 
-    MvcResult response =
-        mockMvc.perform(get("/api/admin/users")).andExpect(status().isOk()).andReturn();
+    MvcResult response = streamed(get("/api/admin/users"));
 
     // assert
 
-    verify(userRepository, times(1)).findAll();
+    verify(userRepository, times(1)).streamUsers(null, 0L);
     String responseString = response.getResponse().getContentAsString();
     assertEquals(expectedJson, responseString);
+    assertEquals("application/json", response.getResponse().getContentType());
+    assertNull(response.getResponse().getHeader("X-Next-Cursor"));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_search_users_by_prefix() throws Exception {
+    User joe = User.builder().id(5L).email("joe_gaucho@ucsb.edu").build();
+    when(userRepository.streamUsers("joe\\_g%", 4L)).thenReturn(Stream.of(joe));
+
+    MvcResult response =
+        streamed(
+            get("/api/admin/users")
+                .param("search", " Joe_G ")
+                .param("after", new KeysetCursor(null, 4L).encode()));
+
+    assertEquals(
+        mapper.writeValueAsString(List.of(joe)), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_page_through_users() throws Exception {
+    List<User> users =
+        List.of(
+            User.builder().id(3L).build(),
+            User.builder().id(4L).build(),
+            User.builder().id(6L).build());
+    when(userRepository.findUsersPage(null, 2L, Limit.of(3))).thenReturn(users);
+    when(userRepository.findUsersPage(null, 4L, Limit.of(3))).thenReturn(users.subList(2, 3));
+
+    MvcResult first =
+        streamed(
+            get("/api/admin/users")
+                .param("limit", "2")
+                .param("after", new KeysetCursor(null, 2L).encode()));
+    String next = first.getResponse().getHeader("X-Next-Cursor");
+    MvcResult last = streamed(get("/api/admin/users").param("limit", "2").param("after", next));
+
+    assertEquals(
+        mapper.writeValueAsString(users.subList(0, 2)), first.getResponse().getContentAsString());
+    assertEquals(new KeysetCursor(null, 4L).encode(), next);
+    assertEquals(
+        mapper.writeValueAsString(users.subList(2, 3)), last.getResponse().getContentAsString());
+    assertNull(last.getResponse().getHeader("X-Next-Cursor"));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void users_limit_is_capped_and_checked() throws Exception {
+    when(userRepository.findUsersPage("a%", 0L, Limit.of(1001))).thenReturn(List.of());
+
+    streamed(get("/api/admin/users").param("limit", "5000").param("search", "a"));
+    verify(userRepository, times(1)).findUsersPage("a%", 0L, Limit.of(1001));
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/admin/users").param("limit", "0"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+    assertEquals("limit must be at least 1", responseToJson(response).get("message"));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void users_cursor_must_be_valid() throws Exception {
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/admin/users").param("after", "4"))
+            .andExpect(status().isBadRequest())
+            .andReturn();
+
+    assertEquals("Invalid cursor: 4", responseToJson(response).get("message"));
   }
 
   @WithMockUser(roles = {"ADMIN", "USER"})
@@ -101,16 +191,16 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_can_delete() throws Exception {
-    User user1 = User.builder().email("joegaucho@ucsb.edu").id(17L).build();
-    when(userRepository.findById(eq(17L))).thenReturn(Optional.of(user1));
+    when(userRepository.deleteUserById(17L)).thenReturn(1);
     MvcResult response =
         mockMvc
             .perform(delete("/api/admin/users/delete?id=17").with(csrf()))
             .andExpect(status().isOk())
             .andReturn();
 
-    verify(userRepository, times(1)).delete(user1);
-    verify(userRepository, times(1)).findById(17L);
+    verify(userRepository, times(1)).deleteUserById(17L);
+    verify(userRepository, times(0)).findById(any());
+    verify(userCache, times(1)).evict(17L);
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 17 has been deleted.", json.get("message"));
   }
@@ -118,15 +208,15 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_cant_delete_nonexistent() throws Exception {
-    User user1 = User.builder().email("joegaucho@ucsb.edu").id(17L).build();
-    when(userRepository.findById(eq(17L))).thenReturn(Optional.of(user1));
+    when(userRepository.deleteUserById(15L)).thenReturn(0);
     MvcResult response =
         mockMvc
             .perform(delete("/api/admin/users/delete?id=15").with(csrf()))
             .andExpect(status().isNotFound())
             .andReturn();
 
-    verify(userRepository, times(1)).findById(15L);
+    verify(userRepository, times(1)).deleteUserById(15L);
+    verify(userCache, times(0)).evict(anyLong());
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 15 not found", json.get("message"));
   }
@@ -134,15 +224,17 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_can_toggle_admin() throws Exception {
-    User user1 = User.builder().email("joegaucho@ucsb.edu").id(17L).admin(false).build();
-    when(userRepository.findById(eq(17L))).thenReturn(Optional.of(user1));
+    when(userRepository.grantAdmin(17L)).thenReturn(1);
     MvcResult response =
         mockMvc
             .perform(post("/api/admin/users/toggleAdmin?id=17").with(csrf()))
             .andExpect(status().isOk())
             .andReturn();
 
-    verify(userRepository, times(1)).findById(17L);
+    verify(userRepository, times(1)).grantAdmin(17L);
+    verify(userRepository, times(0)).revokeAdmin(anyLong(), anyLong());
+    verify(userRepository, times(0)).findById(any());
+    verify(userCache, times(1)).evict(17L);
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 17 has toggled admin status to true", json.get("message"));
   }
@@ -150,15 +242,16 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_can_toggle_admin_flip() throws Exception {
-    User user1 = User.builder().email("joegaucho@ucsb.edu").id(17L).admin(true).build();
-    when(userRepository.findById(eq(17L))).thenReturn(Optional.of(user1));
+    when(userRepository.grantAdmin(17L)).thenReturn(0);
+    when(userRepository.revokeAdmin(17L, 1L)).thenReturn(1);
     MvcResult response =
         mockMvc
             .perform(post("/api/admin/users/toggleAdmin?id=17").with(csrf()))
             .andExpect(status().isOk())
             .andReturn();
 
-    verify(userRepository, times(1)).findById(17L);
+    verify(userRepository, times(1)).grantAdmin(17L);
+    verify(userRepository, times(1)).revokeAdmin(17L, 1L);
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 17 has toggled admin status to false", json.get("message"));
   }
@@ -166,15 +259,15 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_cant_toggle_admin_nonexistent() throws Exception {
-    User user1 = User.builder().email("joegaucho@ucsb.edu").id(17L).build();
-    when(userRepository.findById(eq(17L))).thenReturn(Optional.of(user1));
     MvcResult response =
         mockMvc
             .perform(post("/api/admin/users/toggleAdmin?id=15").with(csrf()))
             .andExpect(status().is(404))
             .andReturn();
 
-    verify(userRepository, times(1)).findById(15L);
+    verify(userRepository, times(1)).grantAdmin(15L);
+    verify(userRepository, times(1)).revokeAdmin(15L, 1L);
+    verify(userCache, times(0)).evict(anyLong());
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 15 not found", json.get("message"));
   }
@@ -182,15 +275,17 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_can_toggle_professor() throws Exception {
-    User user1 = User.builder().email("joegaucho@ucsb.edu").id(17L).professor(false).build();
-    when(userRepository.findById(eq(17L))).thenReturn(Optional.of(user1));
+    when(userRepository.grantProfessor(17L)).thenReturn(1);
     MvcResult response =
         mockMvc
             .perform(post("/api/admin/users/toggleProfessor?id=17").with(csrf()))
             .andExpect(status().isOk())
             .andReturn();
 
-    verify(userRepository, times(1)).findById(17L);
+    verify(userRepository, times(1)).grantProfessor(17L);
+    verify(userRepository, times(0)).revokeProfessor(anyLong());
+    verify(userRepository, times(0)).findById(any());
+    verify(userCache, times(1)).evict(17L);
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 17 has toggled professor status to true", json.get("message"));
   }
@@ -198,15 +293,15 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_can_toggle_professor_flip() throws Exception {
-    User user1 = User.builder().email("joegaucho@ucsb.edu").id(17L).professor(true).build();
-    when(userRepository.findById(eq(17L))).thenReturn(Optional.of(user1));
+    when(userRepository.revokeProfessor(17L)).thenReturn(1);
     MvcResult response =
         mockMvc
             .perform(post("/api/admin/users/toggleProfessor?id=17").with(csrf()))
             .andExpect(status().isOk())
             .andReturn();
 
-    verify(userRepository, times(1)).findById(17L);
+    verify(userRepository, times(1)).grantProfessor(17L);
+    verify(userRepository, times(1)).revokeProfessor(17L);
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 17 has toggled professor status to false", json.get("message"));
   }
@@ -214,15 +309,15 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_cant_toggle_professor_nonexistent() throws Exception {
-    User user1 = User.builder().email("joegaucho@ucsb.edu").id(17L).build();
-    when(userRepository.findById(eq(17L))).thenReturn(Optional.of(user1));
     MvcResult response =
         mockMvc
             .perform(post("/api/admin/users/toggleProfessor?id=15").with(csrf()))
             .andExpect(status().is(404))
             .andReturn();
 
-    verify(userRepository, times(1)).findById(15L);
+    verify(userRepository, times(1)).grantProfessor(15L);
+    verify(userRepository, times(1)).revokeProfessor(15L);
+    verify(userCache, times(0)).evict(anyLong());
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 15 not found", json.get("message"));
   }
@@ -230,9 +325,8 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_cannot_remove_own_admin_status() throws Exception {
-    // Mock the current user to have ID 1 (which is the mock current user ID) and admin status true
-    User currentUser = User.builder().email("user@example.org").id(1L).admin(true).build();
-    when(userRepository.findById(eq(1L))).thenReturn(Optional.of(currentUser));
+    // 1 is the mock current user ID; neither update changes anything because they are already an
+    // admin
 
     MvcResult response =
         mockMvc
@@ -240,9 +334,9 @@ public class UsersControllerTests extends ControllerTestCase {
             .andExpect(status().isBadRequest())
             .andReturn();
 
-    verify(userRepository, times(1)).findById(1L);
-    verify(userRepository, times(0))
-        .save(any(User.class)); // Should not save because exception is thrown
+    verify(userRepository, times(1)).grantAdmin(1L);
+    verify(userRepository, times(1)).revokeAdmin(1L, 1L);
+    verify(userCache, times(0)).evict(anyLong());
     Map<String, Object> json = responseToJson(response);
     assertEquals(
         "Cannot remove admin from currently logged in user; ask another admin to do that.",
@@ -252,9 +346,8 @@ public class UsersControllerTests extends ControllerTestCase {
   @WithMockUser(roles = {"ADMIN", "USER"})
   @Test
   public void admin_can_add_admin_status_to_themselves() throws Exception {
-    // Mock the current user to have ID 1 (which is the mock current user ID) and admin status false
-    User currentUser = User.builder().email("user@example.org").id(1L).admin(false).build();
-    when(userRepository.findById(eq(1L))).thenReturn(Optional.of(currentUser));
+    // 1 is the mock current user ID; the grant goes ahead because they are not yet an admin
+    when(userRepository.grantAdmin(1L)).thenReturn(1);
 
     MvcResult response =
         mockMvc
@@ -262,9 +355,8 @@ public class UsersControllerTests extends ControllerTestCase {
             .andExpect(status().isOk())
             .andReturn();
 
-    verify(userRepository, times(1)).findById(1L);
-    verify(userRepository, times(1))
-        .save(any(User.class)); // Should save because no exception is thrown
+    verify(userRepository, times(1)).grantAdmin(1L);
+    verify(userCache, times(1)).evict(1L);
     Map<String, Object> json = responseToJson(response);
     assertEquals("User with id 1 has toggled admin status to true", json.get("message"));
   }
@@ -293,4 +385,25 @@ public class UsersControllerTests extends ControllerTestCase {
     assertTrue(responseString.contains("1"));
     assertFalse(responseString.contains("email"));
   }
+
+  @WithMockUser(roles = {"USER"})
+  @Test
+  public void non_admin_cannot_get_cache_stats() throws Exception {
+    mockMvc.perform(get("/api/admin/users/cache")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = {"ADMIN", "USER"})
+  @Test
+  public void admin_can_get_cache_stats() throws Exception {
+    UserCacheStats stats =
+        UserCacheStats.builder().size(4).hits(10).misses(2).evictions(1).invalidations(3).build();
+    when(userCache.getStats()).thenReturn(stats);
+
+    MvcResult response =
+        mockMvc.perform(get("/api/admin/users/cache")).andExpect(status().isOk()).andReturn();
+
+    verify(userCache, times(1)).getStats();
+    String expectedJson = mapper.writeValueAsString(stats);
+    assertEquals(expectedJson, response.getResponse().getContentAsString());
+  }
 }
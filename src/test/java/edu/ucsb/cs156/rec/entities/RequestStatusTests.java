@@ -0,0 +1,77 @@
+package edu.ucsb.cs156.rec.entities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EnumSet;
+import org.junit.jupiter.api.Test;
+
+class RequestStatusTests {
+
+  @Test
+  void codes_are_stable() {
+    assertEquals(0, RequestStatus.PENDING.getCode());
+    assertEquals(1, RequestStatus.IN_PROGRESS.getCode());
+    assertEquals(2, RequestStatus.COMPLETED.getCode());
+    assertEquals(3, RequestStatus.DENIED.getCode());
+    for (RequestStatus status : RequestStatus.values()) {
+      assertEquals(status, RequestStatus.fromCode(status.getCode()));
+    }
+  }
+
+  @Test
+  void unknown_code_is_rejected() {
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> RequestStatus.fromCode((short) 9));
+    assertEquals("Unknown status code: 9", e.getMessage());
+  }
+
+  @Test
+  void labels_are_parsed_ignoring_case_and_underscores() {
+    assertEquals(RequestStatus.IN_PROGRESS, RequestStatus.fromLabel("IN PROGRESS"));
+    assertEquals(RequestStatus.IN_PROGRESS, RequestStatus.fromLabel(" in_progress "));
+    assertEquals(RequestStatus.COMPLETED, RequestStatus.fromLabel("completed"));
+  }
+
+  @Test
+  void unknown_labels_are_rejected() {
+    assertEquals(
+        "Unknown status: STILL_PENDING",
+        assertThrows(IllegalArgumentException.class, () -> RequestStatus.fromLabel("STILL_PENDING"))
+            .getMessage());
+    assertEquals(
+        "Unknown status: null",
+        assertThrows(IllegalArgumentException.class, () -> RequestStatus.fromLabel(null))
+            .getMessage());
+  }
+
+  @Test
+  void transitions() {
+    assertEquals(
+        EnumSet.of(RequestStatus.IN_PROGRESS, RequestStatus.COMPLETED, RequestStatus.DENIED),
+        RequestStatus.PENDING.getNextStatuses());
+    assertEquals(
+        EnumSet.of(RequestStatus.COMPLETED, RequestStatus.DENIED),
+        RequestStatus.IN_PROGRESS.getNextStatuses());
+    assertTrue(RequestStatus.COMPLETED.getNextStatuses().isEmpty());
+    assertTrue(RequestStatus.DENIED.getNextStatuses().isEmpty());
+
+    assertTrue(RequestStatus.PENDING.canMoveTo(RequestStatus.PENDING));
+    assertTrue(RequestStatus.PENDING.canMoveTo(RequestStatus.IN_PROGRESS));
+    assertTrue(RequestStatus.PENDING.canMoveTo(RequestStatus.COMPLETED));
+    assertFalse(RequestStatus.COMPLETED.canMoveTo(RequestStatus.DENIED));
+    assertFalse(RequestStatus.COMPLETED.canMoveTo(RequestStatus.PENDING));
+  }
+
+  @Test
+  void converter_stores_codes() {
+    RequestStatus.Converter converter = new RequestStatus.Converter();
+    assertEquals((short) 2, converter.convertToDatabaseColumn(RequestStatus.COMPLETED));
+    assertEquals(RequestStatus.DENIED, converter.convertToEntityAttribute((short) 3));
+    assertNull(converter.convertToDatabaseColumn(null));
+    assertNull(converter.convertToEntityAttribute(null));
+  }
+}
@@ -0,0 +1,87 @@
+package edu.ucsb.cs156.rec.interceptors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import jakarta.servlet.ServletException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class LoggingContextFilterTests {
+
+  private final LoggingContextFilter filter = new LoggingContextFilter();
+
+  /** Runs the filter, returning the logging context seen by the rest of the chain. */
+  private Map<String, String> filter(
+      MockHttpServletRequest request, MockHttpServletResponse response) throws Exception {
+    Map<String, String> seen = new HashMap<>();
+    filter.doFilter(
+        request,
+        response,
+        (req, res) -> {
+          seen.putAll(MDC.getCopyOfContextMap());
+          MDC.put(LoggingContextFilter.USER_ID, "7");
+        });
+    return seen;
+  }
+
+  @Test
+  public void requests_get_an_id_which_is_cleared_afterwards() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    Map<String, String> seen =
+        filter(new MockHttpServletRequest("GET", "/api/currentUser"), response);
+
+    String requestId = response.getHeader(LoggingContextFilter.REQUEST_ID_HEADER);
+    assertEquals(16, requestId.length(), requestId);
+    assertEquals(requestId, seen.get(LoggingContextFilter.REQUEST_ID));
+    assertNull(MDC.get(LoggingContextFilter.REQUEST_ID));
+    assertNull(MDC.get(LoggingContextFilter.USER_ID));
+  }
+
+  @Test
+  public void clients_may_choose_a_sensible_id() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/currentUser");
+    request.addHeader(LoggingContextFilter.REQUEST_ID_HEADER, "edge-1234.abc_9");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    Map<String, String> seen = filter(request, response);
+
+    assertEquals("edge-1234.abc_9", seen.get(LoggingContextFilter.REQUEST_ID));
+    assertEquals("edge-1234.abc_9", response.getHeader(LoggingContextFilter.REQUEST_ID_HEADER));
+  }
+
+  @Test
+  public void other_ids_are_replaced() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/currentUser");
+    request.addHeader(LoggingContextFilter.REQUEST_ID_HEADER, "evil\nlevel=ERROR");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    Map<String, String> seen = filter(request, response);
+
+    assertNotEquals("evil\nlevel=ERROR", seen.get(LoggingContextFilter.REQUEST_ID));
+    assertEquals(
+        seen.get(LoggingContextFilter.REQUEST_ID),
+        response.getHeader(LoggingContextFilter.REQUEST_ID_HEADER));
+  }
+
+  @Test
+  public void the_context_is_cleared_when_the_request_fails() {
+    assertThrows(
+        ServletException.class,
+        () ->
+            filter.doFilter(
+                new MockHttpServletRequest("GET", "/api/currentUser"),
+                new MockHttpServletResponse(),
+                (req, res) -> {
+                  throw new ServletException("failed");
+                }));
+    assertNull(MDC.get(LoggingContextFilter.REQUEST_ID));
+  }
+}
@@ -0,0 +1,127 @@
+package edu.ucsb.cs156.rec.interceptors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import edu.ucsb.cs156.rec.ControllerTestCase;
+import edu.ucsb.cs156.rec.controllers.RequestTypeController;
+import edu.ucsb.cs156.rec.errors.TooManyRequestsException;
+import edu.ucsb.cs156.rec.repositories.RequestTypeRepository;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.testconfig.TestConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+@WebMvcTest(
+    controllers = RequestTypeController.class,
+    properties = {
+      "app.rateLimit.createRequestType.capacity=2",
+      "app.rateLimit.createRequestType.perMinute=10"
+    })
+@Import(TestConfig.class)
+public class RateLimitInterceptorTests extends ControllerTestCase {
+
+  @MockBean RequestTypeRepository requestTypeRepository;
+
+  @MockBean UserRepository userRepository;
+
+  @Autowired MeterRegistry meterRegistry;
+
+  private static final long SECOND = 1_000_000_000L;
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  /** A request to create a request type, made by an admin with the given name. */
+  private MockHttpServletRequestBuilder postType(String requestType, String admin) {
+    return post("/api/requesttypes/post")
+        .param("requestType", requestType)
+        .with(user(admin).roles("ADMIN", "USER"))
+        .with(csrf());
+  }
+
+  @Test
+  public void a_user_over_the_limit_is_told_when_to_try_again() throws Exception {
+    when(requestTypeRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    double throttled =
+        meterRegistry.counter(RateLimitInterceptor.THROTTLED, "limit", "createRequestType").count();
+
+    mockMvc.perform(postType("First", "busy")).andExpect(status().isOk());
+    mockMvc.perform(postType("Second", "busy")).andExpect(status().isOk());
+    mockMvc
+        .perform(postType("Third", "busy"))
+        .andExpect(status().isTooManyRequests())
+        .andExpect(header().string("Retry-After", "6"))
+        .andExpect(jsonPath("$.type").value("TooManyRequestsException"))
+        .andExpect(jsonPath("$.message").value("Too many requests; try again in 6 seconds"));
+
+    // other users have buckets of their own
+    mockMvc.perform(postType("Fourth", "idle")).andExpect(status().isOk());
+    assertEquals(
+        throttled + 1,
+        meterRegistry
+            .counter(RateLimitInterceptor.THROTTLED, "limit", "createRequestType")
+            .count());
+  }
+
+  @Test
+  public void requests_that_are_not_logged_in_are_limited_by_address() {
+    RateLimitInterceptor interceptor =
+        new RateLimitInterceptor("test", 1, 60, registry, clock::get);
+    MockHttpServletRequest first = new MockHttpServletRequest();
+    first.setRemoteAddr("10.0.0.1");
+    MockHttpServletRequest second = new MockHttpServletRequest();
+    second.setRemoteAddr("10.0.0.2");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    assertTrue(interceptor.preHandle(first, response, null));
+    assertTrue(interceptor.preHandle(second, response, null));
+    TooManyRequestsException e =
+        assertThrows(
+            TooManyRequestsException.class, () -> interceptor.preHandle(first, response, null));
+    assertEquals(1, e.getRetryAfterSeconds());
+
+    // part of a second still counts as a whole one
+    clock.set(SECOND / 2);
+    e =
+        assertThrows(
+            TooManyRequestsException.class, () -> interceptor.preHandle(first, response, null));
+    assertEquals(1, e.getRetryAfterSeconds());
+
+    clock.set(SECOND);
+    assertTrue(interceptor.preHandle(first, response, null));
+    assertEquals(2, registry.counter(RateLimitInterceptor.THROTTLED, "limit", "test").count());
+  }
+
+  @Test
+  public void a_limit_of_zero_is_no_limit() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    RateLimitInterceptor noCapacity = new RateLimitInterceptor("none", 0, 60, registry);
+    RateLimitInterceptor noRate = new RateLimitInterceptor("none", 1, 0, registry);
+
+    for (int i = 0; i < 5; i++) {
+      assertTrue(noCapacity.preHandle(request, response, null));
+      assertTrue(noRate.preHandle(request, response, null));
+    }
+  }
+}
@@ -1,34 +1,53 @@
 package edu.ucsb.cs156.rec.interceptors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import edu.ucsb.cs156.rec.ControllerTestCase;
 import edu.ucsb.cs156.rec.entities.User;
 import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.CurrentUserContext;
+import edu.ucsb.cs156.rec.services.CurrentUserService;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
 import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.servlet.HandlerExecutionChain;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
@@ -50,6 +69,7 @@ public class RoleInterceptorTests extends ControllerTestCase {
     values.put("givenName", "Joe");
     values.put("familyName", "Gaucho");
     values.put("emailVerified", true);
+    values.put("email_verified", true);
     values.put("locale", "en");
     values.put("hostedDomain", "ucsb.edu");
 
@@ -62,6 +82,9 @@ public class RoleInterceptorTests extends ControllerTestCase {
     Authentication auth = new OAuth2AuthenticationToken(user, credentials, "google");
     SecurityContextHolder.setContext(SecurityContextHolder.createEmptyContext());
     SecurityContextHolder.getContext().setAuthentication(auth);
+
+    // a user seen for the first time is saved by the interceptor
+    when(userRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
   }
 
   @Test
@@ -77,7 +100,7 @@ public class RoleInterceptorTests extends ControllerTestCase {
   }
 
   @Test
-  public void no_user_means_no_updates() throws Exception {
+  public void first_login_is_saved_and_roles_follow_the_new_user() throws Exception {
     User user =
         User.builder().email("nogaucho@ucsb.edu").id(15L).admin(false).professor(false).build();
     when(userRepository.findByEmail("nogaucho@ucsb.edu")).thenReturn(Optional.of(user));
@@ -95,6 +118,8 @@ public class RoleInterceptorTests extends ControllerTestCase {
     RoleInterceptor.get().preHandle(request, response, chain.getHandler());
 
     verify(userRepository, times(1)).findByEmail("joegaucho@ucsb.edu");
+    verify(userRepository, times(1))
+        .save(argThat(saved -> saved.getEmail().equals("joegaucho@ucsb.edu")));
 
     Collection<? extends GrantedAuthority> authorities =
         SecurityContextHolder.getContext().getAuthentication().getAuthorities();
@@ -108,8 +133,8 @@ public class RoleInterceptorTests extends ControllerTestCase {
     boolean role_user =
         authorities.stream()
             .anyMatch(grantedAuth -> grantedAuth.getAuthority().equals("ROLE_USER"));
-    assertTrue(role_admin, "ROLE_ADMIN should be in roles list");
-    assertTrue(role_professor, "ROLE_PROFESSOR should be in roles list");
+    assertFalse(role_admin, "ROLE_ADMIN should not be in roles list");
+    assertFalse(role_professor, "ROLE_PROFESSOR should not be in roles list");
     assertTrue(role_user, "ROLE_USER should be in roles list");
   }
 
@@ -131,6 +156,8 @@ public class RoleInterceptorTests extends ControllerTestCase {
     RoleInterceptor.get().preHandle(request, response, chain.getHandler());
 
     verify(userRepository, times(1)).findByEmail("joegaucho@ucsb.edu");
+    assertEquals("15", MDC.get(LoggingContextFilter.USER_ID));
+    MDC.remove(LoggingContextFilter.USER_ID);
 
     Collection<? extends GrantedAuthority> authorities =
         SecurityContextHolder.getContext().getAuthentication().getAuthorities();
@@ -220,4 +247,173 @@ public class RoleInterceptorTests extends ControllerTestCase {
     assertFalse(role_professor, "ROLE_PROFESSOR should not be in roles list");
     assertTrue(role_user, "ROLE_USER should be in roles list");
   }
+
+  @Test
+  public void one_request_looks_up_the_user_once() throws Exception {
+    User user =
+        User.builder().email("joegaucho@ucsb.edu").id(15L).admin(false).professor(true).build();
+    when(userRepository.findByEmail("joegaucho@ucsb.edu")).thenReturn(Optional.of(user));
+
+    Map<String, Object> values =
+        Map.of(
+            "email", "joegaucho@ucsb.edu",
+            "sub", "googleSub",
+            "name", "Joe Gaucho",
+            "email_verified", true);
+    Set<GrantedAuthority> credentials = Set.of(new SimpleGrantedAuthority("ROLE_USER"));
+    OAuth2User oauthUser = new DefaultOAuth2User(credentials, values, "email");
+    Authentication auth = new OAuth2AuthenticationToken(oauthUser, credentials, "google");
+
+    MvcResult response =
+        mockMvc
+            .perform(get("/api/currentUser").with(authentication(auth)))
+            .andExpect(status().isOk())
+            .andReturn();
+
+    verify(userRepository, times(1)).findByEmail("joegaucho@ucsb.edu");
+    Map<String, Object> json = responseToJson(response);
+    assertEquals("joegaucho@ucsb.edu", ((Map) json.get("user")).get("email"));
+  }
+
+  @Test
+  public void matching_role_stamp_keeps_the_session_authentication() throws Exception {
+    User user =
+        User.builder()
+            .email("joegaucho@ucsb.edu")
+            .id(15L)
+            .admin(false)
+            .professor(false)
+            .roleVersion(3L)
+            .build();
+    when(userRepository.findByEmail("joegaucho@ucsb.edu")).thenReturn(Optional.of(user));
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/currentUser");
+    request
+        .getSession()
+        .setAttribute(RoleInterceptor.ROLE_STAMP_ATTRIBUTE, new RoleInterceptor.RoleStamp(15L, 3L));
+    HandlerExecutionChain chain = mapping.getMatchableHandlerMapping(request).getHandler(request);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    Authentication before = SecurityContextHolder.getContext().getAuthentication();
+
+    assert chain != null;
+    Optional<HandlerInterceptor> roleInterceptor =
+        chain.getInterceptorList().stream().filter(RoleInterceptor.class::isInstance).findFirst();
+
+    roleInterceptor.get().preHandle(request, response, chain.getHandler());
+
+    verify(userRepository, times(1)).findByEmail("joegaucho@ucsb.edu");
+    assertSame(before, SecurityContextHolder.getContext().getAuthentication());
+  }
+
+  @Test
+  public void changed_role_version_rebuilds_and_saves_to_session() throws Exception {
+    User user =
+        User.builder()
+            .email("joegaucho@ucsb.edu")
+            .id(15L)
+            .admin(false)
+            .professor(true)
+            .roleVersion(4L)
+            .build();
+    when(userRepository.findByEmail("joegaucho@ucsb.edu")).thenReturn(Optional.of(user));
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/currentUser");
+    MockHttpSession session = new MockHttpSession();
+    session.setAttribute(
+        RoleInterceptor.ROLE_STAMP_ATTRIBUTE, new RoleInterceptor.RoleStamp(15L, 3L));
+    request.setSession(session);
+    HandlerExecutionChain chain = mapping.getMatchableHandlerMapping(request).getHandler(request);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    assert chain != null;
+    Optional<HandlerInterceptor> roleInterceptor =
+        chain.getInterceptorList().stream().filter(RoleInterceptor.class::isInstance).findFirst();
+
+    roleInterceptor.get().preHandle(request, response, chain.getHandler());
+
+    Collection<? extends GrantedAuthority> authorities =
+        SecurityContextHolder.getContext().getAuthentication().getAuthorities();
+    assertFalse(
+        authorities.stream()
+            .anyMatch(grantedAuth -> grantedAuth.getAuthority().equals("ROLE_ADMIN")),
+        "ROLE_ADMIN should not be in roles list");
+    assertEquals(
+        new RoleInterceptor.RoleStamp(15L, 4L),
+        session.getAttribute(RoleInterceptor.ROLE_STAMP_ATTRIBUTE));
+    SecurityContext saved =
+        (SecurityContext)
+            session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+    assertSame(SecurityContextHolder.getContext().getAuthentication(), saved.getAuthentication());
+  }
+
+  @Test
+  public void stamp_for_another_user_is_ignored() throws Exception {
+    User user =
+        User.builder()
+            .email("joegaucho@ucsb.edu")
+            .id(15L)
+            .admin(false)
+            .professor(true)
+            .roleVersion(3L)
+            .build();
+    when(userRepository.findByEmail("joegaucho@ucsb.edu")).thenReturn(Optional.of(user));
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/currentUser");
+    request
+        .getSession()
+        .setAttribute(RoleInterceptor.ROLE_STAMP_ATTRIBUTE, new RoleInterceptor.RoleStamp(16L, 3L));
+    HandlerExecutionChain chain = mapping.getMatchableHandlerMapping(request).getHandler(request);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    assert chain != null;
+    Optional<HandlerInterceptor> roleInterceptor =
+        chain.getInterceptorList().stream().filter(RoleInterceptor.class::isInstance).findFirst();
+
+    roleInterceptor.get().preHandle(request, response, chain.getHandler());
+
+    assertEquals(
+        new RoleInterceptor.RoleStamp(15L, 3L),
+        request.getSession().getAttribute(RoleInterceptor.ROLE_STAMP_ATTRIBUTE));
+    assertFalse(
+        SecurityContextHolder.getContext().getAuthentication().getAuthorities().stream()
+            .anyMatch(grantedAuth -> grantedAuth.getAuthority().equals("ROLE_ADMIN")),
+        "ROLE_ADMIN should not be in roles list");
+  }
+
+  @Test
+  public void user_is_saved_before_it_is_looked_up() throws Exception {
+    User user = User.builder().email("joegaucho@ucsb.edu").id(15L).roleVersion(0L).build();
+    CurrentUserService currentUserService = mock(CurrentUserService.class);
+    CurrentUserContext currentUserContext = mock(CurrentUserContext.class);
+    when(currentUserContext.findByEmail("joegaucho@ucsb.edu")).thenReturn(Optional.of(user));
+    RoleInterceptor interceptor = new RoleInterceptor();
+    ReflectionTestUtils.setField(interceptor, "currentUserService", currentUserService);
+    ReflectionTestUtils.setField(interceptor, "currentUserContext", currentUserContext);
+
+    interceptor.preHandle(
+        new MockHttpServletRequest("GET", "/api/currentUser"), new MockHttpServletResponse(), null);
+
+    // the first login is saved here, outside the handler's transaction
+    InOrder inOrder = inOrder(currentUserService, currentUserContext);
+    inOrder.verify(currentUserService).getUser();
+    inOrder.verify(currentUserContext).findByEmail("joegaucho@ucsb.edu");
+  }
+
+  @Test
+  public void user_still_missing_means_no_updates() throws Exception {
+    CurrentUserContext currentUserContext = mock(CurrentUserContext.class);
+    when(currentUserContext.findByEmail("joegaucho@ucsb.edu")).thenReturn(Optional.empty());
+    RoleInterceptor interceptor = new RoleInterceptor();
+    ReflectionTestUtils.setField(interceptor, "currentUserService", mock(CurrentUserService.class));
+    ReflectionTestUtils.setField(interceptor, "currentUserContext", currentUserContext);
+    Authentication before = SecurityContextHolder.getContext().getAuthentication();
+
+    assertTrue(
+        interceptor.preHandle(
+            new MockHttpServletRequest("GET", "/api/currentUser"),
+            new MockHttpServletResponse(),
+            null));
+
+    assertSame(before, SecurityContextHolder.getContext().getAuthentication());
+  }
 }
@@ -0,0 +1,82 @@
+package edu.ucsb.cs156.rec.interceptors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTests {
+
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  public void a_full_bucket_allows_a_burst_of_its_capacity() {
+    TokenBucket bucket = new TokenBucket(3, SECOND, 0);
+
+    assertEquals(0, bucket.tryTake(0));
+    assertEquals(0, bucket.tryTake(0));
+    assertEquals(0, bucket.tryTake(0));
+    assertEquals(SECOND, bucket.tryTake(0));
+    assertEquals(SECOND / 4, bucket.tryTake(SECOND * 3 / 4));
+  }
+
+  @Test
+  public void the_bucket_refills_at_its_rate_up_to_its_capacity() {
+    TokenBucket bucket = new TokenBucket(2, SECOND, 0);
+    bucket.tryTake(0);
+    bucket.tryTake(0);
+
+    assertEquals(0, bucket.tryTake(SECOND));
+    assertEquals(SECOND, bucket.tryTake(SECOND));
+
+    // a long wait fills the bucket, but no more than full
+    long later = 100 * SECOND;
+    assertEquals(0, bucket.tryTake(later));
+    assertEquals(0, bucket.tryTake(later));
+    assertEquals(SECOND, bucket.tryTake(later));
+  }
+
+  @Test
+  public void a_refused_request_does_not_use_up_a_token() {
+    TokenBucket bucket = new TokenBucket(1, SECOND, 0);
+    bucket.tryTake(0);
+
+    assertEquals(SECOND / 2, bucket.tryTake(SECOND / 2));
+    assertEquals(SECOND / 2, bucket.tryTake(SECOND / 2));
+    assertEquals(0, bucket.tryTake(SECOND));
+  }
+
+  @Test
+  public void threads_taking_at_once_never_get_more_than_the_capacity() throws Exception {
+    TokenBucket bucket = new TokenBucket(1000, SECOND, 0);
+    Callable<Integer> taker =
+        () -> {
+          int taken = 0;
+          for (int i = 0; i < 500; i++) {
+            if (bucket.tryTake(0) == 0) {
+              taken++;
+            }
+          }
+          return taken;
+        };
+    List<Future<Integer>> results = new ArrayList<>();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      for (int i = 0; i < 4; i++) {
+        results.add(executor.submit(taker));
+      }
+      int taken = 0;
+      for (Future<Integer> result : results) {
+        taken += result.get();
+      }
+      assertEquals(1000, taken);
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
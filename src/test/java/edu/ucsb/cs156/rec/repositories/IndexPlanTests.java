@@ -0,0 +1,193 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Calls each repository finder, captures the SQL that Hibernate generated for it, and asks H2 to
+ * EXPLAIN that SQL, checking that the plan uses the index added for it in
+ * db/migration/changes/Indexes.json rather than a table scan. The parameters are left unbound, as
+ * they are when the statement is prepared. The rows the planner needs are inserted in each test's
+ * transaction, which is rolled back.
+ */
+@DataJpaTest(
+    properties =
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+            + "edu.ucsb.cs156.rec.repositories.IndexPlanTests$CapturedSql")
+@ActiveProfiles("test")
+public class IndexPlanTests {
+
+  /** Remembers the SQL of every statement Hibernate prepares. */
+  public static class CapturedSql implements StatementInspector {
+    static final List<String> statements = new ArrayList<>();
+
+    @Override
+    public String inspect(String sql) {
+      statements.add(sql);
+      return sql;
+    }
+  }
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired TestEntityManager entityManager;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired RequestTypeRepository requestTypeRepository;
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired ArchivedRecommendationRequestRepository archivedRecommendationRequestRepository;
+
+  static final LocalDateTime SUBMITTED = LocalDateTime.parse("2024-06-01T05:00:00");
+
+  /**
+   * The planner needs row counts and selectivity to prefer a composite index over the index H2
+   * creates for each foreign key, so load a few hundred rows. ANALYZE would commit them, so the
+   * selectivity it would find (a handful of professors and statuses among hundreds of requests) is
+   * set directly instead, before the rows are inserted; it is only a statistic and is not rolled
+   * back.
+   */
+  @BeforeEach
+  void loadRows() {
+    jdbcTemplate.execute(
+        "ALTER TABLE RECOMMENDATIONREQUEST ALTER COLUMN PROFESSOR_ID SELECTIVITY 1");
+    jdbcTemplate.execute(
+        "ALTER TABLE RECOMMENDATIONREQUEST ALTER COLUMN STATUS_CODE SELECTIVITY 1");
+    for (int u = 1; u <= 40; u++) {
+      jdbcTemplate.update(
+          "INSERT INTO USERS (ID, EMAIL, EMAIL_VERIFIED, PROFESSOR) VALUES (?, ?, TRUE, ?)",
+          u,
+          "user" + u + "@ucsb.edu",
+          u <= 4);
+    }
+    List<Object[]> rows = new ArrayList<>();
+    for (int r = 1; r <= 800; r++) {
+      rows.add(new Object[] {r, 1 + r % 4, 5 + r % 36, r % 4, r % 365, r});
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO RECOMMENDATIONREQUEST"
+            + " (ID, PROFESSOR_ID, REQUESTER_ID, STATUS_CODE, DUE_DATE, SUBMISSION_DATE)"
+            + " VALUES (?, ?, ?, ?, DATEADD(DAY, ?, TIMESTAMP '2025-01-01 00:00:00'),"
+            + " DATEADD(MINUTE, ?, TIMESTAMP '2024-06-01 00:00:00'))",
+        rows);
+  }
+
+  /** Runs the finder and returns the plan of the one statement it ran. */
+  private String plan(Runnable finder) {
+    entityManager.clear();
+    CapturedSql.statements.clear();
+    finder.run();
+    assertEquals(1, CapturedSql.statements.size(), () -> "ran " + CapturedSql.statements);
+    String sql = CapturedSql.statements.get(0);
+    return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+  }
+
+  private void assertUsesIndex(String indexName, Runnable finder) {
+    String plan = plan(finder);
+    assertTrue(plan.contains("/* PUBLIC." + indexName + ":"), () -> indexName + " not in " + plan);
+  }
+
+  @Test
+  public void findByEmail_uses_unique_email_index() {
+    assertUsesIndex("USERS_EMAIL_UQ", () -> userRepository.findByEmail("user1@ucsb.edu"));
+  }
+
+  @Test
+  public void professorIsTrue_uses_professor_index() {
+    assertUsesIndex("USERS_PROFESSOR_IX", () -> userRepository.professorIsTrue().forEach(u -> {}));
+  }
+
+  @Test
+  public void findByRequestType_uses_unique_request_type_index() {
+    assertUsesIndex(
+        "REQUESTTYPE_REQUEST_TYPE_UQ",
+        () -> requestTypeRepository.findByRequestType("PhD program"));
+  }
+
+  @Test
+  public void inbox_with_status_uses_professor_status_index() {
+    assertUsesIndex(
+        "RECOMMENDATIONREQUEST_PROFESSOR_STATUS_IX",
+        () ->
+            recommendationRequestRepository.findInboxPageWithStatus(
+                1L, RequestStatus.PENDING, Limit.of(11)));
+  }
+
+  /**
+   * H2 cannot take the ORDER BY from an index after an equality on its first column, so for this
+   * query it is indifferent between RECOMMENDATIONREQUEST_PROFESSOR_DUE_IX and the index it made
+   * for the professor_id foreign key. (Postgres has no foreign key indexes and uses the composite
+   * one for both the lookup and the order.) Either way it must not scan the table.
+   */
+  @Test
+  public void inbox_uses_a_professor_index() {
+    String plan = plan(() -> recommendationRequestRepository.findInboxPage(1L, Limit.of(11)));
+    assertTrue(
+        plan.contains("/* PUBLIC.RECOMMENDATIONREQUEST_PROFESSOR_"), () -> "no index in " + plan);
+  }
+
+  @Test
+  public void outbox_next_page_uses_requester_submission_date_index() {
+    assertUsesIndex(
+        "RECOMMENDATIONREQUEST_REQUESTER_SUBMITTED_IX",
+        () ->
+            recommendationRequestRepository.findSubmittedPageAfter(
+                5L, SUBMITTED, 300L, Limit.of(11)));
+  }
+
+  @Test
+  public void admin_next_page_uses_submission_date_index() {
+    assertUsesIndex(
+        "RECOMMENDATIONREQUEST_SUBMITTED_IX",
+        () ->
+            recommendationRequestRepository.findAllSubmittedPageAfter(
+                SUBMITTED, 300L, Limit.of(11)));
+  }
+
+  @Test
+  public void archive_mover_uses_status_last_modified_index() {
+    assertUsesIndex(
+        "RECOMMENDATIONREQUEST_STATUS_MODIFIED_IX",
+        () ->
+            recommendationRequestRepository.lockArchivableIds(
+                RequestStatus.COMPLETED, SUBMITTED, Limit.of(200)));
+  }
+
+  @Test
+  public void requester_history_uses_archive_requester_index() {
+    assertUsesIndex(
+        "ARCHIVEDRECOMMENDATIONREQUEST_REQUESTER_IX",
+        () ->
+            archivedRecommendationRequestRepository.findRequesterHistoryPage(
+                5L, 300L, Limit.of(11)));
+  }
+
+  @Test
+  public void professor_history_uses_archive_professor_index() {
+    assertUsesIndex(
+        "ARCHIVEDRECOMMENDATIONREQUEST_PROFESSOR_IX",
+        () ->
+            archivedRecommendationRequestRepository.findProfessorHistoryPage(
+                1L, 300L, Limit.of(11)));
+  }
+}
@@ -0,0 +1,501 @@
+package edu.ucsb.cs156.rec.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.ListingFingerprint;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs the keyset pagination queries against H2, pages through every row, and counts the SQL
+ * statements each listing needs.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+public class RecommendationRequestRepositoryTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired TestEntityManager entityManager;
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired UserRepository userRepository;
+
+  User professor;
+  User student;
+  User otherStudent;
+  List<Long> ids = new ArrayList<>();
+
+  LocalDateTime day(int n) {
+    return LocalDateTime.parse("2025-01-01T00:00:00").plusDays(n);
+  }
+
+  /** Saves a request, then overwrites the audited submission date with the given one. */
+  long save(RequestStatus status, LocalDateTime dueDate, LocalDateTime submissionDate) {
+    RecommendationRequest request =
+        entityManager.persistFlushFind(
+            RecommendationRequest.builder()
+                .professor(professor)
+                .requester(student)
+                .status(status)
+                .dueDate(dueDate)
+                .build());
+    entityManager
+        .getEntityManager()
+        .createNativeQuery("UPDATE recommendationrequest SET submission_date = ?1 WHERE id = ?2")
+        .setParameter(1, submissionDate)
+        .setParameter(2, request.getId())
+        .executeUpdate();
+    ids.add(request.getId());
+    return request.getId();
+  }
+
+  @BeforeEach
+  void setup() {
+    professor = entityManager.persist(User.builder().email("prof@ucsb.edu").build());
+    student = entityManager.persist(User.builder().email("student@ucsb.edu").build());
+    otherStudent = entityManager.persist(User.builder().email("other@ucsb.edu").build());
+    save(RequestStatus.PENDING, day(3), day(1));
+    save(RequestStatus.COMPLETED, null, day(2));
+    save(RequestStatus.PENDING, day(2), null);
+    save(RequestStatus.PENDING, day(3), day(2));
+    save(RequestStatus.PENDING, null, day(0));
+    // one request from a second student, so a page holds three distinct users
+    entityManager
+        .getEntityManager()
+        .createNativeQuery("UPDATE recommendationrequest SET requester_id = ?1 WHERE id = ?2")
+        .setParameter(1, otherStudent.getId())
+        .setParameter(2, ids.get(1))
+        .executeUpdate();
+    entityManager.clear();
+  }
+
+  /** Runs the query with an empty persistence context and returns how many statements it ran. */
+  long statementsFor(Supplier<List<RecommendationRequest>> query) {
+    entityManager.clear();
+    Statistics statistics =
+        entityManager
+            .getEntityManager()
+            .getEntityManagerFactory()
+            .unwrap(SessionFactory.class)
+            .getStatistics();
+    statistics.clear();
+    List<RecommendationRequest> rows = query.get();
+    rows.forEach(r -> assertEquals("prof@ucsb.edu", r.getProfessor().getEmail()));
+    return statistics.getPrepareStatementCount();
+  }
+
+  /** Pages through the inbox of the professor, with the queries for all statuses. */
+  List<Long> inbox(int pageSize) {
+    Long professorId = professor.getId();
+    Limit limit = Limit.of(pageSize);
+    return pageThrough(
+        recommendationRequestRepository.findInboxPage(professorId, limit),
+        RecommendationRequest::getDueDate,
+        last ->
+            recommendationRequestRepository.findInboxPageAfterNullDueDate(
+                professorId, last.getId(), limit),
+        last ->
+            recommendationRequestRepository.findInboxPageAfter(
+                professorId, last.getDueDate(), last.getId(), limit));
+  }
+
+  /** Pages through the inbox of the professor, with the queries for one status. */
+  List<Long> inbox(RequestStatus status, int pageSize) {
+    Long professorId = professor.getId();
+    Limit limit = Limit.of(pageSize);
+    return pageThrough(
+        recommendationRequestRepository.findInboxPageWithStatus(professorId, status, limit),
+        RecommendationRequest::getDueDate,
+        last ->
+            recommendationRequestRepository.findInboxPageWithStatusAfterNullDueDate(
+                professorId, status, last.getId(), limit),
+        last ->
+            recommendationRequestRepository.findInboxPageWithStatusAfter(
+                professorId, status, last.getDueDate(), last.getId(), limit));
+  }
+
+  /** Pages through the requests made by one user. */
+  List<Long> submitted(Long requesterId, int pageSize) {
+    Limit limit = Limit.of(pageSize);
+    return pageThrough(
+        recommendationRequestRepository.findSubmittedPage(requesterId, limit),
+        RecommendationRequest::getSubmissionDate,
+        last ->
+            recommendationRequestRepository.findSubmittedPageAfterNullSubmissionDate(
+                requesterId, last.getId(), limit),
+        last ->
+            recommendationRequestRepository.findSubmittedPageAfter(
+                requesterId, last.getSubmissionDate(), last.getId(), limit));
+  }
+
+  /** Pages through all requests, as an admin does. */
+  List<Long> allSubmitted(int pageSize) {
+    Limit limit = Limit.of(pageSize);
+    return pageThrough(
+        recommendationRequestRepository.findAllSubmittedPage(limit),
+        RecommendationRequest::getSubmissionDate,
+        last ->
+            recommendationRequestRepository.findAllSubmittedPageAfterNullSubmissionDate(
+                last.getId(), limit),
+        last ->
+            recommendationRequestRepository.findAllSubmittedPageAfter(
+                last.getSubmissionDate(), last.getId(), limit));
+  }
+
+  /**
+   * Reads pages until one comes back empty, fetching each next page with afterNull if the last row
+   * had no sort key and with after otherwise, and returns the ids of every row seen.
+   */
+  List<Long> pageThrough(
+      List<RecommendationRequest> page,
+      Function<RecommendationRequest, LocalDateTime> sortKey,
+      Function<RecommendationRequest, List<RecommendationRequest>> afterNull,
+      Function<RecommendationRequest, List<RecommendationRequest>> after) {
+    List<Long> seen = new ArrayList<>();
+    while (!page.isEmpty()) {
+      page.forEach(r -> seen.add(r.getId()));
+      RecommendationRequest last = page.get(page.size() - 1);
+      page = sortKey.apply(last) == null ? afterNull.apply(last) : after.apply(last);
+    }
+    return seen;
+  }
+
+  @Test
+  public void inbox_pages_by_due_date_then_id_with_missing_due_dates_last() {
+    List<Long> expected = List.of(ids.get(2), ids.get(0), ids.get(3), ids.get(1), ids.get(4));
+    assertEquals(expected, inbox(1));
+    assertEquals(expected, inbox(2));
+    assertEquals(expected, inbox(10));
+  }
+
+  @Test
+  public void inbox_can_be_filtered_by_status() {
+    assertEquals(
+        List.of(ids.get(2), ids.get(0), ids.get(3), ids.get(4)), inbox(RequestStatus.PENDING, 2));
+    assertEquals(List.of(ids.get(1)), inbox(RequestStatus.COMPLETED, 2));
+  }
+
+  @Test
+  public void submitted_pages_newest_first_with_missing_dates_first() {
+    List<Long> expected = List.of(ids.get(2), ids.get(3), ids.get(1), ids.get(0), ids.get(4));
+    assertEquals(expected, allSubmitted(1));
+    assertEquals(expected, allSubmitted(2));
+    assertEquals(
+        List.of(ids.get(2), ids.get(3), ids.get(0), ids.get(4)), submitted(student.getId(), 2));
+    assertEquals(List.of(ids.get(1)), submitted(otherStudent.getId(), 2));
+    assertEquals(List.of(), submitted(professor.getId(), 2));
+  }
+
+  @Test
+  public void inbox_queries_load_users_in_a_single_statement() {
+    Long professorId = professor.getId();
+    RequestStatus pending = RequestStatus.PENDING;
+    Limit limit = Limit.of(10);
+    assertEquals(
+        1, statementsFor(() -> recommendationRequestRepository.findInboxPage(professorId, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findInboxPageWithStatus(
+                    professorId, pending, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findInboxPageAfter(
+                    professorId, day(0), 0L, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findInboxPageWithStatusAfter(
+                    professorId, pending, day(0), 0L, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findInboxPageAfterNullDueDate(
+                    professorId, 0L, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findInboxPageWithStatusAfterNullDueDate(
+                    professorId, pending, 0L, limit)));
+  }
+
+  @Test
+  public void submitted_queries_load_users_in_a_single_statement() {
+    Long studentId = student.getId();
+    Limit limit = Limit.of(10);
+    assertEquals(
+        1, statementsFor(() -> recommendationRequestRepository.findAllSubmittedPage(limit)));
+    assertEquals(
+        1,
+        statementsFor(() -> recommendationRequestRepository.findSubmittedPage(studentId, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findAllSubmittedPageAfter(
+                    day(9), Long.MAX_VALUE, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findSubmittedPageAfter(
+                    studentId, day(9), Long.MAX_VALUE, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findAllSubmittedPageAfterNullSubmissionDate(
+                    Long.MAX_VALUE, limit)));
+    assertEquals(
+        1,
+        statementsFor(
+            () ->
+                recommendationRequestRepository.findSubmittedPageAfterNullSubmissionDate(
+                    studentId, Long.MAX_VALUE, limit)));
+  }
+
+  @Test
+  public void status_rows_are_limited_to_the_professor() {
+    long elsewhere =
+        entityManager
+            .persistFlushFind(
+                RecommendationRequest.builder()
+                    .professor(otherStudent)
+                    .requester(student)
+                    .status(RequestStatus.PENDING)
+                    .build())
+            .getId();
+
+    List<RecommendationRequestRepository.StatusRow> rows =
+        recommendationRequestRepository.lockStatusRows(
+            professor.getId(), List.of(ids.get(0), ids.get(1), elsewhere, -1L));
+
+    assertEquals(
+        List.of(ids.get(0), ids.get(1)),
+        rows.stream().map(RecommendationRequestRepository.StatusRow::getId).sorted().toList());
+    RecommendationRequestRepository.StatusRow row =
+        rows.stream().filter(r -> r.getId() == ids.get(1)).findFirst().orElseThrow();
+    assertEquals(RequestStatus.COMPLETED, row.getStatus());
+    assertEquals(day(2), row.getSubmissionDate());
+  }
+
+  @Test
+  public void status_is_updated_in_one_statement() {
+    LocalDateTime now = day(10);
+    long elsewhere =
+        entityManager
+            .persistFlushFind(
+                RecommendationRequest.builder()
+                    .professor(otherStudent)
+                    .requester(student)
+                    .status(RequestStatus.PENDING)
+                    .build())
+            .getId();
+    Statistics statistics =
+        entityManager
+            .getEntityManager()
+            .getEntityManagerFactory()
+            .unwrap(SessionFactory.class)
+            .getStatistics();
+    statistics.clear();
+
+    int changed =
+        recommendationRequestRepository.updateStatus(
+            professor.getId(),
+            List.of(ids.get(0), ids.get(2), elsewhere),
+            RequestStatus.COMPLETED,
+            now,
+            now);
+
+    assertEquals(1, statistics.getPrepareStatementCount());
+    assertEquals(2, changed);
+    RecommendationRequest first = entityManager.find(RecommendationRequest.class, ids.get(0));
+    assertEquals(RequestStatus.COMPLETED, first.getStatus());
+    assertEquals(now, first.getCompletionDate());
+    assertEquals(now, first.getLastModifiedDate());
+    assertEquals(
+        RequestStatus.PENDING,
+        entityManager.find(RecommendationRequest.class, ids.get(3)).getStatus());
+    assertEquals(
+        RequestStatus.PENDING,
+        entityManager.find(RecommendationRequest.class, elsewhere).getStatus());
+
+    recommendationRequestRepository.updateStatus(
+        professor.getId(), List.of(ids.get(0)), RequestStatus.DENIED, null, day(11));
+    first = entityManager.find(RecommendationRequest.class, ids.get(0));
+    assertEquals(RequestStatus.DENIED, first.getStatus());
+    assertEquals(now, first.getCompletionDate());
+  }
+
+  @Test
+  public void fingerprints_summarize_the_listing_rows() {
+    ListingFingerprint inbox = recommendationRequestRepository.inboxFingerprint(professor.getId());
+    assertEquals(5L, inbox.getCount());
+    assertEquals(ids.get(4), inbox.getMaxId());
+    ListingFingerprint pending =
+        recommendationRequestRepository.inboxFingerprintWithStatus(
+            professor.getId(), RequestStatus.PENDING);
+    assertEquals(4L, pending.getCount());
+    ListingFingerprint submitted =
+        recommendationRequestRepository.submittedFingerprint(student.getId());
+    assertEquals(4L, submitted.getCount());
+
+    LocalDateTime later = inbox.getLastModified().plusMinutes(1);
+    recommendationRequestRepository.updateStatus(
+        professor.getId(), List.of(ids.get(0)), RequestStatus.COMPLETED, null, later);
+
+    ListingFingerprint changed =
+        recommendationRequestRepository.inboxFingerprint(professor.getId());
+    assertEquals(inbox.getCount(), changed.getCount());
+    assertEquals(later, changed.getLastModified());
+    assertEquals(
+        3L,
+        recommendationRequestRepository
+            .inboxFingerprintWithStatus(professor.getId(), RequestStatus.PENDING)
+            .getCount());
+
+    ListingFingerprint none =
+        recommendationRequestRepository.submittedFingerprint(professor.getId());
+    assertEquals(0L, none.getCount());
+    assertNull(none.getMaxId());
+    assertNull(none.getLastModified());
+    assertNull(none.getUserVersions());
+  }
+
+  @Test
+  public void fingerprints_change_when_a_user_in_the_listing_changes() {
+    ListingFingerprint inbox = recommendationRequestRepository.inboxFingerprint(professor.getId());
+    ListingFingerprint submitted =
+        recommendationRequestRepository.submittedFingerprint(student.getId());
+
+    userRepository.grantAdmin(student.getId());
+    entityManager.clear();
+
+    ListingFingerprint changedInbox =
+        recommendationRequestRepository.inboxFingerprint(professor.getId());
+    assertEquals(inbox.getCount(), changedInbox.getCount());
+    assertEquals(inbox.getLastModified(), changedInbox.getLastModified());
+    assertTrue(changedInbox.getUserVersions() > inbox.getUserVersions());
+    assertTrue(
+        recommendationRequestRepository.submittedFingerprint(student.getId()).getUserVersions()
+            > submitted.getUserVersions());
+  }
+
+  @Test
+  public void updates_raise_the_version_and_stale_copies_are_rejected() {
+    RecommendationRequest stale = entityManager.find(RecommendationRequest.class, ids.get(0));
+    assertEquals(0, stale.getVersion());
+    entityManager.detach(stale);
+
+    RecommendationRequest current = entityManager.find(RecommendationRequest.class, ids.get(0));
+    current.setDetails("changed");
+    entityManager.flush();
+    assertEquals(1, current.getVersion());
+
+    recommendationRequestRepository.updateStatus(
+        professor.getId(), List.of(ids.get(0)), RequestStatus.COMPLETED, null, day(10));
+    assertEquals(2, entityManager.find(RecommendationRequest.class, ids.get(0)).getVersion());
+
+    stale.setDetails("lost update");
+    assertThrows(
+        ObjectOptimisticLockingFailureException.class,
+        () -> recommendationRequestRepository.saveAndFlush(stale));
+  }
+
+  @Test
+  public void delete_rows_are_scoped_and_deletes_check_the_version() {
+    long unassigned =
+        entityManager
+            .persistFlushFind(
+                RecommendationRequest.builder()
+                    .requester(student)
+                    .status(RequestStatus.PENDING)
+                    .build())
+            .getId();
+    long first = ids.get(0);
+
+    RecommendationRequestRepository.DeleteRow row =
+        recommendationRequestRepository.findDeleteRow(first, student.getId(), null).orElseThrow();
+    assertEquals(professor.getId(), row.getProfessorId());
+    assertEquals(0, row.getVersion());
+    assertEquals(day(1), row.getSubmissionDate());
+    assertTrue(
+        recommendationRequestRepository.findDeleteRow(first, null, professor.getId()).isPresent());
+    assertTrue(recommendationRequestRepository.findDeleteRow(first, null, null).isPresent());
+    assertTrue(
+        recommendationRequestRepository.findDeleteRow(first, otherStudent.getId(), null).isEmpty());
+    assertTrue(
+        recommendationRequestRepository.findDeleteRow(first, null, student.getId()).isEmpty());
+    assertNull(
+        recommendationRequestRepository
+            .findDeleteRow(unassigned, student.getId(), null)
+            .orElseThrow()
+            .getProfessorId());
+
+    assertEquals(0, recommendationRequestRepository.deleteByIdAndVersion(first, 1));
+    assertEquals(1, recommendationRequestRepository.deleteByIdAndVersion(first, 0));
+    entityManager.clear();
+    assertNull(entityManager.find(RecommendationRequest.class, first));
+  }
+
+  @Test
+  public void users_are_changed_and_deleted_in_one_statement() {
+    assertEquals(1, userRepository.grantProfessor(student.getId()));
+    assertEquals(0, userRepository.grantProfessor(student.getId()));
+    assertEquals(1, userRepository.grantAdmin(student.getId()));
+    assertEquals(0, userRepository.grantAdmin(student.getId()));
+    assertEquals(0, userRepository.grantAdmin(-1L));
+    entityManager.clear();
+    User changed = entityManager.find(User.class, student.getId());
+    assertTrue(changed.getProfessor());
+    assertTrue(changed.getAdmin());
+    assertEquals(2, changed.getRoleVersion());
+
+    // users may not take admin away from themselves
+    assertEquals(0, userRepository.revokeAdmin(student.getId(), student.getId()));
+    assertEquals(1, userRepository.revokeAdmin(student.getId(), professor.getId()));
+    assertEquals(0, userRepository.revokeAdmin(student.getId(), professor.getId()));
+    assertEquals(1, userRepository.revokeProfessor(student.getId()));
+    assertEquals(0, userRepository.revokeProfessor(student.getId()));
+    entityManager.clear();
+    changed = entityManager.find(User.class, student.getId());
+    assertFalse(changed.getAdmin());
+    assertFalse(changed.getProfessor());
+    assertEquals(4, changed.getRoleVersion());
+
+    long unused =
+        entityManager.persistFlushFind(User.builder().email("x@ucsb.edu").build()).getId();
+    assertEquals(1, userRepository.deleteUserById(unused));
+    assertEquals(0, userRepository.deleteUserById(unused));
+  }
+}
@@ -0,0 +1,127 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.CurrentUser;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = CurrentUserContext.class)
+class CurrentUserContextTests {
+
+  @MockBean UserCache userCache;
+
+  @Autowired CurrentUserContext currentUserContext;
+
+  private void startRequest() {
+    RequestContextHolder.setRequestAttributes(
+        new ServletRequestAttributes(new MockHttpServletRequest()));
+  }
+
+  @AfterEach
+  void resetRequest() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void findByEmail_queries_once_per_request() {
+    User user = User.builder().id(1L).email("cgaucho@ucsb.edu").build();
+    when(userCache.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+
+    startRequest();
+    assertEquals(Optional.of(user), currentUserContext.findByEmail("cgaucho@ucsb.edu"));
+    assertEquals(Optional.of(user), currentUserContext.findByEmail("cgaucho@ucsb.edu"));
+    verify(userCache, times(1)).findByEmail("cgaucho@ucsb.edu");
+
+    startRequest();
+    assertEquals(Optional.of(user), currentUserContext.findByEmail("cgaucho@ucsb.edu"));
+    verify(userCache, times(2)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  void findByEmail_remembers_missing_users() {
+    when(userCache.findByEmail("nobody@ucsb.edu")).thenReturn(Optional.empty());
+
+    startRequest();
+    assertTrue(currentUserContext.findByEmail("nobody@ucsb.edu").isEmpty());
+    assertTrue(currentUserContext.findByEmail("nobody@ucsb.edu").isEmpty());
+    verify(userCache, times(1)).findByEmail("nobody@ucsb.edu");
+  }
+
+  @Test
+  void findByEmail_without_request_always_queries() {
+    User user = User.builder().id(1L).email("cgaucho@ucsb.edu").build();
+    when(userCache.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+
+    assertEquals(Optional.of(user), currentUserContext.findByEmail("cgaucho@ucsb.edu"));
+    assertEquals(Optional.of(user), currentUserContext.findByEmail("cgaucho@ucsb.edu"));
+    verify(userCache, times(2)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  void remember_replaces_lookup_and_current_user() {
+    when(userCache.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.empty());
+    User saved = User.builder().id(1L).email("cgaucho@ucsb.edu").build();
+
+    startRequest();
+    assertTrue(currentUserContext.findByEmail("cgaucho@ucsb.edu").isEmpty());
+    CurrentUser before = currentUserContext.getCurrentUser(() -> new CurrentUser(null, List.of()));
+
+    currentUserContext.remember(saved);
+
+    assertEquals(Optional.of(saved), currentUserContext.findByEmail("cgaucho@ucsb.edu"));
+    CurrentUser after = currentUserContext.getCurrentUser(() -> new CurrentUser(saved, List.of()));
+    assertNotSame(before, after);
+    assertSame(saved, after.getUser());
+    verify(userCache, times(1)).findByEmail("cgaucho@ucsb.edu");
+    verify(userCache, times(1)).put(saved);
+  }
+
+  @Test
+  void remember_without_request_only_updates_user_cache() {
+    User saved = User.builder().id(1L).email("cgaucho@ucsb.edu").build();
+    when(userCache.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.empty());
+
+    currentUserContext.remember(saved);
+
+    assertTrue(currentUserContext.findByEmail("cgaucho@ucsb.edu").isEmpty());
+    verify(userCache, times(1)).put(saved);
+  }
+
+  @Test
+  void getCurrentUser_is_built_once_per_request() {
+    startRequest();
+    CurrentUser first = currentUserContext.getCurrentUser(() -> new CurrentUser(null, List.of()));
+    CurrentUser second = currentUserContext.getCurrentUser(() -> new CurrentUser(null, List.of()));
+    assertSame(first, second);
+
+    startRequest();
+    CurrentUser third = currentUserContext.getCurrentUser(() -> new CurrentUser(null, List.of()));
+    assertNotSame(first, third);
+  }
+
+  @Test
+  void getCurrentUser_without_request_is_built_every_time() {
+    CurrentUser first = currentUserContext.getCurrentUser(() -> new CurrentUser(null, List.of()));
+    CurrentUser second = currentUserContext.getCurrentUser(() -> new CurrentUser(null, List.of()));
+    assertNotSame(first, second);
+  }
+}
@@ -0,0 +1,241 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.ucsb.cs156.rec.entities.JobLock;
+import edu.ucsb.cs156.rec.entities.Notification;
+import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.ReminderMark;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.repositories.JobLockRepository;
+import edu.ucsb.cs156.rec.repositories.NotificationRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.ReminderMarkRepository;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Runs the due date reminders against H2. Each chunk commits its own transaction, so the tests run
+ * outside a transaction and clean up after themselves. Time passing is played by moving every due
+ * date and reminder mark back by the same amount.
+ */
+@DataJpaTest(properties = "spring.mail.host=localhost")
+@ActiveProfiles("test")
+@Import({DueDateReminderService.class, JobLockService.class, UserCache.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class DueDateReminderServiceTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired DueDateReminderService dueDateReminderService;
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired NotificationRepository notificationRepository;
+
+  @Autowired ReminderMarkRepository reminderMarkRepository;
+
+  @Autowired JobLockRepository jobLockRepository;
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  User professor;
+  User student;
+
+  @BeforeEach
+  void setup() {
+    professor =
+        userRepository.save(
+            User.builder().email("prof@ucsb.edu").fullName("Prof A").professor(true).build());
+    student =
+        userRepository.save(User.builder().email("student@ucsb.edu").fullName("Chris G").build());
+    ReflectionTestUtils.setField(dueDateReminderService, "windowDays", List.of(7, 1, 0));
+    ReflectionTestUtils.setField(dueDateReminderService, "chunkSize", 200);
+  }
+
+  @AfterEach
+  void cleanup() {
+    jdbcTemplate.update("DELETE FROM JOBLOCK");
+    jdbcTemplate.update("DELETE FROM REMINDERMARK");
+    jdbcTemplate.update("DELETE FROM NOTIFICATION");
+    jdbcTemplate.update("DELETE FROM RECOMMENDATIONREQUEST");
+    jdbcTemplate.update("DELETE FROM USERS");
+  }
+
+  private long save(User prof, User requester, RequestStatus status, long dueInHours) {
+    return recommendationRequestRepository
+        .save(
+            RecommendationRequest.builder()
+                .professor(prof)
+                .requester(requester)
+                .recommendationType("PhD program")
+                .status(status)
+                .dueDate(LocalDateTime.now().plusHours(dueInHours))
+                .build())
+        .getId();
+  }
+
+  private void hoursPass(long hours) {
+    jdbcTemplate.update(
+        "UPDATE RECOMMENDATIONREQUEST SET DUE_DATE = DATEADD('HOUR', ?, DUE_DATE)", -hours);
+    jdbcTemplate.update("UPDATE REMINDERMARK SET DUE_DATE = DATEADD('HOUR', ?, DUE_DATE)", -hours);
+  }
+
+  /**
+   * Returns the notifications queued so far as "request id: message" in order of request id, and
+   * removes them.
+   */
+  private List<String> reminders() {
+    List<Notification> notifications = new ArrayList<>();
+    notificationRepository.findAll().forEach(notifications::add);
+    notificationRepository.deleteAll();
+    return notifications.stream()
+        .peek(notification -> assertEquals(professor.getId(), notification.getRecipientId()))
+        .sorted(Comparator.comparing(Notification::getRequestId))
+        .map(notification -> notification.getRequestId() + ": " + notification.getMessage())
+        .toList();
+  }
+
+  @Test
+  void each_open_request_is_reminded_once_per_window() {
+    long dueInFiveDays = save(professor, student, RequestStatus.PENDING, 5 * 24);
+    long dueInTwelveHours = save(professor, student, RequestStatus.IN_PROGRESS, 12);
+    save(professor, student, RequestStatus.PENDING, -1);
+    save(professor, student, RequestStatus.COMPLETED, 5 * 24);
+    save(null, student, RequestStatus.PENDING, 5 * 24);
+    save(professor, student, RequestStatus.PENDING, 20 * 24);
+
+    assertEquals(2, dueDateReminderService.sendReminders());
+    assertEquals(
+        List.of(
+            dueInFiveDays
+                + ": Reminder: PhD program request #%d from Chris G is due within 7 days"
+                    .formatted(dueInFiveDays),
+            dueInTwelveHours
+                + ": Reminder: PhD program request #%d from Chris G is due within 1 day"
+                    .formatted(dueInTwelveHours)),
+        reminders());
+    assertEquals(0, dueDateReminderService.sendReminders());
+
+    hoursPass(4 * 24 + 12);
+    assertEquals(2, dueDateReminderService.sendReminders());
+    assertEquals(
+        List.of(
+            dueInFiveDays
+                + ": Reminder: PhD program request #%d from Chris G is due within 1 day"
+                    .formatted(dueInFiveDays),
+            dueInTwelveHours
+                + ": Reminder: PhD program request #%d from Chris G is overdue"
+                    .formatted(dueInTwelveHours)),
+        reminders());
+
+    hoursPass(24);
+    assertEquals(1, dueDateReminderService.sendReminders());
+    assertEquals(
+        List.of(
+            dueInFiveDays
+                + ": Reminder: PhD program request #%d from Chris G is overdue"
+                    .formatted(dueInFiveDays)),
+        reminders());
+    assertEquals(0, dueDateReminderService.sendReminders());
+  }
+
+  @Test
+  void requests_are_read_in_chunks() {
+    ReflectionTestUtils.setField(dueDateReminderService, "chunkSize", 2);
+    LocalDateTime due = LocalDateTime.now().plusDays(3);
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      ids.add(
+          recommendationRequestRepository
+              .save(
+                  RecommendationRequest.builder()
+                      .professor(professor)
+                      .requester(student)
+                      .status(RequestStatus.PENDING)
+                      .dueDate(i < 3 ? due : due.plusHours(i))
+                      .build())
+              .getId());
+    }
+
+    assertEquals(5, dueDateReminderService.sendReminders());
+
+    assertEquals(
+        ids.stream()
+            .map(
+                id ->
+                    id
+                        + ": Reminder: recommendation request #%d from Chris G is due within 7 days"
+                            .formatted(id))
+            .toList(),
+        reminders());
+    ReminderMark mark = reminderMarkRepository.findById(7).get();
+    assertEquals(Long.MAX_VALUE, mark.getRequestId());
+    assertEquals(0, dueDateReminderService.sendReminders());
+  }
+
+  @Test
+  void without_an_overdue_window_overdue_requests_are_left_alone() {
+    ReflectionTestUtils.setField(dueDateReminderService, "windowDays", List.of(1, 7, 1));
+    User nameless = userRepository.save(User.builder().email("nameless@ucsb.edu").build());
+    long dueSoon = save(professor, nameless, RequestStatus.PENDING, 12);
+    long anonymous = save(professor, null, RequestStatus.PENDING, 3 * 24);
+
+    assertEquals(2, dueDateReminderService.sendReminders());
+    assertEquals(
+        List.of(
+            dueSoon
+                + ": Reminder: PhD program request #%d from a student is due within 1 day"
+                    .formatted(dueSoon),
+            anonymous
+                + ": Reminder: PhD program request #%d from a student is due within 7 days"
+                    .formatted(anonymous)),
+        reminders());
+
+    hoursPass(24);
+    assertEquals(0, dueDateReminderService.sendReminders());
+    assertEquals(List.of(), reminders());
+  }
+
+  @Test
+  void the_scheduled_run_only_happens_on_the_instance_holding_the_lease() {
+    long dueSoon = save(professor, student, RequestStatus.PENDING, 12);
+    jobLockRepository.save(
+        JobLock.builder()
+            .name(DueDateReminderService.JOB_NAME)
+            .owner("another instance")
+            .lockedUntil(LocalDateTime.now().plusMinutes(5))
+            .build());
+
+    dueDateReminderService.scheduledReminders();
+    assertEquals(List.of(), reminders());
+
+    jdbcTemplate.update("DELETE FROM JOBLOCK");
+    dueDateReminderService.scheduledReminders();
+    assertEquals(
+        List.of(
+            dueSoon
+                + ": Reminder: PhD program request #%d from Chris G is due within 1 day"
+                    .formatted(dueSoon)),
+        reminders());
+  }
+}
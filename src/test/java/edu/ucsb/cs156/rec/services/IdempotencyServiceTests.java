@@ -0,0 +1,195 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.ucsb.cs156.rec.entities.IdempotencyKey;
+import edu.ucsb.cs156.rec.repositories.IdempotencyKeyRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Stores and replays idempotency keys against H2. Each request commits its own transaction, so the
+ * tests run outside a transaction and clean up after themselves. A concurrent request with the same
+ * key is played by committing the key from another thread while the request is running.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({IdempotencyService.class, JacksonAutoConfiguration.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class IdempotencyServiceTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired IdempotencyService idempotencyService;
+
+  @Autowired IdempotencyKeyRepository idempotencyKeyRepository;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  /** A response as a request would make it. */
+  public record Created(long id, String name) {}
+
+  private final AtomicInteger runs = new AtomicInteger();
+
+  @AfterEach
+  void cleanup() {
+    jdbcTemplate.update("DELETE FROM IDEMPOTENCYKEY");
+  }
+
+  /** An action that counts its runs, and returns a new response each time. */
+  private Supplier<Created> create(String name) {
+    return () -> new Created(runs.incrementAndGet(), name);
+  }
+
+  private Created post(long userId, String key, String name) {
+    return idempotencyService.execute(
+        userId, "create", key, List.of(name), Created.class, create(name));
+  }
+
+  @Test
+  void without_a_key_every_request_is_run() {
+    assertEquals(new Created(1, "a"), post(1, null, "a"));
+    assertEquals(new Created(2, "a"), post(1, null, "a"));
+
+    assertEquals(0, idempotencyKeyRepository.count());
+  }
+
+  @Test
+  void a_retry_with_the_same_key_gets_the_first_response() {
+    assertEquals(new Created(1, "a"), post(1, "key", "a"));
+    assertEquals(new Created(1, "a"), post(1, "key", "a"));
+    assertEquals(1, runs.get());
+
+    IdempotencyKey stored = idempotencyKeyRepository.findAll().iterator().next();
+    assertEquals("{\"id\":1,\"name\":\"a\"}", stored.getResponseBody());
+    assertTrue(stored.getExpiresDate().isAfter(LocalDateTime.now().plusHours(23)));
+
+    // keys belong to one user and one endpoint
+    assertEquals(new Created(2, "a"), post(2, "key", "a"));
+    assertEquals(
+        new Created(3, "a"),
+        idempotencyService.execute(1, "other", "key", List.of("a"), Created.class, create("a")));
+  }
+
+  @Test
+  void a_key_used_for_a_different_request_is_refused() {
+    post(1, "key", "a");
+
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class, () -> post(1, "key", "b"));
+
+    assertEquals("Idempotency-Key key was already used for a different request", e.getMessage());
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  void keys_that_are_blank_or_too_long_are_refused() {
+    assertThrows(IllegalArgumentException.class, () -> post(1, "", "a"));
+    assertThrows(IllegalArgumentException.class, () -> post(1, "k".repeat(256), "a"));
+    assertEquals(new Created(1, "a"), post(1, "k".repeat(255), "a"));
+  }
+
+  @Test
+  void a_request_that_fails_can_be_retried_with_the_same_key() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            idempotencyService.execute(
+                1,
+                "create",
+                "key",
+                List.of("a"),
+                Created.class,
+                () -> {
+                  throw new IllegalStateException("failed");
+                }));
+
+    assertEquals(0, idempotencyKeyRepository.count());
+    assertEquals(new Created(1, "a"), post(1, "key", "a"));
+  }
+
+  @Test
+  void an_expired_key_runs_the_request_again_and_is_purged() {
+    post(1, "key", "a");
+    post(1, "other key", "a");
+    jdbcTemplate.update(
+        "UPDATE IDEMPOTENCYKEY SET EXPIRES_DATE = DATEADD('HOUR', -25, EXPIRES_DATE)");
+
+    assertEquals(new Created(3, "b"), post(1, "key", "b"));
+
+    idempotencyService.scheduledPurge();
+    assertEquals(1, idempotencyKeyRepository.count());
+    assertEquals(new Created(3, "b"), post(1, "key", "b"));
+    assertEquals(0, idempotencyService.purgeExpired());
+  }
+
+  @Test
+  void a_concurrent_request_with_the_same_key_gets_the_response_that_committed_first() {
+    Created response =
+        idempotencyService.execute(
+            1,
+            "create",
+            "key",
+            List.of("a"),
+            Created.class,
+            () -> {
+              // the other request commits its key while this one is still running
+              Created first = CompletableFuture.supplyAsync(() -> post(1, "key", "a")).join();
+              assertEquals(new Created(1, "a"), first);
+              return new Created(99, "a");
+            });
+
+    assertEquals(new Created(1, "a"), response);
+    assertEquals(1, idempotencyKeyRepository.count());
+  }
+
+  @Test
+  void other_constraint_violations_are_passed_on() {
+    DataIntegrityViolationException violation = new DataIntegrityViolationException("too long");
+
+    DataIntegrityViolationException e =
+        assertThrows(
+            DataIntegrityViolationException.class,
+            () ->
+                idempotencyService.execute(
+                    1,
+                    "create",
+                    "key",
+                    List.of("a"),
+                    Created.class,
+                    () -> {
+                      throw violation;
+                    }));
+
+    assertSame(violation, e);
+  }
+
+  @Test
+  void a_stored_response_that_cannot_be_read_is_an_error() {
+    post(1, "key", "a");
+    jdbcTemplate.update("UPDATE IDEMPOTENCYKEY SET RESPONSE_BODY = 'not json'");
+
+    IllegalStateException e = assertThrows(IllegalStateException.class, () -> post(1, "key", "a"));
+
+    assertEquals("stored response for Idempotency-Key key could not be read", e.getMessage());
+  }
+}
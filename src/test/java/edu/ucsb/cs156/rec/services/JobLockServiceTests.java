@@ -0,0 +1,121 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.ucsb.cs156.rec.entities.JobLock;
+import edu.ucsb.cs156.rec.repositories.JobLockRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Takes and releases job leases against H2. Another instance of the application is played by
+ * writing a lease under a different owner straight into the joblock table.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import(JobLockService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class JobLockServiceTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired JobLockService jobLockService;
+
+  @Autowired JobLockRepository jobLockRepository;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  @AfterEach
+  void cleanup() {
+    jdbcTemplate.update("DELETE FROM JOBLOCK");
+  }
+
+  private void heldByAnotherInstance(LocalDateTime until) {
+    jobLockRepository.save(JobLock.builder().name("job").owner("other").lockedUntil(until).build());
+  }
+
+  private JobLock lease() {
+    return jobLockRepository.findById("job").get();
+  }
+
+  @Test
+  void a_job_is_run_while_holding_its_lease() {
+    AtomicInteger runs = new AtomicInteger();
+
+    assertTrue(
+        jobLockService.runLocked(
+            "job",
+            Duration.ofMinutes(5),
+            () -> {
+              assertEquals(jobLockService.getOwner(), lease().getOwner());
+              assertTrue(lease().getLockedUntil().isAfter(LocalDateTime.now().plusMinutes(4)));
+              runs.incrementAndGet();
+            }));
+
+    assertEquals(1, runs.get());
+    assertFalse(lease().getLockedUntil().isAfter(LocalDateTime.now()));
+    assertTrue(jobLockService.runLocked("job", Duration.ofMinutes(5), runs::incrementAndGet));
+    assertEquals(2, runs.get());
+  }
+
+  @Test
+  void a_job_held_by_another_instance_is_not_run() {
+    heldByAnotherInstance(LocalDateTime.now().plusMinutes(5));
+    AtomicInteger runs = new AtomicInteger();
+
+    assertFalse(jobLockService.runLocked("job", Duration.ofMinutes(5), runs::incrementAndGet));
+
+    assertEquals(0, runs.get());
+    assertEquals("other", lease().getOwner());
+
+    jobLockService.unlock("job");
+    assertTrue(lease().getLockedUntil().isAfter(LocalDateTime.now()));
+  }
+
+  @Test
+  void a_lease_that_has_run_out_is_taken_over() {
+    heldByAnotherInstance(LocalDateTime.now().minusSeconds(1));
+
+    assertTrue(jobLockService.tryLock("job", Duration.ofMinutes(5)));
+
+    assertEquals(jobLockService.getOwner(), lease().getOwner());
+  }
+
+  @Test
+  void the_owner_can_renew_its_lease() {
+    assertTrue(jobLockService.tryLock("job", Duration.ofMinutes(1)));
+    assertTrue(jobLockService.tryLock("job", Duration.ofMinutes(10)));
+
+    assertTrue(lease().getLockedUntil().isAfter(LocalDateTime.now().plusMinutes(9)));
+  }
+
+  @Test
+  void the_lease_is_released_when_the_job_fails() {
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            jobLockService.runLocked(
+                "job",
+                Duration.ofMinutes(5),
+                () -> {
+                  throw new IllegalStateException("job failed");
+                }));
+
+    assertFalse(lease().getLockedUntil().isAfter(LocalDateTime.now()));
+  }
+}
@@ -0,0 +1,351 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import edu.ucsb.cs156.rec.entities.JobLock;
+import edu.ucsb.cs156.rec.entities.Notification;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.repositories.JobLockRepository;
+import edu.ucsb.cs156.rec.repositories.NotificationRepository;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.internet.MimeMessage;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.mail.MailSenderAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Sends digests to GreenMail, an SMTP server embedded in the test, and reads them back from it. The
+ * digests are sent and the notifications deleted on the worker threads, so the tests run outside a
+ * transaction and clean up after themselves.
+ */
+@DataJpaTest(
+    properties = {
+      "spring.mail.host=localhost",
+      "spring.mail.port=3025",
+      "app.notifications.from=rec@ucsb.edu",
+      "app.notifications.workers=1",
+      "app.notifications.maxAttempts=3",
+      "app.notifications.backoffMillis=1"
+    })
+@ActiveProfiles("test")
+@ImportAutoConfiguration(MailSenderAutoConfiguration.class)
+@Import({
+  NotificationDigestService.class,
+  JobLockService.class,
+  UserCache.class,
+  NotificationDigestServiceTests.Config.class
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class NotificationDigestServiceTests {
+
+  @RegisterExtension
+  static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+  @TestConfiguration
+  static class Config {
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
+  @MockBean WiremockService wiremockService;
+
+  @SpyBean JavaMailSender mailSender;
+
+  @Autowired NotificationDigestService notificationDigestService;
+
+  @Autowired NotificationRepository notificationRepository;
+
+  @Autowired JobLockRepository jobLockRepository;
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired MeterRegistry meterRegistry;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  User professor;
+  User student;
+
+  @BeforeEach
+  void setup() {
+    professor =
+        userRepository.save(
+            User.builder().email("prof@ucsb.edu").fullName("Prof A").professor(true).build());
+    student = userRepository.save(User.builder().email("student@ucsb.edu").build());
+  }
+
+  @AfterEach
+  void cleanup() throws Exception {
+    // a test may return while a worker is still deleting notifications or finishing a digest
+    assertTrue(notificationDigestService.awaitWorkers());
+    jdbcTemplate.update("DELETE FROM JOBLOCK");
+    jdbcTemplate.update("DELETE FROM NOTIFICATION");
+    jdbcTemplate.update("DELETE FROM USERS");
+  }
+
+  private void queue(User recipient, String message) {
+    notificationRepository.save(
+        Notification.builder()
+            .recipientId(recipient.getId())
+            .requestId(1L)
+            .message(message)
+            .createdDate(LocalDateTime.now())
+            .build());
+  }
+
+  private static List<Boolean> results(List<Future<Boolean>> digests) throws Exception {
+    List<Boolean> results = new ArrayList<>();
+    for (Future<Boolean> digest : digests) {
+      results.add(digest.get());
+    }
+    return results;
+  }
+
+  private boolean leaseHeld() {
+    return jobLockRepository
+        .findById(NotificationDigestService.JOB_NAME)
+        .map(lock -> lock.getLockedUntil().isAfter(LocalDateTime.now()))
+        .orElse(false);
+  }
+
+  private double count(String outcome) {
+    return meterRegistry.counter(NotificationDigestService.DIGESTS, "outcome", outcome).count();
+  }
+
+  @Test
+  void each_user_gets_one_email_with_all_their_notifications() throws Exception {
+    double sent = count("sent");
+    queue(professor, "New PhD program request #1 from Chris G");
+    queue(student, "Your PhD program request #1 is now IN PROGRESS");
+    queue(professor, "New Other request #2 from a student");
+
+    assertEquals(List.of(true, true), results(notificationDigestService.sendDigests()));
+
+    MimeMessage[] messages = greenMail.getReceivedMessages();
+    assertEquals(2, messages.length);
+    assertEquals("prof@ucsb.edu", messages[0].getAllRecipients()[0].toString());
+    assertEquals("rec@ucsb.edu", messages[0].getFrom()[0].toString());
+    assertEquals("Recommendation requests: 2 updates", messages[0].getSubject());
+    assertEquals(
+        "Hello Prof A,\r\n\r\nHere is what has happened to your recommendation requests:\r\n\r\n"
+            + "- New PhD program request #1 from Chris G\r\n"
+            + "- New Other request #2 from a student",
+        GreenMailUtil.getBody(messages[0]).strip());
+    assertEquals("student@ucsb.edu", messages[1].getAllRecipients()[0].toString());
+    assertEquals("Recommendation requests: 1 update", messages[1].getSubject());
+    assertTrue(GreenMailUtil.getBody(messages[1]).startsWith("Hello student@ucsb.edu,"));
+    assertEquals(0, notificationRepository.count());
+    assertEquals(sent + 2, count("sent"));
+
+    assertEquals(List.of(), notificationDigestService.sendDigests());
+  }
+
+  @Test
+  void a_failed_send_is_tried_again() throws Exception {
+    doThrow(new MailSendException("mail server is down"))
+        .doCallRealMethod()
+        .when(mailSender)
+        .send(any(SimpleMailMessage.class));
+    queue(professor, "New PhD program request #1 from Chris G");
+
+    assertEquals(List.of(true), results(notificationDigestService.sendDigests()));
+
+    verify(mailSender, times(2)).send(any(SimpleMailMessage.class));
+    assertEquals(1, greenMail.getReceivedMessages().length);
+    assertEquals(0, notificationRepository.count());
+  }
+
+  @Test
+  void a_digest_that_keeps_failing_waits_for_the_next_run() throws Exception {
+    double failed = count("failed");
+    doThrow(new MailSendException("mail server is down"))
+        .when(mailSender)
+        .send(any(SimpleMailMessage.class));
+    queue(professor, "New PhD program request #1 from Chris G");
+
+    assertEquals(List.of(false), results(notificationDigestService.sendDigests()));
+
+    verify(mailSender, times(3)).send(any(SimpleMailMessage.class));
+    assertEquals(1, notificationRepository.count());
+    assertEquals(failed + 1, count("failed"));
+
+    doCallRealMethod().when(mailSender).send(any(SimpleMailMessage.class));
+    assertEquals(List.of(true), results(notificationDigestService.sendDigests()));
+    assertEquals(1, greenMail.getReceivedMessages().length);
+  }
+
+  @Test
+  void notifications_for_a_user_who_is_gone_are_dropped() throws Exception {
+    notificationRepository.save(
+        Notification.builder()
+            .recipientId(-1L)
+            .requestId(1L)
+            .message("New PhD program request #1 from Chris G")
+            .createdDate(LocalDateTime.now())
+            .build());
+
+    assertEquals(List.of(false), results(notificationDigestService.sendDigests()));
+
+    assertEquals(0, notificationRepository.count());
+    assertEquals(0, greenMail.getReceivedMessages().length);
+  }
+
+  @Test
+  void a_user_whose_digest_is_still_being_sent_is_skipped() throws Exception {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              sending.countDown();
+              release.await();
+              return invocation.callRealMethod();
+            })
+        .when(mailSender)
+        .send(any(SimpleMailMessage.class));
+    queue(professor, "New PhD program request #1 from Chris G");
+
+    List<Future<Boolean>> first = notificationDigestService.sendDigests();
+    sending.await();
+    List<Future<Boolean>> second = notificationDigestService.sendDigests();
+    release.countDown();
+
+    assertEquals(List.of(true), results(first));
+    assertEquals(List.of(), second);
+    assertEquals(1, greenMail.getReceivedMessages().length);
+  }
+
+  @Test
+  void when_the_queue_is_full_the_rest_wait_for_the_next_run() throws Exception {
+    // a pool that has been shut down turns every digest away, as a full queue does
+    notificationDigestService.stopWorkers();
+    try {
+      queue(professor, "New PhD program request #1 from Chris G");
+      queue(student, "Your PhD program request #1 is now IN PROGRESS");
+
+      assertEquals(List.of(), notificationDigestService.sendDigests());
+      assertEquals(2, notificationRepository.count());
+    } finally {
+      notificationDigestService.startWorkers();
+    }
+
+    notificationDigestService.scheduledDigests();
+    assertTrue(greenMail.waitForIncomingEmail(5000, 2));
+  }
+
+  @Test
+  void the_scheduled_run_only_happens_on_the_instance_holding_the_lease() {
+    queue(professor, "New PhD program request #1 from Chris G");
+    jobLockRepository.save(
+        JobLock.builder()
+            .name(NotificationDigestService.JOB_NAME)
+            .owner("another instance")
+            .lockedUntil(LocalDateTime.now().plusMinutes(5))
+            .build());
+
+    notificationDigestService.scheduledDigests();
+    assertEquals(0, greenMail.getReceivedMessages().length);
+    assertEquals(1, notificationRepository.count());
+
+    jdbcTemplate.update("DELETE FROM JOBLOCK");
+    notificationDigestService.scheduledDigests();
+
+    // the run waits for the digests to be sent before it gives up the lease
+    assertEquals(1, greenMail.getReceivedMessages().length);
+    assertEquals(0, notificationRepository.count());
+    assertFalse(leaseHeld());
+  }
+
+  @Test
+  void a_digest_that_throws_does_not_stop_the_scheduled_run() {
+    doThrow(new IllegalStateException("cannot build the message"))
+        .doCallRealMethod()
+        .when(mailSender)
+        .send(any(SimpleMailMessage.class));
+    queue(professor, "New PhD program request #1 from Chris G");
+    queue(student, "Your PhD program request #1 is now IN PROGRESS");
+
+    notificationDigestService.scheduledDigests();
+
+    // the other digest is still sent, and the notification that was not is kept
+    assertEquals(1, greenMail.getReceivedMessages().length);
+    assertEquals(1, notificationRepository.count());
+    assertFalse(leaseHeld());
+  }
+
+  @Test
+  void an_interrupted_scheduled_run_keeps_the_lease_until_the_digest_being_sent_is_done()
+      throws Exception {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              sending.countDown();
+              release.await();
+              return invocation.callRealMethod();
+            })
+        .when(mailSender)
+        .send(any(SimpleMailMessage.class));
+    queue(professor, "New PhD program request #1 from Chris G");
+    // with one worker, this digest waits in the queue behind the professor's
+    queue(student, "Your PhD program request #1 is now IN PROGRESS");
+
+    Thread run = new Thread(notificationDigestService::scheduledDigests);
+    run.start();
+    sending.await();
+    run.interrupt();
+    run.join(200);
+
+    // still waiting for the digest being sent, so no other instance can send it again
+    assertTrue(run.isAlive());
+    assertTrue(leaseHeld());
+
+    release.countDown();
+    run.join(5000);
+
+    assertFalse(run.isAlive());
+    assertFalse(leaseHeld());
+    // the queued digest was cancelled, and is sent on the next run
+    assertEquals(1, greenMail.getReceivedMessages().length);
+    assertEquals(1, notificationRepository.count());
+    assertEquals(List.of(true), results(notificationDigestService.sendDigests()));
+    assertEquals(2, greenMail.getReceivedMessages().length);
+  }
+}
@@ -0,0 +1,190 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import edu.ucsb.cs156.rec.entities.Notification;
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.models.RequestSnapshot;
+import edu.ucsb.cs156.rec.repositories.NotificationRepository;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/** Checks which changes to requests become notifications, and for whom, against H2. */
+@DataJpaTest(properties = "spring.mail.host=localhost")
+@ActiveProfiles("test")
+@Import({NotificationService.class, UserCache.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class NotificationServiceTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired NotificationService notificationService;
+
+  @Autowired NotificationRepository notificationRepository;
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  User professor;
+  User student;
+
+  @BeforeEach
+  void setup() {
+    professor =
+        userRepository.save(
+            User.builder().email("prof@ucsb.edu").fullName("Prof A").professor(true).build());
+    student =
+        userRepository.save(User.builder().email("student@ucsb.edu").fullName("Chris G").build());
+  }
+
+  @AfterEach
+  void cleanup() {
+    jdbcTemplate.update("DELETE FROM NOTIFICATION");
+    jdbcTemplate.update("DELETE FROM USERS");
+  }
+
+  private RequestSnapshot snapshot(
+      Long requesterId, Long professorId, String type, RequestStatus status) {
+    return RequestSnapshot.builder()
+        .requesterId(requesterId)
+        .professorId(professorId)
+        .recommendationType(type)
+        .status(status)
+        .build();
+  }
+
+  private List<Notification> accept(RequestEvent... events) {
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            transaction -> {
+              for (RequestEvent event : events) {
+                notificationService.accept(event);
+              }
+            });
+    List<Notification> notifications = new ArrayList<>();
+    notificationRepository.findAll().forEach(notifications::add);
+    return notifications;
+  }
+
+  @Test
+  void a_new_request_is_reported_to_its_professor() {
+    List<Notification> notifications =
+        accept(
+            RequestEvent.builder()
+                .requestId(12L)
+                .type(OutboxEvent.Type.CREATED)
+                .after(
+                    snapshot(
+                        student.getId(), professor.getId(), "PhD program", RequestStatus.PENDING))
+                .build());
+
+    assertEquals(1, notifications.size());
+    assertEquals(professor.getId(), notifications.get(0).getRecipientId());
+    assertEquals(12L, notifications.get(0).getRequestId());
+    assertEquals("New PhD program request #12 from Chris G", notifications.get(0).getMessage());
+  }
+
+  @Test
+  void a_request_from_an_unknown_student_is_still_reported() {
+    List<Notification> notifications =
+        accept(
+            RequestEvent.builder()
+                .requestId(12L)
+                .type(OutboxEvent.Type.CREATED)
+                .after(snapshot(null, professor.getId(), null, RequestStatus.PENDING))
+                .build(),
+            RequestEvent.builder()
+                .requestId(13L)
+                .type(OutboxEvent.Type.CREATED)
+                .after(snapshot(-1L, professor.getId(), "Other", RequestStatus.PENDING))
+                .build());
+
+    assertEquals(
+        List.of(
+            "New recommendation request #12 from a student",
+            "New Other request #13 from a student"),
+        notifications.stream().map(Notification::getMessage).toList());
+  }
+
+  @Test
+  void a_status_change_is_reported_to_the_student() {
+    List<Notification> notifications =
+        accept(
+            RequestEvent.builder()
+                .requestId(12L)
+                .type(OutboxEvent.Type.STATUS_CHANGED)
+                .before(
+                    snapshot(
+                        student.getId(), professor.getId(), "PhD program", RequestStatus.PENDING))
+                .after(
+                    snapshot(
+                        student.getId(),
+                        professor.getId(),
+                        "PhD program",
+                        RequestStatus.IN_PROGRESS))
+                .build());
+
+    assertEquals(1, notifications.size());
+    assertEquals(student.getId(), notifications.get(0).getRecipientId());
+    assertEquals(
+        "Your PhD program request #12 is now IN PROGRESS", notifications.get(0).getMessage());
+  }
+
+  @Test
+  void nobody_is_told_when_there_is_nobody_to_tell() {
+    List<Notification> notifications =
+        accept(
+            RequestEvent.builder()
+                .requestId(12L)
+                .type(OutboxEvent.Type.CREATED)
+                .after(snapshot(student.getId(), null, "PhD program", RequestStatus.PENDING))
+                .build(),
+            RequestEvent.builder()
+                .requestId(13L)
+                .type(OutboxEvent.Type.STATUS_CHANGED)
+                .after(snapshot(null, professor.getId(), "PhD program", RequestStatus.DENIED))
+                .build(),
+            RequestEvent.builder()
+                .requestId(14L)
+                .type(OutboxEvent.Type.DELETED)
+                .before(
+                    snapshot(
+                        student.getId(), professor.getId(), "PhD program", RequestStatus.PENDING))
+                .build());
+
+    assertEquals(List.of(), notifications);
+    assertEquals(NotificationService.CONSUMER_NAME, notificationService.getConsumerName());
+  }
+
+  @Test
+  void events_are_only_accepted_in_a_transaction() {
+    assertThrows(
+        IllegalTransactionStateException.class,
+        () ->
+            notificationService.accept(
+                RequestEvent.builder().requestId(1L).type(OutboxEvent.Type.DELETED).build()));
+  }
+}
@@ -0,0 +1,461 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
+import edu.ucsb.cs156.rec.entities.OutboxFailure;
+import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.models.RequestSnapshot;
+import edu.ucsb.cs156.rec.repositories.OutboxDeliveryRepository;
+import edu.ucsb.cs156.rec.repositories.OutboxEventRepository;
+import edu.ucsb.cs156.rec.repositories.OutboxFailureRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs the outbox against H2, with the statistics service and a recording consumer as the
+ * consumers. Every delivery commits its own transaction, so the tests run outside a transaction and
+ * clean up after themselves.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({
+  OutboxDispatcher.class,
+  RequestEventPublisher.class,
+  RequestStatisticsService.class,
+  UserCache.class,
+  OutboxDispatcherTests.Config.class
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class OutboxDispatcherTests {
+
+  /** A consumer that remembers what it was given, and fails for the requests in failFor. */
+  static class RecordingConsumer implements RequestEventConsumer {
+    final List<RequestEvent> events = new ArrayList<>();
+    final Set<Long> failFor = new HashSet<>();
+
+    @Override
+    public String getConsumerName() {
+      return "recording";
+    }
+
+    @Override
+    public void accept(RequestEvent event) {
+      if (failFor.contains(event.getRequestId())) {
+        throw new IllegalStateException("failing on purpose");
+      }
+      events.add(event);
+    }
+  }
+
+  @TestConfiguration
+  static class Config {
+    @Bean
+    RecordingConsumer recordingConsumer() {
+      return new RecordingConsumer();
+    }
+
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+  }
+
+  @MockBean WiremockService wiremockService;
+
+  @SpyBean OutboxDeliveryRepository outboxDeliveryRepository;
+
+  @SpyBean OutboxFailureRepository outboxFailureRepository;
+
+  @Autowired OutboxDispatcher outboxDispatcher;
+
+  @Autowired RequestEventPublisher requestEventPublisher;
+
+  @Autowired RequestStatisticsService requestStatisticsService;
+
+  @Autowired RecordingConsumer recordingConsumer;
+
+  @Autowired OutboxEventRepository outboxEventRepository;
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired MeterRegistry meterRegistry;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  @BeforeEach
+  void setup() {
+    recordingConsumer.events.clear();
+    recordingConsumer.failFor.clear();
+    ReflectionTestUtils.setField(outboxDispatcher, "batchSize", 100);
+    ReflectionTestUtils.setField(outboxDispatcher, "maxAttempts", 10);
+    // a failed event may be tried again straight away, unless a test says otherwise
+    ReflectionTestUtils.setField(outboxDispatcher, "backoffMillis", 0L);
+  }
+
+  @AfterEach
+  void cleanup() {
+    jdbcTemplate.update("DELETE FROM OUTBOXEVENT");
+    jdbcTemplate.update("DELETE FROM REQUESTSTATISTIC");
+    jdbcTemplate.update("DELETE FROM RECOMMENDATIONREQUEST");
+    jdbcTemplate.update("DELETE FROM USERS");
+  }
+
+  private static RequestSnapshot snapshot(Long professorId, RequestStatus status) {
+    return RequestSnapshot.builder()
+        .requesterId(3L)
+        .professorId(professorId)
+        .recommendationType("PhD program")
+        .status(status)
+        .submissionDate(LocalDateTime.parse("2024-01-01T10:00:00"))
+        .build();
+  }
+
+  private static RequestEvent event(
+      long requestId, OutboxEvent.Type type, RequestSnapshot before, RequestSnapshot after) {
+    return RequestEvent.builder()
+        .requestId(requestId)
+        .type(type)
+        .before(before)
+        .after(after)
+        .build();
+  }
+
+  private void publish(RequestEvent... events) {
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(transaction -> requestEventPublisher.publishAll(List.of(events)));
+  }
+
+  /** Saves an event that no consumer can read. */
+  private OutboxEvent saveUnreadable(long requestId) {
+    return outboxEventRepository.save(
+        OutboxEvent.builder()
+            .requestId(requestId)
+            .eventType(OutboxEvent.Type.CREATED)
+            .payload("not json")
+            .createdDate(LocalDateTime.now())
+            .build());
+  }
+
+  private OutboxFailure failure(String consumer, OutboxEvent event) {
+    return outboxFailureRepository
+        .findById(new OutboxFailure.Key(consumer, event.getId()))
+        .orElseThrow();
+  }
+
+  private double count(String consumer, String outcome) {
+    return meterRegistry
+        .counter(OutboxDispatcher.DELIVERIES, "consumer", consumer, "outcome", outcome)
+        .count();
+  }
+
+  private double gauge(String name, String consumer) {
+    return meterRegistry.get(name).tag("consumer", consumer).gauge().value();
+  }
+
+  private long statisticsTotal() {
+    return requestStatisticsService.forAll().getTotal();
+  }
+
+  @Test
+  void events_go_to_every_consumer_in_order_and_are_then_deleted() {
+    double delivered = count("recording", "delivered");
+    publish(
+        event(1L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)),
+        event(
+            1L,
+            OutboxEvent.Type.STATUS_CHANGED,
+            snapshot(7L, RequestStatus.PENDING),
+            snapshot(7L, RequestStatus.IN_PROGRESS)),
+        event(2L, OutboxEvent.Type.CREATED, null, snapshot(null, RequestStatus.PENDING)));
+
+    assertEquals(6, outboxDispatcher.dispatch());
+
+    List<RequestEvent> events = recordingConsumer.events;
+    assertEquals(3, events.size());
+    assertTrue(events.get(0).getId() < events.get(1).getId());
+    assertEquals(OutboxEvent.Type.CREATED, events.get(0).getType());
+    assertNull(events.get(0).getBefore());
+    assertEquals(snapshot(7L, RequestStatus.PENDING), events.get(0).getAfter());
+    assertEquals(OutboxEvent.Type.STATUS_CHANGED, events.get(1).getType());
+    assertEquals(snapshot(7L, RequestStatus.IN_PROGRESS), events.get(1).getAfter());
+    assertTrue(events.get(1).getCreatedDate() != null);
+    assertEquals(2L, events.get(2).getRequestId());
+
+    // the request without a professor is not counted
+    assertEquals(1, statisticsTotal());
+    assertEquals(1L, requestStatisticsService.forAll().getByStatus().get("IN PROGRESS"));
+    assertEquals(0, outboxEventRepository.count());
+    assertEquals(delivered + 3, count("recording", "delivered"));
+    assertEquals(0, gauge(OutboxDispatcher.PENDING, "recording"));
+    assertEquals(0, gauge(OutboxDispatcher.LAG, "statistics"));
+
+    outboxDispatcher.scheduledDispatch();
+    assertEquals(3, recordingConsumer.events.size());
+  }
+
+  @Test
+  void a_failing_event_holds_back_only_its_own_request() {
+    double failed = count("recording", "failed");
+    publish(
+        event(1L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)),
+        event(2L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)),
+        event(1L, OutboxEvent.Type.DELETED, snapshot(7L, RequestStatus.PENDING), null));
+    recordingConsumer.failFor.add(1L);
+
+    assertEquals(4, outboxDispatcher.dispatch());
+
+    assertEquals(1, recordingConsumer.events.size());
+    assertEquals(2L, recordingConsumer.events.get(0).getRequestId());
+    assertEquals(failed + 1, count("recording", "failed"));
+    assertEquals(2, gauge(OutboxDispatcher.PENDING, "recording"));
+    assertTrue(gauge(OutboxDispatcher.LAG, "recording") >= 0);
+    // the statistics service is not held back by another consumer
+    assertEquals(0, gauge(OutboxDispatcher.PENDING, "statistics"));
+    assertEquals(1, statisticsTotal());
+    assertEquals(2, outboxEventRepository.count());
+
+    recordingConsumer.failFor.clear();
+    assertEquals(2, outboxDispatcher.dispatch());
+
+    assertEquals(
+        List.of(OutboxEvent.Type.CREATED, OutboxEvent.Type.DELETED),
+        recordingConsumer.events.subList(1, 3).stream().map(RequestEvent::getType).toList());
+    assertEquals(1, statisticsTotal());
+    assertEquals(0, outboxEventRepository.count());
+  }
+
+  @Test
+  void the_outbox_is_drained_in_batches() {
+    ReflectionTestUtils.setField(outboxDispatcher, "batchSize", 2);
+    for (long id = 1; id <= 5; id++) {
+      publish(event(id, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)));
+    }
+
+    assertEquals(10, outboxDispatcher.dispatch());
+
+    assertEquals(
+        List.of(1L, 2L, 3L, 4L, 5L),
+        recordingConsumer.events.stream().map(RequestEvent::getRequestId).toList());
+    assertEquals(5, statisticsTotal());
+  }
+
+  @Test
+  void an_event_that_keeps_failing_is_given_up_on_and_holds_back_its_request() {
+    ReflectionTestUtils.setField(outboxDispatcher, "batchSize", 1);
+    ReflectionTestUtils.setField(outboxDispatcher, "maxAttempts", 3);
+    OutboxEvent unreadable = saveUnreadable(1L);
+    publish(event(1L, OutboxEvent.Type.DELETED, snapshot(7L, RequestStatus.PENDING), null));
+    double failed = count("statistics", "failed");
+    double deadLettered = count("statistics", "deadLettered");
+
+    // tried once a run, as the rest of the batch is held back behind it
+    assertEquals(0, outboxDispatcher.dispatch());
+    assertEquals(0, outboxDispatcher.dispatch());
+    assertEquals(0, outboxDispatcher.dispatch());
+
+    assertEquals(failed + 2, count("statistics", "failed"));
+    assertEquals(deadLettered + 1, count("statistics", "deadLettered"));
+    OutboxFailure failure = failure("statistics", unreadable);
+    assertEquals(3, failure.getAttempts());
+    assertNull(failure.getNextAttemptDate());
+    assertNotNull(failure.getDeadLetteredDate());
+    assertTrue(failure.getLastError().contains("cannot be read"), failure.getLastError());
+
+    // not tried again, and the later event for the request stays behind it
+    assertEquals(0, outboxDispatcher.dispatch());
+
+    assertEquals(failed + 2, count("statistics", "failed"));
+    assertEquals(deadLettered + 1, count("statistics", "deadLettered"));
+    assertEquals(1, gauge(OutboxDispatcher.PENDING, "statistics"));
+    assertEquals(1, gauge(OutboxDispatcher.DEAD_LETTERED, "statistics"));
+    assertEquals(2, outboxEventRepository.count());
+    assertEquals(0, statisticsTotal());
+
+    // once the failure is deleted it is tried again
+    outboxFailureRepository.delete(failure);
+    assertEquals(0, outboxDispatcher.dispatch());
+
+    assertEquals(failed + 3, count("statistics", "failed"));
+    assertEquals(0, gauge(OutboxDispatcher.DEAD_LETTERED, "statistics"));
+  }
+
+  @Test
+  void a_failed_event_waits_for_its_backoff_without_holding_up_other_requests() {
+    ReflectionTestUtils.setField(outboxDispatcher, "batchSize", 1);
+    ReflectionTestUtils.setField(outboxDispatcher, "backoffMillis", 60_000L);
+    OutboxEvent unreadable = saveUnreadable(1L);
+    publish(
+        event(1L, OutboxEvent.Type.DELETED, snapshot(7L, RequestStatus.PENDING), null),
+        event(2L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)),
+        event(3L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)));
+    double failed = count("recording", "failed");
+
+    // the unreadable event at the head of the outbox does not stop the batches behind it
+    assertEquals(4, outboxDispatcher.dispatch());
+
+    assertEquals(
+        List.of(2L, 3L),
+        recordingConsumer.events.stream().map(RequestEvent::getRequestId).toList());
+    assertEquals(failed + 1, count("recording", "failed"));
+    OutboxFailure failure = failure("recording", unreadable);
+    assertEquals(1, failure.getAttempts());
+    assertTrue(failure.getNextAttemptDate().isAfter(LocalDateTime.now().plusSeconds(50)));
+    assertEquals(2, statisticsTotal());
+
+    // nor is it tried again before its backoff has passed
+    assertEquals(0, outboxDispatcher.dispatch());
+
+    assertEquals(failed + 1, count("recording", "failed"));
+    assertEquals(2, gauge(OutboxDispatcher.PENDING, "recording"));
+    assertEquals(0, gauge(OutboxDispatcher.DEAD_LETTERED, "recording"));
+  }
+
+  @Test
+  void a_failure_that_cannot_be_recorded_is_tried_again() {
+    doThrow(new DataIntegrityViolationException("duplicate key"))
+        .when(outboxFailureRepository)
+        .save(any());
+    recordingConsumer.failFor.add(1L);
+    publish(event(1L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)));
+    double failed = count("recording", "failed");
+
+    assertEquals(1, outboxDispatcher.dispatch());
+
+    assertEquals(failed + 1, count("recording", "failed"));
+    assertEquals(0, outboxFailureRepository.count());
+
+    recordingConsumer.failFor.clear();
+    assertEquals(1, outboxDispatcher.dispatch());
+
+    assertEquals(1, recordingConsumer.events.size());
+    assertEquals(0, outboxEventRepository.count());
+  }
+
+  @Test
+  void an_event_another_instance_delivered_first_is_not_handed_over_again() {
+    doThrow(new DataIntegrityViolationException("duplicate key"))
+        .when(outboxDeliveryRepository)
+        .markDelivered(eq("recording"), anyLong(), any());
+    double duplicates = count("recording", "duplicate");
+    publish(event(1L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)));
+
+    outboxDispatcher.dispatch();
+
+    assertEquals(List.of(), recordingConsumer.events);
+    assertEquals(duplicates + 1, count("recording", "duplicate"));
+    assertEquals(1, statisticsTotal());
+  }
+
+  @Test
+  void with_no_consumers_nothing_is_delivered_or_deleted() {
+    List<?> consumers = (List<?>) ReflectionTestUtils.getField(outboxDispatcher, "consumers");
+    ReflectionTestUtils.setField(outboxDispatcher, "consumers", List.of());
+    try {
+      publish(event(1L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING)));
+
+      assertEquals(0, outboxDispatcher.dispatch());
+
+      assertEquals(1, outboxEventRepository.count());
+    } finally {
+      ReflectionTestUtils.setField(outboxDispatcher, "consumers", consumers);
+    }
+  }
+
+  @Test
+  void rebuilding_the_statistics_skips_the_events_already_in_the_outbox() {
+    User professor =
+        userRepository.save(
+            User.builder().email("prof@ucsb.edu").fullName("Prof A").professor(true).build());
+    RecommendationRequest sent =
+        recommendationRequestRepository.save(
+            RecommendationRequest.builder()
+                .professor(professor)
+                .recommendationType("PhD program")
+                .status(RequestStatus.PENDING)
+                .build());
+    RecommendationRequest unsent =
+        recommendationRequestRepository.save(
+            RecommendationRequest.builder()
+                .requester(professor)
+                .recommendationType("PhD program")
+                .status(RequestStatus.PENDING)
+                .build());
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            transaction -> {
+              for (RecommendationRequest request : List.of(sent, unsent)) {
+                requestEventPublisher.publish(
+                    event(
+                        request.getId(),
+                        OutboxEvent.Type.CREATED,
+                        null,
+                        RequestSnapshot.of(request)));
+              }
+            });
+
+    requestStatisticsService.rebuild();
+    outboxDispatcher.dispatch();
+
+    assertEquals(1, statisticsTotal());
+    assertEquals(2, recordingConsumer.events.size());
+    assertEquals(professor.getId(), recordingConsumer.events.get(0).getAfter().getProfessorId());
+    assertNull(recordingConsumer.events.get(0).getAfter().getRequesterId());
+    assertEquals(professor.getId(), recordingConsumer.events.get(1).getAfter().getRequesterId());
+    assertNull(recordingConsumer.events.get(1).getAfter().getProfessorId());
+  }
+
+  @Test
+  void events_can_only_be_published_in_a_transaction() {
+    assertThrows(
+        IllegalTransactionStateException.class,
+        () ->
+            requestEventPublisher.publish(
+                event(1L, OutboxEvent.Type.CREATED, null, snapshot(7L, RequestStatus.PENDING))));
+  }
+}
@@ -0,0 +1,175 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+/** Runs the export against H2 and checks what is written and what is left in memory. */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ActiveProfiles("test")
+@Import({RecommendationRequestExportService.class, JacksonAutoConfiguration.class})
+public class RecommendationRequestExportServiceTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired TestEntityManager entityManager;
+
+  @Autowired RecommendationRequestExportService recommendationRequestExportService;
+
+  @Autowired ObjectMapper mapper;
+
+  List<Long> ids;
+
+  @BeforeEach
+  void setup() {
+    User professor =
+        entityManager.persist(
+            User.builder().email("prof@ucsb.edu").fullName("Prof, A").professor(true).build());
+    User student =
+        entityManager.persist(User.builder().email("student@ucsb.edu").fullName("Chris").build());
+    User otherStudent = entityManager.persist(User.builder().email("other@ucsb.edu").build());
+    LocalDateTime due = LocalDateTime.parse("2025-03-01T12:00:00");
+    ids =
+        List.of(
+            entityManager
+                .persist(
+                    RecommendationRequest.builder()
+                        .professor(professor)
+                        .requester(student)
+                        .recommendationType("PhD program")
+                        .details("Please write about \"CS 156\",\nthanks")
+                        .status(RequestStatus.IN_PROGRESS)
+                        .dueDate(due)
+                        .build())
+                .getId(),
+            entityManager
+                .persist(
+                    RecommendationRequest.builder()
+                        .professor(professor)
+                        .requester(otherStudent)
+                        .details("=HYPERLINK(\"x\")")
+                        .status(RequestStatus.PENDING)
+                        .build())
+                .getId(),
+            entityManager
+                .persist(RecommendationRequest.builder().status(RequestStatus.DENIED).build())
+                .getId());
+    entityManager.flush();
+    entityManager.clear();
+  }
+
+  Statistics statistics() {
+    return entityManager
+        .getEntityManager()
+        .getEntityManagerFactory()
+        .unwrap(SessionFactory.class)
+        .getStatistics();
+  }
+
+  int managedEntities() {
+    return entityManager.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount();
+  }
+
+  @Test
+  public void csv_has_a_header_and_one_line_per_request() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    statistics().clear();
+
+    assertEquals(3, recommendationRequestExportService.writeCsv(out));
+
+    assertEquals(1, statistics().getPrepareStatementCount());
+    assertEquals(0, managedEntities());
+    String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+    assertEquals(4, lines.length);
+    assertEquals(RecommendationRequestExportService.CSV_HEADER, lines[0]);
+    assertEquals(
+        ids.get(0)
+            + ",student@ucsb.edu,Chris,prof@ucsb.edu,\"Prof, A\",PhD program,"
+            + "\"Please write about \"\"CS 156\"\",\nthanks\",IN PROGRESS,",
+        lines[1].substring(0, lines[1].indexOf("IN PROGRESS,") + "IN PROGRESS,".length()));
+    RecommendationRequest first = entityManager.find(RecommendationRequest.class, ids.get(0));
+    assertEquals(RecommendationRequestExportService.csvLine(first), lines[1] + "\r\n");
+    assertEquals(
+        ids.get(1)
+            + ",other@ucsb.edu,,prof@ucsb.edu,\"Prof, A\",,\"'=HYPERLINK(\"\"x\"\")\",PENDING,",
+        lines[2].substring(0, lines[2].indexOf("PENDING,") + "PENDING,".length()));
+    assertEquals(
+        ids.get(2) + ",,,,,,,DENIED,", lines[3].substring(0, lines[3].indexOf("DENIED,") + 7));
+  }
+
+  @Test
+  public void ndjson_has_one_listing_object_per_line() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    assertEquals(3, recommendationRequestExportService.writeNdjson(out));
+
+    assertEquals(0, managedEntities());
+    String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(3, lines.length);
+    JsonNode first = mapper.readTree(lines[0]);
+    assertEquals(ids.get(0), first.get("id").asLong());
+    assertEquals("IN PROGRESS", first.get("status").asText());
+    assertEquals("2025-03-01T12:00:00", first.get("dueDate").asText());
+    assertEquals("prof@ucsb.edu", first.get("professor").get("email").asText());
+    assertEquals("student@ucsb.edu", first.get("requester").get("email").asText());
+    assertEquals(ids.get(2), mapper.readTree(lines[2]).get("id").asLong());
+  }
+
+  @Test
+  public void empty_table_exports_only_the_header() throws Exception {
+    entityManager
+        .getEntityManager()
+        .createQuery("DELETE FROM recommendationrequest")
+        .executeUpdate();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    assertEquals(0, recommendationRequestExportService.writeCsv(out));
+
+    assertEquals(
+        RecommendationRequestExportService.CSV_HEADER + "\r\n",
+        out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void csv_fields_are_quoted_only_when_needed() {
+    assertEquals("", RecommendationRequestExportService.csvField(null));
+    assertEquals("", RecommendationRequestExportService.csvField(""));
+    assertEquals("-12", RecommendationRequestExportService.csvField(-12L));
+    assertEquals("plain text", RecommendationRequestExportService.csvField("plain text"));
+    assertEquals("'+1", RecommendationRequestExportService.csvField("+1"));
+    assertEquals("'-1", RecommendationRequestExportService.csvField("-1"));
+    assertEquals("'@sum", RecommendationRequestExportService.csvField("@sum"));
+    assertEquals("\"a,b\"", RecommendationRequestExportService.csvField("a,b"));
+    assertEquals("\"a\"\"b\"", RecommendationRequestExportService.csvField("a\"b"));
+    assertEquals("\"a\rb\"", RecommendationRequestExportService.csvField("a\rb"));
+    assertEquals("\"a\nb\"", RecommendationRequestExportService.csvField("a\nb"));
+  }
+
+  @Test
+  public void csv_line_leaves_missing_values_empty() {
+    assertEquals(
+        "0,,,,,,,,,,,\r\n",
+        RecommendationRequestExportService.csvLine(RecommendationRequest.builder().build()));
+  }
+}
@@ -0,0 +1,208 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.ucsb.cs156.rec.entities.ArchivedRecommendationRequest;
+import edu.ucsb.cs156.rec.entities.JobLock;
+import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.RequestStatistics;
+import edu.ucsb.cs156.rec.repositories.ArchivedRecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.JobLockRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalInt;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Runs the archive mover against H2. Like the statistics tests, each chunk commits its own
+ * transaction, so the tests run outside a transaction and clean up after themselves.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({
+  RequestArchiveService.class,
+  RequestStatisticsService.class,
+  JobLockService.class,
+  UserCache.class
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class RequestArchiveServiceTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired RequestArchiveService requestArchiveService;
+
+  @Autowired RequestStatisticsService requestStatisticsService;
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired ArchivedRecommendationRequestRepository archivedRecommendationRequestRepository;
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired JobLockRepository jobLockRepository;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  User professor;
+  User otherProfessor;
+  User student;
+
+  @BeforeEach
+  void setup() {
+    professor =
+        userRepository.save(
+            User.builder().email("prof@ucsb.edu").fullName("Prof A").professor(true).build());
+    otherProfessor =
+        userRepository.save(
+            User.builder().email("prof2@ucsb.edu").fullName("Prof B").professor(true).build());
+    student = userRepository.save(User.builder().email("student@ucsb.edu").build());
+    ReflectionTestUtils.setField(requestArchiveService, "chunkSize", 2);
+  }
+
+  @AfterEach
+  void cleanup() {
+    jdbcTemplate.update("DELETE FROM JOBLOCK");
+    jdbcTemplate.update("DELETE FROM REQUESTSTATISTIC");
+    jdbcTemplate.update("DELETE FROM ARCHIVEDRECOMMENDATIONREQUEST");
+    jdbcTemplate.update("DELETE FROM RECOMMENDATIONREQUEST");
+    jdbcTemplate.update("DELETE FROM USERS");
+  }
+
+  /** Saves a request, then backdates its last change by the given number of days. */
+  private long save(User prof, RequestStatus status, int daysAgo) {
+    RecommendationRequest saved =
+        recommendationRequestRepository.save(
+            RecommendationRequest.builder()
+                .professor(prof)
+                .requester(student)
+                .recommendationType("PhD program")
+                .details("details " + daysAgo)
+                .status(status)
+                .dueDate(LocalDateTime.parse("2024-01-01T00:00:00"))
+                .build());
+    LocalDateTime submitted = LocalDateTime.now().minusDays(daysAgo + 1);
+    jdbcTemplate.update(
+        "UPDATE RECOMMENDATIONREQUEST SET SUBMISSION_DATE = ?, LAST_MODIFIED_DATE = ?,"
+            + " COMPLETION_DATE = CASE WHEN STATUS_CODE = 2 THEN ? END WHERE ID = ?",
+        submitted,
+        submitted.plusDays(1),
+        submitted.plusDays(1),
+        saved.getId());
+    return saved.getId();
+  }
+
+  @Test
+  void old_finished_requests_are_moved_in_chunks() {
+    long oldCompleted = save(professor, RequestStatus.COMPLETED, 400);
+    long oldDenied = save(otherProfessor, RequestStatus.DENIED, 500);
+    long oldCompletedToo = save(professor, RequestStatus.COMPLETED, 366);
+    long recentCompleted = save(professor, RequestStatus.COMPLETED, 10);
+    long oldPending = save(professor, RequestStatus.PENDING, 400);
+    requestStatisticsService.rebuild();
+    RequestStatistics before = requestStatisticsService.forAll();
+
+    assertEquals(3, requestArchiveService.archiveOldRequests());
+
+    assertEquals(
+        List.of(recentCompleted, oldPending),
+        recommendationRequestRepository.findAllSubmittedPage(Limit.of(10)).stream()
+            .map(RecommendationRequest::getId)
+            .sorted()
+            .toList());
+    List<ArchivedRecommendationRequest> history =
+        archivedRecommendationRequestRepository.findRequesterHistoryPage(
+            student.getId(), Long.MAX_VALUE, Limit.of(10));
+    assertEquals(
+        List.of(oldCompletedToo, oldDenied, oldCompleted),
+        history.stream().map(ArchivedRecommendationRequest::getId).toList());
+    ArchivedRecommendationRequest denied = history.get(1);
+    assertEquals(otherProfessor, denied.getProfessor());
+    assertEquals(student, denied.getRequester());
+    assertEquals(RequestStatus.DENIED, denied.getStatus());
+    assertEquals("details 500", denied.getDetails());
+    assertEquals(LocalDateTime.parse("2024-01-01T00:00:00"), denied.getDueDate());
+    assertTrue(denied.getArchivedDate().isAfter(denied.getLastModifiedDate()));
+
+    // moving is not a change, and a rebuild counts the archive too
+    assertEquals(before, requestStatisticsService.forAll());
+    requestStatisticsService.rebuild();
+    assertEquals(before, requestStatisticsService.forAll());
+  }
+
+  @Test
+  void nothing_is_moved_twice() {
+    save(professor, RequestStatus.COMPLETED, 400);
+    save(professor, RequestStatus.DENIED, 400);
+
+    assertEquals(2, requestArchiveService.archiveOldRequests());
+    requestArchiveService.scheduledArchive();
+
+    assertEquals(2, archivedRecommendationRequestRepository.count());
+    assertEquals(0, recommendationRequestRepository.count());
+  }
+
+  @Test
+  void the_scheduled_run_only_happens_on_the_instance_holding_the_lease() {
+    save(professor, RequestStatus.COMPLETED, 400);
+    jobLockRepository.save(
+        JobLock.builder()
+            .name(RequestArchiveService.JOB_NAME)
+            .owner("another instance")
+            .lockedUntil(LocalDateTime.now().plusMinutes(5))
+            .build());
+
+    requestArchiveService.scheduledArchive();
+    assertEquals(OptionalInt.empty(), requestArchiveService.archiveUnlessRunning());
+    assertEquals(0, archivedRecommendationRequestRepository.count());
+
+    jdbcTemplate.update("DELETE FROM JOBLOCK");
+    assertEquals(OptionalInt.of(1), requestArchiveService.archiveUnlessRunning());
+    assertEquals(1, archivedRecommendationRequestRepository.count());
+  }
+
+  @Test
+  void history_can_be_limited_to_a_professor_and_paged() {
+    long first = save(professor, RequestStatus.COMPLETED, 400);
+    long second = save(otherProfessor, RequestStatus.COMPLETED, 400);
+    long third = save(professor, RequestStatus.DENIED, 400);
+    requestArchiveService.archiveOldRequests();
+
+    assertEquals(
+        List.of(third, first),
+        archivedRecommendationRequestRepository
+            .findProfessorHistoryPage(professor.getId(), Long.MAX_VALUE, Limit.of(10))
+            .stream()
+            .map(ArchivedRecommendationRequest::getId)
+            .toList());
+    assertEquals(
+        List.of(second),
+        archivedRecommendationRequestRepository.findHistoryPage(third, Limit.of(1)).stream()
+            .map(ArchivedRecommendationRequest::getId)
+            .toList());
+    assertFalse(
+        archivedRecommendationRequestRepository
+            .findRequesterHistoryPage(otherProfessor.getId(), Long.MAX_VALUE, Limit.of(10))
+            .iterator()
+            .hasNext());
+  }
+}
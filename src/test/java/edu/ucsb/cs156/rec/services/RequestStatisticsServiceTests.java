@@ -0,0 +1,375 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import edu.ucsb.cs156.rec.entities.OutboxEvent;
+import edu.ucsb.cs156.rec.entities.RecommendationRequest;
+import edu.ucsb.cs156.rec.entities.RequestStatus;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.RequestEvent;
+import edu.ucsb.cs156.rec.models.RequestSnapshot;
+import edu.ucsb.cs156.rec.models.RequestStatistics;
+import edu.ucsb.cs156.rec.repositories.OutboxDeliveryRepository;
+import edu.ucsb.cs156.rec.repositories.OutboxEventRepository;
+import edu.ucsb.cs156.rec.repositories.RecommendationRequestRepository;
+import edu.ucsb.cs156.rec.repositories.RequestStatisticRepository;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs the statistics service against H2. Each test commits its own transactions (rather than
+ * running inside one that is rolled back), because the service creates missing rows in a separate
+ * transaction and the tests need to see what is committed.
+ */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({
+  RequestStatisticsService.class,
+  UserCache.class,
+  RequestEventPublisher.class,
+  JacksonAutoConfiguration.class
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class RequestStatisticsServiceTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @SpyBean RequestStatisticRepository requestStatisticRepository;
+
+  @SpyBean OutboxDeliveryRepository outboxDeliveryRepository;
+
+  @Autowired OutboxEventRepository outboxEventRepository;
+
+  @Autowired RequestEventPublisher requestEventPublisher;
+
+  @Autowired RequestStatisticsService requestStatisticsService;
+
+  @Autowired RecommendationRequestRepository recommendationRequestRepository;
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired PlatformTransactionManager transactionManager;
+
+  @Autowired JdbcTemplate jdbcTemplate;
+
+  User professor;
+  User otherProfessor;
+  User student;
+
+  @BeforeEach
+  void setup() {
+    professor =
+        userRepository.save(
+            User.builder().email("prof@ucsb.edu").fullName("Prof A").professor(true).build());
+    otherProfessor =
+        userRepository.save(
+            User.builder().email("prof2@ucsb.edu").fullName("Prof B").professor(true).build());
+    student = userRepository.save(User.builder().email("student@ucsb.edu").build());
+  }
+
+  @AfterEach
+  void cleanup() {
+    jdbcTemplate.update("DELETE FROM OUTBOXEVENT");
+    jdbcTemplate.update("DELETE FROM REQUESTSTATISTIC");
+    jdbcTemplate.update("DELETE FROM RECOMMENDATIONREQUEST");
+    jdbcTemplate.update("DELETE FROM USERS");
+  }
+
+  private <T> T inTransaction(java.util.function.Supplier<T> work) {
+    return new TransactionTemplate(transactionManager).execute(status -> work.get());
+  }
+
+  private static RequestSnapshot pending(Long professorId) {
+    return RequestSnapshot.builder()
+        .professorId(professorId)
+        .recommendationType("PhD program")
+        .status(RequestStatus.PENDING)
+        .build();
+  }
+
+  /** Hands the statistics service an event, as the OutboxDispatcher does. */
+  private void accept(
+      OutboxEvent.Type type, long requestId, RequestSnapshot before, RequestSnapshot after) {
+    requestStatisticsService.accept(
+        RequestEvent.builder().requestId(requestId).type(type).before(before).after(after).build());
+  }
+
+  /** Saves a request and hands its creation to the statistics service. */
+  private RecommendationRequest create(User prof, String type, RequestStatus status) {
+    return inTransaction(
+        () -> {
+          RecommendationRequest saved =
+              recommendationRequestRepository.save(
+                  RecommendationRequest.builder()
+                      .professor(prof)
+                      .requester(student)
+                      .recommendationType(type)
+                      .status(status)
+                      .build());
+          accept(OutboxEvent.Type.CREATED, saved.getId(), null, RequestSnapshot.of(saved));
+          return saved;
+        });
+  }
+
+  /** Moves a request to a new status and hands the change to the statistics service. */
+  private RecommendationRequest complete(
+      RecommendationRequest request, LocalDateTime completionDate) {
+    return inTransaction(
+        () -> {
+          RequestSnapshot before = RequestSnapshot.of(request);
+          request.setStatus(RequestStatus.COMPLETED);
+          request.setCompletionDate(completionDate);
+          RecommendationRequest saved = recommendationRequestRepository.save(request);
+          accept(OutboxEvent.Type.STATUS_CHANGED, saved.getId(), before, RequestSnapshot.of(saved));
+          return saved;
+        });
+  }
+
+  /** Deletes a request and hands the deletion to the statistics service. */
+  private void delete(RecommendationRequest request) {
+    inTransaction(
+        () -> {
+          recommendationRequestRepository.delete(request);
+          accept(OutboxEvent.Type.DELETED, request.getId(), RequestSnapshot.of(request), null);
+          return null;
+        });
+  }
+
+  @Test
+  void counts_follow_creates_updates_and_deletes() {
+    RecommendationRequest first = create(professor, "PhD program", RequestStatus.PENDING);
+    RecommendationRequest second = create(professor, "PhD program", RequestStatus.PENDING);
+    create(professor, "Internship", RequestStatus.PENDING);
+    create(otherProfessor, "Internship", RequestStatus.PENDING);
+
+    complete(first, first.getSubmissionDate().plusHours(2));
+    RecommendationRequest completed = complete(second, second.getSubmissionDate().plusHours(4));
+    delete(completed);
+
+    RequestStatistics statistics = requestStatisticsService.forProfessor(professor.getId());
+    assertEquals(professor.getId(), statistics.getProfessorId());
+    assertEquals("Prof A", statistics.getProfessorName());
+    assertEquals(2, statistics.getTotal());
+    assertEquals(
+        Map.of("PENDING", 1L, "IN PROGRESS", 0L, "COMPLETED", 1L, "DENIED", 0L),
+        statistics.getByStatus());
+    assertEquals(
+        List.of("PENDING", "IN PROGRESS", "COMPLETED", "DENIED"),
+        List.copyOf(statistics.getByStatus().keySet()));
+    assertEquals(Map.of("Internship", 1L, "PhD program", 1L), statistics.getByType());
+    assertEquals(1, statistics.getTimedCompletions());
+    assertEquals(7200L, statistics.getAverageCompletionSeconds());
+  }
+
+  @Test
+  void rows_that_drop_to_zero_are_left_out() {
+    RecommendationRequest request = create(professor, "PhD program", RequestStatus.PENDING);
+    delete(request);
+
+    RequestStatistics statistics = requestStatisticsService.forProfessor(professor.getId());
+    assertEquals(0, statistics.getTotal());
+    assertEquals(Map.of(), statistics.getByType());
+    assertNull(statistics.getAverageCompletionSeconds());
+  }
+
+  @Test
+  void counts_roll_back_with_the_change() {
+    create(professor, "PhD program", RequestStatus.PENDING);
+
+    new TransactionTemplate(transactionManager)
+        .executeWithoutResult(
+            status -> {
+              accept(OutboxEvent.Type.CREATED, 1L, null, pending(professor.getId()));
+              status.setRollbackOnly();
+            });
+
+    assertEquals(1, requestStatisticsService.forProfessor(professor.getId()).getTotal());
+  }
+
+  @Test
+  void changes_must_be_reported_inside_a_transaction() {
+    assertThrows(
+        IllegalTransactionStateException.class,
+        () -> accept(OutboxEvent.Type.CREATED, 1L, null, pending(professor.getId())));
+  }
+
+  @Test
+  void completions_without_both_dates_are_not_timed() {
+    RecommendationRequest noSubmission = create(professor, "PhD program", RequestStatus.PENDING);
+    noSubmission.setSubmissionDate(null);
+    complete(noSubmission, LocalDateTime.parse("2025-01-01T00:00:00"));
+    RecommendationRequest noCompletion = create(professor, "PhD program", RequestStatus.PENDING);
+    complete(noCompletion, null);
+
+    RequestStatistics statistics = requestStatisticsService.forProfessor(professor.getId());
+    assertEquals(2, statistics.getByStatus().get("COMPLETED"));
+    assertEquals(0, statistics.getTimedCompletions());
+    assertNull(statistics.getAverageCompletionSeconds());
+  }
+
+  @Test
+  void requests_without_a_professor_are_ignored() {
+    inTransaction(
+        () -> {
+          accept(OutboxEvent.Type.CREATED, 1L, null, pending(null));
+          return null;
+        });
+
+    assertEquals(0, requestStatisticRepository.count());
+  }
+
+  @Test
+  void row_created_by_another_request_is_reused() {
+    create(professor, "PhD program", RequestStatus.PENDING);
+    // pretend the row did not exist yet when this request looked, as if another request created
+    // it in the meantime
+    Answer<?> repository =
+        mockingDetails(requestStatisticRepository).getMockCreationSettings().getDefaultAnswer();
+    doReturn(0)
+        .doAnswer(repository)
+        .when(requestStatisticRepository)
+        .addToTotals(anyLong(), anyString(), any(), anyLong(), anyLong(), anyLong());
+
+    create(professor, "PhD program", RequestStatus.PENDING);
+
+    // two each: the first create really had to make the row, the second only thought so
+    verify(requestStatisticRepository, times(4))
+        .addToTotals(anyLong(), anyString(), any(), anyLong(), anyLong(), anyLong());
+    assertEquals(1, requestStatisticRepository.count());
+    assertEquals(2, requestStatisticsService.forProfessor(professor.getId()).getTotal());
+  }
+
+  @Test
+  void a_change_updates_only_the_old_and_new_rows() {
+    RecommendationRequest request = create(professor, "PhD program", RequestStatus.PENDING);
+    create(professor, "Internship", RequestStatus.PENDING);
+    clearInvocations(requestStatisticRepository);
+
+    complete(request, request.getSubmissionDate().plusHours(1));
+
+    // one for the old status, and two for the new one, whose row had to be created first
+    verify(requestStatisticRepository, times(3))
+        .addToTotals(anyLong(), anyString(), any(), anyLong(), anyLong(), anyLong());
+    RequestStatistics statistics = requestStatisticsService.forProfessor(professor.getId());
+    assertEquals(1, statistics.getByStatus().get("COMPLETED"));
+    assertEquals(1, statistics.getByStatus().get("PENDING"));
+    assertEquals(1, statistics.getTimedCompletions());
+    assertEquals(3600L, statistics.getAverageCompletionSeconds());
+  }
+
+  @Test
+  void rebuild_matches_the_requests_table() {
+    RecommendationRequest done = create(professor, "PhD program", RequestStatus.PENDING);
+    complete(done, done.getSubmissionDate().plusMinutes(90));
+    create(professor, null, RequestStatus.PENDING);
+    create(otherProfessor, "Internship", RequestStatus.PENDING);
+    RequestStatistics before = requestStatisticsService.forAll();
+
+    // damage the totals, then repair them
+    jdbcTemplate.update("UPDATE REQUESTSTATISTIC SET REQUEST_COUNT = 99");
+    assertEquals(3, requestStatisticsService.rebuild());
+
+    RequestStatistics after = requestStatisticsService.forAll();
+    assertEquals(before, after);
+    assertEquals(3, after.getTotal());
+    assertEquals(5400L, after.getAverageCompletionSeconds());
+    assertEquals(Map.of("", 1L, "Internship", 1L, "PhD program", 1L), after.getByType());
+    assertEquals(2, after.getByProfessor().size());
+    assertEquals("Prof A", after.getByProfessor().get(0).getProfessorName());
+    assertEquals(2, after.getByProfessor().get(0).getTotal());
+    assertEquals("Prof B", after.getByProfessor().get(1).getProfessorName());
+    assertNull(after.getProfessorId());
+  }
+
+  @Test
+  void rebuild_and_outbox_agree_on_a_request_created_while_it_runs() {
+    create(professor, "PhD program", RequestStatus.PENDING);
+    // another request is created, with its outbox event, after the rebuild has marked the outbox
+    // delivered but before it reads the requests
+    AtomicReference<RequestEvent> created = new AtomicReference<>();
+    Answer<?> repository =
+        mockingDetails(outboxDeliveryRepository).getMockCreationSettings().getDefaultAnswer();
+    doAnswer(
+            invocation -> {
+              Object marked = repository.answer(invocation);
+              CompletableFuture.runAsync(
+                      () ->
+                          created.set(
+                              inTransaction(
+                                  () -> {
+                                    RecommendationRequest saved =
+                                        recommendationRequestRepository.save(
+                                            RecommendationRequest.builder()
+                                                .professor(professor)
+                                                .requester(student)
+                                                .recommendationType("PhD program")
+                                                .status(RequestStatus.PENDING)
+                                                .build());
+                                    RequestEvent event =
+                                        RequestEvent.builder()
+                                            .requestId(saved.getId())
+                                            .type(OutboxEvent.Type.CREATED)
+                                            .after(RequestSnapshot.of(saved))
+                                            .build();
+                                    requestEventPublisher.publish(event);
+                                    return event;
+                                  })))
+                  .join();
+              return marked;
+            })
+        .when(outboxDeliveryRepository)
+        .markAllDelivered(anyString(), any());
+
+    requestStatisticsService.rebuild();
+
+    // the rebuild did not see the new request, so its event is still to be delivered
+    assertEquals(1, requestStatisticsService.forProfessor(professor.getId()).getTotal());
+    assertEquals(
+        1,
+        inTransaction(
+                () ->
+                    outboxEventRepository.findUndelivered(
+                        RequestStatisticsService.CONSUMER_NAME, LocalDateTime.now(), Limit.of(10)))
+            .size());
+    inTransaction(
+        () -> {
+          requestStatisticsService.accept(created.get());
+          return null;
+        });
+    assertEquals(2, requestStatisticsService.forProfessor(professor.getId()).getTotal());
+  }
+}
@@ -0,0 +1,156 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import edu.ucsb.cs156.rec.entities.RequestType;
+import edu.ucsb.cs156.rec.repositories.RequestTypeRepository;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = RequestTypeRegistry.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class RequestTypeRegistryTests {
+
+  @MockBean RequestTypeRepository requestTypeRepository;
+
+  @Autowired RequestTypeRegistry requestTypeRegistry;
+
+  RequestType internship = RequestType.builder().id(1L).requestType("Internship").build();
+
+  RequestType phd = RequestType.builder().id(2L).requestType("PhD program").build();
+
+  private void load(RequestType... requestTypes) {
+    when(requestTypeRepository.findAll()).thenReturn(List.of(requestTypes));
+    requestTypeRegistry.refresh();
+  }
+
+  @Test
+  void lookups_do_not_query_the_database() {
+    load(internship, phd);
+
+    assertEquals(List.of(internship, phd), requestTypeRegistry.getAll());
+    assertEquals(Optional.of(phd), requestTypeRegistry.findByRequestType("PhD program"));
+
+    // once at startup (with nothing stubbed) and once by load()
+    verify(requestTypeRepository, times(2)).findAll();
+  }
+
+  @Test
+  void a_lookup_that_misses_looks_up_only_that_name() {
+    load(internship);
+    when(requestTypeRepository.findByRequestType("PhD program")).thenReturn(Optional.of(phd));
+    when(requestTypeRepository.findByRequestType("Other")).thenReturn(Optional.empty());
+
+    assertEquals(Optional.of(phd), requestTypeRegistry.findByRequestType("PhD program"));
+    assertTrue(requestTypeRegistry.findByRequestType("Other").isEmpty());
+
+    // the type found is added, so the next lookup does not go to the database
+    assertEquals(Optional.of(phd), requestTypeRegistry.findByRequestType("PhD program"));
+    assertEquals(List.of(internship, phd), requestTypeRegistry.getAll());
+    verify(requestTypeRepository, times(1)).findByRequestType("PhD program");
+    verify(requestTypeRepository, times(2)).findAll();
+  }
+
+  @Test
+  void scheduled_refresh_picks_up_changes_made_elsewhere() {
+    load(internship, phd);
+    RequestType renamed = RequestType.builder().id(1L).requestType("Summer internship").build();
+    when(requestTypeRepository.findAll()).thenReturn(List.of(renamed));
+
+    requestTypeRegistry.scheduledRefresh();
+
+    assertEquals(List.of(renamed), requestTypeRegistry.getAll());
+  }
+
+  @Test
+  void snapshot_is_a_copy() {
+    load(internship);
+
+    internship.setRequestType("Changed");
+
+    assertEquals("Internship", requestTypeRegistry.getAll().get(0).getRequestType());
+    assertThrows(UnsupportedOperationException.class, () -> requestTypeRegistry.getAll().clear());
+  }
+
+  @Test
+  void put_adds_or_replaces_by_id() {
+    load(internship, phd);
+    RequestType renamed = RequestType.builder().id(1L).requestType("Summer internship").build();
+    RequestType fellowship = RequestType.builder().id(3L).requestType("Fellowship").build();
+
+    List<RequestType> before = requestTypeRegistry.getAll();
+    requestTypeRegistry.put(renamed);
+    requestTypeRegistry.put(fellowship);
+    when(requestTypeRepository.findAll()).thenReturn(List.of(renamed, phd, fellowship));
+
+    assertEquals(List.of(internship, phd), before);
+    assertEquals(List.of(renamed, phd, fellowship), requestTypeRegistry.getAll());
+    assertTrue(requestTypeRegistry.findByRequestType("Internship").isEmpty());
+    assertEquals(Optional.of(renamed), requestTypeRegistry.findByRequestType("Summer internship"));
+  }
+
+  @Test
+  void remove_drops_the_request_type() {
+    load(internship, phd);
+
+    requestTypeRegistry.remove(internship.getId());
+    when(requestTypeRepository.findAll()).thenReturn(List.of(phd));
+
+    assertEquals(List.of(phd), requestTypeRegistry.getAll());
+    assertTrue(requestTypeRegistry.findByRequestType("Internship").isEmpty());
+  }
+
+  @Test
+  void changes_in_a_transaction_take_effect_when_it_commits() {
+    load(internship);
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      requestTypeRegistry.put(phd);
+      requestTypeRegistry.remove(internship.getId());
+      assertEquals(List.of(internship), requestTypeRegistry.getAll());
+
+      TransactionSynchronizationUtils.triggerAfterCommit();
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    assertEquals(List.of(phd), requestTypeRegistry.getAll());
+  }
+
+  @Test
+  void fingerprint_depends_only_on_the_contents() {
+    String empty = requestTypeRegistry.getFingerprint();
+
+    load(phd, internship);
+    String loaded = requestTypeRegistry.getFingerprint();
+    assertNotEquals(empty, loaded);
+
+    // the same request types give the same fingerprint, whatever order they arrive in
+    requestTypeRegistry.put(phd);
+    assertEquals(loaded, requestTypeRegistry.getFingerprint());
+    load(internship, phd);
+    assertEquals(loaded, requestTypeRegistry.getFingerprint());
+
+    requestTypeRegistry.put(RequestType.builder().id(2L).requestType("PhD").build());
+    assertNotEquals(loaded, requestTypeRegistry.getFingerprint());
+    requestTypeRegistry.remove(2L);
+    requestTypeRegistry.remove(1L);
+    assertEquals(empty, requestTypeRegistry.getFingerprint());
+  }
+}
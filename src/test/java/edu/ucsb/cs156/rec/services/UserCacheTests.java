@@ -0,0 +1,271 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.models.UserCacheStats;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = UserCache.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class UserCacheTests {
+
+  @MockBean UserRepository userRepository;
+
+  @Autowired UserCache userCache;
+
+  User user = User.builder().id(17L).email("cgaucho@ucsb.edu").build();
+
+  @BeforeEach
+  void setup() {
+    // the roles in the database are the ones cached, unless a test says otherwise
+    when(userRepository.findRoleVersionById(17L)).thenReturn(Optional.of(0L));
+  }
+
+  @Test
+  void findByEmail_second_lookup_is_a_hit() {
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+
+    assertEquals(Optional.of(user), userCache.findByEmail("cgaucho@ucsb.edu"));
+    assertEquals(Optional.of(user), userCache.findByEmail("cgaucho@ucsb.edu"));
+    assertEquals(Optional.of(user), userCache.findById(17L));
+
+    verify(userRepository, times(1)).findByEmail("cgaucho@ucsb.edu");
+    verify(userRepository, times(0)).findById(17L);
+    UserCacheStats stats = userCache.getStats();
+    assertEquals(2, stats.getHits());
+    assertEquals(1, stats.getMisses());
+    assertEquals(2, stats.getSize());
+  }
+
+  @Test
+  void findByEmail_reloads_a_user_whose_roles_changed_on_another_instance() {
+    User promoted =
+        User.builder().id(17L).email("cgaucho@ucsb.edu").admin(true).roleVersion(1).build();
+    when(userRepository.findByEmail("cgaucho@ucsb.edu"))
+        .thenReturn(Optional.of(user))
+        .thenReturn(Optional.of(promoted));
+    userCache.findByEmail("cgaucho@ucsb.edu");
+
+    when(userRepository.findRoleVersionById(17L)).thenReturn(Optional.of(1L));
+
+    assertEquals(Optional.of(promoted), userCache.findByEmail("cgaucho@ucsb.edu"));
+    assertEquals(Optional.of(promoted), userCache.findByEmail("cgaucho@ucsb.edu"));
+    assertEquals(Optional.of(promoted), userCache.findById(17L));
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+    assertEquals(1, userCache.getStats().getInvalidations());
+  }
+
+  @Test
+  void findByEmail_drops_a_user_deleted_on_another_instance() {
+    when(userRepository.findByEmail("cgaucho@ucsb.edu"))
+        .thenReturn(Optional.of(user))
+        .thenReturn(Optional.empty());
+    userCache.findByEmail("cgaucho@ucsb.edu");
+
+    when(userRepository.findRoleVersionById(17L)).thenReturn(Optional.empty());
+
+    assertTrue(userCache.findByEmail("cgaucho@ucsb.edu").isEmpty());
+    assertEquals(0, userCache.getStats().getSize());
+  }
+
+  @Test
+  void findById_second_lookup_is_a_hit() {
+    when(userRepository.findById(17L)).thenReturn(Optional.of(user));
+
+    assertEquals(Optional.of(user), userCache.findById(17L));
+    assertEquals(Optional.of(user), userCache.findById(17L));
+    assertEquals(Optional.of(user), userCache.findByEmail("cgaucho@ucsb.edu"));
+
+    verify(userRepository, times(1)).findById(17L);
+    verify(userRepository, times(0)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  void findById_user_without_email_is_only_cached_by_id() {
+    User noEmail = User.builder().id(18L).build();
+    when(userRepository.findById(18L)).thenReturn(Optional.of(noEmail));
+
+    assertEquals(Optional.of(noEmail), userCache.findById(18L));
+    assertEquals(Optional.of(noEmail), userCache.findById(18L));
+
+    verify(userRepository, times(1)).findById(18L);
+    assertEquals(1, userCache.getStats().getSize());
+  }
+
+  @Test
+  void missing_users_are_not_cached() {
+    when(userRepository.findByEmail("nobody@ucsb.edu")).thenReturn(Optional.empty());
+    when(userRepository.findById(99L)).thenReturn(Optional.empty());
+
+    assertTrue(userCache.findByEmail("nobody@ucsb.edu").isEmpty());
+    assertTrue(userCache.findByEmail("nobody@ucsb.edu").isEmpty());
+    assertTrue(userCache.findById(99L).isEmpty());
+    assertTrue(userCache.findById(99L).isEmpty());
+
+    verify(userRepository, times(2)).findByEmail("nobody@ucsb.edu");
+    verify(userRepository, times(2)).findById(99L);
+  }
+
+  @Test
+  void put_replaces_cached_copy() {
+    User saved = User.builder().id(17L).email("cgaucho@ucsb.edu").admin(true).build();
+
+    userCache.put(saved);
+    userCache.put(User.builder().id(18L).build());
+
+    assertEquals(Optional.of(saved), userCache.findByEmail("cgaucho@ucsb.edu"));
+    assertEquals(Optional.of(saved), userCache.findById(17L));
+    verify(userRepository, times(0)).findByEmail("cgaucho@ucsb.edu");
+    verify(userRepository, times(0)).findById(17L);
+  }
+
+  @Test
+  void evict_forces_next_lookup_to_the_database() {
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+    when(userRepository.findById(17L)).thenReturn(Optional.of(user));
+
+    userCache.findByEmail("cgaucho@ucsb.edu");
+    userCache.evict(user);
+    userCache.evict(User.builder().id(18L).build());
+    userCache.findByEmail("cgaucho@ucsb.edu");
+    userCache.evict(user);
+    userCache.findById(17L);
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+    verify(userRepository, times(1)).findById(17L);
+    assertEquals(3, userCache.getStats().getInvalidations());
+  }
+
+  @Test
+  void evict_by_id_also_drops_the_email_entry() {
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+    when(userRepository.findById(17L)).thenReturn(Optional.of(user));
+
+    userCache.findByEmail("cgaucho@ucsb.edu");
+    userCache.evict(17L);
+    userCache.findByEmail("cgaucho@ucsb.edu");
+    userCache.findById(17L);
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+    verify(userRepository, times(0)).findById(17L);
+    assertEquals(1, userCache.getStats().getInvalidations());
+  }
+
+  @Test
+  void evict_by_id_finds_the_email_entry_without_the_id_entry() {
+    User noEmail = User.builder().id(18L).build();
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+    when(userRepository.findById(18L)).thenReturn(Optional.of(noEmail));
+
+    userCache.findByEmail("cgaucho@ucsb.edu");
+    userCache.findById(18L);
+    userCache.evict(18L);
+    userCache.evict(99L);
+    assertEquals(2, userCache.getStats().getSize());
+    userCache.findByEmail("cgaucho@ucsb.edu");
+    // the id entry can be dropped on its own when the cache is full
+    ((Cache<?, ?>) ReflectionTestUtils.getField(userCache, "usersById")).asMap().remove(17L);
+    userCache.evict(17L);
+    userCache.findByEmail("cgaucho@ucsb.edu");
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+    assertEquals(3, userCache.getStats().getInvalidations());
+  }
+
+  @Test
+  void changes_in_a_transaction_take_effect_when_it_commits() {
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+    userCache.findByEmail("cgaucho@ucsb.edu");
+
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      userCache.evict(17L);
+      userCache.findByEmail("cgaucho@ucsb.edu");
+      verify(userRepository, times(1)).findByEmail("cgaucho@ucsb.edu");
+
+      TransactionSynchronizationUtils.triggerAfterCommit();
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+    userCache.findByEmail("cgaucho@ucsb.edu");
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  void changes_in_a_transaction_that_rolls_back_are_dropped() {
+    TransactionSynchronizationManager.initSynchronization();
+    try {
+      userCache.put(user);
+      userCache.evict(user);
+      TransactionSynchronizationUtils.triggerAfterCompletion(
+          TransactionSynchronization.STATUS_ROLLED_BACK);
+    } finally {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    assertEquals(0, userCache.getStats().getSize());
+    assertEquals(0, userCache.getStats().getInvalidations());
+  }
+
+  private UserCache disabledCache(long maximumSize, long ttlSeconds) {
+    UserCache cache = new UserCache();
+    cache.userRepository = userRepository;
+    ReflectionTestUtils.setField(cache, "maximumSize", maximumSize);
+    ReflectionTestUtils.setField(cache, "ttlSeconds", ttlSeconds);
+    cache.init();
+    return cache;
+  }
+
+  @Test
+  void zero_ttl_disables_the_cache() {
+    UserCache cache = disabledCache(10, 0);
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+    when(userRepository.findById(17L)).thenReturn(Optional.of(user));
+
+    cache.put(user);
+    cache.findByEmail("cgaucho@ucsb.edu");
+    cache.findByEmail("cgaucho@ucsb.edu");
+    cache.findById(17L);
+    cache.evict(user);
+    cache.evict(17L);
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+    verify(userRepository, times(1)).findById(17L);
+    UserCacheStats stats = cache.getStats();
+    assertEquals(0, stats.getHits());
+    assertEquals(3, stats.getMisses());
+    assertEquals(0, stats.getSize());
+    assertEquals(2, stats.getInvalidations());
+  }
+
+  @Test
+  void zero_maximum_size_disables_the_cache() {
+    UserCache cache = disabledCache(0, 300);
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(user));
+
+    cache.findByEmail("cgaucho@ucsb.edu");
+    cache.findByEmail("cgaucho@ucsb.edu");
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+  }
+}
@@ -0,0 +1,124 @@
+package edu.ucsb.cs156.rec.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.ucsb.cs156.rec.entities.User;
+import edu.ucsb.cs156.rec.repositories.UserRepository;
+import edu.ucsb.cs156.rec.services.wiremock.WiremockService;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+
+/** Runs the users listing queries against H2 and checks the JSON that is written. */
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({UserListingService.class, JacksonAutoConfiguration.class})
+public class UserListingServiceTests {
+
+  @MockBean WiremockService wiremockService;
+
+  @Autowired TestEntityManager entityManager;
+
+  @Autowired UserRepository userRepository;
+
+  @Autowired UserListingService userListingService;
+
+  @Autowired ObjectMapper mapper;
+
+  List<Long> ids = new ArrayList<>();
+
+  void save(String email, String fullName, String familyName) {
+    ids.add(
+        entityManager
+            .persist(User.builder().email(email).fullName(fullName).familyName(familyName).build())
+            .getId());
+  }
+
+  @BeforeEach
+  void setup() {
+    save("joe_gaucho@ucsb.edu", "Joe Gaucho", "Gaucho");
+    save("joexgaucho@ucsb.edu", "Joseph Gaucho", "Gaucho");
+    save("phtcon@ucsb.edu", "Phill Conrad", "Conrad");
+    save("other@ucsb.edu", null, null);
+    entityManager.flush();
+    entityManager.clear();
+  }
+
+  List<Long> streamed(String search, long after) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    long count =
+        userListingService.writeUsers(out, UserListingService.prefixPattern(search), after);
+    List<Long> seen = new ArrayList<>();
+    mapper
+        .readTree(out.toString(StandardCharsets.UTF_8))
+        .forEach(u -> seen.add(u.get("id").asLong()));
+    assertEquals(count, seen.size());
+    return seen;
+  }
+
+  @Test
+  public void all_users_are_streamed_in_id_order_and_not_kept() throws Exception {
+    assertEquals(ids, streamed(null, 0));
+    assertEquals(ids.subList(2, 4), streamed("  ", ids.get(1)));
+    assertEquals(
+        0, entityManager.getEntityManager().unwrap(Session.class).getStatistics().getEntityCount());
+  }
+
+  @Test
+  public void search_matches_the_start_of_email_or_names_ignoring_case() throws Exception {
+    assertEquals(ids.subList(0, 2), streamed("JOE", 0));
+    assertEquals(List.of(ids.get(0)), streamed("joe_", 0));
+    assertEquals(ids.subList(0, 2), streamed("gau", 0));
+    assertEquals(List.of(ids.get(2)), streamed("phill c", 0));
+    assertEquals(List.of(), streamed("ucsb", 0));
+    assertEquals(List.of(), streamed("%", 0));
+    assertEquals(List.of(ids.get(1)), streamed("joe", ids.get(0)));
+  }
+
+  @Test
+  public void pages_use_the_same_search() {
+    assertEquals(
+        List.of(ids.get(0)),
+        userRepository.findUsersPage("gau%", 0, Limit.of(1)).stream().map(User::getId).toList());
+    assertEquals(
+        List.of(ids.get(1)),
+        userRepository.findUsersPage("gau%", ids.get(0), Limit.of(5)).stream()
+            .map(User::getId)
+            .toList());
+  }
+
+  @Test
+  public void loaded_users_are_written_as_an_array() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    User user = User.builder().id(7L).email("a@ucsb.edu").build();
+
+    assertEquals(1, userListingService.writeUsers(out, List.of(user)));
+
+    JsonNode json = mapper.readTree(out.toString(StandardCharsets.UTF_8));
+    assertEquals(mapper.writeValueAsString(List.of(user)), json.toString());
+  }
+
+  @Test
+  public void prefix_pattern_escapes_wildcards() {
+    assertNull(UserListingService.prefixPattern(null));
+    assertNull(UserListingService.prefixPattern(""));
+    assertNull(UserListingService.prefixPattern(" \t"));
+    assertEquals("abc%", UserListingService.prefixPattern(" ABC "));
+    assertEquals("a\\%b\\_c\\\\d%", UserListingService.prefixPattern("a%b_c\\d"));
+  }
+}
@@ -1,8 +1,16 @@
 package edu.ucsb.cs156.rec.testconfig;
 
 import edu.ucsb.cs156.rec.config.SecurityConfig;
+import edu.ucsb.cs156.rec.services.CurrentUserContext;
 import edu.ucsb.cs156.rec.services.CurrentUserService;
+import edu.ucsb.cs156.rec.services.ETagService;
 import edu.ucsb.cs156.rec.services.GrantedAuthoritiesService;
+import edu.ucsb.cs156.rec.services.RequestTypeRegistry;
+import edu.ucsb.cs156.rec.services.UserCache;
+import org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.orm.jpa.AutoConfigureDataJpa;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -12,7 +20,19 @@ import org.springframework.context.annotation.Import;
 @AutoConfigureDataJpa // added so that automatic lastModifiedDate and createdDate fields are set
 // with jpa auditing (@EnableJpaAuditing(dateTimeProviderRef =
 // "utcDateTimeProvider"))
-@Import(SecurityConfig.class)
+// an in-memory MeterRegistry, which the web slices do not otherwise have, for the rate limits
+@ImportAutoConfiguration({
+  MetricsAutoConfiguration.class,
+  SimpleMetricsExportAutoConfiguration.class,
+  CompositeMeterRegistryAutoConfiguration.class
+})
+@Import({
+  SecurityConfig.class,
+  CurrentUserContext.class,
+  UserCache.class,
+  RequestTypeRegistry.class,
+  ETagService.class
+})
 public class TestConfig {
 
   @Bean